@@ -0,0 +1,110 @@
+/*
+ * Vogon personal finance/expense analyzer.
+ * Licensed under Apache license: http://www.apache.org/licenses/LICENSE-2.0
+ * Author: Dmitry Zolotukhin <zlogic@gmail.com>
+ */
+package org.zlogic.vogon.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.zlogic.vogon.data.FinanceTransaction;
+import org.zlogic.vogon.data.TransactionComponent;
+import org.zlogic.vogon.data.report.DateBalance;
+
+/**
+ * Benchmarks for setting balances in a DateBalance graph
+ *
+ * @author Dmitry Zolotukhin [zlogic@gmail.com]
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DateBalanceBenchmark {
+
+	/**
+	 * The ledger's transactions in random order
+	 */
+	@State(Scope.Benchmark)
+	public static class ShuffledLedger {
+
+		/**
+		 * The ledger's transactions in random order
+		 */
+		private List<FinanceTransaction> transactions;
+
+		/**
+		 * Shuffles the ledger's transactions
+		 *
+		 * @param loadedLedger the loaded ledger transactions
+		 */
+		@Setup(Level.Trial)
+		public void setUp(LoadedLedgerState loadedLedger) {
+			transactions = new ArrayList<>(loadedLedger.getTransactions());
+			Collections.shuffle(transactions, new Random(transactions.size()));
+		}
+	}
+
+	/**
+	 * DateBalance which allows to set balances from benchmarks
+	 */
+	private static class BenchmarkDateBalance extends DateBalance {
+
+		/**
+		 * Sets the balance for every component of transactions
+		 *
+		 * @param transactions the transactions to add
+		 */
+		private void addTransactions(List<FinanceTransaction> transactions) {
+			for (FinanceTransaction transaction : transactions) {
+				Date date = transaction.getDate();
+				for (TransactionComponent component : transaction.getComponents())
+					setBalance(date, component.getRawAmount());
+			}
+		}
+	}
+
+	/**
+	 * Sets balances for transactions sorted by date (appends to the end of
+	 * the graph)
+	 *
+	 * @param loadedLedger the loaded ledger transactions
+	 * @return the balance graph
+	 */
+	@Benchmark
+	public DateBalance addSortedBalances(LoadedLedgerState loadedLedger) {
+		BenchmarkDateBalance dateBalance = new BenchmarkDateBalance();
+		dateBalance.addTransactions(loadedLedger.getTransactions());
+		return dateBalance;
+	}
+
+	/**
+	 * Sets balances for transactions in random order (inserts into the
+	 * middle of the graph)
+	 *
+	 * @param shuffledLedger the shuffled ledger transactions
+	 * @return the balance graph
+	 */
+	@Benchmark
+	public DateBalance addShuffledBalances(ShuffledLedger shuffledLedger) {
+		BenchmarkDateBalance dateBalance = new BenchmarkDateBalance();
+		dateBalance.addTransactions(shuffledLedger.transactions);
+		return dateBalance;
+	}
+}
@@ -0,0 +1,78 @@
+/*
+ * Vogon personal finance/expense analyzer.
+ * Licensed under Apache license: http://www.apache.org/licenses/LICENSE-2.0
+ * Author: Dmitry Zolotukhin <zlogic@gmail.com>
+ */
+package org.zlogic.vogon.benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.zlogic.vogon.web.controller.serialization.JSONMapper;
+
+/**
+ * Benchmarks for JSON serialization of transactions
+ *
+ * @author Dmitry Zolotukhin [zlogic@gmail.com]
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class JSONMapperBenchmark {
+
+	/**
+	 * The page size (same as the default transactions page size)
+	 */
+	private static final int PAGE_SIZE = 100;
+	/**
+	 * The JSON mapper, configured in the same way as in the web application
+	 */
+	private JSONMapper mapper;
+
+	/**
+	 * Creates the JSON mapper
+	 *
+	 * @throws Exception if the mapper cannot be configured
+	 */
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		mapper = new JSONMapper();
+		mapper.afterPropertiesSet();
+	}
+
+	/**
+	 * Serializes all transactions of the ledger
+	 *
+	 * @param loadedLedger the loaded ledger transactions
+	 * @throws IOException if serialization fails
+	 */
+	@Benchmark
+	public void serializeLedger(LoadedLedgerState loadedLedger) throws IOException {
+		mapper.writeValue(OutputStream.nullOutputStream(), loadedLedger.getTransactionsJson());
+	}
+
+	/**
+	 * Serializes one page of transactions
+	 *
+	 * @param loadedLedger the loaded ledger transactions
+	 * @throws IOException if serialization fails
+	 */
+	@Benchmark
+	public void serializePage(LoadedLedgerState loadedLedger) throws IOException {
+		mapper.writeValue(OutputStream.nullOutputStream(), loadedLedger.getTransactionsJson().subList(0, Math.min(PAGE_SIZE, loadedLedger.getTransactionsJson().size())));
+	}
+}
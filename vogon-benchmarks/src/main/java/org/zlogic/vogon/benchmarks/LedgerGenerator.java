@@ -0,0 +1,673 @@
+/*
+ * Vogon personal finance/expense analyzer.
+ * Licensed under Apache license: http://www.apache.org/licenses/LICENSE-2.0
+ * Author: Dmitry Zolotukhin <zlogic@gmail.com>
+ */
+package org.zlogic.vogon.benchmarks;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.text.MessageFormat;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.ResourceBundle;
+import java.util.TreeMap;
+import java.util.function.IntConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import org.hibernate.Session;
+import org.springframework.security.crypto.factory.PasswordEncoderFactories;
+import org.zlogic.vogon.data.FinanceTransaction;
+
+/**
+ * Generates synthetic ledgers for benchmarks and load tests. All rows are
+ * written with JDBC batches (H2 syntax is used for sequences). The same seed
+ * always generates the same ledger.
+ * <p>
+ * Every user gets a home currency, accounts mostly in that currency, a
+ * personal tag popularity order (tags are picked with a Zipf distribution),
+ * and a set of transfer routes from the main account (ATM withdrawals, credit
+ * card payments, savings, currency exchange).
+ * <p>
+ * Can also be started from the command line to generate a database for the
+ * web application, see {@link #main(java.lang.String[])}.
+ *
+ * @author Dmitry Zolotukhin [zlogic@gmail.com]
+ */
+public class LedgerGenerator {
+
+	/**
+	 * Localization messages
+	 */
+	private static final ResourceBundle messages = ResourceBundle.getBundle("org/zlogic/vogon/benchmarks/messages");
+	/**
+	 * Number of rows in a JDBC batch
+	 */
+	private static final int BATCH_SIZE = 1000;
+	/**
+	 * Number of days in the ledger
+	 */
+	private static final int DAYS = 3650;
+	/**
+	 * The first day of the ledger
+	 */
+	public static final LocalDate START_DATE = LocalDate.of(2010, 1, 1);
+	/**
+	 * The last day of the ledger
+	 */
+	public static final LocalDate END_DATE = START_DATE.plusDays(DAYS - 1);
+	/**
+	 * Probability of a transfer transaction
+	 */
+	private static final double TRANSFER_PROBABILITY = 0.15;
+	/**
+	 * Probability of an income transaction
+	 */
+	private static final double INCOME_PROBABILITY = 0.05;
+	/**
+	 * Probability of a secondary tag in an expense transaction
+	 */
+	private static final double SECONDARY_TAG_PROBABILITY = 0.2;
+	/**
+	 * Probability of an account being in the user's home currency
+	 */
+	private static final double HOME_CURRENCY_PROBABILITY = 0.7;
+	/**
+	 * Zipf distribution exponent for tag popularity
+	 */
+	private static final double TAG_EXPONENT = 1.1;
+	/**
+	 * Zipf distribution exponent for expense accounts
+	 */
+	private static final double ACCOUNT_EXPONENT = 1.5;
+	/**
+	 * Currencies, most popular home currency first
+	 */
+	private static final String[] CURRENCIES = {"RUB", "EUR", "USD", "GBP", "CHF", "CNY", "JPY"}; //NOI18N
+	/**
+	 * Approximate exchange rates for CURRENCIES, for converting amounts
+	 */
+	private static final double[] RATES = {1.0, 75.0, 65.0, 85.0, 65.0, 9.0, 0.6};
+	/**
+	 * Account names; the first account receives income, the next three are
+	 * the main transfer targets
+	 */
+	private static final String[] ACCOUNT_NAMES = {
+		"Debit card", "Cash", "Credit card", "Savings", "Deposit", "Broker", //NOI18N
+		"Travel card", "Wallet", "Business account", "Loan", "Piggy bank", "Pension fund" //NOI18N
+	};
+	/**
+	 * Expense tags and descriptions
+	 */
+	private static final String[][] EXPENSES = {
+		{"groceries", "Supermarket"}, {"groceries", "Farmers market"}, {"groceries", "Bakery"}, //NOI18N
+		{"food", "Coffee"}, {"food", "Lunch"}, {"food", "Restaurant"}, {"food", "Food delivery"}, //NOI18N
+		{"transport", "Metro"}, {"transport", "Taxi"}, {"transport", "Bus"}, {"car", "Fuel"}, {"car", "Parking"}, {"car", "Car service"}, //NOI18N
+		{"household", "Hardware store"}, {"household", "Furniture"}, {"household", "Cleaning supplies"}, //NOI18N
+		{"communication", "Mobile phone"}, {"communication", "Internet"}, //NOI18N
+		{"entertainment", "Cinema"}, {"entertainment", "Concert"}, {"entertainment", "Games"}, {"books", "Bookstore"}, //NOI18N
+		{"clothes", "Clothes store"}, {"clothes", "Shoes"}, //NOI18N
+		{"health", "Pharmacy"}, {"health", "Dentist"}, {"sports", "Gym"}, {"sports", "Sports equipment"}, //NOI18N
+		{"utilities", "Electricity bill"}, {"utilities", "Water bill"}, {"utilities", "Heating bill"}, {"rent", "Rent"}, //NOI18N
+		{"gifts", "Gift"}, {"charity", "Donation"}, {"pets", "Pet food"}, {"pets", "Veterinarian"}, //NOI18N
+		{"electronics", "Electronics store"}, {"subscriptions", "Streaming service"}, {"education", "Online course"}, //NOI18N
+		{"travel", "Plane tickets"}, {"travel", "Hotel"}, {"travel", "Train tickets"}, {"taxes", "Property tax"}, //NOI18N
+		{"insurance", "Insurance"}, {"beauty", "Hairdresser"}, {"kids", "Toys"}, {"kids", "School supplies"} //NOI18N
+	};
+	/**
+	 * Secondary expense tags
+	 */
+	private static final String[] SECONDARY_TAGS = {"family", "work", "vacation", "weekend", "refundable"}; //NOI18N
+	/**
+	 * Income tags and descriptions
+	 */
+	private static final String[][] INCOMES = {
+		{"salary", "Salary"}, //NOI18N
+		{"salary", "Bonus"}, //NOI18N
+		{"interest", "Deposit interest"} //NOI18N
+	};
+	/**
+	 * The random number generator
+	 */
+	private final Random random;
+	/**
+	 * The next ID to assign
+	 */
+	private long nextId;
+	/**
+	 * The IDs of tags in the tags dictionary, by name
+	 */
+	private final Map<String, Long> tagIds = new HashMap<>();
+
+	/**
+	 * Creates a LedgerGenerator
+	 *
+	 * @param seed the random seed
+	 */
+	public LedgerGenerator(long seed) {
+		this.random = new Random(seed);
+	}
+
+	/**
+	 * Creates an EntityManagerFactory for an H2 database
+	 *
+	 * @param database the database path (without extension)
+	 * @param schemaAction the hibernate.hbm2ddl.auto value
+	 * @return the EntityManagerFactory
+	 */
+	public static EntityManagerFactory createEntityManagerFactory(File database, String schemaAction) {
+		Map<String, Object> jpaProperties = new HashMap<>();
+		jpaProperties.put("javax.persistence.jdbc.url", "jdbc:h2:" + database.getAbsolutePath()); //NOI18N
+		jpaProperties.put("javax.persistence.jdbc.user", ""); //NOI18N
+		jpaProperties.put("javax.persistence.jdbc.password", ""); //NOI18N
+		jpaProperties.put("hibernate.dialect", "org.hibernate.dialect.H2Dialect"); //NOI18N
+		jpaProperties.put("hibernate.connection.driver_class", "org.h2.Driver"); //NOI18N
+		jpaProperties.put("hibernate.hbm2ddl.auto", schemaAction); //NOI18N
+		return Persistence.createEntityManagerFactory("VogonPU", jpaProperties); //NOI18N
+	}
+
+	/**
+	 * Generates a single user with accounts and transactions
+	 *
+	 * @param entityManager the EntityManager to use
+	 * @param username the user's name
+	 * @param password the user's password
+	 * @param accountCount the number of accounts to generate
+	 * @param transactionCount the number of transactions to generate
+	 */
+	public void generateUser(EntityManager entityManager, String username, String password, int accountCount, int transactionCount) {
+		generate(entityManager, Collections.singletonList(username), password, accountCount, transactionCount, null);
+	}
+
+	/**
+	 * Generates users with accounts and transactions. Every user is committed
+	 * in a separate transaction.
+	 *
+	 * @param entityManager the EntityManager to use
+	 * @param usernamePrefix the prefix for usernames, followed by the user
+	 * number (starting from 1)
+	 * @param password the password for all users
+	 * @param userCount the number of users to generate
+	 * @param accountsPerUser the number of accounts to generate for every
+	 * user
+	 * @param transactionsPerUser the number of transactions to generate for
+	 * every user
+	 */
+	public void generateUsers(EntityManager entityManager, String usernamePrefix, String password, int userCount, int accountsPerUser, int transactionsPerUser) {
+		List<String> usernames = IntStream.rangeClosed(1, userCount).mapToObj(i -> usernamePrefix + i).collect(Collectors.toList());
+		generate(entityManager, usernames, password, accountsPerUser, transactionsPerUser, generatedUsers -> {
+			if (generatedUsers % 100 == 0 || generatedUsers == userCount)
+				System.out.println(MessageFormat.format(messages.getString("GENERATED_USERS"), generatedUsers, userCount));
+		});
+	}
+
+	/**
+	 * Generates users with accounts and transactions
+	 *
+	 * @param entityManager the EntityManager to use
+	 * @param usernames the users' names
+	 * @param password the password for all users
+	 * @param accountsPerUser the number of accounts to generate for every
+	 * user
+	 * @param transactionsPerUser the number of transactions to generate for
+	 * every user
+	 * @param progress receives the number of generated users after every user,
+	 * or null
+	 */
+	private void generate(EntityManager entityManager, List<String> usernames, String password, int accountsPerUser, int transactionsPerUser, IntConsumer progress) {
+		String encodedPassword = PasswordEncoderFactories.createDelegatingPasswordEncoder().encode(password);
+		Session session = entityManager.unwrap(Session.class);
+		entityManager.getTransaction().begin();
+		session.doWork(connection -> {
+			nextId = nextSequenceValue(connection, "hibernate_sequence"); //NOI18N
+			loadTags(connection);
+		});
+		entityManager.getTransaction().commit();
+		for (int i = 0; i < usernames.size(); i++) {
+			String username = usernames.get(i);
+			entityManager.getTransaction().begin();
+			session.doWork(connection -> insertUser(connection, username, encodedPassword, Math.max(accountsPerUser, 1), transactionsPerUser));
+			entityManager.getTransaction().commit();
+			if (progress != null)
+				progress.accept(i + 1);
+		}
+		entityManager.getTransaction().begin();
+		session.doWork(connection -> {
+			restartSequence(connection, "hibernate_sequence", nextId); //NOI18N
+			restartSequence(connection, "account_daily_balance_sequence", nextId + BATCH_SIZE); //NOI18N
+			restartSequence(connection, "tag_sequence", nextId + BATCH_SIZE); //NOI18N
+		});
+		entityManager.getTransaction().commit();
+		entityManager.clear();
+	}
+
+	/**
+	 * Inserts a user with accounts, transactions and daily balances
+	 *
+	 * @param connection the JDBC connection
+	 * @param username the user's name
+	 * @param encodedPassword the encoded password
+	 * @param accountCount the number of accounts to generate
+	 * @param transactionCount the number of transactions to generate
+	 * @throws SQLException if an SQL error occurs
+	 */
+	private void insertUser(Connection connection, String username, String encodedPassword, int accountCount, int transactionCount) throws SQLException {
+		long userId = nextId++;
+		try (PreparedStatement userStatement = connection.prepareStatement("INSERT INTO VogonUser (id, version, username, password) VALUES (?, 0, ?, ?)")) { //NOI18N
+			userStatement.setLong(1, userId);
+			userStatement.setString(2, username.trim().toLowerCase());
+			userStatement.setString(3, encodedPassword);
+			userStatement.executeUpdate();
+		}
+		List<GeneratedAccount> accounts = insertAccounts(connection, userId, accountCount);
+		List<TransferRoute> transferRoutes = createTransferRoutes(accounts);
+		ZipfDistribution transferRouteDistribution = new ZipfDistribution(transferRoutes.size(), 1.0);
+		ZipfDistribution accountDistribution = new ZipfDistribution(accounts.size(), ACCOUNT_EXPONENT);
+		List<String[]> expenses = new ArrayList<>(Arrays.asList(EXPENSES));
+		Collections.shuffle(expenses, random);
+		ZipfDistribution expenseDistribution = new ZipfDistribution(expenses.size(), TAG_EXPONENT);
+		GeneratedAccount mainAccount = accounts.get(0);
+
+		Map<GeneratedAccount, TreeMap<LocalDate, long[]>> dailyBalances = new HashMap<>();
+		try (PreparedStatement transactionStatement = connection.prepareStatement("INSERT INTO FinanceTransaction (id, version, description, transactionDate, type, owner_id, transactions_id) VALUES (?, 0, ?, ?, ?, ?, ?)"); //NOI18N
+				PreparedStatement tagStatement = connection.prepareStatement("INSERT INTO FinanceTransaction_Tag (FinanceTransaction_id, tags_id) VALUES (?, ?)"); //NOI18N
+				PreparedStatement componentStatement = connection.prepareStatement("INSERT INTO TransactionComponent (id, version, amount, account_id, transaction_id, transactionComponents_id, components_id) VALUES (?, 0, ?, ?, ?, ?, ?)")) { //NOI18N
+			for (int i = 0; i < transactionCount; i++) {
+				LocalDate date = START_DATE.plusDays((long) i * DAYS / transactionCount);
+				long transactionId = nextId++;
+				double kind = random.nextDouble();
+				String description;
+				List<String> tags = new ArrayList<>();
+				Map<GeneratedAccount, Long> components = new HashMap<>();
+				FinanceTransaction.Type type = FinanceTransaction.Type.EXPENSEINCOME;
+				if (kind < TRANSFER_PROBABILITY && !transferRoutes.isEmpty()) {
+					type = FinanceTransaction.Type.TRANSFER;
+					TransferRoute route = transferRoutes.get(transferRouteDistribution.next(random));
+					long amount = logNormal(100000, 1.0, route.from);
+					description = route.description;
+					components.put(route.from, -amount);
+					components.put(route.to, Math.round(amount * RATES[route.from.currency] / RATES[route.to.currency]));
+				} else if (kind < TRANSFER_PROBABILITY + INCOME_PROBABILITY) {
+					String[] income = INCOMES[random.nextInt(INCOMES.length)];
+					description = income[1];
+					tags.add(income[0]);
+					components.put(mainAccount, logNormal(5000000, 0.3, mainAccount));
+				} else {
+					String[] expense = expenses.get(expenseDistribution.next(random));
+					description = expense[1];
+					tags.add(expense[0]);
+					if (random.nextDouble() < SECONDARY_TAG_PROBABILITY)
+						tags.add(SECONDARY_TAGS[random.nextInt(SECONDARY_TAGS.length)]);
+					GeneratedAccount account = accounts.get(accountDistribution.next(random));
+					components.put(account, -logNormal(1500, 1.0, account));
+				}
+				transactionStatement.setLong(1, transactionId);
+				transactionStatement.setString(2, description);
+				transactionStatement.setDate(3, java.sql.Date.valueOf(date));
+				transactionStatement.setInt(4, type.ordinal());
+				transactionStatement.setLong(5, userId);
+				transactionStatement.setLong(6, userId);
+				transactionStatement.addBatch();
+				for (String tag : tags) {
+					tagStatement.setLong(1, transactionId);
+					tagStatement.setLong(2, getTagId(connection, tag));
+					tagStatement.addBatch();
+				}
+				for (Map.Entry<GeneratedAccount, Long> component : components.entrySet()) {
+					componentStatement.setLong(1, nextId++);
+					componentStatement.setLong(2, component.getValue());
+					componentStatement.setLong(3, component.getKey().id);
+					componentStatement.setLong(4, transactionId);
+					componentStatement.setLong(5, component.getKey().id);
+					componentStatement.setLong(6, transactionId);
+					componentStatement.addBatch();
+					long[] dailyBalance = dailyBalances.computeIfAbsent(component.getKey(), account -> new TreeMap<>())
+							.computeIfAbsent(date, day -> new long[2]);
+					dailyBalance[0] += component.getValue();
+					dailyBalance[1]++;
+				}
+				if ((i + 1) % BATCH_SIZE == 0) {
+					transactionStatement.executeBatch();
+					tagStatement.executeBatch();
+					componentStatement.executeBatch();
+				}
+			}
+			transactionStatement.executeBatch();
+			tagStatement.executeBatch();
+			componentStatement.executeBatch();
+		}
+		insertDailyBalances(connection, dailyBalances);
+	}
+
+	/**
+	 * Inserts a user's accounts; the first two accounts are always in the
+	 * user's home currency
+	 *
+	 * @param connection the JDBC connection
+	 * @param userId the user ID
+	 * @param accountCount the number of accounts to generate
+	 * @return the generated accounts
+	 * @throws SQLException if an SQL error occurs
+	 */
+	private List<GeneratedAccount> insertAccounts(Connection connection, long userId, int accountCount) throws SQLException {
+		int homeCurrency = new ZipfDistribution(CURRENCIES.length, 1.0).next(random);
+		List<GeneratedAccount> accounts = new ArrayList<>(accountCount);
+		try (PreparedStatement accountStatement = connection.prepareStatement("INSERT INTO FinanceAccount (id, version, name, currency, balance, includeInTotal, showInList, dailyBalanceValid, owner_id, accounts_id) VALUES (?, 0, ?, ?, 0, TRUE, TRUE, TRUE, ?, ?)")) { //NOI18N
+			for (int i = 0; i < accountCount; i++) {
+				int currency = (i < 2 || random.nextDouble() < HOME_CURRENCY_PROBABILITY) ? homeCurrency : random.nextInt(CURRENCIES.length);
+				String name = ACCOUNT_NAMES[i % ACCOUNT_NAMES.length] + " " + CURRENCIES[currency]; //NOI18N
+				if (i >= ACCOUNT_NAMES.length)
+					name += " " + (i / ACCOUNT_NAMES.length + 1); //NOI18N
+				GeneratedAccount account = new GeneratedAccount(nextId++, name, currency);
+				accountStatement.setLong(1, account.id);
+				accountStatement.setString(2, account.name);
+				accountStatement.setString(3, CURRENCIES[currency]);
+				accountStatement.setLong(4, userId);
+				accountStatement.setLong(5, userId);
+				accountStatement.addBatch();
+				accounts.add(account);
+			}
+			accountStatement.executeBatch();
+		}
+		return accounts;
+	}
+
+	/**
+	 * Creates transfer routes from the main account, most frequent first;
+	 * every other account also gets a less frequent route back to the main
+	 * account
+	 *
+	 * @param accounts the user's accounts
+	 * @return the transfer routes
+	 */
+	private List<TransferRoute> createTransferRoutes(List<GeneratedAccount> accounts) {
+		String[] descriptions = {"ATM withdrawal", "Credit card payment", "Savings"}; //NOI18N
+		GeneratedAccount mainAccount = accounts.get(0);
+		List<TransferRoute> routes = new ArrayList<>();
+		List<TransferRoute> returnRoutes = new ArrayList<>();
+		for (int i = 1; i < accounts.size(); i++) {
+			GeneratedAccount account = accounts.get(i);
+			String description = mainAccount.currency != account.currency
+					? "Currency exchange" //NOI18N
+					: (i <= descriptions.length ? descriptions[i - 1] : "Transfer to " + account.name); //NOI18N
+			routes.add(new TransferRoute(mainAccount, account, description));
+			returnRoutes.add(new TransferRoute(account, mainAccount, "Transfer from " + account.name)); //NOI18N
+		}
+		routes.addAll(returnRoutes);
+		return routes;
+	}
+
+	/**
+	 * Inserts daily balances and updates account balances
+	 *
+	 * @param connection the JDBC connection
+	 * @param dailyBalances the raw amount and component count for every
+	 * account and day
+	 * @throws SQLException if an SQL error occurs
+	 */
+	private void insertDailyBalances(Connection connection, Map<GeneratedAccount, TreeMap<LocalDate, long[]>> dailyBalances) throws SQLException {
+		try (PreparedStatement dailyBalanceStatement = connection.prepareStatement("INSERT INTO AccountDailyBalance (id, version, account_id, balanceDate, amount, componentCount) VALUES (?, 0, ?, ?, ?, ?)"); //NOI18N
+				PreparedStatement accountStatement = connection.prepareStatement("UPDATE FinanceAccount SET balance = ? WHERE id = ?")) { //NOI18N
+			int rows = 0;
+			for (Map.Entry<GeneratedAccount, TreeMap<LocalDate, long[]>> account : dailyBalances.entrySet()) {
+				long balance = 0;
+				for (Map.Entry<LocalDate, long[]> day : account.getValue().entrySet()) {
+					dailyBalanceStatement.setLong(1, nextId++);
+					dailyBalanceStatement.setLong(2, account.getKey().id);
+					dailyBalanceStatement.setDate(3, java.sql.Date.valueOf(day.getKey()));
+					dailyBalanceStatement.setLong(4, day.getValue()[0]);
+					dailyBalanceStatement.setLong(5, day.getValue()[1]);
+					dailyBalanceStatement.addBatch();
+					balance += day.getValue()[0];
+					if (++rows % BATCH_SIZE == 0)
+						dailyBalanceStatement.executeBatch();
+				}
+				accountStatement.setLong(1, balance);
+				accountStatement.setLong(2, account.getKey().id);
+				accountStatement.addBatch();
+			}
+			dailyBalanceStatement.executeBatch();
+			accountStatement.executeBatch();
+		}
+	}
+
+	/**
+	 * Returns a log-normally distributed raw amount
+	 *
+	 * @param median the median raw amount, in the first currency from
+	 * CURRENCIES
+	 * @param sigma the standard deviation of the amount's logarithm
+	 * @param account the account, used to convert the amount into its currency
+	 * @return the raw amount (at least 1)
+	 */
+	private long logNormal(double median, double sigma, GeneratedAccount account) {
+		return Math.max(1L, Math.round(median * Math.exp(sigma * random.nextGaussian()) / RATES[account.currency]));
+	}
+
+	/**
+	 * Loads the existing tags dictionary
+	 *
+	 * @param connection the JDBC connection
+	 * @throws SQLException if an SQL error occurs
+	 */
+	private void loadTags(Connection connection) throws SQLException {
+		tagIds.clear();
+		try (Statement statement = connection.createStatement();
+				ResultSet resultSet = statement.executeQuery("SELECT id, name FROM Tag")) { //NOI18N
+			while (resultSet.next())
+				tagIds.put(resultSet.getString(2), resultSet.getLong(1));
+		}
+	}
+
+	/**
+	 * Returns the ID of a tag, adding the tag to the tags dictionary if
+	 * necessary
+	 *
+	 * @param connection the JDBC connection
+	 * @param tag the tag name
+	 * @return the tag ID
+	 * @throws SQLException if an SQL error occurs
+	 */
+	private long getTagId(Connection connection, String tag) throws SQLException {
+		Long tagId = tagIds.get(tag);
+		if (tagId != null)
+			return tagId;
+		tagId = nextId++;
+		try (PreparedStatement statement = connection.prepareStatement("INSERT INTO Tag (id, name) VALUES (?, ?)")) { //NOI18N
+			statement.setLong(1, tagId);
+			statement.setString(2, tag);
+			statement.executeUpdate();
+		}
+		tagIds.put(tag, tagId);
+		return tagId;
+	}
+
+	/**
+	 * Returns the next value of a sequence
+	 *
+	 * @param connection the JDBC connection
+	 * @param sequence the sequence name
+	 * @return the next value of the sequence
+	 * @throws SQLException if an SQL error occurs
+	 */
+	private static long nextSequenceValue(Connection connection, String sequence) throws SQLException {
+		try (Statement statement = connection.createStatement();
+				ResultSet resultSet = statement.executeQuery("CALL NEXT VALUE FOR " + sequence)) { //NOI18N
+			resultSet.next();
+			return resultSet.getLong(1);
+		}
+	}
+
+	/**
+	 * Restarts a sequence, so that IDs assigned by Hibernate don't conflict
+	 * with generated IDs
+	 *
+	 * @param connection the JDBC connection
+	 * @param sequence the sequence name
+	 * @param value the next value of the sequence
+	 * @throws SQLException if an SQL error occurs
+	 */
+	private static void restartSequence(Connection connection, String sequence, long value) throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("ALTER SEQUENCE " + sequence + " RESTART WITH " + value); //NOI18N
+		}
+	}
+
+	/**
+	 * Generates a database for the web application (Vogon.mv.db in the
+	 * vogon.database.dir directory). Existing data is kept, but usernames
+	 * should not conflict with existing users. Configured with system
+	 * properties:
+	 * <ul>
+	 * <li>vogon.database.dir - the database directory (current directory by
+	 * default)</li>
+	 * <li>vogon.generator.users - the number of users (1000 by default)</li>
+	 * <li>vogon.generator.accounts - the number of accounts per user (24 by
+	 * default)</li>
+	 * <li>vogon.generator.transactions - the number of transactions per user
+	 * (1000 by default)</li>
+	 * <li>vogon.generator.username - the username prefix ("user" by
+	 * default)</li>
+	 * <li>vogon.generator.password - the password for all users ("password" by
+	 * default)</li>
+	 * <li>vogon.generator.seed - the random seed (0 by default)</li>
+	 * </ul>
+	 *
+	 * @param args the command line arguments (not used)
+	 */
+	public static void main(String[] args) {
+		File databaseDir = new File(System.getProperty("vogon.database.dir", System.getProperty("user.dir"))); //NOI18N
+		EntityManagerFactory entityManagerFactory = createEntityManagerFactory(new File(databaseDir, "Vogon"), "update"); //NOI18N
+		try {
+			EntityManager entityManager = entityManagerFactory.createEntityManager();
+			try {
+				new LedgerGenerator(Long.getLong("vogon.generator.seed", 0)).generateUsers(entityManager, //NOI18N
+						System.getProperty("vogon.generator.username", "user"), //NOI18N
+						System.getProperty("vogon.generator.password", "password"), //NOI18N
+						Integer.getInteger("vogon.generator.users", 1000), //NOI18N
+						Integer.getInteger("vogon.generator.accounts", 24), //NOI18N
+						Integer.getInteger("vogon.generator.transactions", 1000)); //NOI18N
+			} finally {
+				entityManager.close();
+			}
+		} finally {
+			entityManagerFactory.close();
+		}
+	}
+
+	/**
+	 * A generated account
+	 */
+	private static class GeneratedAccount {
+
+		/**
+		 * The account ID
+		 */
+		private final long id;
+		/**
+		 * The account name
+		 */
+		private final String name;
+		/**
+		 * The account currency (index in CURRENCIES)
+		 */
+		private final int currency;
+
+		/**
+		 * Creates a GeneratedAccount
+		 *
+		 * @param id the account ID
+		 * @param name the account name
+		 * @param currency the account currency (index in CURRENCIES)
+		 */
+		private GeneratedAccount(long id, String name, int currency) {
+			this.id = id;
+			this.name = name;
+			this.currency = currency;
+		}
+	}
+
+	/**
+	 * A frequently used pair of transfer accounts
+	 */
+	private static class TransferRoute {
+
+		/**
+		 * The source account
+		 */
+		private final GeneratedAccount from;
+		/**
+		 * The target account
+		 */
+		private final GeneratedAccount to;
+		/**
+		 * The transaction description
+		 */
+		private final String description;
+
+		/**
+		 * Creates a TransferRoute
+		 *
+		 * @param from the source account
+		 * @param to the target account
+		 * @param description the transaction description
+		 */
+		private TransferRoute(GeneratedAccount from, GeneratedAccount to, String description) {
+			this.from = from;
+			this.to = to;
+			this.description = description;
+		}
+	}
+
+	/**
+	 * Zipf distribution: item k (starting from 0) is picked with a probability
+	 * proportional to 1/(k+1)^exponent
+	 */
+	private static class ZipfDistribution {
+
+		/**
+		 * Cumulative weights of items
+		 */
+		private final double[] cumulativeWeights;
+
+		/**
+		 * Creates a ZipfDistribution
+		 *
+		 * @param size the number of items
+		 * @param exponent the distribution exponent
+		 */
+		private ZipfDistribution(int size, double exponent) {
+			cumulativeWeights = new double[size];
+			double total = 0;
+			for (int i = 0; i < size; i++) {
+				total += 1.0 / Math.pow(i + 1, exponent);
+				cumulativeWeights[i] = total;
+			}
+		}
+
+		/**
+		 * Picks a random item
+		 *
+		 * @param random the random number generator
+		 * @return the item index
+		 */
+		private int next(Random random) {
+			double value = random.nextDouble() * cumulativeWeights[cumulativeWeights.length - 1];
+			int index = Arrays.binarySearch(cumulativeWeights, value);
+			return Math.min(index >= 0 ? index : -index - 1, cumulativeWeights.length - 1);
+		}
+	}
+}
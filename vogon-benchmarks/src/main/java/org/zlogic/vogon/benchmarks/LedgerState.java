@@ -0,0 +1,181 @@
+/*
+ * Vogon personal finance/expense analyzer.
+ * Licensed under Apache license: http://www.apache.org/licenses/LICENSE-2.0
+ * Author: Dmitry Zolotukhin <zlogic@gmail.com>
+ */
+package org.zlogic.vogon.benchmarks;
+
+import java.io.File;
+import java.text.MessageFormat;
+import java.util.List;
+import java.util.ResourceBundle;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Root;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.zlogic.vogon.data.FinanceAccount;
+import org.zlogic.vogon.data.FinanceAccount_;
+import org.zlogic.vogon.data.FinanceTransaction;
+import org.zlogic.vogon.data.FinanceTransaction_;
+import org.zlogic.vogon.data.VogonUser;
+import org.zlogic.vogon.data.VogonUser_;
+
+/**
+ * Embedded H2 database with a generated ledger. Databases are stored in the
+ * directory set by the vogon.benchmarks.dir system property (a temporary
+ * directory by default) and are reused by later runs.
+ *
+ * @author Dmitry Zolotukhin [zlogic@gmail.com]
+ */
+@State(Scope.Benchmark)
+public class LedgerState {
+
+	/**
+	 * Localization messages
+	 */
+	private static final ResourceBundle messages = ResourceBundle.getBundle("org/zlogic/vogon/benchmarks/messages");
+	/**
+	 * The name of the user owning the ledger
+	 */
+	private static final String USERNAME = "benchmark"; //NOI18N
+	/**
+	 * The number of accounts in the ledger
+	 */
+	private static final int ACCOUNT_COUNT = 12;
+	/**
+	 * The number of transactions in the ledger
+	 */
+	@Param({"1000", "100000", "1000000"})
+	private int ledgerSize;
+	/**
+	 * The EntityManagerFactory for the ledger database
+	 */
+	private EntityManagerFactory entityManagerFactory;
+	/**
+	 * The user owning the ledger
+	 */
+	private VogonUser user;
+	/**
+	 * The user's accounts
+	 */
+	private List<FinanceAccount> accounts;
+
+	/**
+	 * Opens the ledger database, generating the ledger if it doesn't exist
+	 */
+	@Setup(Level.Trial)
+	public void setUp() {
+		entityManagerFactory = createEntityManagerFactory("update"); //NOI18N
+		if (loadLedger())
+			return;
+		entityManagerFactory.close();
+		entityManagerFactory = createEntityManagerFactory("create"); //NOI18N
+		EntityManager entityManager = entityManagerFactory.createEntityManager();
+		try {
+			new LedgerGenerator(ledgerSize).generateUser(entityManager, USERNAME, USERNAME, ACCOUNT_COUNT, ledgerSize);
+		} finally {
+			entityManager.close();
+		}
+		if (!loadLedger())
+			throw new IllegalStateException(MessageFormat.format(messages.getString("LEDGER_WAS_NOT_GENERATED"), ledgerSize));
+	}
+
+	/**
+	 * Closes the ledger database
+	 */
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		entityManagerFactory.close();
+	}
+
+	/**
+	 * Creates an EntityManagerFactory for the ledger database
+	 *
+	 * @param schemaAction the hibernate.hbm2ddl.auto value
+	 * @return the EntityManagerFactory
+	 */
+	private EntityManagerFactory createEntityManagerFactory(String schemaAction) {
+		File databaseDir = new File(System.getProperty("vogon.benchmarks.dir", new File(System.getProperty("java.io.tmpdir"), "vogon-benchmarks").getPath())); //NOI18N
+		return LedgerGenerator.createEntityManagerFactory(new File(databaseDir, "ledger-" + ledgerSize), schemaAction); //NOI18N
+	}
+
+	/**
+	 * Loads the user and accounts if the database contains a complete ledger
+	 *
+	 * @return true if the ledger was loaded
+	 */
+	private boolean loadLedger() {
+		EntityManager entityManager = entityManagerFactory.createEntityManager();
+		try {
+			CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+			CriteriaQuery<VogonUser> userQuery = criteriaBuilder.createQuery(VogonUser.class);
+			Root<VogonUser> userRoot = userQuery.from(VogonUser.class);
+			userQuery.where(criteriaBuilder.equal(userRoot.get(VogonUser_.username), USERNAME));
+			List<VogonUser> users = entityManager.createQuery(userQuery).getResultList();
+			if (users.isEmpty())
+				return false;
+			user = users.get(0);
+
+			CriteriaQuery<Long> countQuery = criteriaBuilder.createQuery(Long.class);
+			Root<FinanceTransaction> transactionRoot = countQuery.from(FinanceTransaction.class);
+			countQuery.select(criteriaBuilder.count(transactionRoot)).where(criteriaBuilder.equal(transactionRoot.get(FinanceTransaction_.owner), user));
+			if (entityManager.createQuery(countQuery).getSingleResult() != ledgerSize)
+				return false;
+
+			CriteriaQuery<FinanceAccount> accountsQuery = criteriaBuilder.createQuery(FinanceAccount.class);
+			Root<FinanceAccount> accountRoot = accountsQuery.from(FinanceAccount.class);
+			accountsQuery.where(criteriaBuilder.equal(accountRoot.get(FinanceAccount_.owner), user))
+					.orderBy(criteriaBuilder.asc(accountRoot.get(FinanceAccount_.id)));
+			accounts = entityManager.createQuery(accountsQuery).getResultList();
+			return true;
+		} finally {
+			entityManager.close();
+		}
+	}
+
+	/*
+	 * Getters
+	 */
+	/**
+	 * Returns the number of transactions in the ledger
+	 *
+	 * @return the number of transactions in the ledger
+	 */
+	public int getLedgerSize() {
+		return ledgerSize;
+	}
+
+	/**
+	 * Returns the EntityManagerFactory for the ledger database
+	 *
+	 * @return the EntityManagerFactory for the ledger database
+	 */
+	public EntityManagerFactory getEntityManagerFactory() {
+		return entityManagerFactory;
+	}
+
+	/**
+	 * Returns the user owning the ledger (detached)
+	 *
+	 * @return the user owning the ledger
+	 */
+	public VogonUser getUser() {
+		return user;
+	}
+
+	/**
+	 * Returns the user's accounts (detached)
+	 *
+	 * @return the user's accounts
+	 */
+	public List<FinanceAccount> getAccounts() {
+		return accounts;
+	}
+}
@@ -0,0 +1,525 @@
+/*
+ * Vogon personal finance/expense analyzer.
+ * Licensed under Apache license: http://www.apache.org/licenses/LICENSE-2.0
+ * Author: Dmitry Zolotukhin <zlogic@gmail.com>
+ */
+package org.zlogic.vogon.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
+import java.text.MessageFormat;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+
+/**
+ * Load driver for a running Vogon web application. Replays a weighted mix of
+ * REST requests as users generated by
+ * {@link LedgerGenerator#main(java.lang.String[])} and reports throughput and
+ * latency percentiles for every request type. Configured with system
+ * properties:
+ * <ul>
+ * <li>vogon.load.url - the server URL ("https://localhost:8443" by default;
+ * certificates are not validated)</li>
+ * <li>vogon.load.users - the number of generated users (1000 by default)</li>
+ * <li>vogon.load.username - the username prefix ("user" by default)</li>
+ * <li>vogon.load.password - the password for all users ("password" by
+ * default)</li>
+ * <li>vogon.load.threads - the number of concurrent clients (8 by
+ * default)</li>
+ * <li>vogon.load.duration - the test duration in seconds (60 by default)</li>
+ * <li>vogon.load.seed - the random seed (0 by default)</li>
+ * </ul>
+ *
+ * @author Dmitry Zolotukhin [zlogic@gmail.com]
+ */
+public class LoadDriver {
+
+	/**
+	 * Localization messages
+	 */
+	private static final ResourceBundle messages = ResourceBundle.getBundle("org/zlogic/vogon/benchmarks/messages");
+	/**
+	 * The OAuth client ID used by the web client
+	 */
+	private static final String CLIENT_ID = "vogonweb"; //NOI18N
+
+	/**
+	 * Request types and their weights in the request mix
+	 */
+	private enum RequestType {
+		/**
+		 * POST /oauth/token
+		 */
+		TOKEN("POST /oauth/token", 5), //NOI18N
+		/**
+		 * GET /service/transactions
+		 */
+		TRANSACTIONS("GET /service/transactions", 60), //NOI18N
+		/**
+		 * GET /service/transactions/pages
+		 */
+		TRANSACTION_PAGES("GET /service/transactions/pages", 15), //NOI18N
+		/**
+		 * POST /service/analytics
+		 */
+		ANALYTICS("POST /service/analytics", 20); //NOI18N
+		/**
+		 * The request description
+		 */
+		private final String description;
+		/**
+		 * The request weight
+		 */
+		private final int weight;
+
+		/**
+		 * Creates a RequestType
+		 *
+		 * @param description the request description
+		 * @param weight the request weight
+		 */
+		private RequestType(String description, int weight) {
+			this.description = description;
+			this.weight = weight;
+		}
+	}
+	/**
+	 * The server URL
+	 */
+	private final String url;
+	/**
+	 * The number of generated users
+	 */
+	private final int userCount;
+	/**
+	 * The username prefix
+	 */
+	private final String usernamePrefix;
+	/**
+	 * The password for all users
+	 */
+	private final String password;
+	/**
+	 * The HTTP client
+	 */
+	private final HttpClient httpClient;
+	/**
+	 * The JSON mapper
+	 */
+	private final ObjectMapper mapper = new ObjectMapper();
+	/**
+	 * Logged in users, by user number
+	 */
+	private final Map<Integer, UserSession> sessions = new ConcurrentHashMap<>();
+	/**
+	 * Latencies for every request type
+	 */
+	private final Map<RequestType, LatencyRecorder> latencies = new EnumMap<>(RequestType.class);
+
+	/**
+	 * Creates a LoadDriver
+	 *
+	 * @param url the server URL
+	 * @param userCount the number of generated users
+	 * @param usernamePrefix the username prefix
+	 * @param password the password for all users
+	 * @throws GeneralSecurityException if the SSL context cannot be created
+	 */
+	public LoadDriver(String url, int userCount, String usernamePrefix, String password) throws GeneralSecurityException {
+		this.url = url;
+		this.userCount = userCount;
+		this.usernamePrefix = usernamePrefix;
+		this.password = password;
+		SSLContext sslContext = SSLContext.getInstance("TLS"); //NOI18N
+		sslContext.init(null, new TrustManager[]{new TrustAllManager()}, new SecureRandom());
+		this.httpClient = HttpClient.newBuilder().sslContext(sslContext).connectTimeout(Duration.ofSeconds(10)).build();
+		for (RequestType requestType : RequestType.values())
+			latencies.put(requestType, new LatencyRecorder());
+	}
+
+	/**
+	 * Runs the load test and prints the results
+	 *
+	 * @param threads the number of concurrent clients
+	 * @param duration the test duration
+	 * @param seed the random seed
+	 * @throws InterruptedException if the test was interrupted
+	 */
+	public void run(int threads, Duration duration, long seed) throws InterruptedException {
+		System.out.println(MessageFormat.format(messages.getString("LOAD_TEST_STARTED"), threads, duration.getSeconds()));
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		long startTime = System.nanoTime();
+		long deadline = startTime + duration.toNanos();
+		for (int i = 0; i < threads; i++) {
+			Random random = new Random(seed + i);
+			executor.submit(() -> runClient(random, deadline));
+		}
+		executor.shutdown();
+		executor.awaitTermination(duration.getSeconds() + 60, TimeUnit.SECONDS);
+		printResults(System.nanoTime() - startTime);
+	}
+
+	/**
+	 * Sends random requests until the deadline
+	 *
+	 * @param random the random number generator
+	 * @param deadline the System.nanoTime() value when the test should stop
+	 */
+	private void runClient(Random random, long deadline) {
+		int totalWeight = Arrays.stream(RequestType.values()).mapToInt(requestType -> requestType.weight).sum();
+		while (System.nanoTime() < deadline) {
+			int userNumber = random.nextInt(userCount) + 1;
+			UserSession session = sessions.computeIfAbsent(userNumber, this::login);
+			if (session == null)
+				continue;
+			int requestWeight = random.nextInt(totalWeight);
+			RequestType requestType = RequestType.values()[0];
+			for (RequestType type : RequestType.values()) {
+				requestType = type;
+				requestWeight -= type.weight;
+				if (requestWeight < 0)
+					break;
+			}
+			switch (requestType) {
+				case TOKEN:
+					String accessToken = requestToken(session.username);
+					if (accessToken != null)
+						session.accessToken = accessToken;
+					break;
+				case TRANSACTIONS:
+					int page = session.pageCount > 0 ? random.nextInt(session.pageCount) : 0;
+					send(requestType, authorized(session, "/service/transactions?page=" + page).GET().build()); //NOI18N
+					break;
+				case TRANSACTION_PAGES:
+					send(requestType, authorized(session, "/service/transactions/pages").GET().build()); //NOI18N
+					break;
+				case ANALYTICS:
+					send(requestType, authorized(session, "/service/analytics") //NOI18N
+							.header("Content-Type", "application/json") //NOI18N
+							.POST(HttpRequest.BodyPublishers.ofString(session.analyticsRequest)).build());
+					break;
+			}
+		}
+	}
+
+	/**
+	 * Logs in as a generated user and loads the data needed to build requests
+	 * (not recorded, except for the token request)
+	 *
+	 * @param userNumber the user number
+	 * @return the user session, or null if login failed
+	 */
+	private UserSession login(int userNumber) {
+		String username = usernamePrefix + userNumber;
+		String accessToken = requestToken(username);
+		if (accessToken == null) {
+			System.err.println(MessageFormat.format(messages.getString("LOGIN_FAILED"), username));
+			return null;
+		}
+		UserSession session = new UserSession(username, accessToken);
+		try {
+			JsonNode accounts = getJson(session, "/service/accounts"); //NOI18N
+			JsonNode tags = getJson(session, "/service/analytics/tags"); //NOI18N
+			session.pageCount = getJson(session, "/service/transactions/pages").asInt(); //NOI18N
+
+			ObjectNode analyticsRequest = mapper.createObjectNode();
+			analyticsRequest.put("earliestDate", LedgerGenerator.END_DATE.minusYears(1).toString()); //NOI18N
+			analyticsRequest.put("latestDate", LedgerGenerator.END_DATE.toString()); //NOI18N
+			analyticsRequest.put("enabledTransferTransactions", true); //NOI18N
+			analyticsRequest.put("enabledIncomeTransactions", true); //NOI18N
+			analyticsRequest.put("enabledExpenseTransactions", true); //NOI18N
+			ArrayNode selectedTags = analyticsRequest.putArray("selectedTags").add(""); //NOI18N
+			tags.forEach(selectedTags::add);
+			ArrayNode selectedAccounts = analyticsRequest.putArray("selectedAccounts"); //NOI18N
+			accounts.forEach(account -> selectedAccounts.addObject().put("id", account.get("id").asLong())); //NOI18N
+			session.analyticsRequest = mapper.writeValueAsString(analyticsRequest);
+		} catch (IOException ex) {
+			System.err.println(MessageFormat.format(messages.getString("LOGIN_FAILED"), username));
+			return null;
+		}
+		return session;
+	}
+
+	/**
+	 * Sends an unrecorded GET request and parses the response
+	 *
+	 * @param session the user session
+	 * @param path the request path
+	 * @return the parsed response
+	 * @throws IOException if the request failed or returned invalid JSON
+	 */
+	private JsonNode getJson(UserSession session, String path) throws IOException {
+		String response = send(null, authorized(session, path).GET().build());
+		if (response == null)
+			throw new IOException(MessageFormat.format(messages.getString("REQUEST_FAILED"), path));
+		return mapper.readTree(response);
+	}
+
+	/**
+	 * Requests an access token (recorded as a TOKEN request)
+	 *
+	 * @param username the username
+	 * @return the access token, or null if the request failed
+	 */
+	private String requestToken(String username) {
+		String form = "username=" + URLEncoder.encode(username, StandardCharsets.UTF_8) //NOI18N
+				+ "&password=" + URLEncoder.encode(password, StandardCharsets.UTF_8) //NOI18N
+				+ "&grant_type=password&client_id=" + CLIENT_ID; //NOI18N
+		String response = send(RequestType.TOKEN, HttpRequest.newBuilder(URI.create(url + "/oauth/token")) //NOI18N
+				.header("Content-Type", "application/x-www-form-urlencoded") //NOI18N
+				.POST(HttpRequest.BodyPublishers.ofString(form)).build());
+		if (response == null)
+			return null;
+		try {
+			JsonNode accessToken = mapper.readTree(response).get("access_token"); //NOI18N
+			return accessToken != null ? accessToken.asText() : null;
+		} catch (IOException ex) {
+			return null;
+		}
+	}
+
+	/**
+	 * Creates a request builder with the user's access token
+	 *
+	 * @param session the user session
+	 * @param path the request path
+	 * @return the request builder
+	 */
+	private HttpRequest.Builder authorized(UserSession session, String path) {
+		return HttpRequest.newBuilder(URI.create(url + path))
+				.header("Authorization", "Bearer " + session.accessToken); //NOI18N
+	}
+
+	/**
+	 * Sends a request and records its latency
+	 *
+	 * @param requestType the request type, or null if the request shouldn't be
+	 * recorded
+	 * @param request the request to send
+	 * @return the response body, or null if the request failed
+	 */
+	private String send(RequestType requestType, HttpRequest request) {
+		long startTime = System.nanoTime();
+		String body = null;
+		try {
+			HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+			if (response.statusCode() / 100 == 2)
+				body = response.body();
+		} catch (IOException ex) {
+			body = null;
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		if (requestType != null)
+			latencies.get(requestType).record(System.nanoTime() - startTime, body != null);
+		return body;
+	}
+
+	/**
+	 * Prints throughput and latency percentiles
+	 *
+	 * @param elapsedNanos the test duration, in nanoseconds
+	 */
+	private void printResults(long elapsedNanos) {
+		System.out.println(messages.getString("LOAD_TEST_HEADER"));
+		LatencyRecorder total = new LatencyRecorder();
+		for (RequestType requestType : RequestType.values()) {
+			LatencyRecorder recorder = latencies.get(requestType);
+			total.addAll(recorder);
+			printResult(requestType.description, recorder, elapsedNanos);
+		}
+		printResult(messages.getString("LOAD_TEST_TOTAL"), total, elapsedNanos);
+	}
+
+	/**
+	 * Prints throughput and latency percentiles for a request type
+	 *
+	 * @param description the request description
+	 * @param recorder the recorded latencies
+	 * @param elapsedNanos the test duration, in nanoseconds
+	 */
+	private void printResult(String description, LatencyRecorder recorder, long elapsedNanos) {
+		long[] sorted = recorder.getSortedLatencies();
+		System.out.println(MessageFormat.format(messages.getString("LOAD_TEST_RESULT"),
+				description, sorted.length, recorder.getErrors(),
+				sorted.length * 1e9 / elapsedNanos,
+				percentile(sorted, 0.5), percentile(sorted, 0.9), percentile(sorted, 0.99), percentile(sorted, 0.999), percentile(sorted, 1.0)));
+	}
+
+	/**
+	 * Returns a latency percentile
+	 *
+	 * @param sorted the sorted latencies, in nanoseconds
+	 * @param percentile the percentile (from 0 to 1)
+	 * @return the latency in milliseconds, or 0 if there are no latencies
+	 */
+	private static double percentile(long[] sorted, double percentile) {
+		if (sorted.length == 0)
+			return 0;
+		int index = (int) Math.ceil(percentile * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1e6;
+	}
+
+	/**
+	 * Runs the load test
+	 *
+	 * @param args the command line arguments (not used)
+	 * @throws GeneralSecurityException if the SSL context cannot be created
+	 * @throws InterruptedException if the test was interrupted
+	 */
+	public static void main(String[] args) throws GeneralSecurityException, InterruptedException {
+		//The server uses a self-signed certificate
+		System.setProperty("jdk.internal.httpclient.disableHostnameVerification", Boolean.TRUE.toString()); //NOI18N
+		LoadDriver loadDriver = new LoadDriver(
+				System.getProperty("vogon.load.url", "https://localhost:8443"), //NOI18N
+				Integer.getInteger("vogon.load.users", 1000), //NOI18N
+				System.getProperty("vogon.load.username", "user"), //NOI18N
+				System.getProperty("vogon.load.password", "password")); //NOI18N
+		loadDriver.run(
+				Integer.getInteger("vogon.load.threads", 8), //NOI18N
+				Duration.ofSeconds(Long.getLong("vogon.load.duration", 60)), //NOI18N
+				Long.getLong("vogon.load.seed", 0)); //NOI18N
+	}
+
+	/**
+	 * A logged in user
+	 */
+	private static class UserSession {
+
+		/**
+		 * The username
+		 */
+		private final String username;
+		/**
+		 * The current access token
+		 */
+		private volatile String accessToken;
+		/**
+		 * The number of transaction pages
+		 */
+		private int pageCount;
+		/**
+		 * The analytics request body (last year, all accounts and tags)
+		 */
+		private String analyticsRequest;
+
+		/**
+		 * Creates a UserSession
+		 *
+		 * @param username the username
+		 * @param accessToken the access token
+		 */
+		private UserSession(String username, String accessToken) {
+			this.username = username;
+			this.accessToken = accessToken;
+		}
+	}
+
+	/**
+	 * Thread-safe latency recorder
+	 */
+	private static class LatencyRecorder {
+
+		/**
+		 * Latencies of successful requests, in nanoseconds
+		 */
+		private long[] latencies = new long[1024];
+		/**
+		 * The number of recorded latencies
+		 */
+		private int count;
+		/**
+		 * The number of failed requests
+		 */
+		private int errors;
+
+		/**
+		 * Records a request
+		 *
+		 * @param latency the request latency, in nanoseconds
+		 * @param success true if the request was successful
+		 */
+		private synchronized void record(long latency, boolean success) {
+			if (!success) {
+				errors++;
+				return;
+			}
+			if (count == latencies.length)
+				latencies = Arrays.copyOf(latencies, count * 2);
+			latencies[count++] = latency;
+		}
+
+		/**
+		 * Adds all requests from another recorder
+		 *
+		 * @param recorder the other recorder
+		 */
+		private synchronized void addAll(LatencyRecorder recorder) {
+			for (long latency : recorder.getSortedLatencies())
+				record(latency, true);
+			errors += recorder.getErrors();
+		}
+
+		/**
+		 * Returns the sorted latencies of successful requests
+		 *
+		 * @return the sorted latencies, in nanoseconds
+		 */
+		private synchronized long[] getSortedLatencies() {
+			long[] sorted = Arrays.copyOf(latencies, count);
+			Arrays.sort(sorted);
+			return sorted;
+		}
+
+		/**
+		 * Returns the number of failed requests
+		 *
+		 * @return the number of failed requests
+		 */
+		private synchronized int getErrors() {
+			return errors;
+		}
+	}
+
+	/**
+	 * Trust manager which accepts all certificates
+	 */
+	private static class TrustAllManager implements X509TrustManager {
+
+		@Override
+		public void checkClientTrusted(X509Certificate[] chain, String authType) {
+		}
+
+		@Override
+		public void checkServerTrusted(X509Certificate[] chain, String authType) {
+		}
+
+		@Override
+		public X509Certificate[] getAcceptedIssuers() {
+			return new X509Certificate[0];
+		}
+	}
+}
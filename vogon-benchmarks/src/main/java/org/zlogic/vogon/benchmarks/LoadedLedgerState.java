@@ -0,0 +1,93 @@
+/*
+ * Vogon personal finance/expense analyzer.
+ * Licensed under Apache license: http://www.apache.org/licenses/LICENSE-2.0
+ * Author: Dmitry Zolotukhin <zlogic@gmail.com>
+ */
+package org.zlogic.vogon.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.persistence.EntityManager;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.JoinType;
+import javax.persistence.criteria.Root;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.zlogic.vogon.data.FinanceTransaction;
+import org.zlogic.vogon.data.FinanceTransaction_;
+import org.zlogic.vogon.web.data.model.FinanceTransactionJson;
+
+/**
+ * All transactions of a generated ledger, loaded into memory (detached, with
+ * components and tags) for benchmarks which don't access the database
+ *
+ * @author Dmitry Zolotukhin [zlogic@gmail.com]
+ */
+@State(Scope.Benchmark)
+public class LoadedLedgerState {
+
+	/**
+	 * The ledger's transactions, sorted by date
+	 */
+	private List<FinanceTransaction> transactions;
+	/**
+	 * The ledger's transactions, wrapped for JSON serialization
+	 */
+	private List<FinanceTransactionJson> transactionsJson;
+
+	/**
+	 * Loads all transactions of the ledger
+	 *
+	 * @param ledger the ledger database
+	 */
+	@Setup(Level.Trial)
+	public void setUp(LedgerState ledger) {
+		EntityManager entityManager = ledger.getEntityManagerFactory().createEntityManager();
+		try {
+			CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+			CriteriaQuery<FinanceTransaction> transactionsQuery = criteriaBuilder.createQuery(FinanceTransaction.class);
+			Root<FinanceTransaction> tr = transactionsQuery.from(FinanceTransaction.class);
+			tr.fetch(FinanceTransaction_.components, JoinType.LEFT);
+			tr.fetch(FinanceTransaction_.tags, JoinType.LEFT);
+			transactionsQuery.where(criteriaBuilder.equal(tr.get(FinanceTransaction_.owner), ledger.getUser()))
+					.orderBy(criteriaBuilder.asc(tr.get(FinanceTransaction_.transactionDate)), criteriaBuilder.asc(tr.get(FinanceTransaction_.id)));
+			transactions = new ArrayList<>(ledger.getLedgerSize());
+			try (Stream<FinanceTransaction> transactionsStream = entityManager.createQuery(transactionsQuery).getResultStream()) {
+				//Detach loaded transactions to keep the persistence context small
+				transactionsStream.forEach(transaction -> {
+					transactions.add(transaction);
+					entityManager.detach(transaction);
+				});
+			}
+		} finally {
+			entityManager.close();
+		}
+		transactionsJson = transactions.stream().map(FinanceTransactionJson::new).collect(Collectors.toList());
+	}
+
+	/*
+	 * Getters
+	 */
+	/**
+	 * Returns the ledger's transactions, sorted by date
+	 *
+	 * @return the ledger's transactions
+	 */
+	public List<FinanceTransaction> getTransactions() {
+		return transactions;
+	}
+
+	/**
+	 * Returns the ledger's transactions, wrapped for JSON serialization
+	 *
+	 * @return the ledger's transactions
+	 */
+	public List<FinanceTransactionJson> getTransactionsJson() {
+		return transactionsJson;
+	}
+}
@@ -0,0 +1,103 @@
+/*
+ * Vogon personal finance/expense analyzer.
+ * Licensed under Apache license: http://www.apache.org/licenses/LICENSE-2.0
+ * Author: Dmitry Zolotukhin <zlogic@gmail.com>
+ */
+package org.zlogic.vogon.benchmarks;
+
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.persistence.EntityManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.zlogic.vogon.data.report.Report;
+import org.zlogic.vogon.data.report.ReportFactory;
+
+/**
+ * Benchmarks for building reports from the database
+ *
+ * @author Dmitry Zolotukhin [zlogic@gmail.com]
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ReportBenchmark {
+
+	/**
+	 * Report parameters which don't change between invocations
+	 */
+	@State(Scope.Benchmark)
+	public static class ReportParameters {
+
+		/**
+		 * All tags of the ledger
+		 */
+		private List<String> tags;
+
+		/**
+		 * Loads all tags of the ledger
+		 *
+		 * @param ledger the ledger database
+		 */
+		@Setup(Level.Trial)
+		public void setUp(LedgerState ledger) {
+			EntityManager entityManager = ledger.getEntityManagerFactory().createEntityManager();
+			try {
+				tags = new ArrayList<>(new ReportFactory(ledger.getUser()).getAllTags(entityManager));
+			} finally {
+				entityManager.close();
+			}
+		}
+
+		/**
+		 * Creates a ReportFactory for the whole ledger, with all accounts,
+		 * tags and transaction types selected
+		 *
+		 * @param ledger the ledger database
+		 * @return the ReportFactory
+		 */
+		private ReportFactory createReportFactory(LedgerState ledger) {
+			ReportFactory reportFactory = new ReportFactory(ledger.getUser());
+			reportFactory.setEarliestDate(Date.from(LedgerGenerator.START_DATE.atStartOfDay(ZoneId.systemDefault()).toInstant()));
+			reportFactory.setLatestDate(Date.from(LedgerGenerator.END_DATE.atStartOfDay(ZoneId.systemDefault()).toInstant()));
+			reportFactory.setSelectedAccounts(ledger.getAccounts());
+			reportFactory.setSelectedTags(tags);
+			reportFactory.setEnabledExpenseTransactions(true);
+			reportFactory.setEnabledIncomeTransactions(true);
+			reportFactory.setEnabledTransferTransactions(true);
+			return reportFactory;
+		}
+	}
+
+	/**
+	 * Builds a report for the whole ledger
+	 *
+	 * @param ledger the ledger database
+	 * @param parameters the report parameters
+	 * @return the report
+	 */
+	@Benchmark
+	public Map<String, Report> buildReport(LedgerState ledger, ReportParameters parameters) {
+		EntityManager entityManager = ledger.getEntityManagerFactory().createEntityManager();
+		try {
+			return parameters.createReportFactory(ledger).buildReport(entityManager);
+		} finally {
+			entityManager.close();
+		}
+	}
+}
@@ -0,0 +1,47 @@
+/*
+ * Vogon personal finance/expense analyzer.
+ * Licensed under Apache license: http://www.apache.org/licenses/LICENSE-2.0
+ * Author: Dmitry Zolotukhin <zlogic@gmail.com>
+ */
+package org.zlogic.vogon.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.zlogic.vogon.data.FinanceTransaction;
+import org.zlogic.vogon.data.report.ReportTransaction;
+
+/**
+ * Benchmarks for calculating report transaction amounts (done in the
+ * ReportTransaction constructor)
+ *
+ * @author Dmitry Zolotukhin [zlogic@gmail.com]
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ReportTransactionBenchmark {
+
+	/**
+	 * Creates a ReportTransaction for every transaction in the ledger, with
+	 * all accounts selected
+	 *
+	 * @param ledger the ledger database
+	 * @param loadedLedger the loaded ledger transactions
+	 * @return the sum of all calculated amounts
+	 */
+	@Benchmark
+	public long calculateAmounts(LedgerState ledger, LoadedLedgerState loadedLedger) {
+		long total = 0;
+		for (FinanceTransaction transaction : loadedLedger.getTransactions())
+			total += new ReportTransaction(transaction, ledger.getAccounts()).getRawAmount();
+		return total;
+	}
+}
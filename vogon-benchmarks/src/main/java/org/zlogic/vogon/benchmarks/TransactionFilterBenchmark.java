@@ -0,0 +1,133 @@
+/*
+ * Vogon personal finance/expense analyzer.
+ * Licensed under Apache license: http://www.apache.org/licenses/LICENSE-2.0
+ * Author: Dmitry Zolotukhin <zlogic@gmail.com>
+ */
+package org.zlogic.vogon.benchmarks;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import javax.persistence.EntityManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.JpaSort;
+import org.springframework.data.jpa.repository.support.SimpleJpaRepository;
+import org.zlogic.vogon.data.FinanceTransaction;
+import org.zlogic.vogon.data.FinanceTransaction_;
+import org.zlogic.vogon.data.TagResolver;
+import org.zlogic.vogon.web.data.TransactionFilterSpecification;
+
+/**
+ * Benchmarks for transaction list queries, using the same repository method
+ * and sorting as the transactions list
+ *
+ * @author Dmitry Zolotukhin [zlogic@gmail.com]
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TransactionFilterBenchmark {
+
+	/**
+	 * The page size (same as the default transactions page size)
+	 */
+	private static final int PAGE_SIZE = 100;
+
+	/**
+	 * Returns a page of filtered transactions sorted by date
+	 *
+	 * @param ledger the ledger database
+	 * @param filter the transactions filter
+	 * @param page the page number
+	 * @return the transactions page
+	 */
+	private static Page<FinanceTransaction> findPage(LedgerState ledger, TransactionFilterSpecification filter, int page) {
+		EntityManager entityManager = ledger.getEntityManagerFactory().createEntityManager();
+		try {
+			SimpleJpaRepository<FinanceTransaction, Long> repository = new SimpleJpaRepository<>(FinanceTransaction.class, entityManager);
+			Sort sort = new JpaSort(Sort.Direction.ASC, FinanceTransaction_.transactionDate, FinanceTransaction_.id);
+			return repository.findAll(filter, PageRequest.of(page, PAGE_SIZE, sort));
+		} finally {
+			entityManager.close();
+		}
+	}
+
+	/**
+	 * Returns the first page without filters
+	 *
+	 * @param ledger the ledger database
+	 * @return the transactions page
+	 */
+	@Benchmark
+	public Page<FinanceTransaction> firstPage(LedgerState ledger) {
+		return findPage(ledger, new TransactionFilterSpecification(ledger.getUser()), 0);
+	}
+
+	/**
+	 * Returns the last page without filters
+	 *
+	 * @param ledger the ledger database
+	 * @return the transactions page
+	 */
+	@Benchmark
+	public Page<FinanceTransaction> lastPage(LedgerState ledger) {
+		return findPage(ledger, new TransactionFilterSpecification(ledger.getUser()), (ledger.getLedgerSize() - 1) / PAGE_SIZE);
+	}
+
+	/**
+	 * Returns the first page filtered by description
+	 *
+	 * @param ledger the ledger database
+	 * @return the transactions page
+	 */
+	@Benchmark
+	public Page<FinanceTransaction> filterDescription(LedgerState ledger) {
+		TransactionFilterSpecification filter = new TransactionFilterSpecification(ledger.getUser());
+		filter.setFilterDescription("%coffee%"); //NOI18N
+		return findPage(ledger, filter, 0);
+	}
+
+	/**
+	 * Returns the first page filtered by tag
+	 *
+	 * @param ledger the ledger database
+	 * @return the transactions page
+	 */
+	@Benchmark
+	public Page<FinanceTransaction> filterTags(LedgerState ledger) {
+		TransactionFilterSpecification filter = new TransactionFilterSpecification(ledger.getUser());
+		EntityManager entityManager = ledger.getEntityManagerFactory().createEntityManager();
+		try {
+			filter.setFilterTagIds(TagResolver.findTagIds(entityManager, Set.of("travel"), true)); //NOI18N
+		} finally {
+			entityManager.close();
+		}
+		return findPage(ledger, filter, 0);
+	}
+
+	/**
+	 * Returns the first page filtered by date
+	 *
+	 * @param ledger the ledger database
+	 * @return the transactions page
+	 */
+	@Benchmark
+	public Page<FinanceTransaction> filterDate(LedgerState ledger) {
+		TransactionFilterSpecification filter = new TransactionFilterSpecification(ledger.getUser());
+		filter.setFilterDate(Date.from(LocalDate.of(2015, 1, 1).atStartOfDay(ZoneOffset.UTC).toInstant()));
+		return findPage(ledger, filter, 0);
+	}
+}
@@ -0,0 +1,188 @@
+/*
+ * Vogon personal finance/expense analyzer.
+ * Licensed under Apache 2.0 License: http://www.apache.org/licenses/LICENSE-2.0
+ * Author: Dmitry Zolotukhin <zlogic@gmail.com>
+ */
+package org.zlogic.vogon.data;
+
+import java.io.Serializable;
+import java.util.Date;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.JoinColumn;
+import javax.persistence.ManyToOne;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.UniqueConstraint;
+import javax.persistence.Version;
+import org.hibernate.annotations.NaturalId;
+
+/**
+ * Stores the total change of an account's balance for a single day. Updated
+ * whenever a transaction component is added, removed or changed, so that the
+ * account's balance history can be read without processing every transaction.
+ *
+ * @author Dmitry Zolotukhin [zlogic@gmail.com]
+ */
+@Entity
+@Table(uniqueConstraints = @UniqueConstraint(columnNames = {"account_id", "balanceDate"}))
+public class AccountDailyBalance implements Serializable {
+
+	/**
+	 * Version UID
+	 */
+	private static final long serialVersionUID = 1L;
+	/**
+	 * The daily balance ID (only for persistence); uses a separate sequence
+	 */
+	@Id
+	@SequenceGenerator(name = "AccountDailyBalanceSequence", sequenceName = "account_daily_balance_sequence")
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "AccountDailyBalanceSequence")
+	protected Long id;
+	/**
+	 * JPA version
+	 */
+	@Version
+	private long version = 0L;
+	/**
+	 * The account
+	 */
+	@NaturalId
+	@ManyToOne
+	@JoinColumn
+	protected FinanceAccount account;
+	/**
+	 * The day
+	 */
+	@NaturalId
+	@Temporal(javax.persistence.TemporalType.DATE)
+	protected Date balanceDate;
+	/**
+	 * The total amount this day's components change the account's balance
+	 */
+	protected Long amount;
+	/**
+	 * The number of components for this day
+	 */
+	protected Long componentCount;
+
+	/**
+	 * Default constructor for a daily balance
+	 */
+	protected AccountDailyBalance() {
+	}
+
+	/**
+	 * Constructor for an empty daily balance
+	 *
+	 * @param account the account
+	 * @param balanceDate the day (should be normalized with
+	 * {@link #toDay(java.util.Date)})
+	 */
+	protected AccountDailyBalance(FinanceAccount account, Date balanceDate) {
+		this.account = account;
+		this.balanceDate = balanceDate;
+		this.amount = 0L;
+		this.componentCount = 0L;
+	}
+
+	/**
+	 * Converts a date into a day, removing the time part
+	 *
+	 * @param date the date to convert
+	 * @return the day for date
+	 */
+	public static Date toDay(Date date) {
+		return java.sql.Date.valueOf(new java.sql.Date(date.getTime()).toLocalDate());
+	}
+
+	/**
+	 * Adds components to this day
+	 *
+	 * @param amount the raw amount to add (negative if components are removed)
+	 * @param componentCount the number of added components (negative if
+	 * components are removed)
+	 */
+	void update(long amount, long componentCount) {
+		this.amount += amount;
+		this.componentCount += componentCount;
+	}
+
+	/*
+	 * Getters/setters
+	 */
+	/**
+	 * Returns the associated account
+	 *
+	 * @return the account
+	 */
+	public FinanceAccount getAccount() {
+		return account;
+	}
+
+	/**
+	 * Returns the day
+	 *
+	 * @return the day
+	 */
+	public Date getBalanceDate() {
+		return balanceDate;
+	}
+
+	/**
+	 * Returns the raw amount this day changes the account's balance (should be
+	 * divided by Constants.rawAmountMultiplier to get the real amount)
+	 *
+	 * @return the raw amount
+	 */
+	public long getRawAmount() {
+		return amount;
+	}
+
+	/**
+	 * Returns the number of components for this day; a day without components
+	 * is kept until the next balance refresh
+	 *
+	 * @return the number of components for this day
+	 */
+	public long getComponentCount() {
+		return componentCount;
+	}
+
+	/**
+	 * Returns the ID for this class instance
+	 *
+	 * @return the ID for this class instance
+	 */
+	public Long getId() {
+		return id;
+	}
+
+	/**
+	 * Returns the version for this class instance
+	 *
+	 * @return the version for this class instance
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (obj instanceof AccountDailyBalance)
+			return id != null ? id.equals(((AccountDailyBalance) obj).id) : false;
+		else
+			return this == obj;
+	}
+
+	@Override
+	public int hashCode() {
+		long hashId = this.id != null ? this.id : -1;
+		int hash = 7;
+		hash = 59 * hash + (int) (hashId ^ (hashId >>> 32));
+		return hash;
+	}
+}
@@ -0,0 +1,185 @@
+/*
+ * Vogon personal finance/expense analyzer.
+ * Licensed under Apache 2.0 License: http://www.apache.org/licenses/LICENSE-2.0
+ * Author: Dmitry Zolotukhin <zlogic@gmail.com>
+ */
+package org.zlogic.vogon.data;
+
+import java.io.Serializable;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+
+/**
+ * An entry in the append-only change journal, recording that an account,
+ * transaction or transaction component was created, updated or deleted.
+ * Entries are written by {@link ChangeLogListener} in the same database
+ * transaction as the change; the entry ID increases with every change of the
+ * same user, so that it can be used as a synchronization cursor.
+ *
+ * @author Dmitry Zolotukhin [zlogic@gmail.com]
+ */
+@Entity
+@Table(indexes = @Index(columnList = "ownerId, id"))
+public class ChangeLogEntry implements Serializable {
+
+	/**
+	 * Version UID
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The changed entity type
+	 */
+	public enum EntityType {
+
+		/**
+		 * FinanceAccount
+		 */
+		ACCOUNT,
+		/**
+		 * FinanceTransaction
+		 */
+		TRANSACTION,
+		/**
+		 * TransactionComponent
+		 */
+		TRANSACTION_COMPONENT
+	};
+
+	/**
+	 * The change operation
+	 */
+	public enum Operation {
+
+		/**
+		 * Entity was created
+		 */
+		CREATE,
+		/**
+		 * Entity was updated
+		 */
+		UPDATE,
+		/**
+		 * Entity was deleted
+		 */
+		DELETE
+	};
+	/**
+	 * The entry ID (only for persistence); uses a separate sequence which is
+	 * not cached, so that IDs are assigned in the order entries are written
+	 */
+	@Id
+	@SequenceGenerator(name = "ChangeLogSequence", sequenceName = "change_log_sequence", allocationSize = 1)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "ChangeLogSequence")
+	protected Long id;
+	/**
+	 * The changed entity owner's ID
+	 */
+	@Column(nullable = false)
+	protected long ownerId;
+	/**
+	 * The changed entity type
+	 */
+	@Column(nullable = false)
+	protected EntityType entityType;
+	/**
+	 * The changed entity ID
+	 */
+	@Column(nullable = false)
+	protected long entityId;
+	/**
+	 * The change operation
+	 */
+	@Column(nullable = false)
+	protected Operation operation;
+	/**
+	 * The entity version after the change
+	 */
+	protected long entityVersion;
+
+	/**
+	 * Default constructor
+	 */
+	protected ChangeLogEntry() {
+	}
+
+	/**
+	 * Creates a ChangeLogEntry
+	 *
+	 * @param ownerId the changed entity owner's ID
+	 * @param entityType the changed entity type
+	 * @param entityId the changed entity ID
+	 * @param operation the change operation
+	 * @param entityVersion the entity version after the change
+	 */
+	public ChangeLogEntry(long ownerId, EntityType entityType, long entityId, Operation operation, long entityVersion) {
+		this.ownerId = ownerId;
+		this.entityType = entityType;
+		this.entityId = entityId;
+		this.operation = operation;
+		this.entityVersion = entityVersion;
+	}
+
+	/*
+	 * Getters/setters
+	 */
+	/**
+	 * Returns the ID for this class instance
+	 *
+	 * @return the ID for this class instance
+	 */
+	public Long getId() {
+		return id;
+	}
+
+	/**
+	 * Returns the changed entity owner's ID
+	 *
+	 * @return the changed entity owner's ID
+	 */
+	public long getOwnerId() {
+		return ownerId;
+	}
+
+	/**
+	 * Returns the changed entity type
+	 *
+	 * @return the changed entity type
+	 */
+	public EntityType getEntityType() {
+		return entityType;
+	}
+
+	/**
+	 * Returns the changed entity ID
+	 *
+	 * @return the changed entity ID
+	 */
+	public long getEntityId() {
+		return entityId;
+	}
+
+	/**
+	 * Returns the change operation
+	 *
+	 * @return the change operation
+	 */
+	public Operation getOperation() {
+		return operation;
+	}
+
+	/**
+	 * Returns the entity version after the change
+	 *
+	 * @return the entity version after the change
+	 */
+	public long getEntityVersion() {
+		return entityVersion;
+	}
+}
@@ -0,0 +1,269 @@
+/*
+ * Vogon personal finance/expense analyzer.
+ * Licensed under Apache 2.0 License: http://www.apache.org/licenses/LICENSE-2.0
+ * Author: Dmitry Zolotukhin <zlogic@gmail.com>
+ */
+package org.zlogic.vogon.data;
+
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.persistence.LockModeType;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.CriteriaUpdate;
+import javax.persistence.criteria.Root;
+import org.hibernate.action.spi.AfterTransactionCompletionProcess;
+import org.hibernate.action.spi.BeforeTransactionCompletionProcess;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+
+/**
+ * Hibernate event listener which writes a {@link ChangeLogEntry} for every
+ * created, updated or deleted account, transaction and transaction
+ * component. Changes are collected while the session is flushed and written
+ * just before the database transaction is committed; the owners' user rows
+ * are locked first, so that entries of the same user are numbered in the
+ * order their transactions are committed. The data version of every changed
+ * user (see {@link VogonUser#getDataVersion()}) is increased in the same
+ * database transaction, and the session's user entities are updated with the
+ * increased version, so that the version committed by a transaction can be
+ * read from the session.
+ *
+ * @author Dmitry Zolotukhin [zlogic@gmail.com]
+ */
+public class ChangeLogListener implements PostInsertEventListener, PostUpdateEventListener, PostDeleteEventListener {
+
+	/**
+	 * Version UID
+	 */
+	private static final long serialVersionUID = 1L;
+	/**
+	 * Changes collected in every session's current transaction
+	 */
+	private final Map<SharedSessionContractImplementor, ChangeLogProcess> processes = new ConcurrentHashMap<>();
+
+	@Override
+	public void onPostInsert(PostInsertEvent event) {
+		record(event.getSession(), event.getEntity(), event.getId(), event.getPersister(), event.getState(), ChangeLogEntry.Operation.CREATE);
+	}
+
+	@Override
+	public void onPostUpdate(PostUpdateEvent event) {
+		record(event.getSession(), event.getEntity(), event.getId(), event.getPersister(), event.getOldState(), ChangeLogEntry.Operation.UPDATE);
+	}
+
+	@Override
+	public void onPostDelete(PostDeleteEvent event) {
+		record(event.getSession(), event.getEntity(), event.getId(), event.getPersister(), event.getDeletedState(), ChangeLogEntry.Operation.DELETE);
+	}
+
+	@Override
+	public boolean requiresPostCommitHanding(EntityPersister persister) {
+		return false;
+	}
+
+	/**
+	 * Records a change if the entity is tracked by the change journal
+	 *
+	 * @param session the session
+	 * @param entity the changed entity
+	 * @param id the changed entity ID
+	 * @param persister the entity persister
+	 * @param state the entity state (for updated or deleted entities, the
+	 * state before the change)
+	 * @param operation the change operation
+	 */
+	private void record(EventSource session, Object entity, Serializable id, EntityPersister persister, Object[] state, ChangeLogEntry.Operation operation) {
+		ChangeLogEntry.EntityType entityType;
+		VogonUser owner;
+		if (entity instanceof FinanceAccount) {
+			entityType = ChangeLogEntry.EntityType.ACCOUNT;
+			owner = ((FinanceAccount) entity).getOwner();
+		} else if (entity instanceof FinanceTransaction) {
+			entityType = ChangeLogEntry.EntityType.TRANSACTION;
+			owner = ((FinanceTransaction) entity).getOwner();
+		} else if (entity instanceof TransactionComponent) {
+			entityType = ChangeLogEntry.EntityType.TRANSACTION_COMPONENT;
+			owner = getComponentOwner((TransactionComponent) entity, persister, state);
+		} else if (entity instanceof VogonUser && operation == ChangeLogEntry.Operation.UPDATE) {
+			//Users are not journaled, but their data version changes
+			getProcess(session).addOwner(((VogonUser) entity).getId());
+			return;
+		} else {
+			return;
+		}
+		if (owner == null)
+			return;
+		Object version = persister.getVersion(entity);
+		getProcess(session).add(new ChangeLogEntry(owner.getId(), entityType, (Long) id, operation, version != null ? (Long) version : 0L));
+	}
+
+	/**
+	 * Returns the changes collected in the session's current transaction,
+	 * registering a new process if necessary
+	 *
+	 * @param session the session
+	 * @return the changes collected in the session's current transaction
+	 */
+	private ChangeLogProcess getProcess(EventSource session) {
+		return processes.computeIfAbsent(session, key -> {
+			ChangeLogProcess newProcess = new ChangeLogProcess();
+			session.getActionQueue().registerProcess((BeforeTransactionCompletionProcess) newProcess);
+			session.getActionQueue().registerProcess((AfterTransactionCompletionProcess) newProcess);
+			return newProcess;
+		});
+	}
+
+	/**
+	 * Returns the owner of a transaction component. Removed components are
+	 * detached from their transaction and account before they're deleted, so
+	 * the state before the change is used if necessary.
+	 *
+	 * @param component the transaction component
+	 * @param persister the component's persister
+	 * @param state the component's state
+	 * @return the component's owner, or null if the component doesn't belong
+	 * to a transaction or account
+	 */
+	private VogonUser getComponentOwner(TransactionComponent component, EntityPersister persister, Object[] state) {
+		FinanceTransaction transaction = component.getTransaction();
+		FinanceAccount account = component.getAccount();
+		if (transaction == null && account == null && state != null) {
+			String[] propertyNames = persister.getPropertyNames();
+			for (int i = 0; i < propertyNames.length; i++)
+				if (TransactionComponent_.TRANSACTION.equals(propertyNames[i]) && state[i] instanceof FinanceTransaction)
+					transaction = (FinanceTransaction) state[i];
+				else if (TransactionComponent_.ACCOUNT.equals(propertyNames[i]) && state[i] instanceof FinanceAccount)
+					account = (FinanceAccount) state[i];
+		}
+		if (transaction != null && transaction.getOwner() != null)
+			return transaction.getOwner();
+		return account != null ? account.getOwner() : null;
+	}
+
+	/**
+	 * Changes made in a database transaction, written to the change journal
+	 * before the transaction is committed
+	 */
+	private class ChangeLogProcess implements BeforeTransactionCompletionProcess, AfterTransactionCompletionProcess {
+
+		/**
+		 * The latest change of every entity, in the order of changes
+		 */
+		private final Map<ChangeKey, ChangeLogEntry> entries = new LinkedHashMap<>();
+		/**
+		 * IDs of users whose data was changed
+		 */
+		private final SortedSet<Long> ownerIds = new TreeSet<>();
+
+		/**
+		 * Adds a change. Multiple changes of the same entity are merged into
+		 * one entry; entities which were created and deleted in the same
+		 * transaction are not recorded.
+		 *
+		 * @param entry the change
+		 */
+		private void add(ChangeLogEntry entry) {
+			ownerIds.add(entry.getOwnerId());
+			ChangeKey key = new ChangeKey(entry.getEntityType(), entry.getEntityId());
+			ChangeLogEntry previousEntry = entries.remove(key);
+			if (previousEntry != null && previousEntry.getOperation() == ChangeLogEntry.Operation.CREATE) {
+				if (entry.getOperation() == ChangeLogEntry.Operation.DELETE)
+					return;
+				entry = new ChangeLogEntry(entry.getOwnerId(), entry.getEntityType(), entry.getEntityId(), ChangeLogEntry.Operation.CREATE, entry.getEntityVersion());
+			}
+			entries.put(key, entry);
+		}
+
+		/**
+		 * Adds a user whose data was changed without adding a change
+		 *
+		 * @param ownerId the user ID
+		 */
+		private void addOwner(long ownerId) {
+			ownerIds.add(ownerId);
+		}
+
+		@Override
+		public void doBeforeTransactionCompletion(SessionImplementor session) {
+			processes.remove(session);
+			if (ownerIds.isEmpty())
+				return;
+			for (Long ownerId : ownerIds)
+				session.find(VogonUser.class, ownerId, LockModeType.PESSIMISTIC_WRITE);
+			for (ChangeLogEntry entry : entries.values())
+				session.persist(entry);
+			session.flush();
+			//Bulk update, since the user entities might be outdated
+			CriteriaBuilder criteriaBuilder = session.getCriteriaBuilder();
+			CriteriaUpdate<VogonUser> dataVersionUpdate = criteriaBuilder.createCriteriaUpdate(VogonUser.class);
+			Root<VogonUser> user = dataVersionUpdate.from(VogonUser.class);
+			dataVersionUpdate.set(user.get(VogonUser_.dataVersion), criteriaBuilder.sum(user.get(VogonUser_.dataVersion), 1L));
+			dataVersionUpdate.where(user.get(VogonUser_.id).in(ownerIds));
+			session.createQuery(dataVersionUpdate).executeUpdate();
+			CriteriaQuery<Object[]> dataVersionQuery = criteriaBuilder.createQuery(Object[].class);
+			Root<VogonUser> updatedUser = dataVersionQuery.from(VogonUser.class);
+			dataVersionQuery.multiselect(updatedUser.get(VogonUser_.id), updatedUser.get(VogonUser_.dataVersion));
+			dataVersionQuery.where(updatedUser.get(VogonUser_.id).in(ownerIds));
+			for (Object[] row : session.createQuery(dataVersionQuery).getResultList())
+				session.find(VogonUser.class, row[0]).setDataVersion((Long) row[1]);
+		}
+
+		@Override
+		public void doAfterTransactionCompletion(boolean success, SharedSessionContractImplementor session) {
+			processes.remove(session);
+		}
+	}
+
+	/**
+	 * Changed entity key
+	 */
+	private static class ChangeKey {
+
+		/**
+		 * The entity type
+		 */
+		private final ChangeLogEntry.EntityType entityType;
+		/**
+		 * The entity ID
+		 */
+		private final long entityId;
+
+		/**
+		 * Creates a ChangeKey
+		 *
+		 * @param entityType the entity type
+		 * @param entityId the entity ID
+		 */
+		private ChangeKey(ChangeLogEntry.EntityType entityType, long entityId) {
+			this.entityType = entityType;
+			this.entityId = entityId;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof ChangeKey))
+				return false;
+			ChangeKey key = (ChangeKey) obj;
+			return entityType == key.entityType && entityId == key.entityId;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(entityType, entityId);
+		}
+	}
+}
@@ -0,0 +1,167 @@
+/*
+ * Vogon personal finance/expense analyzer.
+ * Licensed under Apache 2.0 License: http://www.apache.org/licenses/LICENSE-2.0
+ * Author: Dmitry Zolotukhin <zlogic@gmail.com>
+ */
+package org.zlogic.vogon.data;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import org.hibernate.Hibernate;
+import org.hibernate.engine.spi.EntityEntry;
+import org.hibernate.engine.spi.Status;
+import org.hibernate.event.spi.AutoFlushEvent;
+import org.hibernate.event.spi.AutoFlushEventListener;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.FlushEvent;
+import org.hibernate.event.spi.FlushEventListener;
+import org.hibernate.event.spi.MergeEvent;
+import org.hibernate.event.spi.MergeEventListener;
+
+/**
+ * Hibernate event listener which applies the accounts' pending balance
+ * changes to their {@link AccountDailyBalance} rows before the session is
+ * flushed. Only the changed days are loaded (by their natural ID), so the
+ * cost of a write doesn't depend on the length of the account's history.
+ * Pending changes are only recorded in the instances which were changed, so
+ * merging detached entities marks the affected accounts' daily balances as
+ * invalid (to be recalculated by
+ * {@link org.zlogic.vogon.data.tools.DatabaseMaintenance}) instead of losing
+ * the changes.
+ *
+ * @author Dmitry Zolotukhin [zlogic@gmail.com]
+ */
+public class DailyBalanceListener implements FlushEventListener, AutoFlushEventListener, MergeEventListener {
+
+	/**
+	 * Version UID
+	 */
+	private static final long serialVersionUID = 1L;
+
+	@Override
+	public void onFlush(FlushEvent event) {
+		applyDailyBalanceChanges(event.getSession());
+	}
+
+	@Override
+	public void onAutoFlush(AutoFlushEvent event) {
+		applyDailyBalanceChanges(event.getSession());
+	}
+
+	@Override
+	public void onMerge(MergeEvent event) {
+		invalidateDetachedChanges(event.getSession(), event.getOriginal());
+	}
+
+	@Override
+	public void onMerge(MergeEvent event, Map copiedAlready) {
+		onMerge(event);
+	}
+
+	/**
+	 * Invalidates the daily balances of accounts affected by an entity which
+	 * is merged into the session. Changes of an entity which isn't managed by
+	 * the session are recorded in the accounts it references, and not in the
+	 * managed accounts into which it's merged; a component removed from a
+	 * detached transaction, or moved to another account, might not reference
+	 * its previous account at all.
+	 *
+	 * @param session the session
+	 * @param entity the entity being merged
+	 */
+	private void invalidateDetachedChanges(EventSource session, Object entity) {
+		//Uninitialized proxies couldn't have been changed
+		if (entity == null || !Hibernate.isInitialized(entity) || session.contains(entity))
+			return;
+		List<FinanceAccount> accounts = new ArrayList<>();
+		boolean componentsChanged = false;
+		if (entity instanceof FinanceAccount) {
+			accounts.add((FinanceAccount) entity);
+		} else if (entity instanceof TransactionComponent) {
+			TransactionComponent component = (TransactionComponent) entity;
+			accounts.add(component.getAccount());
+			TransactionComponent managedComponent = component.getId() != null ? session.get(TransactionComponent.class, component.getId()) : null;
+			if (managedComponent != null) {
+				accounts.add(managedComponent.getAccount());
+				componentsChanged = !Objects.equals(component.getAccount(), managedComponent.getAccount());
+			}
+		} else if (entity instanceof FinanceTransaction) {
+			FinanceTransaction transaction = (FinanceTransaction) entity;
+			//Components which were never loaded couldn't have been changed through this transaction
+			List<TransactionComponent> components = transaction.components != null && Hibernate.isInitialized(transaction.components) ? transaction.getComponents() : null;
+			if (components != null)
+				for (TransactionComponent component : components)
+					accounts.add(component.getAccount());
+			FinanceTransaction managedTransaction = components != null && transaction.getId() != null ? session.get(FinanceTransaction.class, transaction.getId()) : null;
+			if (managedTransaction != null)
+				for (TransactionComponent managedComponent : managedTransaction.getComponents()) {
+					accounts.add(managedComponent.getAccount());
+					componentsChanged |= !components.contains(managedComponent);
+				}
+		} else {
+			return;
+		}
+		accounts.removeIf(account -> account == null || !Hibernate.isInitialized(account));
+
+		boolean pendingChanges = componentsChanged;
+		for (FinanceAccount account : accounts)
+			pendingChanges |= !session.contains(account) && account.hasDailyBalanceChanges();
+		if (!pendingChanges)
+			return;
+		for (FinanceAccount account : accounts) {
+			account.invalidateDailyBalances();
+			FinanceAccount managedAccount = !session.contains(account) && account.getId() != null ? session.get(FinanceAccount.class, account.getId()) : null;
+			if (managedAccount != null)
+				managedAccount.invalidateDailyBalances();
+		}
+	}
+
+	/**
+	 * Applies the pending balance changes of all accounts in the session
+	 *
+	 * @param session the session
+	 */
+	private void applyDailyBalanceChanges(EventSource session) {
+		for (Map.Entry<Object, EntityEntry> entry : session.getPersistenceContext().reentrantSafeEntityEntries()) {
+			if (!(entry.getKey() instanceof FinanceAccount))
+				continue;
+			FinanceAccount account = (FinanceAccount) entry.getKey();
+			Map<Date, long[]> changes = account.removeDailyBalanceChanges();
+			//Daily balances of deleted accounts are deleted together with the account
+			if (changes.isEmpty() || entry.getValue().getStatus() != Status.MANAGED)
+				continue;
+			for (Map.Entry<Date, long[]> change : changes.entrySet()) {
+				AccountDailyBalance dailyBalance = findDailyBalance(session, account, change.getKey());
+				//Empty days are not deleted here: a day could be removed and re-added later in the same transaction
+				if (dailyBalance == null) {
+					dailyBalance = new AccountDailyBalance(account, change.getKey());
+					session.persist(dailyBalance);
+					if (account.dailyBalances != null && Hibernate.isInitialized(account.dailyBalances))
+						account.dailyBalances.put(change.getKey(), dailyBalance);
+				}
+				dailyBalance.update(change.getValue()[0], change.getValue()[1]);
+			}
+		}
+	}
+
+	/**
+	 * Finds an account's balance change for a day, without loading the other
+	 * days
+	 *
+	 * @param session the session
+	 * @param account the account
+	 * @param day the day
+	 * @return the day's balance change, or null if it doesn't exist
+	 */
+	private AccountDailyBalance findDailyBalance(EventSource session, FinanceAccount account, Date day) {
+		if (account.dailyBalances != null && Hibernate.isInitialized(account.dailyBalances))
+			return account.dailyBalances.get(day);
+		return session.byNaturalId(AccountDailyBalance.class)
+				.using(AccountDailyBalance_.ACCOUNT, account)
+				.using(AccountDailyBalance_.BALANCE_DATE, day)
+				.load();
+	}
+}
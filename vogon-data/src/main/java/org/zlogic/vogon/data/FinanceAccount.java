@@ -9,8 +9,11 @@ import java.io.Serializable;
 import java.util.Collections;
 import java.util.ConcurrentModificationException;
 import java.util.Currency;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Locale;
+import java.util.Map;
 import java.util.ResourceBundle;
 import java.util.Set;
 import javax.persistence.CascadeType;
@@ -20,7 +23,9 @@ import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
+import javax.persistence.MapKey;
 import javax.persistence.OneToMany;
+import javax.persistence.Transient;
 import javax.persistence.Version;
 
 /**
@@ -85,6 +90,25 @@ public class FinanceAccount implements Serializable {
 	@JoinColumn
 	protected Set<TransactionComponent> transactionComponents;
 
+	/**
+	 * The account's balance changes, by day; only loaded when all days are
+	 * recalculated, individual days are updated by {@link DailyBalanceListener}
+	 */
+	@OneToMany(mappedBy = "account", cascade = CascadeType.ALL, orphanRemoval = true)
+	@MapKey(name = "balanceDate")
+	protected Map<Date, AccountDailyBalance> dailyBalances;
+	/**
+	 * The balance changes which are not yet applied to dailyBalances: the raw
+	 * amount and number of components, by day
+	 */
+	@Transient
+	private Map<Date, long[]> dailyBalanceChanges = new HashMap<>();
+	/**
+	 * If dailyBalances are in sync with transactionComponents (false for
+	 * accounts created before daily balances were introduced)
+	 */
+	protected Boolean dailyBalanceValid;
+
 	/**
 	 * Creates an account
 	 */
@@ -108,6 +132,8 @@ public class FinanceAccount implements Serializable {
 		this.currency = (currency != null ? currency : Currency.getInstance(Locale.getDefault())).getCurrencyCode();
 		FinanceAccount.this.setOwner(owner);
 		this.transactionComponents = new HashSet<>();
+		this.dailyBalances = new HashMap<>();
+		this.dailyBalanceValid = true;
 	}
 
 	/**
@@ -121,6 +147,8 @@ public class FinanceAccount implements Serializable {
 		this();
 		balance = 0L;
 		transactionComponents = new HashSet<>();
+		dailyBalances = new HashMap<>();
+		dailyBalanceValid = true;
 		FinanceAccount.this.setOwner(owner);
 		FinanceAccount.this.merge(account, false);
 	}
@@ -182,6 +210,79 @@ public class FinanceAccount implements Serializable {
 			balance = 0L;
 	}
 
+	/**
+	 * Updates the balance change for a day; the change is written to the
+	 * day's {@link AccountDailyBalance} when the session is flushed
+	 *
+	 * @param date the date
+	 * @param amount the raw amount to add to the day's balance change
+	 * @param componentCount the number of components added to the day
+	 * (negative if components are removed)
+	 */
+	void updateDailyBalance(Date date, long amount, long componentCount) {
+		Date day = AccountDailyBalance.toDay(date);
+		long[] change = dailyBalanceChanges.computeIfAbsent(day, changeDay -> new long[2]);
+		change[0] += amount;
+		change[1] += componentCount;
+		if (change[0] == 0 && change[1] == 0)
+			dailyBalanceChanges.remove(day);
+	}
+
+	/**
+	 * Returns and clears the balance changes which are not yet applied to the
+	 * daily balances
+	 *
+	 * @return the raw amount and number of components to add to the daily
+	 * balances, by day
+	 */
+	Map<Date, long[]> removeDailyBalanceChanges() {
+		if (dailyBalanceChanges.isEmpty())
+			return Collections.emptyMap();
+		Map<Date, long[]> changes = dailyBalanceChanges;
+		dailyBalanceChanges = new HashMap<>();
+		return changes;
+	}
+
+	/**
+	 * Returns true if this account has balance changes which are not yet
+	 * applied to the daily balances
+	 *
+	 * @return true if this account has pending balance changes
+	 */
+	boolean hasDailyBalanceChanges() {
+		return !dailyBalanceChanges.isEmpty();
+	}
+
+	/**
+	 * Discards the pending balance changes and marks the daily balances as
+	 * out of sync with transactionComponents; they will be recalculated by
+	 * {@link #refreshDailyBalances()}
+	 */
+	void invalidateDailyBalances() {
+		dailyBalanceChanges.clear();
+		dailyBalanceValid = false;
+	}
+
+	/**
+	 * Recalculates the daily balance changes from all of this account's
+	 * transaction components, and deletes days without components
+	 */
+	public void refreshDailyBalances() {
+		if (dailyBalances == null)
+			dailyBalances = new HashMap<>();
+		dailyBalanceChanges.clear();
+		for (AccountDailyBalance dailyBalance : dailyBalances.values())
+			dailyBalance.update(-dailyBalance.getRawAmount(), -dailyBalance.getComponentCount());
+		for (TransactionComponent component : getComponents()) {
+			if (component.getTransaction() == null || component.getTransaction().getDate() == null)
+				continue;
+			Date day = AccountDailyBalance.toDay(component.getTransaction().getDate());
+			dailyBalances.computeIfAbsent(day, newDay -> new AccountDailyBalance(this, newDay)).update(component.getRawAmount(), 1);
+		}
+		dailyBalances.values().removeIf(dailyBalance -> dailyBalance.getComponentCount() == 0);
+		dailyBalanceValid = true;
+	}
+
 	/*
 	 * Getters/setters
 	 */
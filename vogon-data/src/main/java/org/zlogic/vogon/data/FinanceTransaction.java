@@ -7,25 +7,32 @@ package org.zlogic.vogon.data;
 
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
 import java.util.ConcurrentModificationException;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.ResourceBundle;
 import java.util.Set;
-import java.util.TreeSet;
+import java.util.stream.Stream;
 import javax.persistence.CascadeType;
-import javax.persistence.ElementCollection;
+import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
+import javax.persistence.JoinTable;
+import javax.persistence.ManyToMany;
 import javax.persistence.ManyToOne;
 import javax.persistence.OneToMany;
 import javax.persistence.OrderBy;
+import javax.persistence.Table;
 import javax.persistence.Temporal;
+import javax.persistence.Transient;
 import javax.persistence.Version;
 
 /**
@@ -34,6 +41,9 @@ import javax.persistence.Version;
  * @author Dmitry Zolotukhin [zlogic@gmail.com]
  */
 @Entity
+@Table(indexes = {
+	@Index(columnList = "owner_id, transactionDate, id"),
+	@Index(columnList = "owner_id, description, id")})
 public class FinanceTransaction implements Serializable {
 
 	/**
@@ -85,14 +95,24 @@ public class FinanceTransaction implements Serializable {
 	 */
 	protected Type type;
 	/**
-	 * Contains the expense description string
+	 * Contains the expense description string; an empty string if the
+	 * transaction has no description
 	 */
-	protected String description;
+	@Column(nullable = false)
+	protected String description = ""; //NOI18N
 	/**
-	 * Contains the expense tags
+	 * Contains the expense tags, from the tags dictionary
 	 */
-	@ElementCollection
-	protected Set<String> tags;
+	@ManyToMany
+	@JoinTable(name = "FinanceTransaction_Tag", indexes = @Index(columnList = "tags_id"))
+	protected Set<Tag> tags;
+	/**
+	 * Names of the expense tags which are not resolved from the tags
+	 * dictionary yet; resolved by {@link TagListener} when the transaction is
+	 * persisted or flushed
+	 */
+	@Transient
+	private Set<String> newTagNames = new HashSet<>();
 	/**
 	 * Contains the related accounts and the transaction's distribution into
 	 * them
@@ -126,7 +146,7 @@ public class FinanceTransaction implements Serializable {
 	public FinanceTransaction(VogonUser owner, String description, String[] tags, Date date, Type type) {
 		//TODO: consider removing this
 		this();
-		this.description = description;
+		FinanceTransaction.this.setDescription(description);
 		FinanceTransaction.this.setTags(tags != null ? tags : new String[0]);
 		this.transactionDate = date;
 		this.components = new HashSet<>();
@@ -169,11 +189,28 @@ public class FinanceTransaction implements Serializable {
 		if (verifyVersion && version != transaction.version)
 			throw new ConcurrentModificationException(messages.getString("TRANSACTION_WAS_ALREADY_UPDATED"));
 		this.type = transaction.type;
-		this.description = transaction.description;
-		this.tags = new TreeSet<>();
-		for (String tag : transaction.tags)
-			this.tags.add(tag);
-		this.transactionDate = (Date) transaction.transactionDate.clone();
+		setDescription(transaction.description);
+		setTags(transaction.getTags());
+		updateDate((Date) transaction.transactionDate.clone());
+	}
+
+	/**
+	 * Sets the transaction date, moving the components to the new date in
+	 * their accounts' daily balances
+	 *
+	 * @param date the transaction date
+	 */
+	private void updateDate(Date date) {
+		boolean sameDay = transactionDate == null ? date == null : date != null && AccountDailyBalance.toDay(transactionDate).equals(AccountDailyBalance.toDay(date));
+		if (components == null || sameDay) {
+			this.transactionDate = date;
+			return;
+		}
+		for (TransactionComponent component : components)
+			component.updateDailyBalance(-1);
+		this.transactionDate = date;
+		for (TransactionComponent component : components)
+			component.updateDailyBalance(1);
 	}
 
 	/**
@@ -216,9 +253,32 @@ public class FinanceTransaction implements Serializable {
 	 * @param tag the tag to add
 	 */
 	void addTag(String tag) {
+		if (tags == null || !tags.contains(new Tag(tag)))
+			newTagNames.add(tag);
+	}
+
+	/**
+	 * Adds the tags which are not resolved yet from the tags dictionary
+	 *
+	 * @param existingTags the tags from the dictionary, by name; should
+	 * contain all of this transaction's new tags
+	 */
+	void resolveNewTags(Map<String, Tag> existingTags) {
 		if (tags == null)
-			tags = new TreeSet<>();
-		tags.add(tag);
+			tags = new HashSet<>();
+		for (String name : newTagNames)
+			tags.add(existingTags.get(name));
+		newTagNames.clear();
+	}
+
+	/**
+	 * Returns the names of tags which are not resolved yet from the tags
+	 * dictionary
+	 *
+	 * @return the names of tags which are not resolved yet
+	 */
+	Set<String> getNewTagNames() {
+		return Collections.unmodifiableSet(newTagNames);
 	}
 
 	/**
@@ -233,10 +293,11 @@ public class FinanceTransaction implements Serializable {
 	/**
 	 * Sets the transaction's description
 	 *
-	 * @param description the description to set
+	 * @param description the description to set; null is replaced with an
+	 * empty string
 	 */
 	public void setDescription(String description) {
-		this.description = description;
+		this.description = description != null ? description : ""; //NOI18N
 	}
 
 	/**
@@ -245,16 +306,29 @@ public class FinanceTransaction implements Serializable {
 	 * @return the transaction's tags
 	 */
 	public String[] getTags() {
-		return tags.toArray(new String[0]);
+		return Stream.concat(tags.stream().map(Tag::getName), newTagNames.stream()).sorted().toArray(String[]::new);
 	}
 
 	/**
-	 * Sets the transaction's tags
+	 * Sets the transaction's tags; tags which the transaction doesn't have
+	 * yet are looked up in (or added to) the tags dictionary when the
+	 * transaction is persisted or flushed
 	 *
 	 * @param tags the new transaction's tags
 	 */
 	public void setTags(String... tags) {
-		this.tags = new TreeSet<>(Arrays.asList(tags));
+		Map<String, Tag> currentTags = new HashMap<>();
+		if (this.tags != null)
+			for (Tag tag : this.tags)
+				currentTags.put(tag.getName(), tag);
+		Set<Tag> newTags = new HashSet<>();
+		newTagNames.clear();
+		for (String tag : tags)
+			if (currentTags.containsKey(tag))
+				newTags.add(currentTags.get(tag));
+			else
+				newTagNames.add(tag);
+		this.tags = newTags;
 	}
 
 	/**
@@ -272,7 +346,7 @@ public class FinanceTransaction implements Serializable {
 	 * @param date the transaction date
 	 */
 	public void setDate(Date date) {
-		this.transactionDate = date;
+		updateDate(date);
 	}
 
 	/**
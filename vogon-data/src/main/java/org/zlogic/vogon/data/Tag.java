@@ -0,0 +1,94 @@
+/*
+ * Vogon personal finance/expense analyzer.
+ * Licensed under Apache 2.0 License: http://www.apache.org/licenses/LICENSE-2.0
+ * Author: Dmitry Zolotukhin <zlogic@gmail.com>
+ */
+package org.zlogic.vogon.data;
+
+import java.io.Serializable;
+import java.util.Objects;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.SequenceGenerator;
+
+/**
+ * A tag name from the tags dictionary. Every distinct tag name is stored only
+ * once and shared by all transactions using it, so that transactions reference
+ * tags by ID. Tags are immutable; two tags are equal if they have the same
+ * name.
+ *
+ * @author Dmitry Zolotukhin [zlogic@gmail.com]
+ */
+@Entity
+public class Tag implements Serializable {
+
+	/**
+	 * Version UID
+	 */
+	private static final long serialVersionUID = 1L;
+	/**
+	 * The tag ID (only for persistence); uses a separate sequence
+	 */
+	@Id
+	@SequenceGenerator(name = "TagSequence", sequenceName = "tag_sequence")
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "TagSequence")
+	protected Long id;
+	/**
+	 * The tag name
+	 */
+	@Column(nullable = false, unique = true)
+	protected String name;
+
+	/**
+	 * Default constructor
+	 */
+	protected Tag() {
+	}
+
+	/**
+	 * Creates a Tag which is not persisted yet
+	 *
+	 * @param name the tag name
+	 */
+	public Tag(String name) {
+		this.name = name;
+	}
+
+	/*
+	 * Getters/setters
+	 */
+	/**
+	 * Returns the ID for this class instance
+	 *
+	 * @return the ID for this class instance, or null if the tag is not
+	 * persisted yet
+	 */
+	public Long getId() {
+		return id;
+	}
+
+	/**
+	 * Returns the tag name
+	 *
+	 * @return the tag name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (obj instanceof Tag)
+			return Objects.equals(name, ((Tag) obj).name);
+		else
+			return this == obj;
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hashCode(name);
+	}
+}
@@ -0,0 +1,36 @@
+/*
+ * Vogon personal finance/expense analyzer.
+ * Licensed under Apache 2.0 License: http://www.apache.org/licenses/LICENSE-2.0
+ * Author: Dmitry Zolotukhin <zlogic@gmail.com>
+ */
+package org.zlogic.vogon.data;
+
+import org.hibernate.boot.Metadata;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+
+/**
+ * Registers the {@link TagListener} with Hibernate (discovered through
+ * META-INF/services)
+ *
+ * @author Dmitry Zolotukhin [zlogic@gmail.com]
+ */
+public class TagIntegrator implements Integrator {
+
+	@Override
+	public void integrate(Metadata metadata, SessionFactoryImplementor sessionFactory, SessionFactoryServiceRegistry serviceRegistry) {
+		TagListener listener = new TagListener();
+		EventListenerRegistry eventListenerRegistry = serviceRegistry.getService(EventListenerRegistry.class);
+		eventListenerRegistry.prependListeners(EventType.PERSIST, listener);
+		eventListenerRegistry.prependListeners(EventType.PERSIST_ONFLUSH, listener);
+		eventListenerRegistry.prependListeners(EventType.FLUSH, listener);
+		eventListenerRegistry.prependListeners(EventType.AUTO_FLUSH, listener);
+	}
+
+	@Override
+	public void disintegrate(SessionFactoryImplementor sessionFactory, SessionFactoryServiceRegistry serviceRegistry) {
+	}
+}
@@ -0,0 +1,77 @@
+/*
+ * Vogon personal finance/expense analyzer.
+ * Licensed under Apache 2.0 License: http://www.apache.org/licenses/LICENSE-2.0
+ * Author: Dmitry Zolotukhin <zlogic@gmail.com>
+ */
+package org.zlogic.vogon.data;
+
+import java.util.Map;
+import org.hibernate.FlushMode;
+import org.hibernate.engine.spi.EntityEntry;
+import org.hibernate.engine.spi.Status;
+import org.hibernate.event.spi.AutoFlushEvent;
+import org.hibernate.event.spi.AutoFlushEventListener;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.FlushEvent;
+import org.hibernate.event.spi.FlushEventListener;
+import org.hibernate.event.spi.PersistEvent;
+import org.hibernate.event.spi.PersistEventListener;
+
+/**
+ * Hibernate event listener which replaces new tag names of transactions with
+ * tags from the tags dictionary before a transaction is persisted and before
+ * the session is flushed, using a {@link TagResolver}. Transactions can be
+ * tagged by name without creating duplicate tags.
+ *
+ * @author Dmitry Zolotukhin [zlogic@gmail.com]
+ */
+public class TagListener implements FlushEventListener, AutoFlushEventListener, PersistEventListener {
+
+	/**
+	 * Version UID
+	 */
+	private static final long serialVersionUID = 1L;
+
+	@Override
+	public void onPersist(PersistEvent event) {
+		if (event.getObject() instanceof FinanceTransaction)
+			new TagResolver(event.getSession()).resolveTags((FinanceTransaction) event.getObject());
+	}
+
+	@Override
+	public void onPersist(PersistEvent event, Map createdAlready) {
+		onPersist(event);
+	}
+
+	@Override
+	public void onFlush(FlushEvent event) {
+		resolveTags(event.getSession());
+	}
+
+	@Override
+	public void onAutoFlush(AutoFlushEvent event) {
+		//Queries which don't flush the session (such as the TagResolver's queries) also fire this event
+		if (event.getSession().getHibernateFlushMode().lessThan(FlushMode.AUTO))
+			return;
+		resolveTags(event.getSession());
+	}
+
+	/**
+	 * Resolves the new tag names of all transactions in the session
+	 *
+	 * @param session the session
+	 */
+	private void resolveTags(EventSource session) {
+		TagResolver tagResolver = null;
+		for (Map.Entry<Object, EntityEntry> entry : session.getPersistenceContext().reentrantSafeEntityEntries()) {
+			if (!(entry.getKey() instanceof FinanceTransaction) || entry.getValue().getStatus() != Status.MANAGED)
+				continue;
+			FinanceTransaction transaction = (FinanceTransaction) entry.getKey();
+			if (transaction.getNewTagNames().isEmpty())
+				continue;
+			if (tagResolver == null)
+				tagResolver = new TagResolver(session);
+			tagResolver.resolveTags(transaction);
+		}
+	}
+}
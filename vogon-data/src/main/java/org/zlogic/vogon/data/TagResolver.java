@@ -0,0 +1,172 @@
+/*
+ * Vogon personal finance/expense analyzer.
+ * Licensed under Apache 2.0 License: http://www.apache.org/licenses/LICENSE-2.0
+ * Author: Dmitry Zolotukhin <zlogic@gmail.com>
+ */
+package org.zlogic.vogon.data;
+
+import java.sql.Savepoint;
+import java.text.MessageFormat;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.Set;
+import javax.persistence.EntityManager;
+import javax.persistence.FlushModeType;
+import javax.persistence.PersistenceException;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Root;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+
+/**
+ * Maps tag names to entries of the tags dictionary. Resolved tags are
+ * remembered, so an instance should be reused when resolving tags of many
+ * transactions (e.g. during import) and shouldn't outlive its EntityManager.
+ * <p>
+ * Missing tags are created in the caller's transaction, every tag after a
+ * savepoint, so that a tag created concurrently by another user only causes
+ * the tag to be read again, and doesn't fail the caller's transaction.
+ * Created tags are rolled back with the caller's transaction.
+ *
+ * @author Dmitry Zolotukhin [zlogic@gmail.com]
+ */
+public class TagResolver {
+
+	/**
+	 * Localization messages
+	 */
+	private static final ResourceBundle messages = ResourceBundle.getBundle("org/zlogic/vogon/data/messages");
+
+	/**
+	 * The maximum number of attempts to create missing tags
+	 */
+	private static final int MAX_CREATE_ATTEMPTS = 3;
+
+	/**
+	 * The EntityManager to be used for making queries
+	 */
+	private final EntityManager entityManager;
+	/**
+	 * The resolved tags, by name
+	 */
+	private final Map<String, Tag> resolvedTags = new HashMap<>();
+
+	/**
+	 * Creates a TagResolver
+	 *
+	 * @param entityManager the EntityManager to be used for making queries
+	 * and persisting new tags
+	 */
+	public TagResolver(EntityManager entityManager) {
+		this.entityManager = entityManager;
+	}
+
+	/**
+	 * Replaces the transaction's new tag names with existing tags from the
+	 * tags dictionary; tags which don't exist yet are persisted
+	 *
+	 * @param transaction the transaction
+	 */
+	public void resolveTags(FinanceTransaction transaction) {
+		if (transaction.getNewTagNames().isEmpty())
+			return;
+		transaction.resolveNewTags(getTags(transaction.getNewTagNames()));
+	}
+
+	/**
+	 * Returns the tags for names, creating tags which don't exist yet
+	 *
+	 * @param names the tag names
+	 * @return the tags, by name
+	 * @throws PersistenceException if the missing tags cannot be created
+	 */
+	public Map<String, Tag> getTags(Collection<String> names) {
+		Set<String> unresolvedNames = new HashSet<>(names);
+		unresolvedNames.removeAll(resolvedTags.keySet());
+		for (int attempt = 0; !unresolvedNames.isEmpty(); attempt++) {
+			findTags(unresolvedNames);
+			if (unresolvedNames.isEmpty())
+				break;
+			if (attempt >= MAX_CREATE_ATTEMPTS)
+				throw new PersistenceException(MessageFormat.format(messages.getString("CANNOT_CREATE_TAGS"), unresolvedNames));
+			createTags(unresolvedNames);
+		}
+		Map<String, Tag> tags = new HashMap<>();
+		for (String name : names)
+			tags.put(name, resolvedTags.get(name));
+		return tags;
+	}
+
+	/**
+	 * Finds existing tags and removes them from names. The query doesn't
+	 * flush the EntityManager, so tags can be resolved during a flush.
+	 *
+	 * @param names the tag names to find
+	 */
+	private void findTags(Set<String> names) {
+		CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+		CriteriaQuery<Tag> tagsQuery = criteriaBuilder.createQuery(Tag.class);
+		Root<Tag> tag = tagsQuery.from(Tag.class);
+		tagsQuery.where(tag.get(Tag_.name).in(names));
+		for (Tag existingTag : entityManager.createQuery(tagsQuery).setFlushMode(FlushModeType.COMMIT).getResultList()) {
+			resolvedTags.put(existingTag.getName(), existingTag);
+			names.remove(existingTag.getName());
+		}
+	}
+
+	/**
+	 * Creates tags in the caller's transaction, rolling back to a savepoint if
+	 * a tag cannot be created; tags which were created by a concurrent
+	 * transaction are skipped. Tags are inserted directly (without being
+	 * added to the persistence context), so that a failed insert doesn't
+	 * affect the caller's EntityManager.
+	 *
+	 * @param names the tag names to create
+	 */
+	private void createTags(Collection<String> names) {
+		Session session = entityManager.unwrap(Session.class);
+		SessionFactory sessionFactory = session.getSessionFactory();
+		session.doWork(connection -> {
+			for (String name : names) {
+				Savepoint savepoint = connection.setSavepoint();
+				try (StatelessSession tagsSession = sessionFactory.withStatelessOptions().connection(connection).openStatelessSession()) {
+					//Insert immediately instead of batching, so that a failed insert is detected here
+					tagsSession.setJdbcBatchSize(1);
+					tagsSession.insert(new Tag(name));
+					connection.releaseSavepoint(savepoint);
+				} catch (PersistenceException ex) {
+					//The tag was most likely created concurrently, it will be read again
+					connection.rollback(savepoint);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Returns the IDs of existing tags matching names; names without a
+	 * matching tag are ignored
+	 *
+	 * @param entityManager the EntityManager to be used for making queries
+	 * @param names the tag names
+	 * @param ignoreCase true if names should be matched case-insensitively
+	 * @return the IDs of matching tags
+	 */
+	public static Set<Long> findTagIds(EntityManager entityManager, Collection<String> names, boolean ignoreCase) {
+		Set<String> queryNames = new HashSet<>();
+		for (String name : names)
+			queryNames.add(ignoreCase ? name.toLowerCase() : name);
+		if (queryNames.isEmpty())
+			return new HashSet<>();
+		CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+		CriteriaQuery<Long> tagsQuery = criteriaBuilder.createQuery(Long.class);
+		Root<Tag> tag = tagsQuery.from(Tag.class);
+		tagsQuery.select(tag.get(Tag_.id))
+				.where((ignoreCase ? criteriaBuilder.lower(tag.get(Tag_.name)) : tag.get(Tag_.name)).in(queryNames));
+		return new HashSet<>(entityManager.createQuery(tagsQuery).getResultList());
+	}
+}
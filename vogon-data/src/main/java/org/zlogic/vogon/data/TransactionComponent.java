@@ -10,8 +10,10 @@ import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
+import javax.persistence.Table;
 import javax.persistence.Version;
 
 /**
@@ -20,6 +22,7 @@ import javax.persistence.Version;
  * @author Dmitry Zolotukhin [zlogic@gmail.com]
  */
 @Entity
+@Table(indexes = @Index(columnList = "account_id, transaction_id"))
 public class TransactionComponent implements Serializable {
 
 	/**
@@ -75,6 +78,19 @@ public class TransactionComponent implements Serializable {
 		TransactionComponent.this.setTransaction(transaction);
 	}
 
+	/**
+	 * Adds or removes this component from the account's daily balance for the
+	 * transaction date. Should be called before and after changing the
+	 * account, transaction, amount or transaction date.
+	 *
+	 * @param sign 1 to add this component to the daily balance, -1 to remove
+	 * it
+	 */
+	void updateDailyBalance(int sign) {
+		if (account != null && transaction != null && transaction.getDate() != null && amount != null)
+			account.updateDailyBalance(transaction.getDate(), sign * amount, sign);
+	}
+
 	/*
 	 * Getters/setters
 	 */
@@ -96,7 +112,9 @@ public class TransactionComponent implements Serializable {
 		if ((this.account != null && this.account.equals(account)) || (this.account == null && account == null))
 			return;
 		FinanceAccount savedAccount = this.account;
+		updateDailyBalance(-1);
 		this.account = account;
+		updateDailyBalance(1);
 		if (savedAccount != null)
 			savedAccount.removeComponent(this);
 		if (account != null)
@@ -121,7 +139,9 @@ public class TransactionComponent implements Serializable {
 		if ((this.transaction != null && this.transaction.equals(transaction)) || (this.transaction == null && transaction == null))
 			return;
 		FinanceTransaction savedTransaction = this.transaction;
+		updateDailyBalance(-1);
 		this.transaction = transaction;
+		updateDailyBalance(1);
 		if (savedTransaction != null)
 			savedTransaction.removeComponent(this);
 		if (transaction != null)
@@ -148,7 +168,9 @@ public class TransactionComponent implements Serializable {
 		FinanceAccount savedAccount = account;
 		if (account != null)
 			account.removeComponent(this);
+		updateDailyBalance(-1);
 		this.amount = amount;
+		updateDailyBalance(1);
 		if (savedAccount!= null)
 			savedAccount.addComponent(this);
 	}
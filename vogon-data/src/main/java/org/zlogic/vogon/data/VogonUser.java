@@ -17,6 +17,7 @@ import javax.persistence.Id;
 import javax.persistence.JoinColumn;
 import javax.persistence.OneToMany;
 import javax.persistence.Version;
+import org.hibernate.annotations.ColumnDefault;
 
 /**
  * Class for storing user data
@@ -51,6 +52,14 @@ public class VogonUser implements Serializable {
 	 */
 	@Column(nullable = false)
 	protected String password;
+	/**
+	 * The version of the user's data, increased by {@link ChangeLogListener}
+	 * in every database transaction which changes the user or the user's
+	 * accounts and transactions; never updated through this entity
+	 */
+	@Column(updatable = false)
+	@ColumnDefault("0")
+	private long dataVersion = 0L;
 	/**
 	 * The user's transactions
 	 */
@@ -156,6 +165,27 @@ public class VogonUser implements Serializable {
 		return id;
 	}
 
+	/**
+	 * Returns the version of the user's data, as it was when this instance
+	 * was loaded (or, for users changed in a committed database transaction,
+	 * as it was committed)
+	 *
+	 * @return the version of the user's data
+	 */
+	public long getDataVersion() {
+		return dataVersion;
+	}
+
+	/**
+	 * Sets the version of the user's data, after it was increased by
+	 * {@link ChangeLogListener}; not persisted
+	 *
+	 * @param dataVersion the version of the user's data
+	 */
+	void setDataVersion(long dataVersion) {
+		this.dataVersion = dataVersion;
+	}
+
 	/**
 	 * Returns the version for this class instance
 	 *
@@ -0,0 +1,54 @@
+/*
+ * Vogon personal finance/expense analyzer.
+ * Licensed under Apache 2.0 License: http://www.apache.org/licenses/LICENSE-2.0
+ * Author: Dmitry Zolotukhin <zlogic@gmail.com>
+ */
+package org.zlogic.vogon.data.report;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+
+/**
+ * Time period used to group report amounts
+ *
+ * @author Dmitry Zolotukhin [zlogic@gmail.com]
+ */
+public enum BucketSize {
+
+	/**
+	 * A single day
+	 */
+	DAY,
+	/**
+	 * A week, starting on Monday
+	 */
+	WEEK,
+	/**
+	 * A calendar month
+	 */
+	MONTH,
+	/**
+	 * A calendar year
+	 */
+	YEAR;
+
+	/**
+	 * Returns the first day of the bucket containing a date
+	 *
+	 * @param date the date
+	 * @return the first day of the bucket containing date
+	 */
+	public LocalDate getStart(LocalDate date) {
+		switch (this) {
+			case WEEK:
+				return date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+			case MONTH:
+				return date.withDayOfMonth(1);
+			case YEAR:
+				return date.withDayOfYear(1);
+			default:
+				return date;
+		}
+	}
+}
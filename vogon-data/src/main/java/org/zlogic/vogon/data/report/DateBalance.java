@@ -5,81 +5,260 @@
  */
 package org.zlogic.vogon.data.report;
 
-import java.text.MessageFormat;
+import java.time.LocalDate;
+import java.util.Arrays;
 import java.util.Date;
-import java.util.TreeMap;
-import java.util.Map;
-import java.util.ResourceBundle;
+import org.zlogic.vogon.data.Constants;
 
 /**
- * Class for storing a date/balance graph
+ * Class for storing a date/balance graph. Days and raw balances are stored in
+ * parallel primitive arrays sorted by day, so that appending a balance doesn't
+ * allocate an object for every point.
  *
  * @author Dmitry Zolotukhin [zlogic@gmail.com]
- * @param <T> balance type
  */
-public class DateBalance<T extends Number> {
+public class DateBalance {
 
 	/**
-	 * Localization messages
+	 * Initial capacity of the arrays
 	 */
-	private static final ResourceBundle messages = ResourceBundle.getBundle("org/zlogic/vogon/data/messages");
+	private static final int DEFAULT_CAPACITY = 16;
 	/**
-	 * Date/balance storage map
+	 * Days (as epoch days), sorted in ascending order
 	 */
-	private Map<Date, T> dateBalance = new TreeMap<>();
-
+	private int[] epochDays;
+	/**
+	 * Raw balances for every day in epochDays
+	 */
+	private long[] rawBalances;
 	/**
-	 * Balance type class
+	 * Number of used array elements
 	 */
-	private Class<T> balanceType;
+	private int size;
 
 	/**
 	 * Default constructor
+	 */
+	protected DateBalance() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Constructs an empty DateBalance with the specified initial capacity
 	 *
-	 * @param balanceType the balance type class
+	 * @param capacity the initial capacity
 	 */
-	protected DateBalance(Class<T> balanceType) {
-		this.balanceType = balanceType;
+	protected DateBalance(int capacity) {
+		epochDays = new int[Math.max(capacity, 1)];
+		rawBalances = new long[epochDays.length];
 	}
 
 	/**
-	 * Returns the date/balance map
+	 * Constructs a DateBalance from existing arrays
 	 *
-	 * @return the date/balance map
+	 * @param epochDays the days, sorted in ascending order
+	 * @param rawBalances the raw balances for every day
 	 */
-	public Map<Date, T> getData() {
-		return dateBalance;
+	private DateBalance(int[] epochDays, long[] rawBalances) {
+		this.epochDays = epochDays;
+		this.rawBalances = rawBalances;
+		this.size = epochDays.length;
 	}
 
 	/**
-	 * Sets the balance for a particular date
+	 * Returns the number of days in this graph
 	 *
-	 * @param date the date
-	 * @param balance the balance to be set
+	 * @return the number of days in this graph
 	 */
-	protected void setBalance(Date date, T balance) {
-		dateBalance.put(date, balance);
+	public int size() {
+		return size;
 	}
 
 	/**
-	 * Adds an amount to the balance for a particular date
+	 * Returns the day at the specified index
+	 *
+	 * @param index the index
+	 * @return the day at the specified index
+	 */
+	public LocalDate getDate(int index) {
+		return LocalDate.ofEpochDay(getEpochDay(index));
+	}
+
+	/**
+	 * Returns the day at the specified index as an epoch day
+	 *
+	 * @param index the index
+	 * @return the epoch day at the specified index
+	 */
+	public int getEpochDay(int index) {
+		checkIndex(index);
+		return epochDays[index];
+	}
+
+	/**
+	 * Returns the raw balance at the specified index (should be divided by
+	 * Constants.RAW_AMOUNT_MULTIPLIER to get the real balance)
+	 *
+	 * @param index the index
+	 * @return the raw balance at the specified index
+	 */
+	public long getRawBalance(int index) {
+		checkIndex(index);
+		return rawBalances[index];
+	}
+
+	/**
+	 * Returns the balance at the specified index
+	 *
+	 * @param index the index
+	 * @return the balance at the specified index
+	 */
+	public double getBalance(int index) {
+		return getRawBalance(index) / Constants.RAW_AMOUNT_MULTIPLIER;
+	}
+
+	/**
+	 * Returns a graph with at most maxPoints days, selected with the
+	 * Largest-Triangle-Three-Buckets algorithm to preserve the graph's shape.
+	 * The first and last days are always kept.
+	 *
+	 * @param maxPoints the maximum number of days to keep (a value less than 2
+	 * keeps only the first and last days)
+	 * @return this graph if it has no more than maxPoints days, or a new
+	 * downsampled DateBalance
+	 */
+	public DateBalance downsample(int maxPoints) {
+		maxPoints = Math.max(maxPoints, 2);
+		if (size <= maxPoints)
+			return this;
+		int[] sampledDays = new int[maxPoints];
+		long[] sampledBalances = new long[maxPoints];
+		sampledDays[0] = epochDays[0];
+		sampledBalances[0] = rawBalances[0];
+		//Every bucket except the first and last point gets a single point
+		double bucketSize = (double) (size - 2) / (maxPoints - 2);
+		int selected = 0;
+		for (int bucket = 0; bucket < maxPoints - 2; bucket++) {
+			int bucketStart = (int) (bucket * bucketSize) + 1;
+			int bucketEnd = bucket < maxPoints - 3 ? (int) ((bucket + 1) * bucketSize) + 1 : size - 1;
+			//Average of the next bucket (or the last point)
+			int nextStart = bucketEnd;
+			int nextEnd = Math.min((int) ((bucket + 2) * bucketSize) + 1, size);
+			if (bucket == maxPoints - 3) {
+				nextStart = size - 1;
+				nextEnd = size;
+			}
+			double averageDay = 0, averageBalance = 0;
+			for (int i = nextStart; i < nextEnd; i++) {
+				averageDay += epochDays[i];
+				averageBalance += rawBalances[i];
+			}
+			averageDay /= nextEnd - nextStart;
+			averageBalance /= nextEnd - nextStart;
+			//Select the point forming the largest triangle with the previously selected point and the next bucket's average
+			double selectedDay = epochDays[selected], selectedBalance = rawBalances[selected];
+			double maxArea = -1;
+			int maxAreaIndex = bucketStart;
+			for (int i = bucketStart; i < bucketEnd; i++) {
+				double area = Math.abs((selectedDay - averageDay) * (rawBalances[i] - selectedBalance)
+						- (selectedDay - epochDays[i]) * (averageBalance - selectedBalance));
+				if (area > maxArea) {
+					maxArea = area;
+					maxAreaIndex = i;
+				}
+			}
+			selected = maxAreaIndex;
+			sampledDays[bucket + 1] = epochDays[selected];
+			sampledBalances[bucket + 1] = rawBalances[selected];
+		}
+		sampledDays[maxPoints - 1] = epochDays[size - 1];
+		sampledBalances[maxPoints - 1] = rawBalances[size - 1];
+		return new DateBalance(sampledDays, sampledBalances);
+	}
+
+	/**
+	 * Sets the balance for a particular date; appending a date after the last
+	 * date doesn't require a search
 	 *
 	 * @param date the date
-	 * @param add the amount to add
-	 */
-	protected void addBalance(Date date, T add) {
-		if (!dateBalance.containsKey(date))
-			dateBalance.put(date, add);
-		else {
-			T value = dateBalance.get(date);
-			if (balanceType == Double.class || balanceType == double.class)
-				dateBalance.put(date, balanceType.cast(value.doubleValue() + add.doubleValue()));
-			else if (balanceType == Long.class || balanceType == long.class)
-				dateBalance.put(date, balanceType.cast(value.longValue() + add.longValue()));
-			else if (balanceType == Integer.class || balanceType == int.class)
-				dateBalance.put(date, balanceType.cast(value.intValue() + add.intValue()));
+	 * @param rawBalance the raw balance to be set
+	 */
+	protected void setBalance(Date date, long rawBalance) {
+		int index = findOrInsert(toEpochDay(date));
+		rawBalances[index] = rawBalance;
+	}
+
+	/**
+	 * Returns the index for an epoch day, inserting a zero balance if the day
+	 * is not yet in the graph
+	 *
+	 * @param epochDay the epoch day
+	 * @return the index of epochDay
+	 */
+	private int findOrInsert(int epochDay) {
+		if (size > 0 && epochDays[size - 1] == epochDay)
+			return size - 1;
+		int index = (size == 0 || epochDays[size - 1] < epochDay) ? size : lowerBound(epochDay);
+		if (index < size && epochDays[index] == epochDay)
+			return index;
+		if (size == epochDays.length) {
+			epochDays = Arrays.copyOf(epochDays, size * 2);
+			rawBalances = Arrays.copyOf(rawBalances, size * 2);
+		}
+		System.arraycopy(epochDays, index, epochDays, index + 1, size - index);
+		System.arraycopy(rawBalances, index, rawBalances, index + 1, size - index);
+		epochDays[index] = epochDay;
+		rawBalances[index] = 0L;
+		size++;
+		return index;
+	}
+
+	/**
+	 * Returns the index of the first day which is not before epochDay
+	 *
+	 * @param epochDay the epoch day to search
+	 * @return the index of the first day not before epochDay, or size if
+	 * there's no such day
+	 */
+	private int lowerBound(long epochDay) {
+		int low = 0, high = size;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (epochDays[mid] < epochDay)
+				low = mid + 1;
 			else
-				throw new ClassCastException(new MessageFormat(messages.getString("CANNOT_PROCESS_UNSUPPORTED_NUMBER_TYPE")).format(new Object[]{balanceType.getName()}));
+				high = mid;
 		}
+		return low;
+	}
+
+	/**
+	 * Checks that index is in range
+	 *
+	 * @param index the index to check
+	 */
+	private void checkIndex(int index) {
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException(Integer.toString(index));
+	}
+
+	/**
+	 * Converts a date into an epoch day (using the default time zone)
+	 *
+	 * @param date the date to convert
+	 * @return the epoch day for date
+	 */
+	private static int toEpochDay(Date date) {
+		return toEpochDay(new java.sql.Date(date.getTime()).toLocalDate());
+	}
+
+	/**
+	 * Converts a day into an epoch day
+	 *
+	 * @param date the day to convert
+	 * @return the epoch day for date
+	 */
+	private static int toEpochDay(LocalDate date) {
+		return Math.toIntExact(date.toEpochDay());
 	}
 }
@@ -5,9 +5,7 @@
  */
 package org.zlogic.vogon.data.report;
 
-import java.util.Date;
 import java.util.List;
-import java.util.Map;
 
 /**
  * Report results class
@@ -27,7 +25,7 @@ public class Report {
 	/**
 	 * Accounts balance chart
 	 */
-	private Map<Date, Double> accountsBalanceGraph;
+	private DateBalance accountsBalanceGraph;
 
 	/**
 	 * Default constructor
@@ -80,7 +78,7 @@ public class Report {
 	 *
 	 * @return the accounts balance chart
 	 */
-	public Map<Date, Double> getAccountsBalanceGraph() {
+	public DateBalance getAccountsBalanceGraph() {
 		return accountsBalanceGraph;
 	}
 
@@ -89,7 +87,7 @@ public class Report {
 	 *
 	 * @param accountsBalanceGraph the accounts balance chart to set
 	 */
-	protected void setAccountsBalanceGraph(Map<Date, Double> accountsBalanceGraph) {
+	protected void setAccountsBalanceGraph(DateBalance accountsBalanceGraph) {
 		this.accountsBalanceGraph = accountsBalanceGraph;
 	}
 }
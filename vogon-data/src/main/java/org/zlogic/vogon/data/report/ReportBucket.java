@@ -0,0 +1,137 @@
+/*
+ * Vogon personal finance/expense analyzer.
+ * Licensed under Apache 2.0 License: http://www.apache.org/licenses/LICENSE-2.0
+ * Author: Dmitry Zolotukhin <zlogic@gmail.com>
+ */
+package org.zlogic.vogon.data.report;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.zlogic.vogon.data.Constants;
+
+/**
+ * Class for storing aggregated amounts for a time period (bucket)
+ *
+ * @author Dmitry Zolotukhin [zlogic@gmail.com]
+ */
+public class ReportBucket {
+
+	/**
+	 * The first day of the bucket
+	 */
+	private final LocalDate start;
+	/**
+	 * Total amount of income transactions
+	 */
+	private long income;
+	/**
+	 * Total amount of expense transactions (negative)
+	 */
+	private long expense;
+	/**
+	 * Total amount of transfer transactions
+	 */
+	private long transferVolume;
+	/**
+	 * Amounts grouped by tag
+	 */
+	private final Map<String, TagExpense> tagExpenses = new TreeMap<>();
+
+	/**
+	 * Default constructor
+	 *
+	 * @param start the first day of the bucket
+	 */
+	protected ReportBucket(LocalDate start) {
+		this.start = start;
+	}
+
+	/**
+	 * Adds an income amount
+	 *
+	 * @param amount the raw amount to add
+	 */
+	protected void addRawIncome(long amount) {
+		income += amount;
+	}
+
+	/**
+	 * Adds an expense amount
+	 *
+	 * @param amount the raw amount to add (negative)
+	 */
+	protected void addRawExpense(long amount) {
+		expense += amount;
+	}
+
+	/**
+	 * Adds a transfer amount
+	 *
+	 * @param amount the raw amount to add
+	 */
+	protected void addRawTransferVolume(long amount) {
+		transferVolume += amount;
+	}
+
+	/**
+	 * Adds an amount to a tag
+	 *
+	 * @param tag the tag
+	 * @param amount the raw amount to add
+	 */
+	protected void addRawTagAmount(String tag, long amount) {
+		tagExpenses.computeIfAbsent(tag, TagExpense::new).addRawAmount(amount);
+	}
+
+	/**
+	 * Returns the first day of the bucket
+	 *
+	 * @return the first day of the bucket
+	 */
+	public Date getDate() {
+		return Date.from(start.atStartOfDay(ZoneId.systemDefault()).toInstant());
+	}
+
+	/**
+	 * Returns the total amount of income transactions
+	 *
+	 * @return the total amount of income transactions
+	 */
+	public double getIncome() {
+		return income / Constants.RAW_AMOUNT_MULTIPLIER;
+	}
+
+	/**
+	 * Returns the total amount of expense transactions
+	 *
+	 * @return the total amount of expense transactions (negative)
+	 */
+	public double getExpense() {
+		return expense / Constants.RAW_AMOUNT_MULTIPLIER;
+	}
+
+	/**
+	 * Returns the total amount of transfer transactions
+	 *
+	 * @return the total amount of transfer transactions
+	 */
+	public double getTransferVolume() {
+		return transferVolume / Constants.RAW_AMOUNT_MULTIPLIER;
+	}
+
+	/**
+	 * Returns amounts grouped by tag, sorted by absolute amount descending
+	 *
+	 * @return amounts grouped by tag
+	 */
+	public List<TagExpense> getTagExpenses() {
+		List<TagExpense> tagExpenseList = new ArrayList<>(tagExpenses.values());
+		tagExpenseList.sort((tag1, tag2) -> -Double.compare(Math.abs(tag1.getAmount()), Math.abs(tag2.getAmount())));
+		return tagExpenseList;
+	}
+}
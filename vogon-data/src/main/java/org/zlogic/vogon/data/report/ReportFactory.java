@@ -5,31 +5,50 @@
  */
 package org.zlogic.vogon.data.report;
 
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Currency;
 import java.util.Date;
 import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.ResourceBundle;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
 import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Tuple;
+import javax.persistence.criteria.AbstractQuery;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
 import javax.persistence.criteria.Expression;
 import javax.persistence.criteria.Join;
 import javax.persistence.criteria.JoinType;
 import javax.persistence.criteria.Order;
+import javax.persistence.criteria.Path;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Subquery;
 import javax.persistence.metamodel.SingularAttribute;
-import org.zlogic.vogon.data.Constants;
+import org.zlogic.vogon.data.AccountDailyBalance;
+import org.zlogic.vogon.data.AccountDailyBalance_;
 import org.zlogic.vogon.data.FinanceAccount;
+import org.zlogic.vogon.data.FinanceAccount_;
 import org.zlogic.vogon.data.FinanceTransaction;
 import org.zlogic.vogon.data.FinanceTransaction_;
+import org.zlogic.vogon.data.Tag;
+import org.zlogic.vogon.data.TagResolver;
+import org.zlogic.vogon.data.Tag_;
 import org.zlogic.vogon.data.TransactionComponent;
 import org.zlogic.vogon.data.TransactionComponent_;
 import org.zlogic.vogon.data.VogonUser;
@@ -82,6 +101,23 @@ public class ReportFactory {
 	 * Show transfer transactions
 	 */
 	protected boolean enabledTransferTransactions;
+	/**
+	 * The maximum number of points in the balance graph (0 if unlimited)
+	 */
+	protected int maxPoints;
+	/**
+	 * The maximum number of transactions in the report (0 if unlimited)
+	 */
+	protected int topN;
+	/**
+	 * All of the owner's tags, if known in advance (otherwise they're queried
+	 * when needed)
+	 */
+	private Set<String> allTags;
+	/**
+	 * The IDs of selectedTags, resolved once before building a report
+	 */
+	private volatile Set<Long> selectedTagIds;
 
 	/**
 	 * Filter enablement
@@ -92,6 +128,10 @@ public class ReportFactory {
 		 * Filter transaction date (earliestDate+latestDate)
 		 */
 		DATE,
+		/**
+		 * Filter only by the high cutoff date (latestDate)
+		 */
+		LATEST_DATE,
 		/**
 		 * Filter by transaction tags (selectedTags)
 		 */
@@ -202,6 +242,7 @@ public class ReportFactory {
 			this.selectedTags = null;
 		else
 			this.selectedTags = selectedTags;
+		selectedTagIds = null;
 	}
 
 	/**
@@ -282,6 +323,59 @@ public class ReportFactory {
 		this.enabledTransferTransactions = enabledTransferTransactions;
 	}
 
+	/**
+	 * Returns the maximum number of points in the balance graph
+	 *
+	 * @return the maximum number of points in the balance graph, or 0 if
+	 * unlimited
+	 */
+	public int getMaxPoints() {
+		return maxPoints;
+	}
+
+	/**
+	 * Sets the maximum number of points in the balance graph; longer graphs
+	 * will be downsampled
+	 *
+	 * @param maxPoints the maximum number of points in the balance graph, or 0
+	 * if unlimited
+	 */
+	public void setMaxPoints(int maxPoints) {
+		this.maxPoints = maxPoints;
+	}
+
+	/**
+	 * Returns the maximum number of transactions in the report
+	 *
+	 * @return the maximum number of transactions in the report, or 0 if
+	 * unlimited
+	 */
+	public int getTopN() {
+		return topN;
+	}
+
+	/**
+	 * Sets the maximum number of transactions in the report; only the
+	 * transactions with the largest amounts will be included
+	 *
+	 * @param topN the maximum number of transactions in the report, or 0 if
+	 * unlimited
+	 */
+	public void setTopN(int topN) {
+		this.topN = topN;
+	}
+
+	/**
+	 * Sets all of the owner's tags, if they are already known (e.g. cached);
+	 * saves a query when checking if the report filters exclude any tags
+	 *
+	 * @param allTags all of the owner's tags (including the empty tag), or
+	 * null if they should be queried when needed
+	 */
+	public void setAllTags(Set<String> allTags) {
+		this.allTags = allTags;
+	}
+
 	/**
 	 * Prepares the report
 	 *
@@ -291,172 +385,305 @@ public class ReportFactory {
 	 * @return the report
 	 */
 	public Map<String, Report> buildReport(EntityManager entityManager) throws SecurityException {
+		return buildReport(entityManager, currency -> {
+		});
+	}
+
+	/**
+	 * Prepares the report, notifying a listener after every currency's report
+	 * is completed. Stops if the current thread is interrupted.
+	 *
+	 * @param entityManager the EntityManager to be used for making queries;
+	 * should be opened/closed outside of this function before calling this
+	 * function
+	 * @param currencyCompleted the listener which will receive the currency
+	 * code of every completed currency report
+	 * @return the report
+	 */
+	public Map<String, Report> buildReport(EntityManager entityManager, Consumer<String> currencyCompleted) throws SecurityException {
 		if (owner == null)
 			throw new SecurityException(messages.getString("NOT_ALLOWED_TO_GET_DATA_FOR_UNKNOWN_USER"));
-		
-		Collection<Currency> currencies = new HashSet<>();
-		if(selectedAccounts != null)
-			for (FinanceAccount account : selectedAccounts) {
-				currencies.add(account.getCurrency());
-			}
 
+		Map<Currency, Collection<FinanceAccount>> accountsByCurrency = getAccountsByCurrency();
 		Map<String, Report> reportsByCurrency = new TreeMap<>();
+		if (accountsByCurrency.isEmpty())
+			return reportsByCurrency;
 
-		for (Currency currency : currencies) {
-			Collection<FinanceAccount> currencyAccounts = new HashSet<>();
-			for (FinanceAccount account : selectedAccounts)
-				if (account.getCurrency() == currency)
-					currencyAccounts.add(account);
-
-			Map<String, TagExpense> tagExpenses = new TreeMap<>();
-			
-			List<ReportTransaction> reportTransactions = new ArrayList<>();
-			for (FinanceTransaction transaction : getTransactions(entityManager, currencyAccounts)){
-				ReportTransaction reportTransaction = new ReportTransaction(transaction, currencyAccounts);
-				reportTransactions.add(reportTransaction);
-				for (String tag : transaction.getTags())
-					addTagExpense(tag, reportTransaction.getRawAmount(), tagExpenses);
-				if (transaction.getTags().length == 0)
-					addTagExpense(EMPTY_TAG, reportTransaction.getRawAmount(), tagExpenses);
+		resolveSelectedTags(entityManager);
+		boolean unfilteredBalance = isUnfilteredBalance(entityManager);
+		for (Map.Entry<Currency, Collection<FinanceAccount>> currencyAccounts : accountsByCurrency.entrySet()) {
+			if (Thread.currentThread().isInterrupted())
+				throw new RuntimeException(messages.getString("REPORT_WAS_INTERRUPTED"));
+			String currencyCode = currencyAccounts.getKey().getCurrencyCode();
+			reportsByCurrency.put(currencyCode, buildCurrencyReport(entityManager, currencyAccounts.getValue(), unfilteredBalance));
+			currencyCompleted.accept(currencyCode);
+		}
+		return reportsByCurrency;
+	}
+
+	/**
+	 * Returns a page of the report's transactions for every currency, ordered
+	 * by their absolute amount (largest first). The first page contains the
+	 * same transactions as a report with topN set to limit.
+	 *
+	 * @param entityManager the EntityManager to be used for making queries
+	 * @param offset the number of largest transactions to skip
+	 * @param limit the maximum number of transactions to return for every
+	 * currency
+	 * @return the transactions page for every currency
+	 */
+	public Map<String, List<ReportTransaction>> buildTransactionsPage(EntityManager entityManager, int offset, int limit) throws SecurityException {
+		if (owner == null)
+			throw new SecurityException(messages.getString("NOT_ALLOWED_TO_GET_DATA_FOR_UNKNOWN_USER"));
+
+		resolveSelectedTags(entityManager);
+		Map<String, List<ReportTransaction>> transactionsByCurrency = new TreeMap<>();
+		for (Map.Entry<Currency, Collection<FinanceAccount>> currencyAccounts : getAccountsByCurrency().entrySet()) {
+			Collection<FinanceAccount> accounts = currencyAccounts.getValue();
+			TransactionRanking ranking = new TransactionRanking(Math.addExact(Math.max(offset, 0), Math.max(limit, 1)));
+			try (Stream<FinanceTransaction> transactions = streamTransactions(
+					entityManager,
+					accounts,
+					FinanceTransaction_.transactionDate, true, false,
+					EnumSet.of(FilterType.DATE, FilterType.ACCOUNTS, FilterType.TAGS, FilterType.TRANSACTION_TYPE))) {
+				transactions.forEach(transaction -> ranking.add(new ReportTransaction(transaction, accounts)));
 			}
-			reportTransactions.sort((tr1, tr2) -> -Double.compare(Math.abs(tr1.getAmount()), Math.abs(tr2.getAmount())));
+			transactionsByCurrency.put(currencyAccounts.getKey().getCurrencyCode(), ranking.getTransactions(offset));
+		}
+		return transactionsByCurrency;
+	}
+
+	/**
+	 * Prepares the report grouped into time periods (buckets) for every
+	 * currency. Every bucket contains the total income, expense and transfer
+	 * amounts and amounts grouped by tag.
+	 *
+	 * @param entityManager the EntityManager to be used for making queries
+	 * @param bucketSize the bucket size
+	 * @return the non-empty buckets for every currency, ordered by date
+	 */
+	public Map<String, List<ReportBucket>> buildBuckets(EntityManager entityManager, BucketSize bucketSize) throws SecurityException {
+		if (owner == null)
+			throw new SecurityException(messages.getString("NOT_ALLOWED_TO_GET_DATA_FOR_UNKNOWN_USER"));
+
+		resolveSelectedTags(entityManager);
+		Map<String, List<ReportBucket>> bucketsByCurrency = new TreeMap<>();
+		for (Map.Entry<Currency, Collection<FinanceAccount>> currencyAccounts : getAccountsByCurrency().entrySet())
+			bucketsByCurrency.put(currencyAccounts.getKey().getCurrencyCode(), buildCurrencyBuckets(entityManager, currencyAccounts.getValue(), bucketSize));
+		return bucketsByCurrency;
+	}
 
-			List<TagExpense> tagExpenseList = new ArrayList<>(tagExpenses.values());
-			tagExpenseList.sort((tag1, tag2) -> -Double.compare(Math.abs(tag1.getAmount()), Math.abs(tag2.getAmount())));
+	/**
+	 * Prepares the report, building every currency's report as a separate
+	 * task. Each task uses its own EntityManager and read-only transaction.
+	 *
+	 * @param entityManagerFactory the EntityManagerFactory used to create an
+	 * EntityManager for every task
+	 * @param executor the executor which will run the tasks
+	 * @return the report
+	 */
+	public Map<String, Report> buildReport(EntityManagerFactory entityManagerFactory, ExecutorService executor) throws SecurityException {
+		if (owner == null)
+			throw new SecurityException(messages.getString("NOT_ALLOWED_TO_GET_DATA_FOR_UNKNOWN_USER"));
 
-			Report report = new Report();
-			report.setTransactions(reportTransactions);
-			report.setTagExpenses(tagExpenseList);
-			report.setAccountsBalanceGraph(getAccountsBalanceGraph(entityManager, currencyAccounts));
+		Map<String, Future<Report>> reportTasks = new TreeMap<>();
+		for (Map.Entry<Currency, Collection<FinanceAccount>> currencyAccounts : getAccountsByCurrency().entrySet())
+			reportTasks.put(currencyAccounts.getKey().getCurrencyCode(), executor.submit(() -> {
+				EntityManager entityManager = entityManagerFactory.createEntityManager();
+				try {
+					entityManager.getTransaction().begin();
+					resolveSelectedTags(entityManager);
+					return buildCurrencyReport(entityManager, currencyAccounts.getValue(), isUnfilteredBalance(entityManager));
+				} finally {
+					if (entityManager.getTransaction().isActive())
+						entityManager.getTransaction().rollback();
+					entityManager.close();
+				}
+			}));
 
-			reportsByCurrency.put(currency.getCurrencyCode(), report);
+		Map<String, Report> reportsByCurrency = new TreeMap<>();
+		try {
+			for (Map.Entry<String, Future<Report>> reportTask : reportTasks.entrySet())
+				reportsByCurrency.put(reportTask.getKey(), reportTask.getValue().get());
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(messages.getString("REPORT_WAS_INTERRUPTED"), ex);
+		} catch (ExecutionException ex) {
+			if (ex.getCause() instanceof RuntimeException)
+				throw (RuntimeException) ex.getCause();
+			throw new RuntimeException(ex.getCause());
+		} finally {
+			for (Future<Report> reportTask : reportTasks.values())
+				reportTask.cancel(true);
 		}
 		return reportsByCurrency;
 	}
 
 	/**
-	 * Returns all transactions matching the set filters, ordered by date
-	 * descending
+	 * Groups the selected accounts by currency
+	 *
+	 * @return the selected accounts, grouped by currency
+	 */
+	private Map<Currency, Collection<FinanceAccount>> getAccountsByCurrency() {
+		Map<Currency, Collection<FinanceAccount>> accountsByCurrency = new HashMap<>();
+		if (selectedAccounts != null)
+			for (FinanceAccount account : selectedAccounts)
+				accountsByCurrency.computeIfAbsent(account.getCurrency(), currency -> new HashSet<>()).add(account);
+		return accountsByCurrency;
+	}
+
+	/**
+	 * Resolves the selected tag names into tag IDs, if they're not resolved
+	 * yet; filtering by IDs avoids comparing tag names in every query
 	 *
 	 * @param entityManager the EntityManager to be used for making queries
-	 * @param accounts the accounts for which transaction components should be included
-	 * @return list of all transactions matching the set filters, ordered by
-	 * amount descending
 	 */
-	private List<FinanceTransaction> getTransactions(EntityManager entityManager, Collection<FinanceAccount> accounts) {
-		return getTransactions(entityManager, accounts, FinanceTransaction_.transactionDate, true, true, EnumSet.allOf(FilterType.class));
+	private synchronized void resolveSelectedTags(EntityManager entityManager) {
+		if (selectedTagIds == null)
+			selectedTagIds = selectedTags != null ? TagResolver.findTagIds(entityManager, selectedTags, false) : new HashSet<>();
 	}
 
 	/**
-	 * Class for storing a generated predicate and joins (should be used in
-	 * groupBy to avoid duplicate results)
+	 * Returns true if the report filters don't exclude any transactions, and
+	 * the balance graph can be read from the accounts' daily balances
+	 *
+	 * @param entityManager the EntityManager to be used for making queries
+	 * @return true if the report filters don't exclude any transactions
 	 */
-	private class ConstructedPredicate {
+	private boolean isUnfilteredBalance(EntityManager entityManager) {
+		return enabledExpenseTransactions && enabledIncomeTransactions && enabledTransferTransactions
+				&& selectedTags != null && selectedTags.containsAll(allTags != null ? allTags : getAllTags(entityManager));
+	}
 
-		/**
-		 * The generated predicate
-		 */
-		private final Predicate predicate;
-		/**
-		 * The components join
-		 */
-		private final Join<FinanceTransaction, TransactionComponent> componentsJoin;
-		/**
-		 * The tags join
-		 */
-		private final Join<FinanceTransaction, String> tagsJoin;
+	/**
+	 * Prepares the report for accounts sharing the same currency. Matching
+	 * transactions are streamed once, ordered by date; the same pass ranks the
+	 * transactions (keeping only the largest topN) and fills the balance graph. If the balance graph is built
+	 * from transactions, transactions before earliestDate are only used to
+	 * compute the opening balance. Tag expenses are aggregated by the
+	 * database.
+	 *
+	 * @param entityManager the EntityManager to be used for making queries
+	 * @param accounts the accounts for which the report should be built (must
+	 * have the same currency)
+	 * @param unfilteredBalance true if the report filters don't exclude any
+	 * transactions; the balance graph will be read from the accounts' daily
+	 * balances if they're valid
+	 * @return the report for accounts
+	 */
+	private Report buildCurrencyReport(EntityManager entityManager, Collection<FinanceAccount> accounts, boolean unfilteredBalance) {
+		boolean useDailyBalances = unfilteredBalance && hasValidDailyBalances(entityManager, accounts);
+		TransactionRanking reportTransactions = new TransactionRanking(topN);
+		DateBalance currentBalance = new DateBalance();
+		LocalDate earliestDay = toLocalDate(earliestDate);
 
-		/**
-		 * Default constructor
-		 *
-		 * @param predicate the generated predicate
-		 * @param componentsJoin the transaction components join
-		 * @param tagsJoin the transaction tags join
-		 */
-		public ConstructedPredicate(Predicate predicate, Join<FinanceTransaction, TransactionComponent> componentsJoin, Join<FinanceTransaction, String> tagsJoin) {
-			this.predicate = predicate;
-			this.componentsJoin = componentsJoin;
-			this.tagsJoin = tagsJoin;
-		}
+		long sumBalance = 0;
+		try (Stream<FinanceTransaction> transactions = streamTransactions(
+				entityManager,
+				accounts,
+				FinanceTransaction_.transactionDate, true, false,
+				EnumSet.of(useDailyBalances ? FilterType.DATE : FilterType.LATEST_DATE, FilterType.ACCOUNTS, FilterType.TAGS, FilterType.TRANSACTION_TYPE))) {
+			Iterator<FinanceTransaction> iterator = transactions.iterator();
+			while (iterator.hasNext()) {
+				FinanceTransaction transaction = iterator.next();
+				//Compute balance change for transaction
+				for (TransactionComponent component : transaction.getComponents())
+					if (accounts.contains(component.getAccount()))
+						sumBalance += component.getRawAmount();
 
-		/**
-		 * Returns the generated predicate
-		 *
-		 * @return the predicate
-		 */
-		public Predicate getPredicate() {
-			return predicate;
-		}
+				if (toLocalDate(transaction.getDate()).isBefore(earliestDay))
+					continue;
 
-		/**
-		 * Returns the transaction components join
-		 *
-		 * @return the transaction components join
-		 */
-		public Join<FinanceTransaction, TransactionComponent> getComponentsJoin() {
-			return componentsJoin;
-		}
+				reportTransactions.add(new ReportTransaction(transaction, accounts));
 
-		/**
-		 * Returns the transaction tags join
-		 *
-		 * @return the transaction tags join
-		 */
-		public Join<FinanceTransaction, String> getTagsJoin() {
-			return tagsJoin;
+				//Update balance map
+				if (!useDailyBalances)
+					currentBalance.setBalance(transaction.getDate(), sumBalance);
+			}
 		}
+		if (useDailyBalances)
+			currentBalance = getDailyBalanceGraph(entityManager, accounts);
+		if (maxPoints > 0)
+			currentBalance = currentBalance.downsample(maxPoints);
+
+		Report report = new Report();
+		report.setTransactions(reportTransactions.getTransactions(0));
+		report.setTagExpenses(getTagExpenses(entityManager, accounts));
+		report.setAccountsBalanceGraph(currentBalance);
+		return report;
+	}
+
+	/**
+	 * Converts a date into the calendar day used by the database (DATE columns
+	 * are stored in the server's local time zone)
+	 *
+	 * @param date the date to convert
+	 * @return the calendar day for date
+	 */
+	private static LocalDate toLocalDate(Date date) {
+		return new java.sql.Date(date.getTime()).toLocalDate();
 	}
 
 	/**
-	 * Returns a predicate for filtering transactions
+	 * Returns a predicate for filtering transactions. Component and tag
+	 * filters use EXISTS subqueries, so that every matching transaction is
+	 * returned only once without using distinct or groupBy.
 	 *
 	 * @param criteriaBuilder the CriteriaBuilder
+	 * @param query the query which will use the predicate
 	 * @param tr the FinanceTransaction Root
 	 * @param accounts the accounts for which transaction components should be included
 	 * @param appliedFilters the filters which should be applied
-	 * @return the predicate for filtering transactions and joins which should
-	 * be used in groupBy if result of selection is not a unique FinanceAccount
+	 * @return the predicate for filtering transactions
 	 */
-	private ConstructedPredicate getFilteredTransactionsPredicate(CriteriaBuilder criteriaBuilder, Root<FinanceTransaction> tr, Collection<FinanceAccount> accounts , EnumSet<FilterType> appliedFilters) {
+	private Predicate getFilteredTransactionsPredicate(CriteriaBuilder criteriaBuilder, AbstractQuery<?> query, Root<FinanceTransaction> tr, Collection<FinanceAccount> accounts, EnumSet<FilterType> appliedFilters) {
 		//User filter
 		Predicate userPredicate = criteriaBuilder.equal(tr.get(FinanceTransaction_.owner), owner.getId());
 
 		//Date filter
 		Predicate datePredicate = criteriaBuilder.and(criteriaBuilder.greaterThanOrEqualTo(tr.<Date>get(FinanceTransaction_.transactionDate), earliestDate),
 				criteriaBuilder.lessThanOrEqualTo(tr.<Date>get(FinanceTransaction_.transactionDate), latestDate));
+		Predicate latestDatePredicate = criteriaBuilder.lessThanOrEqualTo(tr.<Date>get(FinanceTransaction_.transactionDate), latestDate);
 
 		//Transaction type filter
 		Predicate transactionTypePredicate = criteriaBuilder.disjunction();
 		if (enabledExpenseTransactions || enabledIncomeTransactions)
-			transactionTypePredicate = criteriaBuilder.or(transactionTypePredicate, criteriaBuilder.equal(tr.get(FinanceTransaction_.type), FinanceTransaction.Type.EXPENSEINCOME));
+			transactionTypePredicate = criteriaBuilder.or(transactionTypePredicate, criteriaBuilder.and(
+					criteriaBuilder.equal(tr.get(FinanceTransaction_.type), FinanceTransaction.Type.EXPENSEINCOME),
+					getExpenseIncomeSignPredicate(criteriaBuilder, query, tr, accounts)));
 		if (enabledTransferTransactions)
 			transactionTypePredicate = criteriaBuilder.or(transactionTypePredicate, criteriaBuilder.equal(tr.get(FinanceTransaction_.type), FinanceTransaction.Type.TRANSFER));
 
-		//Tags join
-		Join<FinanceTransaction, String> tagsJoin = tr.join(FinanceTransaction_.tags, JoinType.LEFT);
-		Predicate tagsPredicate = (selectedTags != null && !selectedTags.isEmpty()) ? tagsJoin.in(criteriaBuilder.literal(selectedTags)) : criteriaBuilder.disjunction();
-		tagsPredicate = (selectedTags != null && selectedTags.contains("")) ? criteriaBuilder.or(tagsPredicate, criteriaBuilder.isNull(tagsJoin)) : tagsPredicate;
-
-		//Transaction components join
-		Join<FinanceTransaction, TransactionComponent> componentsJoin = tr.join(FinanceTransaction_.components);
-		Predicate accountsPredicate = componentsJoin.get(TransactionComponent_.account).in(criteriaBuilder.literal(accounts));
+		//Transaction components filter
+		Subquery<Long> componentsSubquery = query.subquery(Long.class);
+		Root<TransactionComponent> component = componentsSubquery.from(TransactionComponent.class);
+		componentsSubquery.select(component.get(TransactionComponent_.id));
+		componentsSubquery.where(
+				criteriaBuilder.equal(component.get(TransactionComponent_.transaction), tr),
+				component.get(TransactionComponent_.account).in(criteriaBuilder.literal(accounts)));
+		Predicate accountsPredicate = criteriaBuilder.exists(componentsSubquery);
 
 		//Combine all filters
 		Predicate rootPredicate = criteriaBuilder.conjunction();
 		rootPredicate = criteriaBuilder.and(rootPredicate, userPredicate);
 		if (appliedFilters.contains(FilterType.DATE))
 			rootPredicate = criteriaBuilder.and(rootPredicate, datePredicate);
+		else if (appliedFilters.contains(FilterType.LATEST_DATE))
+			rootPredicate = criteriaBuilder.and(rootPredicate, latestDatePredicate);
 		if (appliedFilters.contains(FilterType.ACCOUNTS))
 			rootPredicate = criteriaBuilder.and(rootPredicate, accountsPredicate);
 		if (appliedFilters.contains(FilterType.TAGS))
-			rootPredicate = criteriaBuilder.and(rootPredicate, tagsPredicate);
+			rootPredicate = criteriaBuilder.and(rootPredicate, getSelectedTagsPredicate(criteriaBuilder, query, tr));
 		if (appliedFilters.contains(FilterType.TRANSACTION_TYPE))
 			rootPredicate = criteriaBuilder.and(rootPredicate, transactionTypePredicate);
-		return new ConstructedPredicate(rootPredicate, componentsJoin, tagsJoin);
+		return rootPredicate;
 	}
 
 	/**
-	 * Returns all transactions matching the set filters
+	 * Returns a stream of all transactions matching the set filters; the
+	 * stream should be closed after use. Transaction components are fetched by
+	 * the same query, so that reading them doesn't require a query for every
+	 * transaction.
 	 *
 	 * @param <OrderByClass> type of ordering field
 	 * @param entityManager the EntityManager to be used for making queries
@@ -467,16 +694,17 @@ public class ReportFactory {
 	 * @param orderAbsolute true if order should be for absolute value (e.g.
 	 * ABS(orderBy))
 	 * @param appliedFilters the filters which should be applied
-	 * @return list of all transactions matching the set filters
+	 * @return stream of all transactions matching the set filters
 	 */
-	private <OrderByClass> List<FinanceTransaction> getTransactions(EntityManager entityManager, Collection<FinanceAccount> accounts, SingularAttribute<FinanceTransaction, OrderByClass> orderBy, boolean orderAsc, boolean orderAbsolute, EnumSet<FilterType> appliedFilters) {
+	private <OrderByClass> Stream<FinanceTransaction> streamTransactions(EntityManager entityManager, Collection<FinanceAccount> accounts, SingularAttribute<FinanceTransaction, OrderByClass> orderBy, boolean orderAsc, boolean orderAbsolute, EnumSet<FilterType> appliedFilters) {
 		CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
 		CriteriaQuery<FinanceTransaction> transactionsCriteriaQuery = criteriaBuilder.createQuery(FinanceTransaction.class);
 		Root<FinanceTransaction> tr = transactionsCriteriaQuery.from(FinanceTransaction.class);
 
+		tr.fetch(FinanceTransaction_.components, JoinType.LEFT);
+
 		//Build general filter
-		ConstructedPredicate predicate = getFilteredTransactionsPredicate(criteriaBuilder, tr, accounts, appliedFilters);
-		transactionsCriteriaQuery.where(predicate.getPredicate());
+		transactionsCriteriaQuery.where(getFilteredTransactionsPredicate(criteriaBuilder, transactionsCriteriaQuery, tr, accounts, appliedFilters));
 
 		//Configure the query
 		Expression<?> userOrderBy = tr.get(orderBy);
@@ -498,30 +726,356 @@ public class ReportFactory {
 		Order userOrder = orderAsc ? criteriaBuilder.asc(userOrderBy) : criteriaBuilder.desc(userOrderBy);
 		Order idOrder = orderAsc ? criteriaBuilder.asc(tr.get(FinanceTransaction_.id)) : criteriaBuilder.desc(tr.get(FinanceTransaction_.id));
 
-		transactionsCriteriaQuery.select(tr).distinct(true);
+		//Ordering by ID keeps all fetched rows of a transaction together
+		transactionsCriteriaQuery.select(tr);
 		transactionsCriteriaQuery.orderBy(userOrder, idOrder);
-		transactionsCriteriaQuery.groupBy(tr, userOrderBy, predicate.getComponentsJoin(), predicate.getTagsJoin());
 
-		List<FinanceTransaction> transactions = new ArrayList<>();
-		for (FinanceTransaction transaction : entityManager.createQuery(transactionsCriteriaQuery).getResultList()) {
-			if (!appliedFilters.contains(FilterType.TRANSACTION_TYPE)) {
-				transactions.add(transaction);
+		return entityManager.createQuery(transactionsCriteriaQuery).getResultStream();
+	}
+
+	/**
+	 * Returns true if the daily balances of all accounts are in sync with
+	 * their transactions
+	 *
+	 * @param entityManager the EntityManager to be used for making queries
+	 * @param accounts the accounts to check
+	 * @return true if the daily balances of all accounts can be used
+	 */
+	private boolean hasValidDailyBalances(EntityManager entityManager, Collection<FinanceAccount> accounts) {
+		CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+		CriteriaQuery<Long> staleAccountsQuery = criteriaBuilder.createQuery(Long.class);
+		Root<FinanceAccount> account = staleAccountsQuery.from(FinanceAccount.class);
+		staleAccountsQuery.select(criteriaBuilder.count(account));
+		staleAccountsQuery.where(
+				account.in(criteriaBuilder.literal(accounts)),
+				criteriaBuilder.or(account.get(FinanceAccount_.dailyBalanceValid).isNull(), criteriaBuilder.isFalse(account.get(FinanceAccount_.dailyBalanceValid))));
+		return entityManager.createQuery(staleAccountsQuery).getSingleResult() == 0;
+	}
+
+	/**
+	 * Returns the accounts' balance graph from their daily balances. Only
+	 * reads days in the report's date range, and a single sum of all earlier
+	 * days as the opening balance.
+	 *
+	 * @param entityManager the EntityManager to be used for making queries
+	 * @param accounts the accounts for which the balance graph should be built
+	 * @return the raw balance for every day with transactions in the date range
+	 */
+	private DateBalance getDailyBalanceGraph(EntityManager entityManager, Collection<FinanceAccount> accounts) {
+		CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+
+		CriteriaQuery<Long> openingBalanceQuery = criteriaBuilder.createQuery(Long.class);
+		Root<AccountDailyBalance> openingDailyBalance = openingBalanceQuery.from(AccountDailyBalance.class);
+		openingBalanceQuery.select(criteriaBuilder.sum(openingDailyBalance.get(AccountDailyBalance_.amount)));
+		openingBalanceQuery.where(
+				openingDailyBalance.get(AccountDailyBalance_.account).in(criteriaBuilder.literal(accounts)),
+				criteriaBuilder.lessThan(openingDailyBalance.<Date>get(AccountDailyBalance_.balanceDate), earliestDate));
+		Long openingBalance = entityManager.createQuery(openingBalanceQuery).getSingleResult();
+
+		CriteriaQuery<Tuple> dailyBalancesQuery = criteriaBuilder.createTupleQuery();
+		Root<AccountDailyBalance> dailyBalance = dailyBalancesQuery.from(AccountDailyBalance.class);
+		Expression<Date> balanceDate = dailyBalance.get(AccountDailyBalance_.balanceDate);
+		dailyBalancesQuery.multiselect(balanceDate, criteriaBuilder.sum(dailyBalance.get(AccountDailyBalance_.amount)));
+		dailyBalancesQuery.where(
+				dailyBalance.get(AccountDailyBalance_.account).in(criteriaBuilder.literal(accounts)),
+				criteriaBuilder.greaterThanOrEqualTo(balanceDate, earliestDate),
+				criteriaBuilder.lessThanOrEqualTo(balanceDate, latestDate),
+				criteriaBuilder.greaterThan(dailyBalance.get(AccountDailyBalance_.componentCount), 0L));
+		dailyBalancesQuery.groupBy(balanceDate);
+		dailyBalancesQuery.orderBy(criteriaBuilder.asc(balanceDate));
+
+		DateBalance balanceGraph = new DateBalance();
+		long sumBalance = openingBalance != null ? openingBalance : 0L;
+		for (Tuple dayAmount : entityManager.createQuery(dailyBalancesQuery).getResultList()) {
+			sumBalance += dayAmount.get(1, Number.class).longValue();
+			balanceGraph.setBalance(dayAmount.get(0, Date.class), sumBalance);
+		}
+		return balanceGraph;
+	}
+
+	/**
+	 * Returns a predicate for transactions which have at least one of the
+	 * selected tags (or have no tags if the empty tag is selected). Uses a
+	 * subquery so that the tags join doesn't multiply the query results.
+	 * Requires the selected tags to be resolved with
+	 * {@link #resolveSelectedTags(javax.persistence.EntityManager)}.
+	 *
+	 * @param criteriaBuilder the CriteriaBuilder
+	 * @param query the query which will use the predicate
+	 * @param tr the FinanceTransaction Root
+	 * @return the predicate for filtering transactions by selected tags
+	 */
+	private Predicate getSelectedTagsPredicate(CriteriaBuilder criteriaBuilder, AbstractQuery<?> query, Root<FinanceTransaction> tr) {
+		Predicate tagsPredicate = criteriaBuilder.disjunction();
+		Set<Long> tagIds = selectedTagIds;
+		if (tagIds != null && !tagIds.isEmpty()) {
+			Subquery<Long> tagsSubquery = query.subquery(Long.class);
+			Root<FinanceTransaction> taggedTransaction = tagsSubquery.from(FinanceTransaction.class);
+			Join<FinanceTransaction, Tag> tagsJoin = taggedTransaction.join(FinanceTransaction_.tags);
+			tagsSubquery.select(taggedTransaction.get(FinanceTransaction_.id));
+			tagsSubquery.where(criteriaBuilder.equal(taggedTransaction, tr), tagsJoin.get(Tag_.id).in(tagIds));
+			tagsPredicate = criteriaBuilder.exists(tagsSubquery);
+		}
+		if (selectedTags != null && selectedTags.contains(EMPTY_TAG)) {
+			Subquery<Long> anyTagSubquery = query.subquery(Long.class);
+			Root<FinanceTransaction> taggedTransaction = anyTagSubquery.from(FinanceTransaction.class);
+			taggedTransaction.join(FinanceTransaction_.tags);
+			anyTagSubquery.select(taggedTransaction.get(FinanceTransaction_.id));
+			anyTagSubquery.where(criteriaBuilder.equal(taggedTransaction, tr));
+			tagsPredicate = criteriaBuilder.or(tagsPredicate, criteriaBuilder.not(criteriaBuilder.exists(anyTagSubquery)));
+		}
+		return tagsPredicate;
+	}
+
+	/**
+	 * Returns a predicate for expense/income transactions which matches the
+	 * enabledIncomeTransactions and enabledExpenseTransactions filters. The
+	 * sign is checked for the sum of components from accounts only.
+	 *
+	 * @param criteriaBuilder the CriteriaBuilder
+	 * @param query the query which will use the predicate
+	 * @param tr the FinanceTransaction Root
+	 * @param accounts the accounts for which transaction components should be
+	 * included
+	 * @return the predicate for filtering expense/income transactions by their
+	 * amount sign
+	 */
+	private Predicate getExpenseIncomeSignPredicate(CriteriaBuilder criteriaBuilder, AbstractQuery<?> query, Root<FinanceTransaction> tr, Collection<FinanceAccount> accounts) {
+		if (enabledIncomeTransactions == enabledExpenseTransactions)
+			return enabledIncomeTransactions ? criteriaBuilder.conjunction() : criteriaBuilder.disjunction();
+		return getAmountSignPredicate(criteriaBuilder, query, tr, accounts, enabledIncomeTransactions);
+	}
+
+	/**
+	 * Returns a predicate for transactions with a non-negative (income) or
+	 * non-positive (expense) sum of components from accounts. The sum is
+	 * calculated by a subquery correlated with tr, so that only the
+	 * components of transactions matched by the other filters are summed;
+	 * transactions without components from accounts don't match.
+	 *
+	 * @param criteriaBuilder the CriteriaBuilder
+	 * @param query the query which will use the predicate
+	 * @param tr the FinanceTransaction Root
+	 * @param accounts the accounts for which transaction components should be
+	 * included
+	 * @param income true if the sum should be non-negative, false if it should
+	 * be non-positive
+	 * @return the predicate for filtering transactions by their amount sign
+	 */
+	private Predicate getAmountSignPredicate(CriteriaBuilder criteriaBuilder, AbstractQuery<?> query, Root<FinanceTransaction> tr, Collection<FinanceAccount> accounts, boolean income) {
+		Subquery<Long> amountSumSubquery = query.subquery(Long.class);
+		Root<TransactionComponent> component = amountSumSubquery.from(TransactionComponent.class);
+		amountSumSubquery.select(criteriaBuilder.sum(component.get(TransactionComponent_.amount)));
+		amountSumSubquery.where(
+				criteriaBuilder.equal(component.get(TransactionComponent_.transaction), tr),
+				component.get(TransactionComponent_.account).in(criteriaBuilder.literal(accounts)));
+		return income ? criteriaBuilder.ge(amountSumSubquery, 0L) : criteriaBuilder.le(amountSumSubquery, 0L);
+	}
+
+	/**
+	 * Returns expenses grouped by tag, sorted by absolute amount descending.
+	 * Amounts are aggregated by the database: expense/income transactions are
+	 * summed per tag, transfers are summed per tag and transaction (a
+	 * transfer's amount is the larger of its incoming or outgoing parts).
+	 *
+	 * @param entityManager the EntityManager to be used for making queries
+	 * @param accounts the accounts for which transaction components should be
+	 * included
+	 * @return expenses grouped by tag
+	 */
+	private List<TagExpense> getTagExpenses(EntityManager entityManager, Collection<FinanceAccount> accounts) {
+		Map<String, TagExpense> tagExpenses = new TreeMap<>();
+
+		if (enabledExpenseTransactions || enabledIncomeTransactions)
+			for (Tuple tagAmount : getExpenseIncomeTagAmounts(entityManager, accounts, false))
+				addTagExpense(tagAmount.get(0, String.class), tagAmount.get(1, Number.class).longValue(), tagExpenses);
+
+		if (enabledTransferTransactions)
+			for (Tuple tagAmount : getTransferTagAmounts(entityManager, accounts, false))
+				addTagExpense(tagAmount.get(0, String.class), getTransferAmount(tagAmount.get(1, Number.class), tagAmount.get(2, Number.class)), tagExpenses);
+
+		List<TagExpense> tagExpenseList = new ArrayList<>(tagExpenses.values());
+		tagExpenseList.sort((tag1, tag2) -> -Double.compare(Math.abs(tag1.getAmount()), Math.abs(tag2.getAmount())));
+		return tagExpenseList;
+	}
+
+	/**
+	 * Returns the sum of expense/income components for every tag (and day if
+	 * byDate is true); the tag is null for transactions without tags
+	 *
+	 * @param entityManager the EntityManager to be used for making queries
+	 * @param accounts the accounts for which transaction components should be
+	 * included
+	 * @param byDate true if amounts should also be grouped by transaction date
+	 * @return tuples of tag, raw amount and (if byDate is true) date
+	 */
+	private List<Tuple> getExpenseIncomeTagAmounts(EntityManager entityManager, Collection<FinanceAccount> accounts, boolean byDate) {
+		CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+		CriteriaQuery<Tuple> expenseIncomeQuery = criteriaBuilder.createTupleQuery();
+		Root<FinanceTransaction> tr = expenseIncomeQuery.from(FinanceTransaction.class);
+		Path<String> tagName = tr.join(FinanceTransaction_.tags, JoinType.LEFT).get(Tag_.name);
+		Join<FinanceTransaction, TransactionComponent> componentsJoin = tr.join(FinanceTransaction_.components);
+		Expression<Date> transactionDate = tr.get(FinanceTransaction_.transactionDate);
+		Expression<Long> amountSum = criteriaBuilder.sum(componentsJoin.get(TransactionComponent_.amount));
+		expenseIncomeQuery.where(
+				getAggregatedAmountsPredicate(criteriaBuilder, expenseIncomeQuery, tr, componentsJoin, accounts, FinanceTransaction.Type.EXPENSEINCOME),
+				getExpenseIncomeSignPredicate(criteriaBuilder, expenseIncomeQuery, tr, accounts));
+		if (byDate) {
+			expenseIncomeQuery.multiselect(tagName, amountSum, transactionDate);
+			expenseIncomeQuery.groupBy(tagName, transactionDate);
+		} else {
+			expenseIncomeQuery.multiselect(tagName, amountSum);
+			expenseIncomeQuery.groupBy(tagName);
+		}
+		return entityManager.createQuery(expenseIncomeQuery).getResultList();
+	}
+
+	/**
+	 * Returns the sums of incoming and outgoing transfer components for every
+	 * tag and transaction; the tag is null for transactions without tags
+	 *
+	 * @param entityManager the EntityManager to be used for making queries
+	 * @param accounts the accounts for which transaction components should be
+	 * included
+	 * @param byDate true if the transaction date should also be returned
+	 * @return tuples of tag, positive raw amount, negative raw amount and (if
+	 * byDate is true) date
+	 */
+	private List<Tuple> getTransferTagAmounts(EntityManager entityManager, Collection<FinanceAccount> accounts, boolean byDate) {
+		CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+		CriteriaQuery<Tuple> transferQuery = criteriaBuilder.createTupleQuery();
+		Root<FinanceTransaction> tr = transferQuery.from(FinanceTransaction.class);
+		Path<String> tagName = tr.join(FinanceTransaction_.tags, JoinType.LEFT).get(Tag_.name);
+		Join<FinanceTransaction, TransactionComponent> componentsJoin = tr.join(FinanceTransaction_.components);
+		Expression<Date> transactionDate = tr.get(FinanceTransaction_.transactionDate);
+		transferQuery.where(getAggregatedAmountsPredicate(criteriaBuilder, transferQuery, tr, componentsJoin, accounts, FinanceTransaction.Type.TRANSFER));
+		if (byDate) {
+			transferQuery.multiselect(tagName, getPositiveSum(criteriaBuilder, componentsJoin), getNegativeSum(criteriaBuilder, componentsJoin), transactionDate);
+			transferQuery.groupBy(tagName, tr.get(FinanceTransaction_.id), transactionDate);
+		} else {
+			transferQuery.multiselect(tagName, getPositiveSum(criteriaBuilder, componentsJoin), getNegativeSum(criteriaBuilder, componentsJoin));
+			transferQuery.groupBy(tagName, tr.get(FinanceTransaction_.id));
+		}
+		return entityManager.createQuery(transferQuery).getResultList();
+	}
+
+	/**
+	 * Returns the sum of positive component amounts
+	 *
+	 * @param criteriaBuilder the CriteriaBuilder
+	 * @param componentsJoin the transaction components join
+	 * @return the sum of positive component amounts
+	 */
+	private Expression<Long> getPositiveSum(CriteriaBuilder criteriaBuilder, Join<FinanceTransaction, TransactionComponent> componentsJoin) {
+		Expression<Long> amount = componentsJoin.get(TransactionComponent_.amount);
+		return criteriaBuilder.sum(criteriaBuilder.<Long>selectCase().when(criteriaBuilder.gt(amount, 0L), amount).otherwise(0L));
+	}
+
+	/**
+	 * Returns the sum of negative component amounts
+	 *
+	 * @param criteriaBuilder the CriteriaBuilder
+	 * @param componentsJoin the transaction components join
+	 * @return the sum of negative component amounts
+	 */
+	private Expression<Long> getNegativeSum(CriteriaBuilder criteriaBuilder, Join<FinanceTransaction, TransactionComponent> componentsJoin) {
+		Expression<Long> amount = componentsJoin.get(TransactionComponent_.amount);
+		return criteriaBuilder.sum(criteriaBuilder.<Long>selectCase().when(criteriaBuilder.lt(amount, 0L), amount).otherwise(0L));
+	}
+
+	/**
+	 * Returns a transfer's amount: the larger of its incoming or outgoing parts
+	 *
+	 * @param amountPositive the sum of positive component amounts
+	 * @param amountNegative the sum of negative component amounts
+	 * @return the transfer's raw amount
+	 */
+	private static long getTransferAmount(Number amountPositive, Number amountNegative) {
+		return Math.max(amountPositive.longValue(), -amountNegative.longValue());
+	}
+
+	/**
+	 * Returns a predicate for the queries aggregating amounts in the database
+	 *
+	 * @param criteriaBuilder the CriteriaBuilder
+	 * @param query the aggregating query
+	 * @param tr the FinanceTransaction Root
+	 * @param componentsJoin the transaction components join
+	 * @param accounts the accounts for which transaction components should be
+	 * included
+	 * @param type the transaction type
+	 * @return the predicate for the aggregating queries
+	 */
+	private Predicate getAggregatedAmountsPredicate(CriteriaBuilder criteriaBuilder, AbstractQuery<?> query, Root<FinanceTransaction> tr, Join<FinanceTransaction, TransactionComponent> componentsJoin, Collection<FinanceAccount> accounts, FinanceTransaction.Type type) {
+		return criteriaBuilder.and(
+				criteriaBuilder.equal(tr.get(FinanceTransaction_.owner), owner.getId()),
+				criteriaBuilder.greaterThanOrEqualTo(tr.<Date>get(FinanceTransaction_.transactionDate), earliestDate),
+				criteriaBuilder.lessThanOrEqualTo(tr.<Date>get(FinanceTransaction_.transactionDate), latestDate),
+				criteriaBuilder.equal(tr.get(FinanceTransaction_.type), type),
+				componentsJoin.get(TransactionComponent_.account).in(criteriaBuilder.literal(accounts)),
+				getSelectedTagsPredicate(criteriaBuilder, query, tr));
+	}
+
+	/**
+	 * Prepares the report grouped into time periods (buckets) for accounts
+	 * sharing the same currency. Amounts are aggregated by the database for
+	 * every day; days are then combined into buckets, which works the same
+	 * way with every database.
+	 *
+	 * @param entityManager the EntityManager to be used for making queries
+	 * @param accounts the accounts for which the report should be built (must
+	 * have the same currency)
+	 * @param bucketSize the bucket size
+	 * @return the non-empty buckets, ordered by date
+	 */
+	private List<ReportBucket> buildCurrencyBuckets(EntityManager entityManager, Collection<FinanceAccount> accounts, BucketSize bucketSize) {
+		CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+		Map<LocalDate, ReportBucket> buckets = new TreeMap<>();
+		Function<Date, ReportBucket> getBucket = date -> buckets.computeIfAbsent(bucketSize.getStart(toLocalDate(date)), ReportBucket::new);
+
+		for (boolean income : new boolean[]{true, false}) {
+			if (income ? !enabledIncomeTransactions : !enabledExpenseTransactions)
 				continue;
+			CriteriaQuery<Tuple> expenseIncomeQuery = criteriaBuilder.createTupleQuery();
+			Root<FinanceTransaction> tr = expenseIncomeQuery.from(FinanceTransaction.class);
+			Join<FinanceTransaction, TransactionComponent> componentsJoin = tr.join(FinanceTransaction_.components);
+			Expression<Date> transactionDate = tr.get(FinanceTransaction_.transactionDate);
+			expenseIncomeQuery.multiselect(transactionDate, criteriaBuilder.sum(componentsJoin.get(TransactionComponent_.amount)));
+			expenseIncomeQuery.where(
+					getAggregatedAmountsPredicate(criteriaBuilder, expenseIncomeQuery, tr, componentsJoin, accounts, FinanceTransaction.Type.EXPENSEINCOME),
+					getAmountSignPredicate(criteriaBuilder, expenseIncomeQuery, tr, accounts, income));
+			expenseIncomeQuery.groupBy(transactionDate);
+			for (Tuple dayAmount : entityManager.createQuery(expenseIncomeQuery).getResultList()) {
+				ReportBucket bucket = getBucket.apply(dayAmount.get(0, Date.class));
+				long amount = dayAmount.get(1, Number.class).longValue();
+				if (income)
+					bucket.addRawIncome(amount);
+				else
+					bucket.addRawExpense(amount);
 			}
-			//Additional expense/income filter
-			if (transaction.getType() == FinanceTransaction.Type.EXPENSEINCOME) {
-				long amount = 0;
-				for (TransactionComponent component : transaction.getComponents()) {
-					amount += accounts.contains(component.getAccount()) ? component.getRawAmount() : 0;
-				}
-				if ((enabledIncomeTransactions && amount >= 0) || (enabledExpenseTransactions && amount <= 0)) {
-					transactions.add(transaction);
-				}
-			} else {
-				transactions.add(transaction);
-			}
 		}
-		return transactions;
+
+		if (enabledTransferTransactions) {
+			CriteriaQuery<Tuple> transferQuery = criteriaBuilder.createTupleQuery();
+			Root<FinanceTransaction> tr = transferQuery.from(FinanceTransaction.class);
+			Join<FinanceTransaction, TransactionComponent> componentsJoin = tr.join(FinanceTransaction_.components);
+			Expression<Date> transactionDate = tr.get(FinanceTransaction_.transactionDate);
+			transferQuery.multiselect(transactionDate, getPositiveSum(criteriaBuilder, componentsJoin), getNegativeSum(criteriaBuilder, componentsJoin));
+			transferQuery.where(getAggregatedAmountsPredicate(criteriaBuilder, transferQuery, tr, componentsJoin, accounts, FinanceTransaction.Type.TRANSFER));
+			transferQuery.groupBy(tr.get(FinanceTransaction_.id), transactionDate);
+			for (Tuple transferAmount : entityManager.createQuery(transferQuery).getResultList())
+				getBucket.apply(transferAmount.get(0, Date.class)).addRawTransferVolume(getTransferAmount(transferAmount.get(1, Number.class), transferAmount.get(2, Number.class)));
+		}
+
+		if (enabledExpenseTransactions || enabledIncomeTransactions)
+			for (Tuple tagAmount : getExpenseIncomeTagAmounts(entityManager, accounts, true))
+				getBucket.apply(tagAmount.get(2, Date.class)).addRawTagAmount(getTagName(tagAmount.get(0, String.class)), tagAmount.get(1, Number.class).longValue());
+
+		if (enabledTransferTransactions)
+			for (Tuple tagAmount : getTransferTagAmounts(entityManager, accounts, true))
+				getBucket.apply(tagAmount.get(3, Date.class)).addRawTagAmount(getTagName(tagAmount.get(0, String.class)), getTransferAmount(tagAmount.get(1, Number.class), tagAmount.get(2, Number.class)));
+
+		return new ArrayList<>(buckets.values());
 	}
 
 	/**
@@ -539,61 +1093,58 @@ public class ReportFactory {
 		Predicate userPredicate = entityManager.getCriteriaBuilder().equal(tr.get(FinanceTransaction_.owner), owner);
 		tagsCriteriaQuery.where(userPredicate);
 
-		tagsCriteriaQuery.select(tr.join(FinanceTransaction_.tags)).distinct(true);
+		tagsCriteriaQuery.select(tr.join(FinanceTransaction_.tags).get(Tag_.name)).distinct(true);
 		HashSet<String> result = new HashSet<>(entityManager.createQuery(tagsCriteriaQuery).getResultList());
 		result.add(EMPTY_TAG);
 		return result;
 	}
 
-
 	/**
-	 * Returns a graph for the total balance of accounts, sorted by date
+	 * Returns all tags with the number of transactions using them
 	 *
 	 * @param entityManager the EntityManager to be used for making queries
-	 * @param accounts the accounts for which the balance graph should be calculated
-	 * @return a graph for the total balance of accounts, sorted by date
+	 * @return the number of transactions for every tag
 	 */
-	private Map<Date, Double> getAccountsBalanceGraph(EntityManager entityManager, Collection<FinanceAccount> accounts) {
-		//Process transactions
-		List<FinanceTransaction> transactions = getTransactions(
-				entityManager,
-				accounts,
-				FinanceTransaction_.transactionDate, true, false,
-				EnumSet.of(FilterType.ACCOUNTS, FilterType.TRANSACTION_TYPE, FilterType.TAGS));
-
-		//Calculate sum for accounts/currencies for each transaction
-		long sumBalance = 0;
-		DateBalance<Long> currentBalance = new DateBalance<>(Long.class);
-		for (FinanceTransaction transaction : transactions) {
-			//Compute balance change for transaction
-			for (TransactionComponent component : transaction.getComponents())
-				if (accounts.contains(component.getAccount()))
-					sumBalance += component.getRawAmount();
-
-			//Update balance map
-			currentBalance.setBalance(transaction.getDate(), sumBalance);
-		}
+	public Map<String, Long> getTagUsage(EntityManager entityManager) throws SecurityException {
+		if (owner == null)
+			throw new SecurityException(messages.getString("NOT_ALLOWED_TO_GET_DATA_FOR_UNKNOWN_USER"));
+		CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+		CriteriaQuery<Tuple> tagsCriteriaQuery = criteriaBuilder.createTupleQuery();
+		Root<FinanceTransaction> tr = tagsCriteriaQuery.from(FinanceTransaction.class);
+		Join<FinanceTransaction, Tag> tagsJoin = tr.join(FinanceTransaction_.tags);
 
-		//Convert from long to double
-		Map<Date, Double> result = new TreeMap<>();
-		for (Map.Entry<Date, Long> dateBalance : currentBalance.getData().entrySet())
-			if ((dateBalance.getKey().after(earliestDate) || dateBalance.getKey().equals(earliestDate))
-					&& (dateBalance.getKey().before(latestDate) || dateBalance.getKey().equals(latestDate)))
-				result.put(dateBalance.getKey(), dateBalance.getValue() / Constants.RAW_AMOUNT_MULTIPLIER);
+		tagsCriteriaQuery.multiselect(tagsJoin.get(Tag_.name), criteriaBuilder.count(tr))
+				.where(criteriaBuilder.equal(tr.get(FinanceTransaction_.owner), owner))
+				.groupBy(tagsJoin.get(Tag_.id), tagsJoin.get(Tag_.name));
+		Map<String, Long> result = new HashMap<>();
+		for (Tuple tagUsage : entityManager.createQuery(tagsCriteriaQuery).getResultList())
+			result.put(tagUsage.get(0, String.class), tagUsage.get(1, Long.class));
 		return result;
 	}
-	
+
+
 	/**
 	 * Adds an amount to the appropriate TagExpense
 	 *
-	 * @param tag the tag
+	 * @param tag the tag, or null for transactions without tags
 	 * @param amount the amount to add
 	 * @param tagExpenses all stored TagExpense instances
 	 */
 	private void addTagExpense(String tag, long amount, Map<String, TagExpense> tagExpenses) {
+		tag = getTagName(tag);
 		if (!tagExpenses.containsKey(tag)) {
 			tagExpenses.put(tag, new TagExpense(tag));
 		}
 		tagExpenses.get(tag).addRawAmount(amount);
 	}
+
+	/**
+	 * Returns the tag name used in reports
+	 *
+	 * @param tag the tag, or null for transactions without tags
+	 * @return the tag, or the empty tag if tag is null
+	 */
+	private static String getTagName(String tag) {
+		return tag != null ? tag : EMPTY_TAG;
+	}
 }
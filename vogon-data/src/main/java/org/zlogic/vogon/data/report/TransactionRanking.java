@@ -0,0 +1,114 @@
+/*
+ * Vogon personal finance/expense analyzer.
+ * Licensed under Apache 2.0 License: http://www.apache.org/licenses/LICENSE-2.0
+ * Author: Dmitry Zolotukhin <zlogic@gmail.com>
+ */
+package org.zlogic.vogon.data.report;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Collects report transactions ordered by their absolute amount (largest
+ * first). If a limit is set, only the largest transactions are kept in a
+ * bounded heap, so memory usage doesn't depend on the number of added
+ * transactions. Transactions with the same absolute amount keep the order in
+ * which they were added.
+ *
+ * @author Dmitry Zolotukhin [zlogic@gmail.com]
+ */
+class TransactionRanking {
+
+	/**
+	 * Orders transactions from the highest to the lowest rank
+	 */
+	private static final Comparator<RankedTransaction> RANK_ORDER = Comparator
+			.comparingLong((RankedTransaction ranked) -> -Math.abs(ranked.transaction.getRawAmount()))
+			.thenComparingLong(ranked -> ranked.index);
+	/**
+	 * The maximum number of kept transactions, or 0 if unlimited
+	 */
+	private final int limit;
+	/**
+	 * The kept transactions; the lowest ranked transaction is the head of the
+	 * queue
+	 */
+	private final PriorityQueue<RankedTransaction> transactions;
+	/**
+	 * The number of added transactions
+	 */
+	private long count = 0;
+
+	/**
+	 * Creates a TransactionRanking
+	 *
+	 * @param limit the maximum number of transactions to keep, or 0 if all
+	 * transactions should be kept
+	 */
+	TransactionRanking(int limit) {
+		this.limit = Math.max(limit, 0);
+		this.transactions = new PriorityQueue<>(limit > 0 ? limit + 1 : 11, RANK_ORDER.reversed());
+	}
+
+	/**
+	 * Adds a transaction; if the limit is exceeded, the lowest ranked
+	 * transaction is dropped
+	 *
+	 * @param transaction the transaction to add
+	 */
+	void add(ReportTransaction transaction) {
+		RankedTransaction ranked = new RankedTransaction(transaction, count++);
+		if (limit > 0 && transactions.size() >= limit) {
+			if (RANK_ORDER.compare(ranked, transactions.peek()) >= 0)
+				return;
+			transactions.poll();
+		}
+		transactions.add(ranked);
+	}
+
+	/**
+	 * Returns the kept transactions, from the largest to the smallest
+	 *
+	 * @param offset the number of largest transactions to skip
+	 * @return the kept transactions, starting with offset
+	 */
+	List<ReportTransaction> getTransactions(int offset) {
+		List<RankedTransaction> sorted = new ArrayList<>(transactions);
+		sorted.sort(RANK_ORDER);
+		if (offset >= sorted.size())
+			return Collections.emptyList();
+		List<ReportTransaction> result = new ArrayList<>(sorted.size() - Math.max(offset, 0));
+		for (RankedTransaction ranked : sorted.subList(Math.max(offset, 0), sorted.size()))
+			result.add(ranked.transaction);
+		return result;
+	}
+
+	/**
+	 * A transaction with the order in which it was added
+	 */
+	private static class RankedTransaction {
+
+		/**
+		 * The transaction
+		 */
+		private final ReportTransaction transaction;
+		/**
+		 * The order in which the transaction was added
+		 */
+		private final long index;
+
+		/**
+		 * Creates a RankedTransaction
+		 *
+		 * @param transaction the transaction
+		 * @param index the order in which the transaction was added
+		 */
+		private RankedTransaction(ReportTransaction transaction, long index) {
+			this.transaction = transaction;
+			this.index = index;
+		}
+	}
+}
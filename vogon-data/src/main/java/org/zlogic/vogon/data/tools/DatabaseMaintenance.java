@@ -5,17 +5,21 @@
  */
 package org.zlogic.vogon.data.tools;
 
+import java.sql.ResultSet;
 import java.util.ArrayList;
 import java.util.List;
 import javax.persistence.EntityManager;
 import javax.persistence.TypedQuery;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.CriteriaUpdate;
 import javax.persistence.criteria.Root;
+import org.hibernate.Session;
 import org.zlogic.vogon.data.FinanceAccount;
 import org.zlogic.vogon.data.FinanceAccount_;
 import org.zlogic.vogon.data.FinanceTransaction;
 import org.zlogic.vogon.data.FinanceTransaction_;
+import org.zlogic.vogon.data.TagResolver;
 import org.zlogic.vogon.data.TransactionComponent;
 import org.zlogic.vogon.data.TransactionComponent_;
 
@@ -26,6 +30,12 @@ import org.zlogic.vogon.data.TransactionComponent_;
  */
 public class DatabaseMaintenance {
 
+	/**
+	 * The table which stored tag names for every transaction before the tags
+	 * dictionary was introduced
+	 */
+	private static final String LEGACY_TAGS_TABLE = "FinanceTransaction_tags"; //NOI18N
+
 	/**
 	 * Deletes all orphaned transaction components.
 	 *
@@ -70,7 +80,8 @@ public class DatabaseMaintenance {
 	}
 
 	/**
-	 * Recalculates an account's balance based on its transactions.
+	 * Recalculates an account's balance and daily balance changes based on its
+	 * transactions.
 	 *
 	 * @param account the account to be updated
 	 * @param entityManager the EntityManager to be used for making queries;
@@ -86,5 +97,75 @@ public class DatabaseMaintenance {
 		//Restore all components
 		for (TransactionComponent component : accountComponents)
 			component.setAccount(tempAccount);
+		tempAccount.refreshDailyBalances();
+	}
+
+	/**
+	 * Recalculates the daily balance changes for all accounts which were
+	 * created before daily balances were introduced.
+	 *
+	 * @param entityManager the EntityManager to be used for making queries;
+	 * should be opened/closed outside of this function before calling this
+	 * function
+	 * @return the number of updated accounts
+	 */
+	public int refreshDailyBalances(EntityManager entityManager) {
+		CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+		CriteriaQuery<FinanceAccount> accountsCriteriaQuery = cb.createQuery(FinanceAccount.class);
+		Root<FinanceAccount> account = accountsCriteriaQuery.from(FinanceAccount.class);
+		accountsCriteriaQuery.where(cb.or(account.get(FinanceAccount_.dailyBalanceValid).isNull(), cb.isFalse(account.get(FinanceAccount_.dailyBalanceValid))));
+		List<FinanceAccount> accounts = entityManager.createQuery(accountsCriteriaQuery).getResultList();
+		for (FinanceAccount staleAccount : accounts)
+			staleAccount.refreshDailyBalances();
+		return accounts.size();
+	}
+
+	/**
+	 * Replaces missing descriptions of transactions which were created before
+	 * descriptions became mandatory with empty strings.
+	 *
+	 * @param entityManager the EntityManager to be used for making queries;
+	 * should be opened/closed outside of this function before calling this
+	 * function
+	 * @return the number of updated transactions
+	 */
+	public int fillMissingDescriptions(EntityManager entityManager) {
+		CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+		CriteriaUpdate<FinanceTransaction> transactionsUpdate = cb.createCriteriaUpdate(FinanceTransaction.class);
+		Root<FinanceTransaction> transaction = transactionsUpdate.from(FinanceTransaction.class);
+		transactionsUpdate.set(transaction.get(FinanceTransaction_.description), ""); //NOI18N
+		transactionsUpdate.where(transaction.get(FinanceTransaction_.description).isNull());
+		return entityManager.createQuery(transactionsUpdate).executeUpdate();
+	}
+
+	/**
+	 * Moves tags from the legacy table (where every transaction had its own
+	 * copy of tag names) into the tags dictionary, and drops the legacy table.
+	 * Does nothing if the legacy table doesn't exist.
+	 *
+	 * @param entityManager the EntityManager to be used for making queries;
+	 * should be opened/closed outside of this function before calling this
+	 * function
+	 * @return the number of migrated tags
+	 */
+	public int migrateTags(EntityManager entityManager) {
+		boolean legacyTableExists = entityManager.unwrap(Session.class).doReturningWork(connection -> {
+			try (ResultSet tables = connection.getMetaData().getTables(null, null, null, new String[]{"TABLE"})) { //NOI18N
+				while (tables.next())
+					if (LEGACY_TAGS_TABLE.equalsIgnoreCase(tables.getString("TABLE_NAME"))) //NOI18N
+						return true;
+			}
+			return false;
+		});
+		if (!legacyTableExists)
+			return 0;
+		@SuppressWarnings("unchecked")
+		List<String> tagNames = entityManager.createNativeQuery("SELECT DISTINCT tags FROM " + LEGACY_TAGS_TABLE + " WHERE tags IS NOT NULL").getResultList(); //NOI18N
+		new TagResolver(entityManager).getTags(tagNames);
+		entityManager.flush();
+		entityManager.createNativeQuery("INSERT INTO FinanceTransaction_Tag (FinanceTransaction_id, tags_id) " //NOI18N
+				+ "SELECT DISTINCT legacy.FinanceTransaction_id, tag.id FROM " + LEGACY_TAGS_TABLE + " legacy JOIN Tag tag ON tag.name = legacy.tags").executeUpdate(); //NOI18N
+		entityManager.createNativeQuery("DROP TABLE " + LEGACY_TAGS_TABLE).executeUpdate(); //NOI18N
+		return tagNames.size();
 	}
 }
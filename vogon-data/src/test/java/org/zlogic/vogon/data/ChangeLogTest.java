@@ -0,0 +1,219 @@
+/*
+ * Vogon personal finance/expense analyzer.
+ * Licensed under Apache 2.0 License: http://www.apache.org/licenses/LICENSE-2.0
+ * Author: Dmitry Zolotukhin <zlogic@gmail.com>
+ */
+package org.zlogic.vogon.data;
+
+import java.util.Arrays;
+import java.util.Currency;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Root;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for the change journal
+ *
+ * @author Dmitry Zolotukhin [zlogic@gmail.com]
+ */
+public class ChangeLogTest {
+
+	private EntityManagerFactory emf;
+	private EntityManager entityManager;
+
+	@Before
+	public void setUp() throws Exception {
+		emf = Persistence.createEntityManagerFactory("VogonPU", TestUtils.getJpaProperties()); //NOI18N
+		entityManager = emf.createEntityManager();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		entityManager.close();
+		entityManager = null;
+		emf.close();
+		emf = null;
+	}
+
+	/**
+	 * Returns a user's change journal entries after an entry
+	 *
+	 * @param user the user
+	 * @param since the last known entry ID
+	 * @return the entries, in the order they were written
+	 */
+	private List<ChangeLogEntry> getEntries(VogonUser user, long since) {
+		CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+		CriteriaQuery<ChangeLogEntry> entriesQuery = criteriaBuilder.createQuery(ChangeLogEntry.class);
+		Root<ChangeLogEntry> entry = entriesQuery.from(ChangeLogEntry.class);
+		entriesQuery.where(criteriaBuilder.equal(entry.get(ChangeLogEntry_.ownerId), user.getId()), criteriaBuilder.greaterThan(entry.get(ChangeLogEntry_.id), since));
+		entriesQuery.orderBy(criteriaBuilder.asc(entry.get(ChangeLogEntry_.id)));
+		return entityManager.createQuery(entriesQuery).getResultList();
+	}
+
+	/**
+	 * Returns the changed entities as "type operation id version" strings
+	 *
+	 * @param entries the change journal entries
+	 * @return the changes
+	 */
+	private Set<String> getChanges(List<ChangeLogEntry> entries) {
+		Set<String> changes = new HashSet<>();
+		for (ChangeLogEntry entry : entries)
+			changes.add(entry.getEntityType() + " " + entry.getOperation() + " " + entry.getEntityId() + " " + entry.getEntityVersion()); //NOI18N
+		return changes;
+	}
+
+	/**
+	 * Test that created, updated and deleted entities are recorded in the
+	 * change journal of their owner
+	 */
+	@Test
+	public void recordChanges() {
+		VogonUser user = new VogonUser("user01", "password"); //NOI18N
+		VogonUser otherUser = new VogonUser("user02", "password"); //NOI18N
+		FinanceAccount account = new FinanceAccount(user, "test account 1", Currency.getInstance("RUB")); //NOI18N
+		FinanceAccount otherAccount = new FinanceAccount(otherUser, "test account 2", Currency.getInstance("RUB")); //NOI18N
+		FinanceTransaction transaction = new FinanceTransaction(user, "test transaction 1", new String[]{"hello"}, TestUtils.parseJSONDate("2016-01-02"), FinanceTransaction.Type.EXPENSEINCOME); //NOI18N
+		TransactionComponent component1 = new TransactionComponent(account, transaction, 3);
+		TransactionComponent component2 = new TransactionComponent(account, transaction, 5);
+
+		entityManager.getTransaction().begin();
+		entityManager.persist(user);
+		entityManager.persist(otherUser);
+		entityManager.persist(account);
+		entityManager.persist(otherAccount);
+		entityManager.persist(component1);
+		entityManager.persist(component2);
+		entityManager.persist(transaction);
+		entityManager.getTransaction().commit();
+
+		List<ChangeLogEntry> entries = getEntries(user, 0);
+		assertEquals(new HashSet<>(Arrays.asList(
+				"ACCOUNT CREATE " + account.getId() + " " + account.getVersion(),
+				"TRANSACTION CREATE " + transaction.getId() + " " + transaction.getVersion(),
+				"TRANSACTION_COMPONENT CREATE " + component1.getId() + " " + component1.getVersion(),
+				"TRANSACTION_COMPONENT CREATE " + component2.getId() + " " + component2.getVersion()
+		)), getChanges(entries));
+		assertEquals(new HashSet<>(Arrays.asList("ACCOUNT CREATE " + otherAccount.getId() + " " + otherAccount.getVersion())), getChanges(getEntries(otherUser, 0)));
+		long cursor = entries.get(entries.size() - 1).getId();
+		entityManager.clear();
+
+		entityManager.getTransaction().begin();
+		transaction = entityManager.find(FinanceTransaction.class, transaction.getId());
+		component2 = entityManager.find(TransactionComponent.class, component2.getId());
+		transaction.setDescription("test transaction 1a"); //NOI18N
+		component2.setAccount(null);
+		component2.setTransaction(null);
+		entityManager.getTransaction().commit();
+		account = entityManager.find(FinanceAccount.class, account.getId());
+
+		entries = getEntries(user, cursor);
+		assertEquals(new HashSet<>(Arrays.asList(
+				"ACCOUNT UPDATE " + account.getId() + " " + account.getVersion(),
+				"TRANSACTION UPDATE " + transaction.getId() + " " + transaction.getVersion(),
+				"TRANSACTION_COMPONENT DELETE " + component2.getId() + " " + component2.getVersion()
+		)), getChanges(entries));
+		assertNull(entityManager.find(TransactionComponent.class, component2.getId()));
+		assertTrue(entries.get(0).getId() > cursor);
+		assertTrue(getEntries(otherUser, cursor).isEmpty());
+		cursor = entries.get(entries.size() - 1).getId();
+		entityManager.clear();
+
+		entityManager.getTransaction().begin();
+		transaction = entityManager.find(FinanceTransaction.class, transaction.getId());
+		account = entityManager.find(FinanceAccount.class, account.getId());
+		otherAccount = entityManager.find(FinanceAccount.class, otherAccount.getId());
+		TransactionComponent component3 = new TransactionComponent(otherAccount, transaction, 7);
+		entityManager.persist(component3);
+		entityManager.flush();
+		component3.setRawAmount(8);
+		TransactionComponent component4 = new TransactionComponent(account, transaction, 9);
+		entityManager.persist(component4);
+		entityManager.flush();
+		entityManager.refresh(transaction);
+		entityManager.refresh(account);
+		component4.setAccount(null);
+		component4.setTransaction(null);
+		entityManager.getTransaction().commit();
+
+		entries = getEntries(user, cursor);
+		assertEquals(new HashSet<>(Arrays.asList(
+				"ACCOUNT UPDATE " + account.getId() + " " + account.getVersion(),
+				"TRANSACTION UPDATE " + transaction.getId() + " " + transaction.getVersion(),
+				"TRANSACTION_COMPONENT CREATE " + component3.getId() + " " + component3.getVersion()
+		)), getChanges(entries));
+		assertNull(entityManager.find(TransactionComponent.class, component4.getId()));
+		assertEquals(new HashSet<>(Arrays.asList("ACCOUNT UPDATE " + otherAccount.getId() + " " + otherAccount.getVersion())), getChanges(getEntries(otherUser, cursor)));
+	}
+
+	/**
+	 * Test that the data version of a user is increased in every database
+	 * transaction changing the user or the user's data
+	 */
+	@Test
+	public void updateDataVersion() {
+		VogonUser user = new VogonUser("user01", "password"); //NOI18N
+		VogonUser otherUser = new VogonUser("user02", "password"); //NOI18N
+		FinanceAccount account = new FinanceAccount(user, "test account 1", Currency.getInstance("RUB")); //NOI18N
+		FinanceTransaction transaction = new FinanceTransaction(user, "test transaction 1", new String[]{"hello"}, TestUtils.parseJSONDate("2016-01-02"), FinanceTransaction.Type.EXPENSEINCOME); //NOI18N
+		TransactionComponent component = new TransactionComponent(account, transaction, 3);
+
+		entityManager.getTransaction().begin();
+		entityManager.persist(user);
+		entityManager.persist(otherUser);
+		entityManager.persist(account);
+		entityManager.persist(component);
+		entityManager.persist(transaction);
+		entityManager.getTransaction().commit();
+		entityManager.clear();
+
+		user = entityManager.find(VogonUser.class, user.getId());
+		otherUser = entityManager.find(VogonUser.class, otherUser.getId());
+		assertEquals(1, user.getDataVersion());
+		assertEquals(0, otherUser.getDataVersion());
+		long userVersion = user.getVersion();
+		entityManager.clear();
+
+		entityManager.getTransaction().begin();
+		transaction = entityManager.find(FinanceTransaction.class, transaction.getId());
+		transaction.setDescription("test transaction 1a"); //NOI18N
+		entityManager.getTransaction().commit();
+		entityManager.clear();
+
+		entityManager.getTransaction().begin();
+		otherUser = entityManager.find(VogonUser.class, otherUser.getId());
+		otherUser.setPassword("password2"); //NOI18N
+		entityManager.getTransaction().commit();
+		entityManager.clear();
+
+		user = entityManager.find(VogonUser.class, user.getId());
+		otherUser = entityManager.find(VogonUser.class, otherUser.getId());
+		assertEquals(2, user.getDataVersion());
+		assertEquals(userVersion, user.getVersion());
+		assertEquals(1, otherUser.getDataVersion());
+
+		entityManager.getTransaction().begin();
+		transaction = entityManager.find(FinanceTransaction.class, transaction.getId());
+		transaction.setDescription("test transaction 1b"); //NOI18N
+		entityManager.getTransaction().commit();
+
+		assertEquals(3, user.getDataVersion());
+		assertEquals(userVersion, user.getVersion());
+		entityManager.clear();
+
+		user = entityManager.find(VogonUser.class, user.getId());
+		assertEquals(3, user.getDataVersion());
+		assertEquals(userVersion, user.getVersion());
+	}
+}
@@ -165,4 +165,43 @@ public class MaintenanceTest {
 
 		assertEquals(42 + 160, foundAccount.getRawBalance());
 	}
+
+	/**
+	 * Test that maintenance moves tags from the legacy tags table into the
+	 * tags dictionary
+	 */
+	@Test
+	public void migrateTagsTest() {
+		Date date = TestUtils.parseJSONDate("2016-01-02"); //NOI18N
+		VogonUser user = new VogonUser("user01", "password"); //NOI18N
+		FinanceTransaction transaction1 = new FinanceTransaction(user, "test transaction 1", null, date, FinanceTransaction.Type.EXPENSEINCOME); //NOI18N
+		FinanceTransaction transaction2 = new FinanceTransaction(user, "test transaction 2", null, date, FinanceTransaction.Type.EXPENSEINCOME); //NOI18N
+
+		entityManager.getTransaction().begin();
+		entityManager.persist(user);
+		entityManager.persist(transaction1);
+		entityManager.persist(transaction2);
+		entityManager.createNativeQuery("CREATE TABLE FinanceTransaction_tags (FinanceTransaction_id BIGINT NOT NULL, tags VARCHAR(255))").executeUpdate(); //NOI18N
+		entityManager.createNativeQuery("INSERT INTO FinanceTransaction_tags (FinanceTransaction_id, tags) VALUES (?, 'hello'), (?, 'world'), (?, 'hello')") //NOI18N
+				.setParameter(1, transaction1.getId())
+				.setParameter(2, transaction1.getId())
+				.setParameter(3, transaction2.getId())
+				.executeUpdate();
+		entityManager.getTransaction().commit();
+
+		entityManager.getTransaction().begin();
+		assertEquals(2, new DatabaseMaintenance().migrateTags(entityManager));
+		entityManager.getTransaction().commit();
+		entityManager.clear();
+
+		assertArrayEquals(new String[]{"hello", "world"}, entityManager.find(FinanceTransaction.class, transaction1.getId()).getTags()); //NOI18N
+		assertArrayEquals(new String[]{"hello"}, entityManager.find(FinanceTransaction.class, transaction2.getId()).getTags()); //NOI18N
+		CriteriaQuery<Tag> tagsQuery = entityManager.getCriteriaBuilder().createQuery(Tag.class);
+		tagsQuery.from(Tag.class);
+		assertEquals(2, entityManager.createQuery(tagsQuery).getResultList().size());
+
+		entityManager.getTransaction().begin();
+		assertEquals(0, new DatabaseMaintenance().migrateTags(entityManager));
+		entityManager.getTransaction().commit();
+	}
 }
@@ -8,13 +8,24 @@ package org.zlogic.vogon.data;
 import java.util.Arrays;
 import java.util.Currency;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.Persistence;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Root;
 import org.junit.After;
 import static org.junit.Assert.*;
 import org.junit.Before;
 import org.junit.Test;
+import org.zlogic.vogon.data.tools.DatabaseMaintenance;
 
 /**
  * Tests for basic model operations
@@ -590,4 +601,311 @@ public class ModelBasicOperationsTest {
 		assertEquals(Long.valueOf(7), foundTransaction2.getComponents().get(0).getRawAmount());
 		assertNull(foundAccount2);
 	}
+
+	/**
+	 * Tag transactions of different users by name, without creating
+	 * duplicate tags
+	 */
+	@Test
+	public void shareTags() {
+		Date date = TestUtils.parseJSONDate("2016-01-02"); //NOI18N
+		VogonUser user1 = new VogonUser("user01", "password"); //NOI18N
+		VogonUser user2 = new VogonUser("user02", "password"); //NOI18N
+		FinanceTransaction transaction1 = new FinanceTransaction(user1, "test transaction 1", new String[]{"hello", "world"}, date, FinanceTransaction.Type.EXPENSEINCOME); //NOI18N
+
+		entityManager.getTransaction().begin();
+		entityManager.persist(user1);
+		entityManager.persist(user2);
+		entityManager.persist(transaction1);
+		entityManager.getTransaction().commit();
+
+		EntityManager entityManagerOther = emf.createEntityManager();
+		FinanceTransaction transaction2 = new FinanceTransaction(entityManagerOther.find(VogonUser.class, user2.getId()), "test transaction 2", new String[]{"hello", "new"}, date, FinanceTransaction.Type.EXPENSEINCOME); //NOI18N
+		entityManagerOther.getTransaction().begin();
+		entityManagerOther.persist(transaction2);
+		entityManagerOther.getTransaction().commit();
+		entityManagerOther.close();
+
+		entityManager.getTransaction().begin();
+		transaction1.setTags("world", "new"); //NOI18N
+		entityManager.getTransaction().commit();
+		entityManager.clear();
+
+		assertArrayEquals(new String[]{"new", "world"}, entityManager.find(FinanceTransaction.class, transaction1.getId()).getTags()); //NOI18N
+		assertArrayEquals(new String[]{"hello", "new"}, entityManager.find(FinanceTransaction.class, transaction2.getId()).getTags()); //NOI18N
+		CriteriaQuery<Tag> tagsQuery = entityManager.getCriteriaBuilder().createQuery(Tag.class);
+		tagsQuery.from(Tag.class);
+		assertEquals(3, entityManager.createQuery(tagsQuery).getResultList().size());
+	}
+
+	/**
+	 * Tag transactions with a tag which is created concurrently by another
+	 * transaction, without failing or creating duplicate tags
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void createTagsConcurrently() throws Exception {
+		Date date = TestUtils.parseJSONDate("2016-01-02"); //NOI18N
+		VogonUser user1 = new VogonUser("user01", "password"); //NOI18N
+		VogonUser user2 = new VogonUser("user02", "password"); //NOI18N
+		entityManager.getTransaction().begin();
+		entityManager.persist(user1);
+		entityManager.persist(user2);
+		entityManager.getTransaction().commit();
+
+		FinanceTransaction transaction1 = new FinanceTransaction(user1, "test transaction 1", new String[]{"new"}, date, FinanceTransaction.Type.EXPENSEINCOME); //NOI18N
+		entityManager.getTransaction().begin();
+		entityManager.persist(transaction1);
+		entityManager.flush();
+
+		EntityManager entityManagerOther = emf.createEntityManager();
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<Long> otherTransaction = executor.submit(() -> {
+				FinanceTransaction transaction2 = new FinanceTransaction(entityManagerOther.find(VogonUser.class, user2.getId()), "test transaction 2", new String[]{"new"}, date, FinanceTransaction.Type.EXPENSEINCOME); //NOI18N
+				entityManagerOther.getTransaction().begin();
+				entityManagerOther.persist(transaction2);
+				entityManagerOther.getTransaction().commit();
+				return transaction2.getId();
+			});
+			Thread.sleep(200);
+			entityManager.getTransaction().commit();
+			long transaction2Id = otherTransaction.get(30, TimeUnit.SECONDS);
+			entityManager.clear();
+
+			assertArrayEquals(new String[]{"new"}, entityManager.find(FinanceTransaction.class, transaction1.getId()).getTags()); //NOI18N
+			assertArrayEquals(new String[]{"new"}, entityManager.find(FinanceTransaction.class, transaction2Id).getTags()); //NOI18N
+			CriteriaQuery<Tag> tagsQuery = entityManager.getCriteriaBuilder().createQuery(Tag.class);
+			tagsQuery.from(Tag.class);
+			assertEquals(1, entityManager.createQuery(tagsQuery).getResultList().size());
+		} finally {
+			executor.shutdownNow();
+			entityManagerOther.close();
+		}
+	}
+
+	/**
+	 * Tags created for a transaction are rolled back with the transaction
+	 */
+	@Test
+	public void rollbackNewTags() {
+		VogonUser user = new VogonUser("user01", "password"); //NOI18N
+		entityManager.getTransaction().begin();
+		entityManager.persist(user);
+		entityManager.getTransaction().commit();
+
+		entityManager.getTransaction().begin();
+		FinanceTransaction transaction = new FinanceTransaction(user, "test transaction 1", new String[]{"hello"}, TestUtils.parseJSONDate("2016-01-02"), FinanceTransaction.Type.EXPENSEINCOME); //NOI18N
+		entityManager.persist(transaction);
+		entityManager.flush();
+		assertArrayEquals(new String[]{"hello"}, transaction.getTags()); //NOI18N
+		entityManager.getTransaction().rollback();
+		entityManager.clear();
+
+		CriteriaQuery<Tag> tagsQuery = entityManager.getCriteriaBuilder().createQuery(Tag.class);
+		tagsQuery.from(Tag.class);
+		assertTrue(entityManager.createQuery(tagsQuery).getResultList().isEmpty());
+	}
+
+	/**
+	 * Update daily balances when components or transactions are changed
+	 */
+	@Test
+	public void updateDailyBalances() {
+		Date date1 = TestUtils.parseJSONDate("2016-01-02"); //NOI18N
+		Date date2 = TestUtils.parseJSONDate("2016-01-05"); //NOI18N
+		Date date3 = TestUtils.parseJSONDate("2016-02-01"); //NOI18N
+		VogonUser user = new VogonUser("user01", "password"); //NOI18N
+		FinanceAccount account1 = new FinanceAccount(user, "test account 1", Currency.getInstance("RUB")); //NOI18N
+		FinanceAccount account2 = new FinanceAccount(user, "test account 2", Currency.getInstance("RUB")); //NOI18N
+		FinanceTransaction transaction1 = new FinanceTransaction(user, "test transaction 1", null, date1, FinanceTransaction.Type.TRANSFER); //NOI18N
+		FinanceTransaction transaction2 = new FinanceTransaction(user, "test transaction 2", null, date2, FinanceTransaction.Type.EXPENSEINCOME); //NOI18N
+		TransactionComponent component1 = new TransactionComponent(account1, transaction1, 42);
+		TransactionComponent component2 = new TransactionComponent(account2, transaction1, -42);
+		TransactionComponent component3 = new TransactionComponent(account1, transaction2, 10);
+
+		entityManager.getTransaction().begin();
+		entityManager.persist(user);
+		entityManager.persist(account1);
+		entityManager.persist(account2);
+		entityManager.persist(component1);
+		entityManager.persist(component2);
+		entityManager.persist(component3);
+		entityManager.persist(transaction1);
+		entityManager.persist(transaction2);
+		entityManager.getTransaction().commit();
+
+		Map<Date, Long> expectedDailyBalances1 = new HashMap<>();
+		expectedDailyBalances1.put(date1, 42L);
+		expectedDailyBalances1.put(date2, 10L);
+		Map<Date, Long> expectedDailyBalances2 = new HashMap<>();
+		expectedDailyBalances2.put(date1, -42L);
+		assertEquals(expectedDailyBalances1, getDailyBalances(account1));
+		assertEquals(expectedDailyBalances2, getDailyBalances(account2));
+
+		entityManager.refresh(account1);//This is a trick to update the components hashSet hashcode
+		entityManager.refresh(account2);//This is a trick to update the components hashSet hashcode
+		entityManager.refresh(transaction1);//This is a trick to update the components hashSet hashcode
+		entityManager.refresh(transaction2);//This is a trick to update the components hashSet hashcode
+		entityManager.getTransaction().begin();
+		component1.setRawAmount(50);
+		transaction1.setDate(date3);
+		component3.setAccount(account2);
+		entityManager.getTransaction().commit();
+
+		expectedDailyBalances1.clear();
+		expectedDailyBalances1.put(date3, 50L);
+		expectedDailyBalances2.clear();
+		expectedDailyBalances2.put(date2, 10L);
+		expectedDailyBalances2.put(date3, -42L);
+		assertEquals(expectedDailyBalances1, getDailyBalances(account1));
+		assertEquals(expectedDailyBalances2, getDailyBalances(account2));
+		assertEquals(50, account1.getRawBalance());
+		assertEquals(10 - 42, account2.getRawBalance());
+
+		entityManager.getTransaction().begin();
+		component2.setTransaction(null);
+		component2.setAccount(null);
+		entityManager.remove(component2);
+		entityManager.getTransaction().commit();
+
+		expectedDailyBalances2.remove(date3);
+		assertEquals(expectedDailyBalances1, getDailyBalances(account1));
+		assertEquals(expectedDailyBalances2, getDailyBalances(account2));
+	}
+
+	/**
+	 * Update daily balances of changed days without loading the account's
+	 * other days
+	 */
+	@Test
+	public void updateDailyBalancesWithoutLoadingHistory() {
+		Date date1 = TestUtils.parseJSONDate("2016-01-02"); //NOI18N
+		Date date2 = TestUtils.parseJSONDate("2016-01-05"); //NOI18N
+		Date date3 = TestUtils.parseJSONDate("2016-02-01"); //NOI18N
+		VogonUser user = new VogonUser("user01", "password"); //NOI18N
+		FinanceAccount account = new FinanceAccount(user, "test account 1", Currency.getInstance("RUB")); //NOI18N
+		FinanceTransaction transaction1 = new FinanceTransaction(user, "test transaction 1", null, date1, FinanceTransaction.Type.EXPENSEINCOME); //NOI18N
+		FinanceTransaction transaction2 = new FinanceTransaction(user, "test transaction 2", null, date2, FinanceTransaction.Type.EXPENSEINCOME); //NOI18N
+		TransactionComponent component1 = new TransactionComponent(account, transaction1, 42);
+		TransactionComponent component2 = new TransactionComponent(account, transaction2, 10);
+
+		entityManager.getTransaction().begin();
+		entityManager.persist(user);
+		entityManager.persist(account);
+		entityManager.persist(component1);
+		entityManager.persist(component2);
+		entityManager.persist(transaction1);
+		entityManager.persist(transaction2);
+		entityManager.getTransaction().commit();
+		entityManager.clear();
+
+		entityManager.getTransaction().begin();
+		account = entityManager.find(FinanceAccount.class, account.getId());
+		component2 = entityManager.find(TransactionComponent.class, component2.getId());
+		component2.setRawAmount(15);
+		entityManager.flush();
+		component2.setRawAmount(20);
+		FinanceTransaction transaction3 = new FinanceTransaction(user, "test transaction 3", null, date3, FinanceTransaction.Type.EXPENSEINCOME); //NOI18N
+		TransactionComponent component3 = new TransactionComponent(account, transaction3, 7);
+		entityManager.persist(component3);
+		entityManager.persist(transaction3);
+		entityManager.getTransaction().commit();
+
+		assertFalse(emf.getPersistenceUnitUtil().isLoaded(account, "dailyBalances")); //NOI18N
+		Map<Date, Long> expectedDailyBalances = new HashMap<>();
+		expectedDailyBalances.put(date1, 42L);
+		expectedDailyBalances.put(date2, 20L);
+		expectedDailyBalances.put(date3, 7L);
+		assertEquals(expectedDailyBalances, getDailyBalances(account));
+		assertEquals(42 + 20 + 7, account.getRawBalance());
+	}
+
+	/**
+	 * Invalidate daily balances when detached transactions are changed and
+	 * merged, and recalculate them with DatabaseMaintenance
+	 */
+	@Test
+	public void updateDailyBalancesDetached() {
+		Date date1 = TestUtils.parseJSONDate("2016-01-02"); //NOI18N
+		Date date2 = TestUtils.parseJSONDate("2016-01-05"); //NOI18N
+		Date date3 = TestUtils.parseJSONDate("2016-02-01"); //NOI18N
+		VogonUser user = new VogonUser("user01", "password"); //NOI18N
+		FinanceAccount account1 = new FinanceAccount(user, "test account 1", Currency.getInstance("RUB")); //NOI18N
+		FinanceAccount account2 = new FinanceAccount(user, "test account 2", Currency.getInstance("RUB")); //NOI18N
+		FinanceAccount account3 = new FinanceAccount(user, "test account 3", Currency.getInstance("RUB")); //NOI18N
+		FinanceTransaction transaction1 = new FinanceTransaction(user, "test transaction 1", null, date1, FinanceTransaction.Type.TRANSFER); //NOI18N
+		FinanceTransaction transaction2 = new FinanceTransaction(user, "test transaction 2", null, date2, FinanceTransaction.Type.EXPENSEINCOME); //NOI18N
+		TransactionComponent component1 = new TransactionComponent(account1, transaction1, 42);
+		TransactionComponent component2 = new TransactionComponent(account2, transaction1, -42);
+		TransactionComponent component3 = new TransactionComponent(account1, transaction2, 10);
+		TransactionComponent component4 = new TransactionComponent(account3, transaction2, 5);
+
+		entityManager.getTransaction().begin();
+		entityManager.persist(user);
+		entityManager.persist(account1);
+		entityManager.persist(account2);
+		entityManager.persist(account3);
+		entityManager.persist(component1);
+		entityManager.persist(component2);
+		entityManager.persist(component3);
+		entityManager.persist(component4);
+		entityManager.persist(transaction1);
+		entityManager.persist(transaction2);
+		entityManager.getTransaction().commit();
+		entityManager.clear();
+
+		component1.setRawAmount(50);
+		transaction1.setDate(date3);
+		component3.setAccount(account2);
+		component4.setTransaction(null);
+		component4.setAccount(null);
+
+		entityManager.getTransaction().begin();
+		entityManager.merge(transaction1);
+		entityManager.merge(transaction2);
+		entityManager.merge(account1);
+		entityManager.merge(account2);
+		entityManager.merge(account3);
+		entityManager.getTransaction().commit();
+		entityManager.clear();
+
+		entityManager.getTransaction().begin();
+		assertEquals(3, new DatabaseMaintenance().refreshDailyBalances(entityManager));
+		entityManager.getTransaction().commit();
+		entityManager.clear();
+
+		Map<Date, Long> expectedDailyBalances1 = new HashMap<>();
+		expectedDailyBalances1.put(date3, 50L);
+		Map<Date, Long> expectedDailyBalances2 = new HashMap<>();
+		expectedDailyBalances2.put(date2, 10L);
+		expectedDailyBalances2.put(date3, -42L);
+		assertEquals(expectedDailyBalances1, getDailyBalances(account1));
+		assertEquals(expectedDailyBalances2, getDailyBalances(account2));
+		assertEquals(new HashMap<>(), getDailyBalances(account3));
+
+		entityManager.getTransaction().begin();
+		assertEquals(0, new DatabaseMaintenance().refreshDailyBalances(entityManager));
+		entityManager.getTransaction().commit();
+	}
+
+	/**
+	 * Returns the non-empty daily balances of an account
+	 *
+	 * @param account the account
+	 * @return the raw daily balance changes of account, by date
+	 */
+	private Map<Date, Long> getDailyBalances(FinanceAccount account) {
+		CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+		CriteriaQuery<AccountDailyBalance> dailyBalancesQuery = criteriaBuilder.createQuery(AccountDailyBalance.class);
+		Root<AccountDailyBalance> dailyBalance = dailyBalancesQuery.from(AccountDailyBalance.class);
+		dailyBalancesQuery.where(
+				criteriaBuilder.equal(dailyBalance.get(AccountDailyBalance_.account), account),
+				criteriaBuilder.greaterThan(dailyBalance.get(AccountDailyBalance_.componentCount), 0L));
+		Map<Date, Long> dailyBalances = new TreeMap<>();
+		for (AccountDailyBalance foundDailyBalance : entityManager.createQuery(dailyBalancesQuery).getResultList())
+			dailyBalances.put(foundDailyBalance.getBalanceDate(), foundDailyBalance.getRawAmount());
+		return dailyBalances;
+	}
 }
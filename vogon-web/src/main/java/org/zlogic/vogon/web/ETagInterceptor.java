@@ -0,0 +1,62 @@
+/*
+ * Vogon personal finance/expense analyzer.
+ * Licensed under Apache license: http://www.apache.org/licenses/LICENSE-2.0
+ * Author: Dmitry Zolotukhin <zlogic@gmail.com>
+ */
+package org.zlogic.vogon.web;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.zlogic.vogon.web.data.DataVersionTracker;
+import org.zlogic.vogon.web.security.VogonSecurityUser;
+
+/**
+ * Adds the user's data version as an ETag to read requests, and answers
+ * requests with a matching If-None-Match header with "Not Modified" before
+ * the controller is called. The ETag also depends on the request URL and
+ * Accept header, since the same URL can return different media types.
+ *
+ * @author Dmitry Zolotukhin [zlogic@gmail.com]
+ */
+@Component
+public class ETagInterceptor implements HandlerInterceptor {
+
+	/**
+	 * The data version tracker
+	 */
+	@Autowired
+	private DataVersionTracker dataVersionTracker;
+
+	/**
+	 * Checks the If-None-Match header of GET and HEAD requests against the
+	 * user's data version and the requested representation
+	 *
+	 * @param request the HTTP request
+	 * @param response the HTTP response
+	 * @param handler the handler
+	 * @return false if the data was not modified and the request was already
+	 * handled
+	 */
+	@Override
+	public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+		if (!HttpMethod.GET.matches(request.getMethod()) && !HttpMethod.HEAD.matches(request.getMethod()))
+			return true;
+		Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+		if (authentication == null || !(authentication.getPrincipal() instanceof VogonSecurityUser))
+			return true;
+		VogonSecurityUser user = (VogonSecurityUser) authentication.getPrincipal();
+		response.setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.noCache().cachePrivate().getHeaderValue());
+		response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+		String representation = String.join("\n", request.getRequestURI(), String.valueOf(request.getQueryString()), String.valueOf(request.getHeader(HttpHeaders.ACCEPT))); //NOI18N
+		return !new ServletWebRequest(request, response).checkNotModified(dataVersionTracker.getETag(user.getUser(), representation));
+	}
+}
@@ -14,6 +14,13 @@ import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.ResourceBundle;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.annotation.PreDestroy;
 import javax.persistence.EntityManagerFactory;
 import org.slf4j.Logger;
@@ -26,6 +33,7 @@ import org.springframework.orm.jpa.JpaTransactionManager;
 import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
 import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
+import org.zlogic.vogon.web.configuration.VogonConfiguration;
 
 /**
  * Persistence/JPA configuration class
@@ -46,12 +54,23 @@ public class PersistenceConfiguration {
 	 */
 	private static final ResourceBundle messages = ResourceBundle.getBundle("org/zlogic/vogon/web/messages");
 
+	/**
+	 * The maximum number of live update streams waiting to be sent to
+	 */
+	private static final int LIVE_UPDATE_QUEUE_SIZE = 1000;
+
 	/**
 	 * The ServerTypeDetector instance
 	 */
 	@Autowired
 	private ServerTypeDetector serverTypeDetector;
 
+	/**
+	 * The configuration handler
+	 */
+	@Autowired
+	private VogonConfiguration configuration;
+
 	/**
 	 * Returns the path to the H2 database
 	 *
@@ -144,6 +163,77 @@ public class PersistenceConfiguration {
 		return transactionManager;
 	}
 
+	/**
+	 * Creates the executor for building reports in parallel; limited to
+	 * VOGON_REPORT_THREADS threads so that reports don't use up all database
+	 * connections
+	 *
+	 * @return the executor for building reports in parallel
+	 */
+	@Bean(destroyMethod = "shutdownNow")
+	public ExecutorService reportExecutor() {
+		AtomicInteger threadNumber = new AtomicInteger();
+		return Executors.newFixedThreadPool(Math.max(configuration.getReportThreads(), 1), runnable -> {
+			Thread thread = new Thread(runnable, "report-" + threadNumber.incrementAndGet()); //NOI18N
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Creates the executor for running report jobs; separate from the request
+	 * threads and limited to VOGON_REPORT_JOB_THREADS threads so that large
+	 * reports don't block other requests
+	 *
+	 * @return the executor for running report jobs
+	 */
+	@Bean(destroyMethod = "shutdownNow")
+	public ExecutorService reportJobExecutor() {
+		AtomicInteger threadNumber = new AtomicInteger();
+		return Executors.newFixedThreadPool(Math.max(configuration.getReportJobThreads(), 1), runnable -> {
+			Thread thread = new Thread(runnable, "report-job-" + threadNumber.incrementAndGet()); //NOI18N
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Creates the executor for sending live updates to clients; limited to
+	 * VOGON_LIVE_UPDATE_THREADS threads (which are only kept while updates are
+	 * being sent) and a bounded queue of streams waiting to be sent to.
+	 * Streams which cannot be queued are closed, and clients are expected to
+	 * reconnect.
+	 *
+	 * @return the executor for sending live updates
+	 */
+	@Bean(destroyMethod = "shutdownNow")
+	public ExecutorService liveUpdateExecutor() {
+		AtomicInteger threadNumber = new AtomicInteger();
+		int threads = Math.max(configuration.getLiveUpdateThreads(), 1);
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(LIVE_UPDATE_QUEUE_SIZE), runnable -> {
+			Thread thread = new Thread(runnable, "live-update-" + threadNumber.incrementAndGet()); //NOI18N
+			thread.setDaemon(true);
+			return thread;
+		});
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	/**
+	 * Creates the executor for periodic maintenance tasks, such as sending
+	 * heartbeats to idle live update streams and removing expired report jobs
+	 *
+	 * @return the executor for periodic maintenance tasks
+	 */
+	@Bean(destroyMethod = "shutdownNow")
+	public ScheduledExecutorService maintenanceExecutor() {
+		return Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "maintenance"); //NOI18N
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
 	/**
 	 * Creates the PersistenceExceptionTranslationPostProcessor to translate Hibernate exceptions into generic Spring exceptions
 	 *
@@ -16,6 +16,7 @@ import org.springframework.security.web.method.annotation.AuthenticationPrincipa
 import org.springframework.web.method.support.HandlerMethodArgumentResolver;
 import org.springframework.web.servlet.ViewResolver;
 import org.springframework.web.servlet.config.annotation.DefaultServletHandlerConfigurer;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.ViewControllerRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 import org.springframework.web.servlet.view.InternalResourceViewResolver;
@@ -33,6 +34,11 @@ public class WebConfig implements WebMvcConfigurer {
 	 */
 	@Autowired
 	private MappingJackson2HttpMessageConverter jacksonMessageConverter;
+	/**
+	 * The ETag interceptor
+	 */
+	@Autowired
+	private ETagInterceptor eTagInterceptor;
 
 	/**
 	 * Adds view controllers to the registry
@@ -79,6 +85,17 @@ public class WebConfig implements WebMvcConfigurer {
 		argumentResolvers.add(new AuthenticationPrincipalArgumentResolver());
 	}
 
+	/**
+	 * Adds the ETag interceptor to endpoints which only return the user's
+	 * data
+	 *
+	 * @param registry the interceptor registry
+	 */
+	@Override
+	public void addInterceptors(InterceptorRegistry registry) {
+		registry.addInterceptor(eTagInterceptor).addPathPatterns("/service/accounts", "/service/transactions", "/service/transactions/**", "/service/analytics/tags", "/service/user", "/service/sync"); //NOI18N
+	}
+
 	/**
 	 * Enable default servlet handler
 	 *
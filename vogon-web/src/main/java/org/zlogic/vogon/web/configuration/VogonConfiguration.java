@@ -30,6 +30,41 @@ public class VogonConfiguration {
 	 */
 	private final static String TOKEN_EXPIRES_DAYS = "VOGON_TOKEN_EXPIRES_DAYS"; //NOI18N
 
+	/**
+	 * Build reports for every currency in parallel
+	 */
+	private final static String PARALLEL_REPORTS = "VOGON_PARALLEL_REPORTS"; //NOI18N
+
+	/**
+	 * The number of threads for building reports in parallel
+	 */
+	private final static String REPORT_THREADS = "VOGON_REPORT_THREADS"; //NOI18N
+
+	/**
+	 * The maximum number of cached reports
+	 */
+	private final static String REPORT_CACHE_SIZE = "VOGON_REPORT_CACHE_SIZE"; //NOI18N
+
+	/**
+	 * The maximum number of users whose data is cached
+	 */
+	private final static String USER_CACHE_SIZE = "VOGON_USER_CACHE_SIZE"; //NOI18N
+
+	/**
+	 * The number of threads for running report jobs
+	 */
+	private final static String REPORT_JOB_THREADS = "VOGON_REPORT_JOB_THREADS"; //NOI18N
+
+	/**
+	 * The maximum number of unfinished report jobs for every user
+	 */
+	private final static String REPORT_JOBS_PER_USER = "VOGON_REPORT_JOBS_PER_USER"; //NOI18N
+
+	/**
+	 * The maximum number of threads for sending live updates
+	 */
+	private final static String LIVE_UPDATE_THREADS = "VOGON_LIVE_UPDATE_THREADS"; //NOI18N
+
 	/**
 	 * Returns true if registration is allowed
 	 *
@@ -65,4 +100,89 @@ public class VogonConfiguration {
 			tokenExpiresDays = "14"; //NOI18N
 		return 60 * 60 * 24 * Integer.parseInt(tokenExpiresDays);
 	}
+
+	/**
+	 * Returns true if reports for every currency should be built in parallel
+	 *
+	 * @return true if reports for every currency should be built in parallel
+	 */
+	public boolean isParallelReports() {
+		String parallelReports = System.getenv(PARALLEL_REPORTS);
+		if (parallelReports == null)
+			return false;
+		return Boolean.parseBoolean(parallelReports);
+	}
+
+	/**
+	 * Returns the number of threads for building reports in parallel
+	 *
+	 * @return the number of threads for building reports in parallel
+	 */
+	public int getReportThreads() {
+		String reportThreads = System.getenv(REPORT_THREADS);
+		if (reportThreads == null)
+			return Math.min(Runtime.getRuntime().availableProcessors(), 4);
+		return Integer.parseInt(reportThreads);
+	}
+
+	/**
+	 * Returns the maximum number of cached reports (0 disables the cache)
+	 *
+	 * @return the maximum number of cached reports
+	 */
+	public int getReportCacheSize() {
+		String reportCacheSize = System.getenv(REPORT_CACHE_SIZE);
+		if (reportCacheSize == null)
+			reportCacheSize = "100"; //NOI18N
+		return Integer.parseInt(reportCacheSize);
+	}
+
+	/**
+	 * Returns the maximum number of users whose data (such as tags) is kept in
+	 * memory by every per-user cache (0 disables the caches)
+	 *
+	 * @return the maximum number of users whose data is cached
+	 */
+	public int getUserCacheSize() {
+		String userCacheSize = System.getenv(USER_CACHE_SIZE);
+		if (userCacheSize == null)
+			userCacheSize = "100"; //NOI18N
+		return Integer.parseInt(userCacheSize);
+	}
+
+	/**
+	 * Returns the number of threads for running report jobs
+	 *
+	 * @return the number of threads for running report jobs
+	 */
+	public int getReportJobThreads() {
+		String reportJobThreads = System.getenv(REPORT_JOB_THREADS);
+		if (reportJobThreads == null)
+			reportJobThreads = "2"; //NOI18N
+		return Integer.parseInt(reportJobThreads);
+	}
+
+	/**
+	 * Returns the maximum number of unfinished report jobs for every user
+	 *
+	 * @return the maximum number of unfinished report jobs for every user
+	 */
+	public int getReportJobsPerUser() {
+		String reportJobsPerUser = System.getenv(REPORT_JOBS_PER_USER);
+		if (reportJobsPerUser == null)
+			reportJobsPerUser = "2"; //NOI18N
+		return Integer.parseInt(reportJobsPerUser);
+	}
+
+	/**
+	 * Returns the maximum number of threads for sending live updates
+	 *
+	 * @return the maximum number of threads for sending live updates
+	 */
+	public int getLiveUpdateThreads() {
+		String liveUpdateThreads = System.getenv(LIVE_UPDATE_THREADS);
+		if (liveUpdateThreads == null)
+			liveUpdateThreads = "4"; //NOI18N
+		return Integer.parseInt(liveUpdateThreads);
+	}
 }
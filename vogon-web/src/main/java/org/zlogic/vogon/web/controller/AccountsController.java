@@ -24,6 +24,7 @@ import org.zlogic.vogon.data.FinanceAccount;
 import org.zlogic.vogon.data.FinanceTransaction;
 import org.zlogic.vogon.data.TransactionComponent;
 import org.zlogic.vogon.web.data.AccountRepository;
+import org.zlogic.vogon.web.data.DataChangeNotifier;
 import org.zlogic.vogon.web.data.TransactionRepository;
 import org.zlogic.vogon.web.security.VogonSecurityUser;
 
@@ -47,6 +48,11 @@ public class AccountsController {
 	 */
 	@Autowired
 	private AccountRepository accountRepository;
+	/**
+	 * The data change notifier
+	 */
+	@Autowired
+	private DataChangeNotifier dataChangeNotifier;
 
 	/**
 	 * Returns all accounts
@@ -70,6 +76,7 @@ public class AccountsController {
 	@RequestMapping(method = RequestMethod.POST, produces = "application/json")
 	public @ResponseBody
 	Collection<FinanceAccount> updateAccounts(@RequestBody Collection<FinanceAccount> accounts, @AuthenticationPrincipal VogonSecurityUser user) {
+		dataChangeNotifier.dataChanged(user.getUser());
 		List<FinanceAccount> existingAccounts = new ArrayList<>(accountRepository.findByOwner(user.getUser()));
 		LinkedList<FinanceAccount> removedAccounts = new LinkedList<>(existingAccounts);
 		//Merge with database
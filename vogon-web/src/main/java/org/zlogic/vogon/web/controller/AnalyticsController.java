@@ -6,22 +6,36 @@
 package org.zlogic.vogon.web.controller;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ExecutorService;
 import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
 import javax.persistence.PersistenceContext;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.stereotype.Controller;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.context.request.async.DeferredResult;
 import org.zlogic.vogon.data.FinanceAccount;
+import org.zlogic.vogon.data.report.BucketSize;
 import org.zlogic.vogon.data.report.Report;
+import org.zlogic.vogon.data.report.ReportBucket;
 import org.zlogic.vogon.data.report.ReportFactory;
+import org.zlogic.vogon.data.report.ReportTransaction;
+import org.zlogic.vogon.web.configuration.VogonConfiguration;
 import org.zlogic.vogon.web.data.AccountRepository;
+import org.zlogic.vogon.web.data.ReportCache;
+import org.zlogic.vogon.web.data.ReportJob;
+import org.zlogic.vogon.web.data.ReportJobService;
+import org.zlogic.vogon.web.data.TagDictionary;
 import org.zlogic.vogon.web.security.VogonSecurityUser;
 
 /**
@@ -39,6 +53,36 @@ public class AnalyticsController {
 	@PersistenceContext
 	private EntityManager em;
 
+	/**
+	 * The EntityManagerFactory instance
+	 */
+	@Autowired
+	private EntityManagerFactory emf;
+
+	/**
+	 * The executor for building reports in parallel
+	 */
+	@Autowired
+	private ExecutorService reportExecutor;
+
+	/**
+	 * The configuration handler
+	 */
+	@Autowired
+	private VogonConfiguration configuration;
+
+	/**
+	 * The report cache
+	 */
+	@Autowired
+	private ReportCache reportCache;
+
+	/**
+	 * The report jobs service
+	 */
+	@Autowired
+	private ReportJobService reportJobService;
+
 	/**
 	 * The accounts repository
 	 */
@@ -46,28 +90,150 @@ public class AnalyticsController {
 	private AccountRepository accountRepository;
 
 	/**
-	 * Returns all tags
+	 * The tag dictionary
+	 */
+	@Autowired
+	private TagDictionary tagDictionary;
+
+	/**
+	 * Returns all tags, or the most used tags starting with a prefix
+	 * (case-insensitive) if the prefix is specified
 	 *
+	 * @param prefix the tag prefix for autocomplete
+	 * @param limit the maximum number of tags returned for a prefix
 	 * @param user the authenticated user
-	 * @return the set of all tags
+	 * @return the set of all tags, or the matching tags ordered by usage
 	 */
 	@RequestMapping(value = "/tags", method = RequestMethod.GET, produces = "application/json")
 	public @ResponseBody
-	Set<String> getAllTags(@AuthenticationPrincipal VogonSecurityUser user) {
-		ReportFactory reportFactory = new ReportFactory(user.getUser());
-		return reportFactory.getAllTags(em);
+	Collection<String> getAllTags(@RequestParam(value = "prefix", required = false) String prefix, @RequestParam(value = "limit", defaultValue = "20") int limit, @AuthenticationPrincipal VogonSecurityUser user) {
+		if (prefix != null)
+			return tagDictionary.findTags(user.getUser(), prefix, limit);
+		return tagDictionary.getTags(user.getUser());
 	}
 
 	/**
-	 * Returns the report results
+	 * Returns the report results; if the number of transactions is not
+	 * specified, only the first page of transactions is returned
 	 *
 	 * @param reportFactory the requested report parameters
 	 * @param user the authenticated user
 	 * @return the report
 	 */
 	@RequestMapping(method = RequestMethod.POST, produces = "application/json")
+	@Transactional(readOnly = true)
 	public @ResponseBody
 	Map<String, Report> getReport(@RequestBody ReportFactory reportFactory, @AuthenticationPrincipal VogonSecurityUser user) {
+		prepareReportFactory(reportFactory, user);
+		//Build report
+		return reportCache.getReport(reportFactory, () -> {
+			if (configuration.isParallelReports())
+				return reportFactory.buildReport(emf, reportExecutor);
+			return reportFactory.buildReport(em);
+		});
+	}
+
+	/**
+	 * Submits a job to build the report in the background
+	 *
+	 * @param reportFactory the requested report parameters
+	 * @param user the authenticated user
+	 * @return the submitted job
+	 */
+	@RequestMapping(value = "/jobs", method = RequestMethod.POST, produces = "application/json")
+	@Transactional(readOnly = true)
+	public @ResponseBody
+	ReportJob submitReportJob(@RequestBody ReportFactory reportFactory, @AuthenticationPrincipal VogonSecurityUser user) {
+		prepareReportFactory(reportFactory, user);
+		return reportJobService.submit(reportFactory, user.getUser());
+	}
+
+	/**
+	 * Returns the status of a report job
+	 *
+	 * @param id the job ID
+	 * @param wait the maximum time in milliseconds to wait for the job to
+	 * finish
+	 * @param user the authenticated user
+	 * @return the job, once it's finished or the wait times out
+	 */
+	@RequestMapping(value = "/jobs/{id}", method = RequestMethod.GET, produces = "application/json")
+	public @ResponseBody
+	DeferredResult<ReportJob> getReportJob(@PathVariable String id, @RequestParam(value = "wait", defaultValue = "0") long wait, @AuthenticationPrincipal VogonSecurityUser user) {
+		return reportJobService.getJob(id, user.getUser(), wait);
+	}
+
+	/**
+	 * Returns the results of a completed report job
+	 *
+	 * @param id the job ID
+	 * @param user the authenticated user
+	 * @return the report
+	 */
+	@RequestMapping(value = "/jobs/{id}/result", method = RequestMethod.GET, produces = "application/json")
+	public @ResponseBody
+	Map<String, Report> getReportJobResult(@PathVariable String id, @AuthenticationPrincipal VogonSecurityUser user) {
+		return reportJobService.getResult(id, user.getUser());
+	}
+
+	/**
+	 * Cancels and removes a report job
+	 *
+	 * @param id the job ID
+	 * @param user the authenticated user
+	 * @return the cancelled job
+	 */
+	@RequestMapping(value = "/jobs/{id}", method = RequestMethod.DELETE, produces = "application/json")
+	public @ResponseBody
+	ReportJob cancelReportJob(@PathVariable String id, @AuthenticationPrincipal VogonSecurityUser user) {
+		return reportJobService.cancel(id, user.getUser());
+	}
+
+	/**
+	 * Returns a page of the report transactions for every currency, ordered by
+	 * their absolute amount
+	 *
+	 * @param reportFactory the requested report parameters; topN is used as
+	 * the page size if specified
+	 * @param page the page number
+	 * @param user the authenticated user
+	 * @return the report transactions page for every currency
+	 */
+	@RequestMapping(value = "/transactions", method = RequestMethod.POST, produces = "application/json")
+	@Transactional(readOnly = true)
+	public @ResponseBody
+	Map<String, List<ReportTransaction>> getReportTransactions(@RequestBody ReportFactory reportFactory, @RequestParam(value = "page") int page, @AuthenticationPrincipal VogonSecurityUser user) {
+		prepareReportFactory(reportFactory, user);
+		int pageSize = reportFactory.getTopN() > 0 ? reportFactory.getTopN() : configuration.getTransactionsPageSize();
+		return reportFactory.buildTransactionsPage(em, Math.multiplyExact(Math.max(page, 0), pageSize), pageSize);
+	}
+
+	/**
+	 * Returns the report amounts grouped into time periods (buckets) for every
+	 * currency
+	 *
+	 * @param reportFactory the requested report parameters
+	 * @param bucketSize the bucket size
+	 * @param user the authenticated user
+	 * @return the report buckets for every currency
+	 */
+	@RequestMapping(value = "/buckets", method = RequestMethod.POST, produces = "application/json")
+	@Transactional(readOnly = true)
+	public @ResponseBody
+	Map<String, List<ReportBucket>> getReportBuckets(@RequestBody ReportFactory reportFactory, @RequestParam(value = "bucketSize", defaultValue = "MONTH") BucketSize bucketSize, @AuthenticationPrincipal VogonSecurityUser user) {
+		prepareReportFactory(reportFactory, user);
+		return reportFactory.buildBuckets(em, bucketSize);
+	}
+
+	/**
+	 * Sets the report owner and replaces the requested accounts with the
+	 * user's accounts; if the number of transactions is not specified, only
+	 * the first page of transactions will be included in the report
+	 *
+	 * @param reportFactory the requested report parameters
+	 * @param user the authenticated user
+	 */
+	private void prepareReportFactory(ReportFactory reportFactory, VogonSecurityUser user) {
 		reportFactory.setOwner(user.getUser());
 		//Update accounts (needed to properly handle users)
 		List<FinanceAccount> accounts = new ArrayList<>(reportFactory.getSelectedAccounts().size());
@@ -77,7 +243,8 @@ public class AnalyticsController {
 				accounts.add(account);
 		}
 		reportFactory.setSelectedAccounts(accounts);
-		//Build report
-		return reportFactory.buildReport(em);
+		reportFactory.setAllTags(tagDictionary.getTags(user.getUser()));
+		if (reportFactory.getTopN() <= 0)
+			reportFactory.setTopN(configuration.getTransactionsPageSize());
 	}
 }
@@ -0,0 +1,58 @@
+/*
+ * Vogon personal finance/expense analyzer.
+ * Licensed under Apache license: http://www.apache.org/licenses/LICENSE-2.0
+ * Author: Dmitry Zolotukhin <zlogic@gmail.com>
+ */
+package org.zlogic.vogon.web.controller;
+
+import java.util.Collections;
+import java.util.List;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Exception thrown when operations from a batch can't be applied; the
+ * message names every failed operation's index
+ *
+ * @author Dmitry Zolotukhin [zlogic@gmail.com]
+ */
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class BatchOperationException extends RuntimeException {
+
+	/**
+	 * The indexes of failed operations
+	 */
+	private final List<Integer> failedOperations;
+
+	/**
+	 * Creates the BatchOperationException
+	 *
+	 * @param failedOperations the indexes of failed operations
+	 * @param errors the error messages of failed operations
+	 */
+	public BatchOperationException(List<Integer> failedOperations, List<String> errors) {
+		super(String.join("; ", errors)); //NOI18N
+		this.failedOperations = Collections.unmodifiableList(failedOperations);
+	}
+
+	/**
+	 * Creates the BatchOperationException for a single failed operation
+	 *
+	 * @param failedOperation the index of the failed operation
+	 * @param error the error message of the failed operation
+	 * @param cause the exception which caused the operation to fail
+	 */
+	public BatchOperationException(int failedOperation, String error, Throwable cause) {
+		super(error, cause);
+		this.failedOperations = Collections.singletonList(failedOperation);
+	}
+
+	/**
+	 * Returns the indexes of failed operations
+	 *
+	 * @return the indexes of failed operations
+	 */
+	public List<Integer> getFailedOperations() {
+		return failedOperations;
+	}
+}
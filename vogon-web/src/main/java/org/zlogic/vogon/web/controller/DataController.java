@@ -29,6 +29,7 @@ import org.springframework.web.multipart.MultipartFile;
 import org.zlogic.vogon.data.VogonUser;
 import org.zlogic.vogon.web.controller.serialization.JSONMapper;
 import org.zlogic.vogon.web.data.AccountRepository;
+import org.zlogic.vogon.web.data.DataChangeNotifier;
 import org.zlogic.vogon.web.data.TransactionRepository;
 import org.zlogic.vogon.web.data.UserRepository;
 import org.zlogic.vogon.web.data.model.importexport.ImportExportData;
@@ -69,6 +70,11 @@ public class DataController {
 	 */
 	@Autowired
 	private JSONMapper jsonMapper;
+	/**
+	 * The data change notifier
+	 */
+	@Autowired
+	private DataChangeNotifier dataChangeNotifier;
 
 	/**
 	 * Imports uploaded XML data
@@ -88,6 +94,7 @@ public class DataController {
 			throw new RuntimeException(ex);
 		}
 		
+		dataChangeNotifier.dataChanged(user);
 		importData.persist(user, em);
 
 		return true;
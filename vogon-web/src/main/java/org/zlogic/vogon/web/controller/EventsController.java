@@ -0,0 +1,44 @@
+/*
+ * Vogon personal finance/expense analyzer.
+ * Licensed under Apache license: http://www.apache.org/licenses/LICENSE-2.0
+ * Author: Dmitry Zolotukhin <zlogic@gmail.com>
+ */
+package org.zlogic.vogon.web.controller;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.zlogic.vogon.web.data.LiveUpdatePublisher;
+import org.zlogic.vogon.web.security.VogonSecurityUser;
+
+/**
+ * Spring MVC controller for live updates
+ *
+ * @author Dmitry Zolotukhin [zlogic@gmail.com]
+ */
+@Controller
+@RequestMapping(value = "/service/events")
+public class EventsController {
+
+	/**
+	 * The live update publisher
+	 */
+	@Autowired
+	private LiveUpdatePublisher liveUpdatePublisher;
+
+	/**
+	 * Opens a Server-Sent Events stream with changes of the user's accounts
+	 * and transactions
+	 *
+	 * @param user the authenticated user
+	 * @return the events stream
+	 */
+	@RequestMapping(method = RequestMethod.GET, produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+	public SseEmitter getEvents(@AuthenticationPrincipal VogonSecurityUser user) {
+		return liveUpdatePublisher.subscribe(user.getUser());
+	}
+}
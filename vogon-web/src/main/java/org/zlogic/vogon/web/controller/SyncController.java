@@ -0,0 +1,129 @@
+/*
+ * Vogon personal finance/expense analyzer.
+ * Licensed under Apache license: http://www.apache.org/licenses/LICENSE-2.0
+ * Author: Dmitry Zolotukhin <zlogic@gmail.com>
+ */
+package org.zlogic.vogon.web.controller;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.stereotype.Controller;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.zlogic.vogon.data.ChangeLogEntry;
+import org.zlogic.vogon.data.ChangeLogEntry_;
+import org.zlogic.vogon.data.FinanceAccount;
+import org.zlogic.vogon.data.FinanceTransaction;
+import org.zlogic.vogon.web.data.AccountRepository;
+import org.zlogic.vogon.web.data.ChangeLogRepository;
+import org.zlogic.vogon.web.data.InitializationHelper;
+import org.zlogic.vogon.web.data.TransactionRepository;
+import org.zlogic.vogon.web.data.model.SyncJson;
+import org.zlogic.vogon.web.security.VogonSecurityUser;
+
+/**
+ * Spring MVC controller for synchronizing changes with clients
+ *
+ * @author Dmitry Zolotukhin [zlogic@gmail.com]
+ */
+@Controller
+@RequestMapping(value = "/service/sync")
+@Transactional(propagation = Propagation.REQUIRED)
+public class SyncController {
+
+	/**
+	 * Maximum number of change journal entries returned in one response
+	 */
+	private static final int SYNC_PAGE_SIZE = 1000;
+	/**
+	 * The change journal repository
+	 */
+	@Autowired
+	private ChangeLogRepository changeLogRepository;
+	/**
+	 * The accounts repository
+	 */
+	@Autowired
+	private AccountRepository accountRepository;
+	/**
+	 * The transactions repository
+	 */
+	@Autowired
+	private TransactionRepository transactionRepository;
+	/**
+	 * InitializationHelper instance
+	 */
+	@Autowired
+	private InitializationHelper initializationHelper;
+
+	/**
+	 * Returns changes made after a sync cursor. Only the latest change of
+	 * every entity is returned, together with the current state of created or
+	 * updated accounts and transactions; changed transaction components are
+	 * returned as part of their transactions.
+	 *
+	 * @param since the cursor returned by the previous sync, or 0 to get all
+	 * changes
+	 * @param user the authenticated user
+	 * @return the changes and the cursor for the next sync
+	 */
+	@RequestMapping(method = RequestMethod.GET, produces = "application/json")
+	@Transactional(readOnly = true)
+	public @ResponseBody
+	SyncJson getChanges(@RequestParam(value = "since", defaultValue = "0") long since, @AuthenticationPrincipal VogonSecurityUser user) {
+		Slice<ChangeLogEntry> entries = changeLogRepository.findByOwnerIdAndIdGreaterThan(user.getUser().getId(), since, PageRequest.of(0, SYNC_PAGE_SIZE, Sort.by(ChangeLogEntry_.ID)));
+		long cursor = since;
+		Map<List<Object>, ChangeLogEntry> changes = new LinkedHashMap<>();
+		for (ChangeLogEntry entry : entries) {
+			List<Object> key = Arrays.asList(entry.getEntityType(), entry.getEntityId());
+			changes.remove(key);
+			changes.put(key, entry);
+			cursor = entry.getId();
+		}
+		Set<Long> accountIds = new TreeSet<>();
+		Set<Long> transactionIds = new TreeSet<>();
+		Set<Long> componentIds = new TreeSet<>();
+		for (ChangeLogEntry change : changes.values()) {
+			if (change.getOperation() == ChangeLogEntry.Operation.DELETE)
+				continue;
+			switch (change.getEntityType()) {
+				case ACCOUNT:
+					accountIds.add(change.getEntityId());
+					break;
+				case TRANSACTION:
+					transactionIds.add(change.getEntityId());
+					break;
+				case TRANSACTION_COMPONENT:
+					componentIds.add(change.getEntityId());
+					break;
+			}
+		}
+		Map<Long, FinanceAccount> accounts = new TreeMap<>();
+		if (!accountIds.isEmpty())
+			for (FinanceAccount account : accountRepository.findByOwnerAndIdIn(user.getUser(), accountIds))
+				accounts.put(account.getId(), account);
+		Map<Long, FinanceTransaction> transactions = new TreeMap<>();
+		if (!transactionIds.isEmpty())
+			for (FinanceTransaction transaction : transactionRepository.findByOwnerAndIdIn(user.getUser(), transactionIds))
+				transactions.put(transaction.getId(), transaction);
+		if (!componentIds.isEmpty())
+			for (FinanceTransaction transaction : transactionRepository.findDistinctByOwnerAndComponentsIdIn(user.getUser(), componentIds))
+				transactions.put(transaction.getId(), transaction);
+		return new SyncJson(new ArrayList<>(changes.values()), new ArrayList<>(accounts.values()), initializationHelper.initializeTransactions(transactions.values()), cursor, entries.hasNext());
+	}
+}
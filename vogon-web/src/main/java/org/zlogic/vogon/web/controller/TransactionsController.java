@@ -5,18 +5,38 @@
  */
 package org.zlogic.vogon.web.controller;
 
+import com.fasterxml.jackson.databind.ObjectWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.ConcurrentModificationException;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.stream.Stream;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityNotFoundException;
 import javax.persistence.PersistenceContext;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.JoinType;
+import javax.persistence.criteria.Order;
+import javax.persistence.criteria.Root;
 import javax.persistence.metamodel.Attribute;
+import javax.servlet.http.HttpServletResponse;
+import org.hibernate.annotations.QueryHints;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
@@ -35,14 +55,23 @@ import org.springframework.web.bind.annotation.ResponseBody;
 import org.zlogic.vogon.data.FinanceAccount;
 import org.zlogic.vogon.data.FinanceTransaction;
 import org.zlogic.vogon.data.FinanceTransaction_;
+import org.zlogic.vogon.data.TagResolver;
 import org.zlogic.vogon.data.TransactionComponent;
 import org.zlogic.vogon.web.configuration.VogonConfiguration;
+import org.zlogic.vogon.web.controller.serialization.JSONMapper;
 import org.zlogic.vogon.web.data.AccountRepository;
+import org.zlogic.vogon.web.data.DataChangeNotifier;
 import org.zlogic.vogon.web.data.InitializationHelper;
+import org.zlogic.vogon.web.data.TransactionCountCache;
+import org.zlogic.vogon.web.data.TransactionCursor;
 import org.zlogic.vogon.web.data.TransactionFilterSpecification;
 import org.zlogic.vogon.web.data.TransactionRepository;
+import org.zlogic.vogon.web.data.TransactionSearchIndex;
 import org.zlogic.vogon.web.data.model.FinanceTransactionJson;
 import org.zlogic.vogon.web.data.model.TransactionComponentJson;
+import org.zlogic.vogon.web.data.model.TransactionOperationJson;
+import org.zlogic.vogon.web.data.model.TransactionOperationResultJson;
+import org.zlogic.vogon.web.data.model.TransactionsPageJson;
 import org.zlogic.vogon.web.security.VogonSecurityUser;
 
 /**
@@ -59,6 +88,15 @@ public class TransactionsController {
 	 * Localization messages
 	 */
 	private static final ResourceBundle messages = ResourceBundle.getBundle("org/zlogic/vogon/web/messages");
+	/**
+	 * Content type for streaming transactions as newline-delimited JSON
+	 */
+	private static final String NDJSON_CONTENT_TYPE = "application/x-ndjson"; //NOI18N
+	/**
+	 * Number of streamed transactions fetched from the database and kept in
+	 * the persistence context at a time
+	 */
+	private static final int STREAM_BATCH_SIZE = 100;
 	/**
 	 * The EntityManager instance
 	 */
@@ -84,6 +122,26 @@ public class TransactionsController {
 	 */
 	@Autowired
 	private VogonConfiguration configuration;
+	/**
+	 * The data change notifier
+	 */
+	@Autowired
+	private DataChangeNotifier dataChangeNotifier;
+	/**
+	 * The transaction counts cache
+	 */
+	@Autowired
+	private TransactionCountCache transactionCountCache;
+	/**
+	 * The transactions search index
+	 */
+	@Autowired
+	private TransactionSearchIndex transactionSearchIndex;
+	/**
+	 * JSONMapper instance
+	 */
+	@Autowired
+	private JSONMapper jsonMapper;
 
 	/**
 	 * Sort column options
@@ -110,6 +168,11 @@ public class TransactionsController {
 	 * @param filterDescription
 	 * @param filterTags the tags to be filtered
 	 * @param filterDate the date to be filtered
+	 * @param dateFrom the earliest date to be filtered
+	 * @param dateTo the latest date to be filtered
+	 * @param minAmount the minimum component amount to be filtered
+	 * @param maxAmount the maximum component amount to be filtered
+	 * @param accountIds the component accounts to be filtered
 	 * @param user the authenticated user
 	 * @return the transactions
 	 */
@@ -122,43 +185,249 @@ public class TransactionsController {
 			@RequestParam(value = "filterDescription", required = false) String filterDescription,
 			@RequestParam(value = "filterDate", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Date filterDate,
 			@RequestParam(value = "filterTags", required = false) Collection<String> filterTags,
+			@RequestParam(value = "dateFrom", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Date dateFrom,
+			@RequestParam(value = "dateTo", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Date dateTo,
+			@RequestParam(value = "minAmount", required = false) Double minAmount,
+			@RequestParam(value = "maxAmount", required = false) Double maxAmount,
+			@RequestParam(value = "accountIds", required = false) Collection<Long> accountIds,
 			@AuthenticationPrincipal VogonSecurityUser user) {
-		Attribute sortAttribute = FinanceTransaction_.transactionDate;
-		if (sortColumn != null)
-			switch (sortColumn) {
-				case DATE:
-					sortAttribute = FinanceTransaction_.transactionDate;
-					break;
-				case DESCRIPTION:
-					sortAttribute = FinanceTransaction_.description;
-					break;
-			}
+		Attribute sortAttribute = getSortAttribute(sortColumn);
 		if (sortDirection == null)
 			sortDirection = Sort.Direction.fromOptionalString(null).orElse(null);
 		Sort sort = new JpaSort(sortDirection, sortAttribute, FinanceTransaction_.id);
 		//TODO: Optimize if https://jira.spring.io/browse/DATAJPA-209 gets implemented?
-		TransactionFilterSpecification filter = new TransactionFilterSpecification(user.getUser());
-		filter.setFilterDescription(filterDescription);
-		filter.setFilterDate(filterDate);
-		if (filterTags != null)
-			filter.setFilterTags(new HashSet<>(filterTags));
+		TransactionFilterSpecification filter = createFilter(filterDescription, filterDate, filterTags, dateFrom, dateTo, minAmount, maxAmount, accountIds, user);
 		if (page == null)
 			return initializationHelper.initializeTransactions(transactionRepository.findAll(filter, sort));
 		PageRequest pageRequest = PageRequest.of(page, configuration.getTransactionsPageSize(), sort);
 		return initializationHelper.initializeTransactions(transactionRepository.findAll(filter, pageRequest).getContent());
 	}
 
+	/**
+	 * Streams all transactions as newline-delimited JSON (one transaction per
+	 * line). Transactions are read with a forward-only cursor and written to
+	 * the response as they are loaded; the persistence context is cleared
+	 * periodically, so that memory usage doesn't depend on the number of
+	 * transactions.
+	 *
+	 * @param sortColumn the column used for sorting
+	 * @param sortDirection the sort direction
+	 * @param filterDescription the description to be filtered
+	 * @param filterTags the tags to be filtered
+	 * @param filterDate the date to be filtered
+	 * @param dateFrom the earliest date to be filtered
+	 * @param dateTo the latest date to be filtered
+	 * @param minAmount the minimum component amount to be filtered
+	 * @param maxAmount the maximum component amount to be filtered
+	 * @param accountIds the component accounts to be filtered
+	 * @param user the authenticated user
+	 * @param response the HTTP response
+	 * @throws IOException if the transactions cannot be written to the
+	 * response
+	 */
+	@RequestMapping(method = RequestMethod.GET, params = {"!page", "!cursor"}, produces = NDJSON_CONTENT_TYPE)
+	@Transactional(readOnly = true)
+	public void streamTransactions(
+			@RequestParam(value = "sortColumn", required = false) SortColumn sortColumn,
+			@RequestParam(value = "sortDirection", required = false) Sort.Direction sortDirection,
+			@RequestParam(value = "filterDescription", required = false) String filterDescription,
+			@RequestParam(value = "filterDate", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Date filterDate,
+			@RequestParam(value = "filterTags", required = false) Collection<String> filterTags,
+			@RequestParam(value = "dateFrom", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Date dateFrom,
+			@RequestParam(value = "dateTo", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Date dateTo,
+			@RequestParam(value = "minAmount", required = false) Double minAmount,
+			@RequestParam(value = "maxAmount", required = false) Double maxAmount,
+			@RequestParam(value = "accountIds", required = false) Collection<Long> accountIds,
+			@AuthenticationPrincipal VogonSecurityUser user,
+			HttpServletResponse response) throws IOException {
+		TransactionFilterSpecification filter = createFilter(filterDescription, filterDate, filterTags, dateFrom, dateTo, minAmount, maxAmount, accountIds, user);
+		CriteriaBuilder criteriaBuilder = em.getCriteriaBuilder();
+		CriteriaQuery<FinanceTransaction> transactionsQuery = criteriaBuilder.createQuery(FinanceTransaction.class);
+		Root<FinanceTransaction> tr = transactionsQuery.from(FinanceTransaction.class);
+		transactionsQuery.where(filter.toPredicate(tr, transactionsQuery, criteriaBuilder));
+		Expression<?> sortExpression = tr.get(getSortAttribute(sortColumn).getName());
+		Expression<Long> id = tr.get(FinanceTransaction_.id);
+		transactionsQuery.orderBy(sortDirection == Sort.Direction.DESC
+				? new Order[]{criteriaBuilder.desc(sortExpression), criteriaBuilder.desc(id)}
+				: new Order[]{criteriaBuilder.asc(sortExpression), criteriaBuilder.asc(id)});
+
+		response.setContentType(NDJSON_CONTENT_TYPE);
+		response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+		ObjectWriter writer = jsonMapper.writerFor(FinanceTransactionJson.class);
+		OutputStream output = response.getOutputStream();
+		try (Stream<FinanceTransaction> transactions = em.createQuery(transactionsQuery).setHint(QueryHints.FETCH_SIZE, STREAM_BATCH_SIZE).getResultStream()) {
+			Iterator<FinanceTransaction> iterator = transactions.iterator();
+			List<FinanceTransaction> chunk = new ArrayList<>(STREAM_BATCH_SIZE);
+			while (iterator.hasNext()) {
+				chunk.add(iterator.next());
+				if (chunk.size() < STREAM_BATCH_SIZE && iterator.hasNext())
+					continue;
+				fetchComponentsAndTags(chunk);
+				for (FinanceTransaction transaction : chunk) {
+					output.write(writer.writeValueAsBytes(initializationHelper.initializeTransaction(transaction)));
+					output.write('\n');
+				}
+				chunk.clear();
+				em.clear();
+				output.flush();
+			}
+		}
+		output.flush();
+	}
+
+	/**
+	 * Loads the components and tags of managed transactions with a single
+	 * query, instead of lazily loading them for every transaction
+	 *
+	 * @param transactions the transactions to initialize
+	 */
+	private void fetchComponentsAndTags(List<FinanceTransaction> transactions) {
+		CriteriaBuilder criteriaBuilder = em.getCriteriaBuilder();
+		CriteriaQuery<FinanceTransaction> fetchQuery = criteriaBuilder.createQuery(FinanceTransaction.class);
+		Root<FinanceTransaction> tr = fetchQuery.from(FinanceTransaction.class);
+		tr.fetch(FinanceTransaction_.components, JoinType.LEFT);
+		tr.fetch(FinanceTransaction_.tags, JoinType.LEFT);
+		fetchQuery.select(tr).distinct(true).where(tr.in(transactions));
+		em.createQuery(fetchQuery).getResultList();
+	}
+
+	/**
+	 * Returns a page of transactions following a cursor. Pages are selected by
+	 * comparing the sort column and ID with the previous page's last
+	 * transaction, so that scrolling deep into the list is as fast as
+	 * retrieving the first page.
+	 *
+	 * @param cursor the cursor token returned with the previous page, or an
+	 * empty string to retrieve the first page
+	 * @param sortColumn the column used for sorting (ignored if the cursor is
+	 * specified)
+	 * @param sortDirection the sort direction (ignored if the cursor is
+	 * specified)
+	 * @param filterDescription the description to be filtered
+	 * @param filterTags the tags to be filtered
+	 * @param filterDate the date to be filtered
+	 * @param dateFrom the earliest date to be filtered
+	 * @param dateTo the latest date to be filtered
+	 * @param minAmount the minimum component amount to be filtered
+	 * @param maxAmount the maximum component amount to be filtered
+	 * @param accountIds the component accounts to be filtered
+	 * @param user the authenticated user
+	 * @return the transactions page and the cursor for the next page
+	 */
+	@RequestMapping(method = RequestMethod.GET, params = "cursor", produces = "application/json")
+	public @ResponseBody
+	TransactionsPageJson getTransactionsPage(
+			@RequestParam(value = "cursor") String cursor,
+			@RequestParam(value = "sortColumn", required = false) SortColumn sortColumn,
+			@RequestParam(value = "sortDirection", required = false) Sort.Direction sortDirection,
+			@RequestParam(value = "filterDescription", required = false) String filterDescription,
+			@RequestParam(value = "filterDate", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Date filterDate,
+			@RequestParam(value = "filterTags", required = false) Collection<String> filterTags,
+			@RequestParam(value = "dateFrom", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Date dateFrom,
+			@RequestParam(value = "dateTo", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Date dateTo,
+			@RequestParam(value = "minAmount", required = false) Double minAmount,
+			@RequestParam(value = "maxAmount", required = false) Double maxAmount,
+			@RequestParam(value = "accountIds", required = false) Collection<Long> accountIds,
+			@AuthenticationPrincipal VogonSecurityUser user) {
+		TransactionCursor transactionCursor = cursor.isEmpty()
+				? new TransactionCursor(sortColumn == SortColumn.DESCRIPTION, sortDirection)
+				: TransactionCursor.decode(cursor);
+		TransactionFilterSpecification filter = createFilter(filterDescription, filterDate, filterTags, dateFrom, dateTo, minAmount, maxAmount, accountIds, user);
+		int pageSize = configuration.getTransactionsPageSize();
+		//Request one more transaction to check if there's a next page
+		List<FinanceTransaction> transactions = transactionCursor.find(em, filter, pageSize + 1);
+		String nextCursor = null;
+		if (transactions.size() > pageSize) {
+			transactions = transactions.subList(0, pageSize);
+			nextCursor = transactionCursor.next(transactions.get(pageSize - 1)).encode();
+		}
+		return new TransactionsPageJson(initializationHelper.initializeTransactions(transactions), nextCursor);
+	}
+
+	/**
+	 * Returns the number of transaction pages
+	 *
+	 * @param filterDescription the description to be filtered
+	 * @param filterTags the tags to be filtered
+	 * @param filterDate the date to be filtered
+	 * @param dateFrom the earliest date to be filtered
+	 * @param dateTo the latest date to be filtered
+	 * @param minAmount the minimum component amount to be filtered
+	 * @param maxAmount the maximum component amount to be filtered
+	 * @param accountIds the component accounts to be filtered
+	 * @param user the authenticated user
+	 * @return the number of transaction pages
+	 */
+	@RequestMapping(value = "/pages", method = RequestMethod.GET, produces = "application/json")
+	public @ResponseBody
+	long getTransactionsPages(
+			@RequestParam(value = "filterDescription", required = false) String filterDescription,
+			@RequestParam(value = "filterDate", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Date filterDate,
+			@RequestParam(value = "filterTags", required = false) Collection<String> filterTags,
+			@RequestParam(value = "dateFrom", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Date dateFrom,
+			@RequestParam(value = "dateTo", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Date dateTo,
+			@RequestParam(value = "minAmount", required = false) Double minAmount,
+			@RequestParam(value = "maxAmount", required = false) Double maxAmount,
+			@RequestParam(value = "accountIds", required = false) Collection<Long> accountIds,
+			@AuthenticationPrincipal VogonSecurityUser user) {
+		long count = transactionCountCache.count(createFilter(filterDescription, filterDate, filterTags, dateFrom, dateTo, minAmount, maxAmount, accountIds, user));
+		int pageSize = configuration.getTransactionsPageSize();
+		return (count + pageSize - 1) / pageSize;
+	}
+
 	/**
 	 * Returns the number of transactions
 	 *
+	 * @param filterDescription the description to be filtered
+	 * @param filterTags the tags to be filtered
+	 * @param filterDate the date to be filtered
+	 * @param dateFrom the earliest date to be filtered
+	 * @param dateTo the latest date to be filtered
+	 * @param minAmount the minimum component amount to be filtered
+	 * @param maxAmount the maximum component amount to be filtered
+	 * @param accountIds the component accounts to be filtered
 	 * @param user the authenticated user
 	 * @return the number of transactions
 	 */
-	@RequestMapping(value = "/pages", method = RequestMethod.GET, produces = "application/json")
+	@RequestMapping(value = "/count", method = RequestMethod.GET, produces = "application/json")
 	public @ResponseBody
-	long getTransactionsCount(@AuthenticationPrincipal VogonSecurityUser user) {
-		PageRequest pageRequest = PageRequest.of(0, configuration.getTransactionsPageSize());
-		return transactionRepository.findByOwner(user.getUser(), pageRequest).getTotalPages();
+	long getTransactionsCount(
+			@RequestParam(value = "filterDescription", required = false) String filterDescription,
+			@RequestParam(value = "filterDate", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Date filterDate,
+			@RequestParam(value = "filterTags", required = false) Collection<String> filterTags,
+			@RequestParam(value = "dateFrom", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Date dateFrom,
+			@RequestParam(value = "dateTo", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Date dateTo,
+			@RequestParam(value = "minAmount", required = false) Double minAmount,
+			@RequestParam(value = "maxAmount", required = false) Double maxAmount,
+			@RequestParam(value = "accountIds", required = false) Collection<Long> accountIds,
+			@AuthenticationPrincipal VogonSecurityUser user) {
+		return transactionCountCache.count(createFilter(filterDescription, filterDate, filterTags, dateFrom, dateTo, minAmount, maxAmount, accountIds, user));
+	}
+
+	/**
+	 * Searches transactions by description. Every word in the query should
+	 * match the beginning of a word in the transaction's description; best
+	 * matches are returned first.
+	 *
+	 * @param query the search query
+	 * @param limit the maximum number of returned transactions
+	 * @param user the authenticated user
+	 * @return the matching transactions
+	 */
+	@RequestMapping(value = "/search", method = RequestMethod.GET, produces = "application/json")
+	public @ResponseBody
+	Collection<FinanceTransactionJson> searchTransactions(@RequestParam(value = "q") String query, @RequestParam(value = "limit", defaultValue = "100") int limit, @AuthenticationPrincipal VogonSecurityUser user) {
+		List<Long> transactionIds = transactionSearchIndex.search(user.getUser(), query, limit);
+		if (transactionIds.isEmpty())
+			return Collections.emptyList();
+		Map<Long, FinanceTransaction> transactions = new HashMap<>();
+		for (FinanceTransaction transaction : transactionRepository.findByOwnerAndIdIn(user.getUser(), transactionIds))
+			transactions.put(transaction.getId(), transaction);
+		List<FinanceTransaction> rankedTransactions = new ArrayList<>(transactions.size());
+		for (Long transactionId : transactionIds)
+			if (transactions.containsKey(transactionId))
+				rankedTransactions.add(transactions.get(transactionId));
+		return initializationHelper.initializeTransactions(rankedTransactions);
 	}
 
 	/**
@@ -188,61 +457,286 @@ public class TransactionsController {
 	public @ResponseBody
 	FinanceTransactionJson submitTransaction(@RequestBody FinanceTransactionJson transaction, @AuthenticationPrincipal VogonSecurityUser user) {
 		FinanceTransaction existingTransaction = transactionRepository.findByOwnerAndId(user.getUser(), transaction.getId());
+		Map<Long, FinanceAccount> accounts = findAccounts(Collections.singletonList(transaction), existingTransaction != null ? Collections.singletonList(existingTransaction) : Collections.emptyList(), user);
+		existingTransaction = saveTransaction(existingTransaction, transaction, accounts, user);
+		existingTransaction = transactionRepository.saveAndFlush(existingTransaction);
+		accountRepository.flush();
+		return initializationHelper.initializeTransaction(existingTransaction);
+	}
+
+	/**
+	 * Creates, updates or deletes multiple transactions in one database
+	 * transaction. All operations are validated before any changes are made;
+	 * if any operation fails, none of the changes are applied and a
+	 * {@link BatchOperationException} naming every failed operation's index
+	 * is thrown.
+	 *
+	 * @param operations the operations to apply
+	 * @param user the authenticated user
+	 * @return the result of every operation, in the same order as operations
+	 */
+	@RequestMapping(value = "/batch", method = RequestMethod.POST, produces = "application/json")
+	public @ResponseBody
+	List<TransactionOperationResultJson> submitTransactions(@RequestBody List<TransactionOperationJson> operations, @AuthenticationPrincipal VogonSecurityUser user) {
+		//Load all referenced transactions and accounts
+		Set<Long> transactionIds = new HashSet<>();
+		List<FinanceTransactionJson> transactions = new ArrayList<>();
+		for (TransactionOperationJson operation : operations) {
+			if (operation.getOperation() == TransactionOperationJson.Operation.UPDATE && operation.getTransaction() != null)
+				transactionIds.add(operation.getTransaction().getId());
+			else if (operation.getOperation() == TransactionOperationJson.Operation.DELETE)
+				transactionIds.add(operation.getId());
+			if (operation.getTransaction() != null)
+				transactions.add(operation.getTransaction());
+		}
+		transactionIds.remove(null);
+		Map<Long, FinanceTransaction> existingTransactions = new HashMap<>();
+		if (!transactionIds.isEmpty())
+			for (FinanceTransaction transaction : transactionRepository.findByOwnerAndIdIn(user.getUser(), transactionIds))
+				existingTransactions.put(transaction.getId(), transaction);
+		Map<Long, FinanceAccount> accounts = findAccounts(transactions, existingTransactions.values(), user);
+		//Validate all operations before applying any changes
+		List<Integer> failedOperations = new ArrayList<>();
+		List<String> errors = new ArrayList<>();
+		Set<Long> deletedTransactionIds = new HashSet<>();
+		for (int i = 0; i < operations.size(); i++) {
+			String error = validateOperation(operations.get(i), existingTransactions, deletedTransactionIds, accounts);
+			if (error != null) {
+				failedOperations.add(i);
+				errors.add(MessageFormat.format(messages.getString("BATCH_OPERATION_FAILED"), i, error));
+			}
+		}
+		if (!failedOperations.isEmpty())
+			throw new BatchOperationException(failedOperations, errors);
+		//Apply operations
+		FinanceTransaction[] savedTransactions = new FinanceTransaction[operations.size()];
+		FinanceTransactionJson[] deletedTransactions = new FinanceTransactionJson[operations.size()];
+		for (int i = 0; i < operations.size(); i++) {
+			TransactionOperationJson operation = operations.get(i);
+			try {
+				switch (operation.getOperation()) {
+					case CREATE:
+						savedTransactions[i] = saveTransaction(null, operation.getTransaction(), accounts, user);
+						break;
+					case UPDATE:
+						savedTransactions[i] = saveTransaction(existingTransactions.get(operation.getTransaction().getId()), operation.getTransaction(), accounts, user);
+						break;
+					case DELETE:
+						deletedTransactions[i] = removeTransaction(existingTransactions.get(operation.getId()), user);
+						break;
+				}
+			} catch (RuntimeException ex) {
+				throw new BatchOperationException(i, MessageFormat.format(messages.getString("BATCH_OPERATION_FAILED"), i, ex.getMessage()), ex);
+			}
+		}
+		//Write all changes at once, so that inserts and updates are batched
+		em.flush();
+		List<TransactionOperationResultJson> results = new ArrayList<>(operations.size());
+		for (int i = 0; i < operations.size(); i++) {
+			FinanceTransactionJson result = savedTransactions[i] != null ? initializationHelper.initializeTransaction(savedTransactions[i]) : deletedTransactions[i];
+			results.add(new TransactionOperationResultJson(operations.get(i).getOperation(), result));
+		}
+		return results;
+	}
+
+	/**
+	 * Checks that a batch operation can be applied
+	 *
+	 * @param operation the operation to check
+	 * @param existingTransactions the user's transactions referenced by
+	 * operations, by ID
+	 * @param deletedTransactionIds the IDs of transactions deleted by previous
+	 * operations; updated if operation deletes a transaction
+	 * @param accounts the user's accounts referenced by transaction
+	 * components, by ID
+	 * @return the error message, or null if the operation can be applied
+	 */
+	private String validateOperation(TransactionOperationJson operation, Map<Long, FinanceTransaction> existingTransactions, Set<Long> deletedTransactionIds, Map<Long, FinanceAccount> accounts) {
+		if (operation.getOperation() == null || (operation.getOperation() != TransactionOperationJson.Operation.DELETE && operation.getTransaction() == null))
+			return messages.getString("INVALID_BATCH_OPERATION");
+		switch (operation.getOperation()) {
+			case UPDATE:
+				Long updatedId = operation.getTransaction().getId();
+				if (!existingTransactions.containsKey(updatedId) || deletedTransactionIds.contains(updatedId))
+					return MessageFormat.format(messages.getString("TRANSACTION_DOES_NOT_EXIST"), updatedId);
+				break;
+			case DELETE:
+				if (!existingTransactions.containsKey(operation.getId()) || !deletedTransactionIds.add(operation.getId()))
+					return MessageFormat.format(messages.getString("CANNOT_DELETE_A_NON_EXISTING_TRANSACTION"), operation.getId());
+				return null;
+		}
+		for (TransactionComponentJson component : operation.getTransaction().getComponentsJson())
+			if (!accounts.containsKey(component.getAccountId()))
+				return MessageFormat.format(messages.getString("CANNOT_SET_AN_INVALID_ACCOUNT_ID"), component.getAccountId());
+		return null;
+	}
+
+	/**
+	 * Deletes a transaction
+	 *
+	 * @param id the transaction id
+	 * @param user the authenticated user
+	 * @return null
+	 */
+	@RequestMapping(value = "/transaction/{id}", method = RequestMethod.DELETE, produces = "application/json")
+	public @ResponseBody
+	FinanceTransactionJson deleteTransaction(@PathVariable long id, @AuthenticationPrincipal VogonSecurityUser user) {
+		FinanceTransaction existingTransaction = transactionRepository.findByOwnerAndId(user.getUser(), id);
+		if (existingTransaction == null) {
+			throw new EntityNotFoundException(MessageFormat.format(messages.getString("CANNOT_DELETE_A_NON_EXISTING_TRANSACTION"), id));
+		}
+		return removeTransaction(existingTransaction, user);
+	}
+
+	/**
+	 * Merges a transaction with the database; the changes are not flushed.
+	 * Existing components are matched to updated components by ID, so that
+	 * the added, updated and removed components are found in one pass.
+	 *
+	 * @param existingTransaction the transaction from database, or null to
+	 * create a new transaction
+	 * @param transaction the updated transaction
+	 * @param accounts the user's accounts referenced by transaction
+	 * components, by ID
+	 * @param user the authenticated user
+	 * @return the saved transaction
+	 */
+	private FinanceTransaction saveTransaction(FinanceTransaction existingTransaction, FinanceTransactionJson transaction, Map<Long, FinanceAccount> accounts, VogonSecurityUser user) {
+		List<String> previousTags = existingTransaction != null ? Arrays.asList(existingTransaction.getTags()) : Collections.emptyList();
+		boolean created = existingTransaction == null;
 		//Merge with database
 		if (existingTransaction == null)
 			existingTransaction = new FinanceTransaction(user.getUser(), transaction);
 		else
 			existingTransaction.merge(transaction);
-		List<TransactionComponent> removedComponents = new LinkedList<>(existingTransaction.getComponents());
+		//Index existing components; components remaining in the index after matching are removed
+		Map<Long, TransactionComponent> removedComponents = new LinkedHashMap<>();
+		Set<FinanceAccount> changedAccounts = new HashSet<>();
+		for (TransactionComponent existingComponent : existingTransaction.getComponents()) {
+			removedComponents.put(existingComponent.getId(), existingComponent);
+			if (existingComponent.getAccount() != null)
+				changedAccounts.add(existingComponent.getAccount());
+		}
 		for (TransactionComponentJson newComponent : transaction.getComponentsJson()) {
-			FinanceAccount existingAccount = accountRepository.findByOwnerAndId(user.getUser(), newComponent.getAccountId());
-			if(existingAccount == null)
+			FinanceAccount existingAccount = accounts.get(newComponent.getAccountId());
+			if (existingAccount == null)
 				throw new EntityNotFoundException(MessageFormat.format(messages.getString("CANNOT_SET_AN_INVALID_ACCOUNT_ID"), newComponent.getAccountId()));
-			if (!existingTransaction.getComponents().contains(newComponent)) {
+			changedAccounts.add(existingAccount);
+			TransactionComponent existingComponent = newComponent.getId() != null ? removedComponents.remove(newComponent.getId()) : null;
+			if (existingComponent == null) {
 				TransactionComponent createdComponent = new TransactionComponent(existingAccount, existingTransaction, newComponent.getRawAmount());
 				em.persist(createdComponent);
 			} else {
-				TransactionComponent existingComponent = existingTransaction.getComponents().get(existingTransaction.getComponents().indexOf(newComponent));
 				if (newComponent.getVersion() != existingComponent.getVersion())
 					throw new ConcurrentModificationException(messages.getString("TRANSACTION_WAS_ALREADY_UPDATED"));
 				existingComponent.setAccount(existingAccount);
 				existingComponent.setRawAmount(newComponent.getRawAmount());
-				removedComponents.remove(existingComponent);
 			}
-			existingTransaction = transactionRepository.save(existingTransaction);
-			accountRepository.save(existingAccount);
 		}
 		//Remove deleted components
-		for (TransactionComponent removedComponent : removedComponents) {
+		for (TransactionComponent removedComponent : removedComponents.values()) {
 			removedComponent.setAccount(null);
 			removedComponent.setTransaction(null);
 		}
-		existingTransaction = transactionRepository.saveAndFlush(existingTransaction);
-		accountRepository.flush();
-		return initializationHelper.initializeTransaction(existingTransaction);
+		existingTransaction = transactionRepository.save(existingTransaction);
+		dataChangeNotifier.transactionSaved(user.getUser(), existingTransaction, created, previousTags, changedAccounts);
+		return existingTransaction;
 	}
 
 	/**
-	 * Deletes a transaction
+	 * Deletes a transaction; the changes are not flushed
 	 *
-	 * @param id the transaction id
+	 * @param existingTransaction the transaction from database
 	 * @param user the authenticated user
-	 * @return null
+	 * @return the deleted transaction
 	 */
-	@RequestMapping(value = "/transaction/{id}", method = RequestMethod.DELETE, produces = "application/json")
-	public @ResponseBody
-	FinanceTransactionJson deleteTransaction(@PathVariable long id, @AuthenticationPrincipal VogonSecurityUser user) {
-		FinanceTransaction existingTransaction = transactionRepository.findByOwnerAndId(user.getUser(), id);
-		if (existingTransaction == null) {
-			throw new EntityNotFoundException(MessageFormat.format(messages.getString("CANNOT_DELETE_A_NON_EXISTING_TRANSACTION"), id));
-		}
+	private FinanceTransactionJson removeTransaction(FinanceTransaction existingTransaction, VogonSecurityUser user) {
 		FinanceTransactionJson deletedTransactionJson = initializationHelper.initializeTransaction(existingTransaction);
+		Set<FinanceAccount> changedAccounts = new HashSet<>();
 		for (TransactionComponent component : existingTransaction.getComponents()) {
+			if (component.getAccount() != null)
+				changedAccounts.add(component.getAccount());
 			component.setAccount(null);
 			component.setTransaction(null);
 		}
 		transactionRepository.save(existingTransaction);
 		transactionRepository.delete(existingTransaction);
+		dataChangeNotifier.transactionDeleted(user.getUser(), existingTransaction, changedAccounts);
 		return deletedTransactionJson;
 	}
+
+	/**
+	 * Loads the user's accounts referenced by transaction components with a
+	 * single query. Components of existing transactions are loaded first, so
+	 * that a component's previous account is flushed before its new account;
+	 * otherwise orphan removal would delete components moved to another
+	 * account.
+	 *
+	 * @param transactions the transactions
+	 * @param existingTransactions the transactions from database which will
+	 * be updated or deleted
+	 * @param user the authenticated user
+	 * @return the user's referenced accounts, by ID
+	 */
+	private Map<Long, FinanceAccount> findAccounts(Collection<FinanceTransactionJson> transactions, Collection<FinanceTransaction> existingTransactions, VogonSecurityUser user) {
+		for (FinanceTransaction existingTransaction : existingTransactions)
+			existingTransaction.getComponents();
+		Set<Long> accountIds = new HashSet<>();
+		for (FinanceTransactionJson transaction : transactions)
+			for (TransactionComponentJson component : transaction.getComponentsJson())
+				accountIds.add(component.getAccountId());
+		accountIds.remove(null);
+		Map<Long, FinanceAccount> accounts = new HashMap<>();
+		if (!accountIds.isEmpty())
+			for (FinanceAccount account : accountRepository.findByOwnerAndIdIn(user.getUser(), accountIds))
+				accounts.put(account.getId(), account);
+		return accounts;
+	}
+
+	/**
+	 * Returns the attribute used for sorting by a column
+	 *
+	 * @param sortColumn the column used for sorting, or null for the default
+	 * column (date)
+	 * @return the sort attribute
+	 */
+	private Attribute getSortAttribute(SortColumn sortColumn) {
+		if (sortColumn != null)
+			switch (sortColumn) {
+				case DATE:
+					return FinanceTransaction_.transactionDate;
+				case DESCRIPTION:
+					return FinanceTransaction_.description;
+			}
+		return FinanceTransaction_.transactionDate;
+	}
+
+	/**
+	 * Creates a transactions filter
+	 *
+	 * @param filterDescription the description to be filtered
+	 * @param filterDate the date to be filtered
+	 * @param filterTags the tags to be filtered
+	 * @param dateFrom the earliest date to be filtered
+	 * @param dateTo the latest date to be filtered
+	 * @param minAmount the minimum component amount to be filtered
+	 * @param maxAmount the maximum component amount to be filtered
+	 * @param accountIds the component accounts to be filtered
+	 * @param user the authenticated user
+	 * @return the transactions filter
+	 */
+	private TransactionFilterSpecification createFilter(String filterDescription, Date filterDate, Collection<String> filterTags, Date dateFrom, Date dateTo, Double minAmount, Double maxAmount, Collection<Long> accountIds, VogonSecurityUser user) {
+		TransactionFilterSpecification filter = new TransactionFilterSpecification(user.getUser());
+		filter.setFilterDescription(filterDescription);
+		filter.setFilterDate(filterDate);
+		filter.setFilterDateFrom(dateFrom);
+		filter.setFilterDateTo(dateTo);
+		filter.setFilterMinAmount(minAmount);
+		filter.setFilterMaxAmount(maxAmount);
+		if (filterTags != null && !filterTags.isEmpty())
+			filter.setFilterTagIds(TagResolver.findTagIds(em, filterTags, true));
+		if (accountIds != null && !accountIds.isEmpty())
+			filter.setFilterAccountIds(new HashSet<>(accountIds));
+		return filter;
+	}
 }
@@ -0,0 +1,43 @@
+/*
+ * Vogon personal finance/expense analyzer.
+ * Licensed under Apache license: http://www.apache.org/licenses/LICENSE-2.0
+ * Author: Dmitry Zolotukhin <zlogic@gmail.com>
+ */
+package org.zlogic.vogon.web.controller.serialization;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import java.io.IOException;
+import org.zlogic.vogon.data.report.DateBalance;
+
+/**
+ * Serializes a DateBalance as a date/balance map, without converting it into
+ * a Map first
+ *
+ * @author Dmitry Zolotukhin [zlogic@gmail.com]
+ */
+public class DateBalanceSerializer extends StdSerializer<DateBalance> {
+
+	/**
+	 * Version UID
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Default constructor
+	 */
+	public DateBalanceSerializer() {
+		super(DateBalance.class);
+	}
+
+	@Override
+	public void serialize(DateBalance dateBalance, JsonGenerator generator, SerializerProvider provider) throws IOException {
+		generator.writeStartObject();
+		for (int i = 0; i < dateBalance.size(); i++) {
+			generator.writeFieldName(dateBalance.getDate(i).toString());
+			generator.writeNumber(dateBalance.getBalance(i));
+		}
+		generator.writeEndObject();
+	}
+}
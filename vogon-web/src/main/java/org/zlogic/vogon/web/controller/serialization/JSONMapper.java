@@ -9,11 +9,15 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
 import java.text.SimpleDateFormat;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.stereotype.Service;
+import org.zlogic.vogon.data.ChangeLogEntry;
 import org.zlogic.vogon.data.FinanceAccount;
 import org.zlogic.vogon.data.VogonUser;
+import org.zlogic.vogon.data.report.DateBalance;
+import org.zlogic.vogon.data.report.ReportFactory;
 import org.zlogic.vogon.data.report.ReportTransaction;
 import org.zlogic.vogon.web.data.model.FinanceTransactionJson;
 
@@ -110,6 +114,12 @@ public class JSONMapper extends ObjectMapper implements InitializingBean {
 		@JsonIgnore
 		public void getPassword();
 
+		/**
+		 * Disables getting of the data version
+		 */
+		@JsonIgnore
+		public void getDataVersion();
+
 		/**
 		 * Allows setting of password
 		 *
@@ -132,7 +142,26 @@ public class JSONMapper extends ObjectMapper implements InitializingBean {
 	}
 
 	/**
-	 * Adds MixIn Annotations
+	 * Wrapper class for ReportFactory
+	 */
+	private interface ReportFactoryAnnotations {
+
+		/**
+		 * Disables setting of all tags (they are set by the server)
+		 */
+		@JsonIgnore
+		public void setAllTags();
+	}
+
+	/**
+	 * Wrapper class for ChangeLogEntry
+	 */
+	@JsonIgnoreProperties({"ownerId"})
+	private interface ChangeLogEntryAnnotations {
+	}
+
+	/**
+	 * Adds MixIn Annotations and custom serializers
 	 *
 	 * @throws Exception in case of errors
 	 */
@@ -142,6 +171,9 @@ public class JSONMapper extends ObjectMapper implements InitializingBean {
 		this.addMixIn(FinanceAccount.class, FinanceAccountAnnotations.class);
 		this.addMixIn(VogonUser.class, VogonUserAnnotations.class);
 		this.addMixIn(ReportTransaction.class, ReportTransactionAnnotations.class);
+		this.addMixIn(ReportFactory.class, ReportFactoryAnnotations.class);
+		this.addMixIn(ChangeLogEntry.class, ChangeLogEntryAnnotations.class);
 		this.setDateFormat(new SimpleDateFormat("yyyy-MM-dd")); //NOI18N
+		this.registerModule(new SimpleModule().addSerializer(DateBalance.class, new DateBalanceSerializer()));
 	}
 }
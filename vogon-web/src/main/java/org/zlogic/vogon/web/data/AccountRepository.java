@@ -6,6 +6,7 @@
 package org.zlogic.vogon.web.data;
 
 import java.util.Collection;
+import java.util.List;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
@@ -31,6 +32,15 @@ public interface AccountRepository extends JpaRepository<FinanceAccount, Long> {
 	 */
 	public FinanceAccount findByOwnerAndId(VogonUser owner, Long id);
 
+	/**
+	 * Finds accounts by their VogonUser owner and IDs
+	 *
+	 * @param owner the VogonUser owner
+	 * @param ids the account IDs
+	 * @return accounts for owner and ids
+	 */
+	public List<FinanceAccount> findByOwnerAndIdIn(VogonUser owner, Collection<Long> ids);
+
 	/**
 	 * Finds accounts by their VogonUser owner
 	 *
@@ -0,0 +1,31 @@
+/*
+ * Vogon personal finance/expense analyzer.
+ * Licensed under Apache license: http://www.apache.org/licenses/LICENSE-2.0
+ * Author: Dmitry Zolotukhin <zlogic@gmail.com>
+ */
+package org.zlogic.vogon.web.data;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+import org.zlogic.vogon.data.ChangeLogEntry;
+
+/**
+ * The change journal JpaRepository
+ *
+ * @author Dmitry Zolotukhin [zlogic@gmail.com]
+ */
+@Repository
+public interface ChangeLogRepository extends JpaRepository<ChangeLogEntry, Long> {
+
+	/**
+	 * Finds change journal entries of a VogonUser owner written after an entry
+	 *
+	 * @param ownerId the VogonUser owner's ID
+	 * @param id the last known entry ID
+	 * @param pageable the Pageable object
+	 * @return entries for ownerId written after the entry with id
+	 */
+	public Slice<ChangeLogEntry> findByOwnerIdAndIdGreaterThan(long ownerId, long id, Pageable pageable);
+}
@@ -0,0 +1,64 @@
+/*
+ * Vogon personal finance/expense analyzer.
+ * Licensed under Apache license: http://www.apache.org/licenses/LICENSE-2.0
+ * Author: Dmitry Zolotukhin <zlogic@gmail.com>
+ */
+package org.zlogic.vogon.web.data;
+
+import java.util.Collection;
+import org.zlogic.vogon.data.FinanceAccount;
+import org.zlogic.vogon.data.FinanceTransaction;
+import org.zlogic.vogon.data.VogonUser;
+
+/**
+ * Receives changes of a user's data from the {@link DataChangeNotifier}.
+ * Every Spring bean implementing this interface is notified after the change
+ * is committed (or immediately if there's no transaction). Changes made on
+ * other server instances or without the {@link DataChangeNotifier} are not
+ * reported, and can only be detected from the user's data version.
+ *
+ * @author Dmitry Zolotukhin [zlogic@gmail.com]
+ */
+public interface DataChangeListener {
+
+	/**
+	 * Called after a change which affects all of the user's data (such as an
+	 * import) was committed; everything loaded for the user is outdated
+	 *
+	 * @param user the user whose data was changed
+	 */
+	default void dataChanged(VogonUser user) {
+	}
+
+	/**
+	 * Called after a transaction was created or updated
+	 *
+	 * @param user the transaction owner
+	 * @param committedVersion the user's data version committed by the
+	 * write; data loaded with this or a later version already includes the
+	 * change, and data loaded with an older version than the previous version
+	 * is missing other changes
+	 * @param transaction the saved transaction
+	 * @param created true if the transaction was created
+	 * @param previousTags the transaction's tags before the change (empty for
+	 * new transactions)
+	 * @param accounts the accounts of the transaction's components, before and
+	 * after the change
+	 */
+	default void transactionSaved(VogonUser user, long committedVersion, FinanceTransaction transaction, boolean created, Collection<String> previousTags, Collection<FinanceAccount> accounts) {
+	}
+
+	/**
+	 * Called after a transaction was deleted
+	 *
+	 * @param user the transaction owner
+	 * @param committedVersion the user's data version committed by the
+	 * write; data loaded with this or a later version already includes the
+	 * change, and data loaded with an older version than the previous version
+	 * is missing other changes
+	 * @param transaction the deleted transaction
+	 * @param accounts the accounts of the transaction's components
+	 */
+	default void transactionDeleted(VogonUser user, long committedVersion, FinanceTransaction transaction, Collection<FinanceAccount> accounts) {
+	}
+}
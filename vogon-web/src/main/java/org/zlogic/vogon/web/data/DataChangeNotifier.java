@@ -0,0 +1,145 @@
+/*
+ * Vogon personal finance/expense analyzer.
+ * Licensed under Apache license: http://www.apache.org/licenses/LICENSE-2.0
+ * Author: Dmitry Zolotukhin <zlogic@gmail.com>
+ */
+package org.zlogic.vogon.web.data;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.function.BiConsumer;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Root;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.zlogic.vogon.data.FinanceAccount;
+import org.zlogic.vogon.data.FinanceTransaction;
+import org.zlogic.vogon.data.VogonUser;
+import org.zlogic.vogon.data.VogonUser_;
+
+/**
+ * Provides every user's data version and notifies all
+ * {@link DataChangeListener} beans about changes of the user's data. Write
+ * requests should report every change here instead of updating caches
+ * directly.
+ * <p>
+ * The data version is stored in the user's row and increased in every
+ * database transaction which changes the user's data (see
+ * {@link VogonUser#getDataVersion()}), including writes made on other server
+ * instances or without notifying this service. Anything loaded for a user
+ * should be cached with the version read before loading it, only if the
+ * version didn't change while it was being loaded, and should only be used
+ * while the version stays the same.
+ *
+ * @author Dmitry Zolotukhin [zlogic@gmail.com]
+ */
+@Service
+public class DataChangeNotifier {
+
+	/**
+	 * The EntityManager instance
+	 */
+	@PersistenceContext
+	private EntityManager em;
+	/**
+	 * The listeners (resolved lazily, as most listeners also use this
+	 * service)
+	 */
+	@Autowired
+	private ObjectProvider<DataChangeListener> listeners;
+
+	/**
+	 * Returns the user's current data version from the database
+	 *
+	 * @param user the user
+	 * @return the user's data version
+	 */
+	public long getVersion(VogonUser user) {
+		CriteriaBuilder criteriaBuilder = em.getCriteriaBuilder();
+		CriteriaQuery<Long> versionQuery = criteriaBuilder.createQuery(Long.class);
+		Root<VogonUser> vogonUser = versionQuery.from(VogonUser.class);
+		versionQuery.select(vogonUser.get(VogonUser_.dataVersion)).where(criteriaBuilder.equal(vogonUser.get(VogonUser_.id), user.getId()));
+		List<Long> versions = em.createQuery(versionQuery).getResultList();
+		return versions.isEmpty() ? 0L : versions.get(0);
+	}
+
+	/**
+	 * Reports a change which affects all of the user's data (such as an
+	 * import or changed accounts)
+	 *
+	 * @param user the user whose data was changed
+	 */
+	public void dataChanged(VogonUser user) {
+		notifyListeners(user, (listener, committedVersion) -> listener.dataChanged(user));
+	}
+
+	/**
+	 * Reports a created or updated transaction
+	 *
+	 * @param user the transaction owner
+	 * @param transaction the saved transaction
+	 * @param created true if the transaction was created
+	 * @param previousTags the transaction's tags before the change (empty for
+	 * new transactions)
+	 * @param accounts the accounts of the transaction's components, before and
+	 * after the change
+	 */
+	public void transactionSaved(VogonUser user, FinanceTransaction transaction, boolean created, Collection<String> previousTags, Collection<FinanceAccount> accounts) {
+		notifyListeners(user, (listener, committedVersion) -> listener.transactionSaved(user, committedVersion, transaction, created, previousTags, accounts));
+	}
+
+	/**
+	 * Reports a deleted transaction
+	 *
+	 * @param user the transaction owner
+	 * @param transaction the deleted transaction
+	 * @param accounts the accounts of the transaction's components
+	 */
+	public void transactionDeleted(VogonUser user, FinanceTransaction transaction, Collection<FinanceAccount> accounts) {
+		notifyListeners(user, (listener, committedVersion) -> listener.transactionDeleted(user, committedVersion, transaction, accounts));
+	}
+
+	/**
+	 * Notifies the listeners after the current transaction is committed (or
+	 * immediately if there's no transaction); listeners are not notified if
+	 * the transaction is rolled back
+	 *
+	 * @param user the user whose data was changed
+	 * @param notification the notification to send to every listener, with
+	 * the data version committed by the write
+	 */
+	private void notifyListeners(VogonUser user, BiConsumer<DataChangeListener, Long> notification) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			long committedVersion = getVersion(user);
+			listeners.orderedStream().forEach(listener -> notification.accept(listener, committedVersion));
+			return;
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+			@Override
+			public void afterCommit() {
+				long committedVersion = getCommittedVersion(user);
+				listeners.orderedStream().forEach(listener -> notification.accept(listener, committedVersion));
+			}
+		});
+	}
+
+	/**
+	 * Returns the data version committed by the current transaction. The
+	 * user entity in the transaction's persistence context is updated with
+	 * the committed version when the transaction is committed, so this
+	 * doesn't return a later version committed by another transaction.
+	 *
+	 * @param user the user whose data was changed
+	 * @return the data version committed by the current transaction
+	 */
+	private long getCommittedVersion(VogonUser user) {
+		VogonUser committedUser = em.find(VogonUser.class, user.getId());
+		return committedUser != null ? committedUser.getDataVersion() : 0L;
+	}
+}
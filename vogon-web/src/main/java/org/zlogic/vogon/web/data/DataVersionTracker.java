@@ -0,0 +1,46 @@
+/*
+ * Vogon personal finance/expense analyzer.
+ * Licensed under Apache license: http://www.apache.org/licenses/LICENSE-2.0
+ * Author: Dmitry Zolotukhin <zlogic@gmail.com>
+ */
+package org.zlogic.vogon.web.data;
+
+import java.text.MessageFormat;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.zlogic.vogon.data.VogonUser;
+
+/**
+ * Builds ETags from every user's data version, so that clients polling for
+ * unchanged data get a "Not Modified" response after a single primary key
+ * lookup. The version is the same data version which is used by all caches
+ * (see {@link DataChangeNotifier#getVersion(VogonUser)}); it's stored in the
+ * user's row, so ETags stay valid across restarts and are the same on every
+ * server instance.
+ *
+ * @author Dmitry Zolotukhin [zlogic@gmail.com]
+ */
+@Service
+public class DataVersionTracker {
+
+	/**
+	 * The data change notifier
+	 */
+	@Autowired
+	private DataChangeNotifier dataChangeNotifier;
+
+	/**
+	 * Returns the ETag for a representation of the current version of the
+	 * user's data. Different resources (or different media types of the same
+	 * resource) get different ETags, since they have different content.
+	 *
+	 * @param user the user
+	 * @param representation the resource and media type, such as the request
+	 * URL with its Accept header
+	 * @return the strong ETag (quoted)
+	 */
+	public String getETag(VogonUser user, String representation) {
+		String representationHash = Integer.toString(representation.hashCode(), Character.MAX_RADIX);
+		return MessageFormat.format("\"{0}-{1}-{2}\"", Long.toString(user.getId()), Long.toString(dataChangeNotifier.getVersion(user)), representationHash); //NOI18N
+	}
+}
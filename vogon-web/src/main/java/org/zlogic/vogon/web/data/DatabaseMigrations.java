@@ -0,0 +1,81 @@
+/*
+ * Vogon personal finance/expense analyzer.
+ * Licensed under Apache license: http://www.apache.org/licenses/LICENSE-2.0
+ * Author: Dmitry Zolotukhin <zlogic@gmail.com>
+ */
+package org.zlogic.vogon.web.data;
+
+import java.text.MessageFormat;
+import java.util.ResourceBundle;
+import java.util.function.Function;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.zlogic.vogon.data.tools.DatabaseMaintenance;
+
+/**
+ * Migrates data which was stored by older versions. Migrations are run in
+ * order, each in its own transaction, after all beans are created but before
+ * the web server starts accepting requests, so that requests never see
+ * unmigrated data.
+ *
+ * @author Dmitry Zolotukhin [zlogic@gmail.com]
+ */
+@Component
+public class DatabaseMigrations implements SmartInitializingSingleton {
+
+	/**
+	 * The logger
+	 */
+	private final static Logger log = LoggerFactory.getLogger(DatabaseMigrations.class);
+
+	/**
+	 * Localization messages
+	 */
+	private static final ResourceBundle messages = ResourceBundle.getBundle("org/zlogic/vogon/web/messages");
+
+	/**
+	 * The EntityManager instance
+	 */
+	@PersistenceContext
+	private EntityManager em;
+
+	/**
+	 * The transaction manager
+	 */
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	/**
+	 * Runs all migrations: moves legacy tags into the tags dictionary, fills
+	 * missing transaction descriptions and then fills the daily balances of
+	 * accounts which were created before daily balances were introduced
+	 */
+	@Override
+	public void afterSingletonsInstantiated() {
+		DatabaseMaintenance maintenance = new DatabaseMaintenance();
+		migrate(maintenance::migrateTags, "MIGRATED_TAGS"); //NOI18N
+		migrate(maintenance::fillMissingDescriptions, "FILLED_MISSING_DESCRIPTIONS"); //NOI18N
+		migrate(maintenance::refreshDailyBalances, "REFRESHED_DAILY_BALANCES"); //NOI18N
+	}
+
+	/**
+	 * Runs a migration in a new transaction and logs the number of migrated
+	 * items
+	 *
+	 * @param migration the migration, returning the number of migrated items
+	 * @param messageKey the key of the message to log if any items were
+	 * migrated
+	 */
+	private void migrate(Function<EntityManager, Integer> migration, String messageKey) {
+		int migratedItems = new TransactionTemplate(transactionManager).execute(status -> migration.apply(em));
+		if (migratedItems > 0)
+			log.info(MessageFormat.format(messages.getString(messageKey), migratedItems));
+	}
+}
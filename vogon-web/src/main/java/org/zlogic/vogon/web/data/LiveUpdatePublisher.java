@@ -0,0 +1,408 @@
+/*
+ * Vogon personal finance/expense analyzer.
+ * Licensed under Apache license: http://www.apache.org/licenses/LICENSE-2.0
+ * Author: Dmitry Zolotukhin <zlogic@gmail.com>
+ */
+package org.zlogic.vogon.web.data;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.zlogic.vogon.data.FinanceAccount;
+import org.zlogic.vogon.data.FinanceTransaction;
+import org.zlogic.vogon.data.VogonUser;
+import org.zlogic.vogon.web.controller.serialization.JSONMapper;
+
+/**
+ * Publishes changes of a user's accounts and transactions (as reported by the
+ * {@link DataChangeNotifier}) to the user's Server-Sent Events streams, after
+ * the changes are committed. Every stream
+ * has a bounded buffer of unsent events: a newer update of an entity
+ * replaces the unsent older one, and if the buffer overflows it's replaced
+ * with a single "refresh" event. Nothing is done for users without open
+ * streams. Idle streams periodically get a comment, so that proxies don't
+ * close them and disconnected clients are detected.
+ *
+ * @author Dmitry Zolotukhin [zlogic@gmail.com]
+ */
+@Service
+public class LiveUpdatePublisher implements DataChangeListener {
+
+	/**
+	 * The logger
+	 */
+	private final static Logger log = LoggerFactory.getLogger(LiveUpdatePublisher.class);
+
+	/**
+	 * Localization messages
+	 */
+	private static final ResourceBundle messages = ResourceBundle.getBundle("org/zlogic/vogon/web/messages");
+
+	/**
+	 * The time in milliseconds after which a stream is closed (clients are
+	 * expected to reconnect)
+	 */
+	private static final long STREAM_TIMEOUT = 30 * 60 * 1000L;
+
+	/**
+	 * The time in milliseconds between heartbeats sent to idle streams
+	 */
+	private static final long HEARTBEAT_INTERVAL = 30 * 1000L;
+
+	/**
+	 * The maximum number of unsent events for every stream
+	 */
+	private static final int BUFFER_SIZE = 100;
+
+	/**
+	 * Event sent when a stream is opened
+	 */
+	private static final String CONNECTED_EVENT = "connected"; //NOI18N
+
+	/**
+	 * Event sent when an account is changed
+	 */
+	private static final String ACCOUNT_EVENT = "account"; //NOI18N
+
+	/**
+	 * Event sent when a transaction is created or updated
+	 */
+	private static final String TRANSACTION_EVENT = "transaction"; //NOI18N
+
+	/**
+	 * Event sent when a transaction is deleted
+	 */
+	private static final String TRANSACTION_DELETED_EVENT = "transactionDeleted"; //NOI18N
+
+	/**
+	 * Event sent when all data should be reloaded
+	 */
+	private static final String REFRESH_EVENT = "refresh"; //NOI18N
+
+	/**
+	 * Buffer key of heartbeats (sent as comments, not events)
+	 */
+	private static final String HEARTBEAT_KEY = "heartbeat"; //NOI18N
+
+	/**
+	 * The executor for sending events
+	 */
+	@Autowired
+	private ExecutorService liveUpdateExecutor;
+
+	/**
+	 * The executor for periodic maintenance tasks (sending heartbeats)
+	 */
+	@Autowired
+	private ScheduledExecutorService maintenanceExecutor;
+
+	/**
+	 * The JSON mapper
+	 */
+	@Autowired
+	private JSONMapper jsonMapper;
+
+	/**
+	 * InitializationHelper instance
+	 */
+	@Autowired
+	private InitializationHelper initializationHelper;
+
+	/**
+	 * The open streams for every user ID
+	 */
+	private final ConcurrentMap<Long, Set<Subscription>> subscriptions = new ConcurrentHashMap<>();
+
+	/**
+	 * Starts sending heartbeats to idle streams
+	 */
+	@PostConstruct
+	public void startHeartbeats() {
+		maintenanceExecutor.scheduleWithFixedDelay(this::sendHeartbeats, HEARTBEAT_INTERVAL, HEARTBEAT_INTERVAL, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Opens a stream of updates for a user. A "connected" event is sent
+	 * first; changes made before this event should be loaded by the client
+	 * separately.
+	 *
+	 * @param user the user
+	 * @return the stream
+	 */
+	public SseEmitter subscribe(VogonUser user) {
+		SseEmitter emitter = new SseEmitter(STREAM_TIMEOUT);
+		Subscription subscription = new Subscription(user.getId(), emitter);
+		emitter.onCompletion(subscription::close);
+		emitter.onTimeout(subscription::close);
+		emitter.onError(error -> subscription.close());
+		subscriptions.compute(user.getId(), (id, userSubscriptions) -> {
+			if (userSubscriptions == null)
+				userSubscriptions = ConcurrentHashMap.newKeySet();
+			userSubscriptions.add(subscription);
+			return userSubscriptions;
+		});
+		subscription.offer(CONNECTED_EVENT, new Event(CONNECTED_EVENT, "{}")); //NOI18N
+		return emitter;
+	}
+
+	/**
+	 * Publishes a created or updated transaction and the accounts it changed
+	 *
+	 * @param user the transaction owner
+	 * @param committedVersion the user's data version committed by the write
+	 * @param transaction the saved transaction
+	 * @param created true if the transaction was created
+	 * @param previousTags the transaction's tags before the change
+	 * @param accounts the accounts of the transaction's components, before and
+	 * after the change
+	 */
+	@Override
+	public void transactionSaved(VogonUser user, long committedVersion, FinanceTransaction transaction, boolean created, Collection<String> previousTags, Collection<FinanceAccount> accounts) {
+		if (!subscriptions.containsKey(user.getId()))
+			return;
+		publishAccounts(user, accounts);
+		publish(user, getTransactionKey(transaction.getId()), TRANSACTION_EVENT, initializationHelper.initializeTransaction(transaction));
+	}
+
+	/**
+	 * Publishes a deleted transaction and the accounts it changed
+	 *
+	 * @param user the transaction owner
+	 * @param committedVersion the user's data version committed by the write
+	 * @param transaction the deleted transaction
+	 * @param accounts the accounts of the transaction's components
+	 */
+	@Override
+	public void transactionDeleted(VogonUser user, long committedVersion, FinanceTransaction transaction, Collection<FinanceAccount> accounts) {
+		if (!subscriptions.containsKey(user.getId()))
+			return;
+		publishAccounts(user, accounts);
+		publish(user, getTransactionKey(transaction.getId()), TRANSACTION_DELETED_EVENT, transaction.getId());
+	}
+
+	/**
+	 * Asks clients to reload all of the user's data, for changes which are
+	 * too large to be sent as individual updates
+	 *
+	 * @param user the user whose data was changed
+	 */
+	@Override
+	public void dataChanged(VogonUser user) {
+		if (!subscriptions.containsKey(user.getId()))
+			return;
+		publish(user, REFRESH_EVENT, REFRESH_EVENT, true);
+	}
+
+	/**
+	 * Sends a heartbeat to all streams without unsent events
+	 */
+	private void sendHeartbeats() {
+		for (Set<Subscription> userSubscriptions : subscriptions.values())
+			for (Subscription subscription : userSubscriptions)
+				subscription.heartbeat();
+	}
+
+	/**
+	 * Publishes changed accounts
+	 *
+	 * @param user the accounts owner
+	 * @param accounts the changed accounts
+	 */
+	private void publishAccounts(VogonUser user, Collection<FinanceAccount> accounts) {
+		for (FinanceAccount account : accounts)
+			publish(user, MessageFormat.format("{0}:{1}", ACCOUNT_EVENT, Long.toString(account.getId())), ACCOUNT_EVENT, account); //NOI18N
+	}
+
+	/**
+	 * Returns the buffer key for a transaction's events
+	 *
+	 * @param id the transaction ID
+	 * @return the buffer key for the transaction's events
+	 */
+	private String getTransactionKey(long id) {
+		return MessageFormat.format("{0}:{1}", TRANSACTION_EVENT, Long.toString(id)); //NOI18N
+	}
+
+	/**
+	 * Sends an event to all of the user's streams
+	 *
+	 * @param user the user
+	 * @param key the key of the changed entity; replaces unsent events with
+	 * the same key
+	 * @param name the event name
+	 * @param data the event data, converted into JSON
+	 */
+	private void publish(VogonUser user, String key, String name, Object data) {
+		Set<Subscription> userSubscriptions = subscriptions.get(user.getId());
+		if (userSubscriptions == null)
+			return;
+		Event event;
+		try {
+			event = new Event(name, jsonMapper.writeValueAsString(data));
+		} catch (JsonProcessingException ex) {
+			log.error(messages.getString("CANNOT_SEND_LIVE_UPDATE"), ex);
+			return;
+		}
+		for (Subscription subscription : userSubscriptions)
+			subscription.offer(key, event);
+	}
+
+	/**
+	 * An unsent event
+	 */
+	private static class Event {
+
+		/**
+		 * The event name, or null if the event is a comment
+		 */
+		private final String name;
+		/**
+		 * The event data
+		 */
+		private final String data;
+
+		/**
+		 * Creates an Event
+		 *
+		 * @param name the event name, or null if the event is a comment
+		 * @param data the event data (or comment text)
+		 */
+		private Event(String name, String data) {
+			this.name = name;
+			this.data = data;
+		}
+	}
+
+	/**
+	 * An open stream with its buffer of unsent events
+	 */
+	private class Subscription {
+
+		/**
+		 * The user ID
+		 */
+		private final long userId;
+		/**
+		 * The stream
+		 */
+		private final SseEmitter emitter;
+		/**
+		 * The unsent events, by key of the changed entity
+		 */
+		private final Map<String, Event> pendingEvents = new LinkedHashMap<>();
+		/**
+		 * True if events are being sent (or if the stream is closed)
+		 */
+		private boolean sending;
+
+		/**
+		 * Creates a Subscription
+		 *
+		 * @param userId the user ID
+		 * @param emitter the stream
+		 */
+		private Subscription(long userId, SseEmitter emitter) {
+			this.userId = userId;
+			this.emitter = emitter;
+		}
+
+		/**
+		 * Adds an event to the buffer and starts sending events if necessary
+		 *
+		 * @param key the key of the changed entity
+		 * @param event the event
+		 */
+		private void offer(String key, Event event) {
+			synchronized (this) {
+				pendingEvents.remove(key);
+				if (REFRESH_EVENT.equals(key) || pendingEvents.size() >= BUFFER_SIZE) {
+					pendingEvents.clear();
+					key = REFRESH_EVENT;
+					event = new Event(REFRESH_EVENT, Boolean.TRUE.toString());
+				}
+				pendingEvents.put(key, event);
+				if (sending)
+					return;
+				sending = true;
+			}
+			try {
+				liveUpdateExecutor.execute(this::send);
+			} catch (RejectedExecutionException ex) {
+				log.debug(messages.getString("CANNOT_SEND_LIVE_UPDATE"), ex);
+				close();
+				emitter.complete();
+			}
+		}
+
+		/**
+		 * Adds a heartbeat to the buffer, unless events are waiting to be
+		 * sent anyway
+		 */
+		private void heartbeat() {
+			synchronized (this) {
+				if (!pendingEvents.isEmpty())
+					return;
+			}
+			offer(HEARTBEAT_KEY, new Event(null, HEARTBEAT_KEY));
+		}
+
+		/**
+		 * Sends buffered events until the buffer is empty
+		 */
+		private void send() {
+			while (true) {
+				Event event;
+				synchronized (this) {
+					Iterator<Event> iterator = pendingEvents.values().iterator();
+					if (!iterator.hasNext()) {
+						sending = false;
+						return;
+					}
+					event = iterator.next();
+					iterator.remove();
+				}
+				try {
+					emitter.send(event.name != null ? SseEmitter.event().name(event.name).data(event.data) : SseEmitter.event().comment(event.data));
+				} catch (IOException | IllegalStateException ex) {
+					log.debug(messages.getString("CANNOT_SEND_LIVE_UPDATE"), ex);
+					close();
+					emitter.completeWithError(ex);
+					return;
+				}
+			}
+		}
+
+		/**
+		 * Removes this stream from the user's streams and discards unsent
+		 * events
+		 */
+		private void close() {
+			synchronized (this) {
+				sending = true;
+				pendingEvents.clear();
+			}
+			subscriptions.computeIfPresent(userId, (id, userSubscriptions) -> {
+				userSubscriptions.remove(this);
+				return userSubscriptions.isEmpty() ? null : userSubscriptions;
+			});
+		}
+	}
+}
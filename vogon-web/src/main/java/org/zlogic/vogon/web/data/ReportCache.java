@@ -0,0 +1,253 @@
+/*
+ * Vogon personal finance/expense analyzer.
+ * Licensed under Apache license: http://www.apache.org/licenses/LICENSE-2.0
+ * Author: Dmitry Zolotukhin <zlogic@gmail.com>
+ */
+package org.zlogic.vogon.web.data;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Supplier;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.zlogic.vogon.data.FinanceAccount;
+import org.zlogic.vogon.data.report.Report;
+import org.zlogic.vogon.data.report.ReportFactory;
+import org.zlogic.vogon.web.configuration.VogonConfiguration;
+
+/**
+ * Caches built reports for every user. Reports built for an older version of
+ * the user's data (as stored in the database, see
+ * {@link DataChangeNotifier#getVersion(org.zlogic.vogon.data.VogonUser)}) are
+ * not used.
+ *
+ * @author Dmitry Zolotukhin [zlogic@gmail.com]
+ */
+@Service
+public class ReportCache {
+
+	/**
+	 * The cache name used in metrics
+	 */
+	private static final String CACHE_NAME = "reports"; //NOI18N
+
+	/**
+	 * Cached reports, in LRU order
+	 */
+	private final LinkedHashMap<ReportKey, CachedReport> reports;
+	/**
+	 * The maximum number of cached reports
+	 */
+	private final int maxSize;
+	/**
+	 * The data change notifier
+	 */
+	private final DataChangeNotifier dataChangeNotifier;
+	/**
+	 * Cache hits counter
+	 */
+	private final Counter hits;
+	/**
+	 * Cache misses counter
+	 */
+	private final Counter misses;
+	/**
+	 * Cache evictions counter
+	 */
+	private final Counter evictions;
+
+	/**
+	 * Creates the report cache
+	 *
+	 * @param configuration the configuration handler
+	 * @param meterRegistry the registry for cache metrics
+	 * @param dataChangeNotifier the data change notifier
+	 */
+	@Autowired
+	public ReportCache(VogonConfiguration configuration, MeterRegistry meterRegistry, DataChangeNotifier dataChangeNotifier) {
+		this.dataChangeNotifier = dataChangeNotifier;
+		maxSize = configuration.getReportCacheSize();
+		reports = new LinkedHashMap<ReportKey, CachedReport>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<ReportKey, CachedReport> eldest) {
+				if (size() <= maxSize)
+					return false;
+				evictions.increment();
+				return true;
+			}
+		};
+		hits = Counter.builder("cache.gets").tag("cache", CACHE_NAME).tag("result", "hit").register(meterRegistry); //NOI18N
+		misses = Counter.builder("cache.gets").tag("cache", CACHE_NAME).tag("result", "miss").register(meterRegistry); //NOI18N
+		evictions = Counter.builder("cache.evictions").tag("cache", CACHE_NAME).register(meterRegistry); //NOI18N
+		meterRegistry.gauge("cache.size", Collections.singletonList(Tag.of("cache", CACHE_NAME)), this, ReportCache::size); //NOI18N
+	}
+
+	/**
+	 * Returns the cached report for the reportFactory filter, or builds and
+	 * caches a new report if it's not cached or was built for an older data
+	 * version
+	 *
+	 * @param reportFactory the report parameters (with an owner and resolved
+	 * accounts)
+	 * @param reportBuilder the function to build the report
+	 * @return the report
+	 */
+	public Map<String, Report> getReport(ReportFactory reportFactory, Supplier<Map<String, Report>> reportBuilder) {
+		if (maxSize <= 0)
+			return reportBuilder.get();
+		ReportKey key = new ReportKey(reportFactory);
+		long version = dataChangeNotifier.getVersion(reportFactory.getOwner());
+		synchronized (reports) {
+			CachedReport cachedReport = reports.get(key);
+			if (cachedReport != null && cachedReport.version == version) {
+				hits.increment();
+				return cachedReport.report;
+			}
+		}
+		misses.increment();
+		Map<String, Report> report = reportBuilder.get();
+		synchronized (reports) {
+			CachedReport cachedReport = reports.get(key);
+			if (cachedReport == null || cachedReport.version < version)
+				reports.put(key, new CachedReport(version, report));
+		}
+		return report;
+	}
+
+	/**
+	 * Returns the number of cached reports
+	 *
+	 * @return the number of cached reports
+	 */
+	public int size() {
+		synchronized (reports) {
+			return reports.size();
+		}
+	}
+
+	/**
+	 * A report built for a specific data version
+	 */
+	private static class CachedReport {
+
+		/**
+		 * The user's data version used to build the report
+		 */
+		private final long version;
+		/**
+		 * The report
+		 */
+		private final Map<String, Report> report;
+
+		/**
+		 * Creates a CachedReport
+		 *
+		 * @param version the user's data version used to build the report
+		 * @param report the report
+		 */
+		private CachedReport(long version, Map<String, Report> report) {
+			this.version = version;
+			this.report = report;
+		}
+	}
+
+	/**
+	 * Normalized report filter
+	 */
+	private static class ReportKey {
+
+		/**
+		 * The owner ID
+		 */
+		private final Long ownerId;
+		/**
+		 * The low cutoff date
+		 */
+		private final Long earliestDate;
+		/**
+		 * The high cutoff date
+		 */
+		private final Long latestDate;
+		/**
+		 * The sorted selected tags
+		 */
+		private final List<String> selectedTags;
+		/**
+		 * The sorted selected account IDs
+		 */
+		private final List<Long> selectedAccounts;
+		/**
+		 * Show expense transactions
+		 */
+		private final boolean enabledExpenseTransactions;
+		/**
+		 * Show income transactions
+		 */
+		private final boolean enabledIncomeTransactions;
+		/**
+		 * Show transfer transactions
+		 */
+		private final boolean enabledTransferTransactions;
+		/**
+		 * The maximum number of points in the balance graph
+		 */
+		private final int maxPoints;
+		/**
+		 * The maximum number of transactions
+		 */
+		private final int topN;
+
+		/**
+		 * Creates a ReportKey for the reportFactory filter
+		 *
+		 * @param reportFactory the report parameters
+		 */
+		private ReportKey(ReportFactory reportFactory) {
+			ownerId = reportFactory.getOwner().getId();
+			earliestDate = reportFactory.getEarliestDate() != null ? reportFactory.getEarliestDate().getTime() : null;
+			latestDate = reportFactory.getLatestDate() != null ? reportFactory.getLatestDate().getTime() : null;
+			selectedTags = new ArrayList<>(reportFactory.getSelectedTags());
+			Collections.sort(selectedTags);
+			selectedAccounts = new ArrayList<>();
+			for (FinanceAccount account : reportFactory.getSelectedAccounts())
+				selectedAccounts.add(account.getId());
+			Collections.sort(selectedAccounts);
+			enabledExpenseTransactions = reportFactory.isEnabledExpenseTransactions();
+			enabledIncomeTransactions = reportFactory.isEnabledIncomeTransactions();
+			enabledTransferTransactions = reportFactory.isEnabledTransferTransactions();
+			maxPoints = reportFactory.getMaxPoints();
+			topN = reportFactory.getTopN();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof ReportKey))
+				return false;
+			ReportKey key = (ReportKey) obj;
+			return Objects.equals(ownerId, key.ownerId)
+					&& Objects.equals(earliestDate, key.earliestDate)
+					&& Objects.equals(latestDate, key.latestDate)
+					&& selectedTags.equals(key.selectedTags)
+					&& selectedAccounts.equals(key.selectedAccounts)
+					&& enabledExpenseTransactions == key.enabledExpenseTransactions
+					&& enabledIncomeTransactions == key.enabledIncomeTransactions
+					&& enabledTransferTransactions == key.enabledTransferTransactions
+					&& maxPoints == key.maxPoints
+					&& topN == key.topN;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(ownerId, earliestDate, latestDate, selectedTags, selectedAccounts, enabledExpenseTransactions, enabledIncomeTransactions, enabledTransferTransactions, maxPoints, topN);
+		}
+	}
+}
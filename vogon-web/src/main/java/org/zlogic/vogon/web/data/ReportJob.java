@@ -0,0 +1,254 @@
+/*
+ * Vogon personal finance/expense analyzer.
+ * Licensed under Apache license: http://www.apache.org/licenses/LICENSE-2.0
+ * Author: Dmitry Zolotukhin <zlogic@gmail.com>
+ */
+package org.zlogic.vogon.web.data;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.zlogic.vogon.data.report.Report;
+
+/**
+ * A report which is built in the background; only the job status is
+ * serialized, the result is returned separately
+ *
+ * @author Dmitry Zolotukhin [zlogic@gmail.com]
+ */
+public class ReportJob {
+
+	/**
+	 * Report job status
+	 */
+	public enum Status {
+
+		/**
+		 * The job is waiting for a free thread
+		 */
+		QUEUED,
+		/**
+		 * The report is being built
+		 */
+		RUNNING,
+		/**
+		 * The report is ready
+		 */
+		COMPLETED,
+		/**
+		 * The report failed
+		 */
+		FAILED,
+		/**
+		 * The job was cancelled
+		 */
+		CANCELLED
+	}
+
+	/**
+	 * The job ID
+	 */
+	private final String id;
+	/**
+	 * The ID of the user who submitted the job
+	 */
+	private final long ownerId;
+	/**
+	 * The number of currencies in the report
+	 */
+	private final int totalCurrencies;
+	/**
+	 * The number of completed currencies
+	 */
+	private final AtomicInteger completedCurrencies = new AtomicInteger();
+	/**
+	 * The job status
+	 */
+	private volatile Status status = Status.QUEUED;
+	/**
+	 * The report, once completed
+	 */
+	private volatile Map<String, Report> result;
+	/**
+	 * The error message, if the report failed
+	 */
+	private volatile String error;
+	/**
+	 * The time when the job was finished
+	 */
+	private volatile long finishedTime;
+	/**
+	 * The job's Future
+	 */
+	private volatile Future<?> future;
+	/**
+	 * Completed with this job when the job is finished
+	 */
+	private final CompletableFuture<ReportJob> finished = new CompletableFuture<>();
+
+	/**
+	 * Creates a ReportJob
+	 *
+	 * @param id the job ID
+	 * @param ownerId the ID of the user who submitted the job
+	 * @param totalCurrencies the number of currencies in the report
+	 */
+	ReportJob(String id, long ownerId, int totalCurrencies) {
+		this.id = id;
+		this.ownerId = ownerId;
+		this.totalCurrencies = totalCurrencies;
+	}
+
+	/**
+	 * Returns the job ID
+	 *
+	 * @return the job ID
+	 */
+	public String getId() {
+		return id;
+	}
+
+	/**
+	 * Returns the job status
+	 *
+	 * @return the job status
+	 */
+	public Status getStatus() {
+		return status;
+	}
+
+	/**
+	 * Returns the number of currencies in the report
+	 *
+	 * @return the number of currencies in the report
+	 */
+	public int getTotalCurrencies() {
+		return totalCurrencies;
+	}
+
+	/**
+	 * Returns the number of currencies which were already completed
+	 *
+	 * @return the number of completed currencies
+	 */
+	public int getCompletedCurrencies() {
+		return completedCurrencies.get();
+	}
+
+	/**
+	 * Returns the error message if the report failed
+	 *
+	 * @return the error message, or null if the report didn't fail
+	 */
+	public String getError() {
+		return error;
+	}
+
+	/**
+	 * Returns true if the job is finished (completed, failed or cancelled)
+	 *
+	 * @return true if the job is finished
+	 */
+	public boolean isFinished() {
+		return status == Status.COMPLETED || status == Status.FAILED || status == Status.CANCELLED;
+	}
+
+	/*
+	 * Internal state, updated by ReportJobService
+	 */
+	/**
+	 * Returns the ID of the user who submitted the job
+	 *
+	 * @return the ID of the user who submitted the job
+	 */
+	long ownerId() {
+		return ownerId;
+	}
+
+	/**
+	 * Returns the report
+	 *
+	 * @return the report, or null if it's not completed
+	 */
+	Map<String, Report> result() {
+		return result;
+	}
+
+	/**
+	 * Returns the time when the job was finished
+	 *
+	 * @return the time when the job was finished
+	 */
+	long finishedTime() {
+		return finishedTime;
+	}
+
+	/**
+	 * Returns the job's Future
+	 *
+	 * @return the job's Future
+	 */
+	Future<?> future() {
+		return future;
+	}
+
+	/**
+	 * Returns a CompletableFuture which is completed with this job when the
+	 * job is finished
+	 *
+	 * @return the CompletableFuture which is completed when the job is
+	 * finished
+	 */
+	CompletableFuture<ReportJob> finished() {
+		return finished;
+	}
+
+	/**
+	 * Sets the job's Future
+	 *
+	 * @param future the job's Future
+	 */
+	void setFuture(Future<?> future) {
+		this.future = future;
+	}
+
+	/**
+	 * Marks the job as running, unless it was cancelled
+	 *
+	 * @return true if the job can be started
+	 */
+	synchronized boolean start() {
+		if (status != Status.QUEUED)
+			return false;
+		status = Status.RUNNING;
+		return true;
+	}
+
+	/**
+	 * Increases the number of completed currencies
+	 */
+	void currencyCompleted() {
+		completedCurrencies.incrementAndGet();
+	}
+
+	/**
+	 * Marks the job as finished
+	 *
+	 * @param status the final status
+	 * @param result the report, or null if the job didn't complete
+	 * @param error the error message, or null if the job didn't fail
+	 * @return true if the job status was changed, false if the job was
+	 * already finished
+	 */
+	synchronized boolean finish(Status status, Map<String, Report> result, String error) {
+		if (isFinished())
+			return false;
+		this.result = result;
+		this.error = error;
+		this.finishedTime = System.currentTimeMillis();
+		this.status = status;
+		finished.complete(this);
+		return true;
+	}
+}
@@ -0,0 +1,240 @@
+/*
+ * Vogon personal finance/expense analyzer.
+ * Licensed under Apache license: http://www.apache.org/licenses/LICENSE-2.0
+ * Author: Dmitry Zolotukhin <zlogic@gmail.com>
+ */
+package org.zlogic.vogon.web.data;
+
+import java.text.MessageFormat;
+import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityNotFoundException;
+import javax.persistence.PersistenceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.zlogic.vogon.data.FinanceAccount;
+import org.zlogic.vogon.data.VogonUser;
+import org.zlogic.vogon.data.report.Report;
+import org.zlogic.vogon.data.report.ReportFactory;
+import org.zlogic.vogon.web.configuration.VogonConfiguration;
+
+/**
+ * Runs report jobs in the background, on a dedicated executor
+ *
+ * @author Dmitry Zolotukhin [zlogic@gmail.com]
+ */
+@Service
+public class ReportJobService {
+
+	/**
+	 * The logger
+	 */
+	private final static Logger log = LoggerFactory.getLogger(ReportJobService.class);
+
+	/**
+	 * Localization messages
+	 */
+	private static final ResourceBundle messages = ResourceBundle.getBundle("org/zlogic/vogon/web/messages");
+
+	/**
+	 * The time in milliseconds for which finished jobs are kept
+	 */
+	private static final long FINISHED_JOB_RETENTION = 10 * 60 * 1000L;
+
+	/**
+	 * The time in milliseconds between checks for expired jobs
+	 */
+	private static final long EXPIRED_JOBS_CHECK_INTERVAL = 60 * 1000L;
+
+	/**
+	 * The maximum time in milliseconds to wait for a job to finish
+	 */
+	private static final long MAX_WAIT = 30 * 1000L;
+
+	/**
+	 * The EntityManager instance
+	 */
+	@PersistenceContext
+	private EntityManager em;
+
+	/**
+	 * The executor for running report jobs
+	 */
+	@Autowired
+	private ExecutorService reportJobExecutor;
+
+	/**
+	 * The executor for periodic maintenance tasks
+	 */
+	@Autowired
+	private ScheduledExecutorService maintenanceExecutor;
+
+	/**
+	 * The transaction manager
+	 */
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	/**
+	 * The configuration handler
+	 */
+	@Autowired
+	private VogonConfiguration configuration;
+
+	/**
+	 * The report cache
+	 */
+	@Autowired
+	private ReportCache reportCache;
+
+	/**
+	 * All jobs, by ID
+	 */
+	private final ConcurrentMap<String, ReportJob> jobs = new ConcurrentHashMap<>();
+
+	/**
+	 * Starts removing expired jobs periodically
+	 */
+	@PostConstruct
+	public void startRemovingExpiredJobs() {
+		maintenanceExecutor.scheduleWithFixedDelay(this::removeExpiredJobs, EXPIRED_JOBS_CHECK_INTERVAL, EXPIRED_JOBS_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Submits a report job
+	 *
+	 * @param reportFactory the report parameters (with an owner and resolved
+	 * accounts)
+	 * @param user the user submitting the job
+	 * @return the submitted job
+	 * @throws RejectedExecutionException if the user has too many unfinished
+	 * jobs
+	 */
+	public ReportJob submit(ReportFactory reportFactory, VogonUser user) {
+		removeExpiredJobs();
+		int totalCurrencies = (int) reportFactory.getSelectedAccounts().stream().map(FinanceAccount::getCurrency).distinct().count();
+		ReportJob job = new ReportJob(UUID.randomUUID().toString(), user.getId(), totalCurrencies);
+		synchronized (this) {
+			long unfinishedJobs = jobs.values().stream().filter(existingJob -> existingJob.ownerId() == user.getId() && !existingJob.isFinished()).count();
+			if (unfinishedJobs >= Math.max(configuration.getReportJobsPerUser(), 1))
+				throw new RejectedExecutionException(messages.getString("TOO_MANY_REPORT_JOBS"));
+			jobs.put(job.getId(), job);
+		}
+		TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+		transactionTemplate.setReadOnly(true);
+		try {
+			job.setFuture(reportJobExecutor.submit(() -> {
+				if (!job.start())
+					return;
+				try {
+					Map<String, Report> report = transactionTemplate.execute(status -> reportCache.getReport(reportFactory,
+							() -> reportFactory.buildReport(em, currency -> job.currencyCompleted())));
+					job.finish(ReportJob.Status.COMPLETED, report, null);
+				} catch (RuntimeException ex) {
+					if (job.finish(Thread.currentThread().isInterrupted() ? ReportJob.Status.CANCELLED : ReportJob.Status.FAILED, null, ex.getMessage()))
+						log.error(messages.getString("REPORT_JOB_FAILED"), ex);
+				}
+			}));
+		} catch (RejectedExecutionException ex) {
+			jobs.remove(job.getId());
+			throw ex;
+		}
+		return job;
+	}
+
+	/**
+	 * Returns a job, optionally waiting until it's finished. The wait doesn't
+	 * block the request thread: the result is set when the job is finished or
+	 * when the wait times out.
+	 *
+	 * @param id the job ID
+	 * @param user the user who submitted the job
+	 * @param wait the maximum time in milliseconds to wait for the job to
+	 * finish (limited to 30 seconds)
+	 * @return the job, once it's finished or the wait times out
+	 * @throws EntityNotFoundException if the user doesn't have a job with this
+	 * ID
+	 */
+	public DeferredResult<ReportJob> getJob(String id, VogonUser user, long wait) {
+		ReportJob job = findJob(id, user);
+		DeferredResult<ReportJob> result = new DeferredResult<>(Math.min(Math.max(wait, 1), MAX_WAIT), job);
+		if (wait > 0)
+			job.finished().thenAccept(result::setResult);
+		else
+			result.setResult(job);
+		return result;
+	}
+
+	/**
+	 * Returns a completed job's report
+	 *
+	 * @param id the job ID
+	 * @param user the user who submitted the job
+	 * @return the report
+	 * @throws EntityNotFoundException if the user doesn't have a job with this
+	 * ID
+	 * @throws IllegalStateException if the job is not completed
+	 */
+	public Map<String, Report> getResult(String id, VogonUser user) {
+		ReportJob job = findJob(id, user);
+		if (job.getStatus() != ReportJob.Status.COMPLETED)
+			throw new IllegalStateException(MessageFormat.format(messages.getString("REPORT_JOB_IS_NOT_COMPLETED"), id));
+		return job.result();
+	}
+
+	/**
+	 * Cancels a job (if it's not finished) and removes it
+	 *
+	 * @param id the job ID
+	 * @param user the user who submitted the job
+	 * @return the removed job
+	 * @throws EntityNotFoundException if the user doesn't have a job with this
+	 * ID
+	 */
+	public ReportJob cancel(String id, VogonUser user) {
+		ReportJob job = findJob(id, user);
+		job.finish(ReportJob.Status.CANCELLED, null, null);
+		if (job.future() != null)
+			job.future().cancel(true);
+		jobs.remove(id);
+		return job;
+	}
+
+	/**
+	 * Returns a user's job
+	 *
+	 * @param id the job ID
+	 * @param user the user who submitted the job
+	 * @return the job
+	 * @throws EntityNotFoundException if the user doesn't have a job with this
+	 * ID
+	 */
+	private ReportJob findJob(String id, VogonUser user) {
+		ReportJob job = jobs.get(id);
+		if (job == null || job.ownerId() != user.getId())
+			throw new EntityNotFoundException(MessageFormat.format(messages.getString("REPORT_JOB_DOES_NOT_EXIST"), id));
+		return job;
+	}
+
+	/**
+	 * Removes jobs which were finished too long ago
+	 */
+	private void removeExpiredJobs() {
+		long expiredTime = System.currentTimeMillis() - FINISHED_JOB_RETENTION;
+		jobs.values().removeIf(job -> job.isFinished() && job.finishedTime() < expiredTime);
+	}
+}
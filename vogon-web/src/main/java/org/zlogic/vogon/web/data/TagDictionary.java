@@ -0,0 +1,274 @@
+/*
+ * Vogon personal finance/expense analyzer.
+ * Licensed under Apache license: http://www.apache.org/licenses/LICENSE-2.0
+ * Author: Dmitry Zolotukhin <zlogic@gmail.com>
+ */
+package org.zlogic.vogon.web.data;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.zlogic.vogon.data.FinanceAccount;
+import org.zlogic.vogon.data.FinanceTransaction;
+import org.zlogic.vogon.data.VogonUser;
+import org.zlogic.vogon.data.report.ReportFactory;
+import org.zlogic.vogon.web.configuration.VogonConfiguration;
+
+/**
+ * Keeps every user's tags in memory, with the number of transactions using
+ * each tag. A user's tags are loaded with a single query on first access and
+ * then updated incrementally when transactions are changed (as reported by
+ * the {@link DataChangeNotifier}), so that tag listing and autocomplete don't
+ * need to scan all transactions. Tags are reloaded if the user's data version
+ * shows that they missed a change. Tags are only kept for a limited number of
+ * recently active users.
+ *
+ * @author Dmitry Zolotukhin [zlogic@gmail.com]
+ */
+@Service
+public class TagDictionary implements DataChangeListener {
+
+	/**
+	 * Empty tag value (transactions without tags)
+	 */
+	private static final String EMPTY_TAG = ""; //NOI18N
+
+	/**
+	 * The EntityManager instance
+	 */
+	@PersistenceContext
+	private EntityManager em;
+	/**
+	 * Loaded tags for every user ID
+	 */
+	private final UserCache<UserTags> userTags;
+	/**
+	 * The data change notifier
+	 */
+	@Autowired
+	private DataChangeNotifier dataChangeNotifier;
+
+	/**
+	 * Creates the tag dictionary
+	 *
+	 * @param configuration the configuration handler
+	 * @param meterRegistry the registry for cache metrics
+	 */
+	@Autowired
+	public TagDictionary(VogonConfiguration configuration, MeterRegistry meterRegistry) {
+		userTags = new UserCache<>("tags", configuration::getUserCacheSize, meterRegistry); //NOI18N
+	}
+
+	/**
+	 * Returns all of the user's tags, including the empty tag
+	 *
+	 * @param user the user
+	 * @return the user's tags
+	 */
+	public Set<String> getTags(VogonUser user) {
+		Set<String> tags = getUserTags(user).getTags();
+		tags.add(EMPTY_TAG);
+		return tags;
+	}
+
+	/**
+	 * Returns the user's tags starting with a prefix (case-insensitive), most
+	 * used tags first
+	 *
+	 * @param user the user
+	 * @param prefix the tag prefix
+	 * @param limit the maximum number of returned tags
+	 * @return the matching tags
+	 */
+	public List<String> findTags(VogonUser user, String prefix, int limit) {
+		return getUserTags(user).findTags(prefix, limit);
+	}
+
+	/**
+	 * Discards the user's loaded tags, so that they will be reloaded on next
+	 * access
+	 *
+	 * @param user the user whose data was changed
+	 */
+	@Override
+	public void dataChanged(VogonUser user) {
+		userTags.remove(user.getId());
+	}
+
+	@Override
+	public void transactionSaved(VogonUser user, long committedVersion, FinanceTransaction transaction, boolean created, Collection<String> previousTags, Collection<FinanceAccount> accounts) {
+		applyUpdate(user, committedVersion, previousTags, Arrays.asList(transaction.getTags()));
+	}
+
+	@Override
+	public void transactionDeleted(VogonUser user, long committedVersion, FinanceTransaction transaction, Collection<FinanceAccount> accounts) {
+		applyUpdate(user, committedVersion, Arrays.asList(transaction.getTags()), Collections.emptyList());
+	}
+
+	/**
+	 * Applies a committed change of a transaction's tags to the loaded tags.
+	 * If the tags are missing another change, they're discarded instead.
+	 *
+	 * @param user the transaction owner
+	 * @param committedVersion the data version committed by the write
+	 * @param previousTags the transaction's tags before the change (empty for
+	 * new transactions)
+	 * @param newTags the transaction's tags after the change (empty for
+	 * deleted transactions)
+	 */
+	private void applyUpdate(VogonUser user, long committedVersion, Collection<String> previousTags, Collection<String> newTags) {
+		Set<String> removedTags = new HashSet<>(previousTags);
+		removedTags.removeAll(newTags);
+		Set<String> addedTags = new HashSet<>(newTags);
+		addedTags.removeAll(previousTags);
+		UserTags tags = userTags.get(user.getId());
+		if (tags == null)
+			return;
+		if (!tags.update(committedVersion, removedTags, addedTags))
+			userTags.remove(user.getId(), tags);
+	}
+
+	/**
+	 * Returns the user's loaded tags, loading them if they're not loaded for
+	 * the current data version. Tags are only kept if the user's data was not
+	 * changed while they were being loaded.
+	 *
+	 * @param user the user
+	 * @return the user's tags
+	 */
+	private UserTags getUserTags(VogonUser user) {
+		long loadedVersion = dataChangeNotifier.getVersion(user);
+		UserTags tags = userTags.get(user.getId(), cachedTags -> cachedTags.getVersion() == loadedVersion ? cachedTags : null);
+		if (tags != null)
+			return tags;
+		UserTags loadedTags = new UserTags(loadedVersion, new ReportFactory(user).getTagUsage(em));
+		if (dataChangeNotifier.getVersion(user) == loadedVersion)
+			userTags.put(user.getId(), loadedTags, (existingTags, newTags) -> existingTags.getVersion() >= newTags.getVersion() ? existingTags : newTags);
+		return loadedTags;
+	}
+
+	/**
+	 * A user's tags, sorted case-insensitively so that tags with a common
+	 * prefix are stored next to each other
+	 */
+	private static class UserTags {
+
+		/**
+		 * The data version of the tags
+		 */
+		private long version;
+		/**
+		 * The number of transactions for every tag; tags which differ only in
+		 * case share the same key
+		 */
+		private final TreeMap<String, Map<String, Long>> tagUsage = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+
+		/**
+		 * Creates UserTags
+		 *
+		 * @param version the data version when the tags were loaded
+		 * @param tagUsage the number of transactions for every tag
+		 */
+		private UserTags(long version, Map<String, Long> tagUsage) {
+			this.version = version;
+			tagUsage.forEach((tag, count) -> addUsage(tag, count));
+		}
+
+		/**
+		 * Returns the data version of the tags
+		 *
+		 * @return the data version of the tags
+		 */
+		private synchronized long getVersion() {
+			return version;
+		}
+
+		/**
+		 * Returns all tags
+		 *
+		 * @return all tags
+		 */
+		private synchronized Set<String> getTags() {
+			Set<String> tags = new HashSet<>();
+			for (Map<String, Long> variants : tagUsage.values())
+				tags.addAll(variants.keySet());
+			return tags;
+		}
+
+		/**
+		 * Returns the tags starting with a prefix (case-insensitive), most
+		 * used tags first
+		 *
+		 * @param prefix the tag prefix
+		 * @param limit the maximum number of returned tags
+		 * @return the matching tags
+		 */
+		private synchronized List<String> findTags(String prefix, int limit) {
+			List<Map.Entry<String, Long>> matches = new ArrayList<>();
+			for (Map<String, Long> variants : tagUsage.tailMap(prefix, true).values()) {
+				String tag = variants.keySet().iterator().next();
+				if (!tag.regionMatches(true, 0, prefix, 0, prefix.length()))
+					break;
+				matches.addAll(variants.entrySet());
+			}
+			matches.sort(Map.Entry.<String, Long>comparingByValue(Comparator.reverseOrder()).thenComparing(Map.Entry.comparingByKey()));
+			int count = Math.min(matches.size(), Math.max(limit, 0));
+			List<String> tags = new ArrayList<>(count);
+			for (Map.Entry<String, Long> match : matches.subList(0, count))
+				tags.add(match.getKey());
+			return tags;
+		}
+
+		/**
+		 * Updates tag usage counts after a transaction's tags were changed
+		 *
+		 * @param committedVersion the data version committed by the change
+		 * @param removedTags the tags removed from the transaction
+		 * @param addedTags the tags added to the transaction
+		 * @return false if the tags are missing another change and should be
+		 * reloaded
+		 */
+		private synchronized boolean update(long committedVersion, Collection<String> removedTags, Collection<String> addedTags) {
+			if (version >= committedVersion)
+				return true;
+			if (version != committedVersion - 1)
+				return false;
+			for (String tag : removedTags)
+				addUsage(tag, -1);
+			for (String tag : addedTags)
+				addUsage(tag, 1);
+			version = committedVersion;
+			return true;
+		}
+
+		/**
+		 * Changes a tag's usage count, removing tags which are not used
+		 * anymore
+		 *
+		 * @param tag the tag
+		 * @param delta the usage count change
+		 */
+		private void addUsage(String tag, long delta) {
+			Map<String, Long> variants = tagUsage.computeIfAbsent(tag, key -> new TreeMap<>());
+			long count = variants.getOrDefault(tag, 0L) + delta;
+			if (count > 0)
+				variants.put(tag, count);
+			else
+				variants.remove(tag);
+			if (variants.isEmpty())
+				tagUsage.remove(tag);
+		}
+	}
+}
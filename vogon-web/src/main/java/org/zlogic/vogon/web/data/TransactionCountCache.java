@@ -0,0 +1,320 @@
+/*
+ * Vogon personal finance/expense analyzer.
+ * Licensed under Apache license: http://www.apache.org/licenses/LICENSE-2.0
+ * Author: Dmitry Zolotukhin <zlogic@gmail.com>
+ */
+package org.zlogic.vogon.web.data;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.zlogic.vogon.data.FinanceAccount;
+import org.zlogic.vogon.data.FinanceTransaction;
+import org.zlogic.vogon.data.VogonUser;
+import org.zlogic.vogon.web.configuration.VogonConfiguration;
+
+/**
+ * Keeps the number of every user's transactions in memory. The total number
+ * of transactions is counted once and then updated incrementally when
+ * transactions are added or deleted (as reported by the
+ * {@link DataChangeNotifier}); counts for filtered transactions are cached
+ * until the user's data version changes. The total is counted again if the
+ * data version shows that it missed a change. Counts are only kept for a
+ * limited number of recently active users.
+ *
+ * @author Dmitry Zolotukhin [zlogic@gmail.com]
+ */
+@Service
+public class TransactionCountCache implements DataChangeListener {
+
+	/**
+	 * The maximum number of cached filtered counts for every user
+	 */
+	private static final int MAX_FILTERED_COUNTS = 100;
+
+	/**
+	 * The transactions repository
+	 */
+	@Autowired
+	private TransactionRepository transactionRepository;
+	/**
+	 * Loaded counts for every user ID
+	 */
+	private final UserCache<UserCounts> userCounts;
+	/**
+	 * The data change notifier
+	 */
+	@Autowired
+	private DataChangeNotifier dataChangeNotifier;
+
+	/**
+	 * Creates the transaction count cache
+	 *
+	 * @param configuration the configuration handler
+	 * @param meterRegistry the registry for cache metrics
+	 */
+	@Autowired
+	public TransactionCountCache(VogonConfiguration configuration, MeterRegistry meterRegistry) {
+		userCounts = new UserCache<>("transactionCounts", configuration::getUserCacheSize, meterRegistry); //NOI18N
+	}
+
+	/**
+	 * Returns the number of transactions matching a filter, counting them
+	 * only if the count is not known yet
+	 *
+	 * @param filter the transactions filter
+	 * @return the number of matching transactions
+	 */
+	public long count(TransactionFilterSpecification filter) {
+		VogonUser user = filter.getOwner();
+		CountKey key = new CountKey(filter);
+		long loadedVersion = dataChangeNotifier.getVersion(user);
+		Long count = userCounts.get(user.getId(), cachedCounts -> key.isUnfiltered() ? cachedCounts.getTotal(loadedVersion) : cachedCounts.getFilteredCount(key, loadedVersion));
+		if (count != null)
+			return count;
+		count = key.isUnfiltered() ? transactionRepository.countByOwner(user) : transactionRepository.count(filter);
+		if (dataChangeNotifier.getVersion(user) == loadedVersion) {
+			UserCounts counts = userCounts.put(user.getId(), new UserCounts(), (existingCounts, newCounts) -> existingCounts);
+			if (key.isUnfiltered())
+				counts.setTotal(loadedVersion, count);
+			else
+				counts.setFilteredCount(key, loadedVersion, count);
+		}
+		return count;
+	}
+
+	/**
+	 * Discards the user's counts, so that transactions will be counted again
+	 * on next access
+	 *
+	 * @param user the user whose data was changed
+	 */
+	@Override
+	public void dataChanged(VogonUser user) {
+		userCounts.remove(user.getId());
+	}
+
+	@Override
+	public void transactionSaved(VogonUser user, long committedVersion, FinanceTransaction transaction, boolean created, Collection<String> previousTags, Collection<FinanceAccount> accounts) {
+		applyUpdate(user, committedVersion, created ? 1 : 0);
+	}
+
+	@Override
+	public void transactionDeleted(VogonUser user, long committedVersion, FinanceTransaction transaction, Collection<FinanceAccount> accounts) {
+		applyUpdate(user, committedVersion, -1);
+	}
+
+	/**
+	 * Applies a committed update to the loaded total count. If the total is
+	 * missing another change, it's discarded instead. Filtered counts become
+	 * outdated since the data version is increased.
+	 *
+	 * @param user the transactions owner
+	 * @param committedVersion the data version committed by the write
+	 * @param delta the change in the number of transactions (0 if
+	 * transactions were only changed)
+	 */
+	private void applyUpdate(VogonUser user, long committedVersion, long delta) {
+		UserCounts counts = userCounts.get(user.getId());
+		if (counts != null)
+			counts.updateTotal(committedVersion, delta);
+	}
+
+	/**
+	 * A user's transaction counts
+	 */
+	private static class UserCounts {
+
+		/**
+		 * The total number of transactions, or null if not counted yet
+		 */
+		private Long total;
+		/**
+		 * The data version of the total
+		 */
+		private long totalVersion;
+		/**
+		 * The data version of the filtered counts
+		 */
+		private long filteredVersion;
+		/**
+		 * Filtered counts, in LRU order
+		 */
+		private final LinkedHashMap<CountKey, Long> filteredCounts = new LinkedHashMap<CountKey, Long>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<CountKey, Long> eldest) {
+				return size() > MAX_FILTERED_COUNTS;
+			}
+		};
+
+		/**
+		 * Returns the total number of transactions if it's known for a data
+		 * version
+		 *
+		 * @param version the current data version
+		 * @return the total number of transactions, or null if it's not known
+		 * for this data version
+		 */
+		private synchronized Long getTotal(long version) {
+			return totalVersion == version ? total : null;
+		}
+
+		/**
+		 * Sets the total number of transactions
+		 *
+		 * @param version the data version when transactions were counted
+		 * @param total the total number of transactions
+		 */
+		private synchronized void setTotal(long version, long total) {
+			if (this.total == null || totalVersion < version) {
+				this.total = total;
+				this.totalVersion = version;
+			}
+		}
+
+		/**
+		 * Updates the total number of transactions after a write
+		 *
+		 * @param committedVersion the data version committed by the write
+		 * @param delta the change in the number of transactions
+		 */
+		private synchronized void updateTotal(long committedVersion, long delta) {
+			if (total == null || totalVersion >= committedVersion)
+				return;
+			if (totalVersion == committedVersion - 1) {
+				total += delta;
+				totalVersion = committedVersion;
+			} else {
+				total = null;
+			}
+		}
+
+		/**
+		 * Returns a filtered count if it was counted for a data version
+		 *
+		 * @param key the filter
+		 * @param version the current data version
+		 * @return the filtered count, or null if it's not known for this data
+		 * version
+		 */
+		private synchronized Long getFilteredCount(CountKey key, long version) {
+			if (filteredVersion != version) {
+				filteredCounts.clear();
+				filteredVersion = version;
+				return null;
+			}
+			return filteredCounts.get(key);
+		}
+
+		/**
+		 * Sets a filtered count
+		 *
+		 * @param key the filter
+		 * @param version the data version when transactions were counted
+		 * @param count the filtered count
+		 */
+		private synchronized void setFilteredCount(CountKey key, long version, long count) {
+			if (filteredVersion > version)
+				return;
+			if (filteredVersion < version) {
+				filteredCounts.clear();
+				filteredVersion = version;
+			}
+			filteredCounts.put(key, count);
+		}
+	}
+
+	/**
+	 * Normalized transactions filter
+	 */
+	private static class CountKey {
+
+		/**
+		 * The description filter
+		 */
+		private final String filterDescription;
+		/**
+		 * The date filter
+		 */
+		private final Long filterDate;
+		/**
+		 * The tags filter (tag IDs)
+		 */
+		private final Set<Long> filterTagIds;
+		/**
+		 * The earliest date filter
+		 */
+		private final Long filterDateFrom;
+		/**
+		 * The latest date filter
+		 */
+		private final Long filterDateTo;
+		/**
+		 * The minimum component amount filter
+		 */
+		private final Double filterMinAmount;
+		/**
+		 * The maximum component amount filter
+		 */
+		private final Double filterMaxAmount;
+		/**
+		 * The component accounts filter (account IDs)
+		 */
+		private final Set<Long> filterAccountIds;
+
+		/**
+		 * Creates a CountKey for a filter
+		 *
+		 * @param filter the transactions filter
+		 */
+		private CountKey(TransactionFilterSpecification filter) {
+			filterDescription = filter.getFilterDescription();
+			filterDate = filter.getFilterDate() != null ? filter.getFilterDate().getTime() : null;
+			filterTagIds = filter.getFilterTagIds() != null ? new HashSet<>(filter.getFilterTagIds()) : null;
+			filterDateFrom = filter.getFilterDateFrom() != null ? filter.getFilterDateFrom().getTime() : null;
+			filterDateTo = filter.getFilterDateTo() != null ? filter.getFilterDateTo().getTime() : null;
+			filterMinAmount = filter.getFilterMinAmount();
+			filterMaxAmount = filter.getFilterMaxAmount();
+			filterAccountIds = filter.getFilterAccountIds() != null ? new HashSet<>(filter.getFilterAccountIds()) : null;
+		}
+
+		/**
+		 * Returns true if this filter matches all of the user's transactions
+		 *
+		 * @return true if this filter matches all of the user's transactions
+		 */
+		private boolean isUnfiltered() {
+			return filterDescription == null && filterDate == null && filterTagIds == null
+					&& filterDateFrom == null && filterDateTo == null
+					&& filterMinAmount == null && filterMaxAmount == null && filterAccountIds == null;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof CountKey))
+				return false;
+			CountKey key = (CountKey) obj;
+			return Objects.equals(filterDescription, key.filterDescription)
+					&& Objects.equals(filterDate, key.filterDate)
+					&& Objects.equals(filterTagIds, key.filterTagIds)
+					&& Objects.equals(filterDateFrom, key.filterDateFrom)
+					&& Objects.equals(filterDateTo, key.filterDateTo)
+					&& Objects.equals(filterMinAmount, key.filterMinAmount)
+					&& Objects.equals(filterMaxAmount, key.filterMaxAmount)
+					&& Objects.equals(filterAccountIds, key.filterAccountIds);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(filterDescription, filterDate, filterTagIds, filterDateFrom, filterDateTo, filterMinAmount, filterMaxAmount, filterAccountIds);
+		}
+	}
+}
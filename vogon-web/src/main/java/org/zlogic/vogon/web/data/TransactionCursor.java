@@ -0,0 +1,188 @@
+/*
+ * Vogon personal finance/expense analyzer.
+ * Licensed under Apache license: http://www.apache.org/licenses/LICENSE-2.0
+ * Author: Dmitry Zolotukhin <zlogic@gmail.com>
+ */
+package org.zlogic.vogon.web.data;
+
+import java.nio.charset.StandardCharsets;
+import java.text.MessageFormat;
+import java.util.Base64;
+import java.util.List;
+import java.util.ResourceBundle;
+import javax.persistence.EntityManager;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Order;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import org.springframework.data.domain.Sort;
+import org.zlogic.vogon.data.FinanceTransaction;
+import org.zlogic.vogon.data.FinanceTransaction_;
+
+/**
+ * Position in a sorted list of transactions, used for keyset (seek)
+ * pagination. Instead of skipping rows with an offset, the next page is
+ * selected by comparing the sort key and ID with the last returned
+ * transaction, so that every page costs the same and pages don't shift when
+ * transactions are added. Cursors are passed to clients as opaque tokens.
+ *
+ * @author Dmitry Zolotukhin [zlogic@gmail.com]
+ */
+public class TransactionCursor {
+
+	/**
+	 * Localization messages
+	 */
+	private static final ResourceBundle messages = ResourceBundle.getBundle("org/zlogic/vogon/web/messages");
+	/**
+	 * Token field separator
+	 */
+	private static final String SEPARATOR = "|"; //NOI18N
+	/**
+	 * Token marker for sorting by date
+	 */
+	private static final String SORT_DATE = "D"; //NOI18N
+	/**
+	 * Token marker for sorting by description
+	 */
+	private static final String SORT_DESCRIPTION = "S"; //NOI18N
+
+	/**
+	 * True if transactions are sorted by description, false if sorted by date
+	 */
+	private final boolean sortByDescription;
+	/**
+	 * The sort direction
+	 */
+	private final Sort.Direction direction;
+	/**
+	 * The last returned transaction ID, or null if this is the first page
+	 */
+	private final Long lastId;
+	/**
+	 * The last returned transaction date (if sorted by date)
+	 */
+	private final java.sql.Date lastDate;
+	/**
+	 * The last returned transaction description (if sorted by description)
+	 */
+	private final String lastDescription;
+
+	/**
+	 * Creates a cursor pointing to the first page
+	 *
+	 * @param sortByDescription true if transactions are sorted by description,
+	 * false if sorted by date
+	 * @param direction the sort direction, or null for the default (ascending)
+	 * direction
+	 */
+	public TransactionCursor(boolean sortByDescription, Sort.Direction direction) {
+		this(sortByDescription, direction, null, null, null);
+	}
+
+	/**
+	 * Creates a cursor
+	 *
+	 * @param sortByDescription true if transactions are sorted by description,
+	 * false if sorted by date
+	 * @param direction the sort direction, or null for the default (ascending)
+	 * direction
+	 * @param lastId the last returned transaction ID
+	 * @param lastDate the last returned transaction date
+	 * @param lastDescription the last returned transaction description
+	 */
+	private TransactionCursor(boolean sortByDescription, Sort.Direction direction, Long lastId, java.sql.Date lastDate, String lastDescription) {
+		this.sortByDescription = sortByDescription;
+		this.direction = direction != null ? direction : Sort.Direction.ASC;
+		this.lastId = lastId;
+		this.lastDate = lastDate;
+		this.lastDescription = lastDescription;
+	}
+
+	/**
+	 * Decodes a cursor from a token returned by {@link #encode()}
+	 *
+	 * @param token the cursor token
+	 * @return the decoded cursor
+	 * @throws IllegalArgumentException if the token is not valid
+	 */
+	public static TransactionCursor decode(String token) {
+		String[] fields;
+		try {
+			fields = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split("\\|", 4); //NOI18N
+			if (fields.length == 4) {
+				Sort.Direction direction = Sort.Direction.fromString(fields[1]);
+				Long lastId = Long.valueOf(fields[2]);
+				if (SORT_DATE.equals(fields[0]))
+					return new TransactionCursor(false, direction, lastId, java.sql.Date.valueOf(fields[3]), null);
+				if (SORT_DESCRIPTION.equals(fields[0]))
+					return new TransactionCursor(true, direction, lastId, null, fields[3]);
+			}
+		} catch (IllegalArgumentException ex) {
+			throw new IllegalArgumentException(MessageFormat.format(messages.getString("INVALID_TRANSACTIONS_CURSOR"), token), ex);
+		}
+		throw new IllegalArgumentException(MessageFormat.format(messages.getString("INVALID_TRANSACTIONS_CURSOR"), token));
+	}
+
+	/**
+	 * Encodes this cursor into an opaque URL-safe token
+	 *
+	 * @return the cursor token
+	 */
+	public String encode() {
+		String key = sortByDescription ? lastDescription : String.valueOf(lastDate);
+		String value = String.join(SEPARATOR, sortByDescription ? SORT_DESCRIPTION : SORT_DATE, direction.name(), String.valueOf(lastId), key);
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Returns a cursor pointing to the page after a transaction
+	 *
+	 * @param last the last transaction of the current page
+	 * @return the cursor pointing to the next page
+	 */
+	public TransactionCursor next(FinanceTransaction last) {
+		if (sortByDescription)
+			return new TransactionCursor(true, direction, last.getId(), null, last.getDescription());
+		return new TransactionCursor(false, direction, last.getId(), new java.sql.Date(last.getDate().getTime()), null);
+	}
+
+	/**
+	 * Returns the page of transactions starting after this cursor
+	 *
+	 * @param entityManager the EntityManager to be used for making queries
+	 * @param filter the transactions filter
+	 * @param limit the maximum number of returned transactions
+	 * @return the transactions
+	 */
+	public List<FinanceTransaction> find(EntityManager entityManager, TransactionFilterSpecification filter, int limit) {
+		CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+		CriteriaQuery<FinanceTransaction> transactionsQuery = criteriaBuilder.createQuery(FinanceTransaction.class);
+		Root<FinanceTransaction> tr = transactionsQuery.from(FinanceTransaction.class);
+		Predicate predicate = filter.toPredicate(tr, transactionsQuery, criteriaBuilder);
+		Expression<Long> id = tr.get(FinanceTransaction_.id);
+		if (sortByDescription) {
+			Expression<String> description = tr.get(FinanceTransaction_.description);
+			if (lastId != null)
+				predicate = criteriaBuilder.and(predicate, direction.isAscending()
+						? criteriaBuilder.or(criteriaBuilder.greaterThan(description, lastDescription), criteriaBuilder.and(criteriaBuilder.equal(description, lastDescription), criteriaBuilder.greaterThan(id, lastId)))
+						: criteriaBuilder.or(criteriaBuilder.lessThan(description, lastDescription), criteriaBuilder.and(criteriaBuilder.equal(description, lastDescription), criteriaBuilder.lessThan(id, lastId))));
+			transactionsQuery.orderBy(direction.isAscending()
+					? new Order[]{criteriaBuilder.asc(description), criteriaBuilder.asc(id)}
+					: new Order[]{criteriaBuilder.desc(description), criteriaBuilder.desc(id)});
+		} else {
+			Expression<java.util.Date> date = tr.get(FinanceTransaction_.transactionDate);
+			if (lastId != null)
+				predicate = criteriaBuilder.and(predicate, direction.isAscending()
+						? criteriaBuilder.or(criteriaBuilder.greaterThan(date, lastDate), criteriaBuilder.and(criteriaBuilder.equal(date, lastDate), criteriaBuilder.greaterThan(id, lastId)))
+						: criteriaBuilder.or(criteriaBuilder.lessThan(date, lastDate), criteriaBuilder.and(criteriaBuilder.equal(date, lastDate), criteriaBuilder.lessThan(id, lastId))));
+			transactionsQuery.orderBy(direction.isAscending()
+					? new Order[]{criteriaBuilder.asc(date), criteriaBuilder.asc(id)}
+					: new Order[]{criteriaBuilder.desc(date), criteriaBuilder.desc(id)});
+		}
+		transactionsQuery.where(predicate);
+		return entityManager.createQuery(transactionsQuery).setMaxResults(limit).getResultList();
+	}
+}
@@ -5,19 +5,28 @@
  */
 package org.zlogic.vogon.web.data;
 
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.TimeZone;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Join;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Subquery;
 import org.springframework.data.jpa.domain.Specification;
+import org.zlogic.vogon.data.Constants;
+import org.zlogic.vogon.data.FinanceAccount_;
 import org.zlogic.vogon.data.FinanceTransaction;
 import org.zlogic.vogon.data.FinanceTransaction_;
+import org.zlogic.vogon.data.Tag;
+import org.zlogic.vogon.data.Tag_;
+import org.zlogic.vogon.data.TransactionComponent;
+import org.zlogic.vogon.data.TransactionComponent_;
 import org.zlogic.vogon.data.VogonUser;
 
 /**
@@ -40,9 +49,29 @@ public class TransactionFilterSpecification implements Specification<FinanceTran
 	 */
 	private Date filterDate;
 	/**
-	 * The tags filter
+	 * The tags filter (tag IDs)
 	 */
-	private Set<String> filterTags;
+	private Set<Long> filterTagIds;
+	/**
+	 * The earliest date filter (inclusive)
+	 */
+	private Date filterDateFrom;
+	/**
+	 * The latest date filter (inclusive)
+	 */
+	private Date filterDateTo;
+	/**
+	 * The minimum component amount filter (inclusive)
+	 */
+	private Double filterMinAmount;
+	/**
+	 * The maximum component amount filter (inclusive)
+	 */
+	private Double filterMaxAmount;
+	/**
+	 * The component accounts filter (account IDs)
+	 */
+	private Set<Long> filterAccountIds;
 
 	/**
 	 * Constructs a default TransactionFilterSpecification for a user
@@ -63,22 +92,69 @@ public class TransactionFilterSpecification implements Specification<FinanceTran
 	 */
 	@Override
 	public Predicate toPredicate(Root<FinanceTransaction> root, CriteriaQuery<?> cq, CriteriaBuilder cb) {
-		cq.distinct(true);
 		Predicate ownerPredicate = cb.equal(root.get(FinanceTransaction_.owner), owner);
 		Predicate descriptionPredicate = filterDescription != null
 				? cb.like(cb.lower(root.get(FinanceTransaction_.description)), filterDescription.toLowerCase())
 				: cb.conjunction();
 		Predicate tagsPredicate = cb.conjunction();
-		if (filterTags != null && !filterTags.isEmpty()) {
-			Set<String> filterTagsLowercase = new HashSet<>();
-			for (String tag : filterTags)
-				filterTagsLowercase.add(tag.toLowerCase());
-			tagsPredicate = cb.lower(root.join(FinanceTransaction_.tags)).in(cb.literal(filterTagsLowercase));
+		if (filterTagIds != null && !filterTagIds.isEmpty()) {
+			//Use a subquery so that the tags join doesn't multiply the results
+			Subquery<Long> tagsSubquery = cq.subquery(Long.class);
+			Root<FinanceTransaction> taggedTransaction = tagsSubquery.from(FinanceTransaction.class);
+			Join<FinanceTransaction, Tag> tagsJoin = taggedTransaction.join(FinanceTransaction_.tags);
+			tagsSubquery.select(taggedTransaction.get(FinanceTransaction_.id));
+			tagsSubquery.where(cb.equal(taggedTransaction, root), tagsJoin.get(Tag_.id).in(filterTagIds));
+			tagsPredicate = cb.exists(tagsSubquery);
+		} else if (filterTagIds != null) {
+			tagsPredicate = cb.disjunction();
 		}
 		Predicate datePredicate = filterDate != null
 				? cb.equal(root.get(FinanceTransaction_.transactionDate), new java.sql.Date(filterDate.getTime()))
 				: cb.conjunction();
-		return cb.and(ownerPredicate, descriptionPredicate, datePredicate, tagsPredicate);
+		Predicate dateFromPredicate = filterDateFrom != null
+				? cb.greaterThanOrEqualTo(root.get(FinanceTransaction_.transactionDate), new java.sql.Date(filterDateFrom.getTime()))
+				: cb.conjunction();
+		Predicate dateToPredicate = filterDateTo != null
+				? cb.lessThanOrEqualTo(root.get(FinanceTransaction_.transactionDate), new java.sql.Date(filterDateTo.getTime()))
+				: cb.conjunction();
+		Predicate componentsPredicate = cb.conjunction();
+		if (filterAccountIds != null || filterMinAmount != null || filterMaxAmount != null) {
+			//Use a subquery so that the components join doesn't multiply the results; all conditions should match the same component
+			Subquery<Long> componentsSubquery = cq.subquery(Long.class);
+			Root<TransactionComponent> component = componentsSubquery.from(TransactionComponent.class);
+			List<Predicate> componentPredicates = new ArrayList<>();
+			componentPredicates.add(cb.equal(component.get(TransactionComponent_.transaction), root));
+			if (filterAccountIds != null)
+				componentPredicates.add(!filterAccountIds.isEmpty()
+						? component.get(TransactionComponent_.account).get(FinanceAccount_.id).in(filterAccountIds)
+						: cb.disjunction());
+			if (filterMinAmount != null)
+				componentPredicates.add(cb.greaterThanOrEqualTo(component.get(TransactionComponent_.amount), Math.round(filterMinAmount * Constants.RAW_AMOUNT_MULTIPLIER)));
+			if (filterMaxAmount != null)
+				componentPredicates.add(cb.lessThanOrEqualTo(component.get(TransactionComponent_.amount), Math.round(filterMaxAmount * Constants.RAW_AMOUNT_MULTIPLIER)));
+			componentsSubquery.select(component.get(TransactionComponent_.id));
+			componentsSubquery.where(componentPredicates.toArray(new Predicate[componentPredicates.size()]));
+			componentsPredicate = cb.exists(componentsSubquery);
+		}
+		return cb.and(ownerPredicate, descriptionPredicate, datePredicate, dateFromPredicate, dateToPredicate, tagsPredicate, componentsPredicate);
+	}
+
+	/**
+	 * Converts a date received from the client into a local date (OpenShift
+	 * and other non-UTC servers workaround)
+	 *
+	 * @param date the date in UTC
+	 * @return the same date in the local timezone, or null if date is null
+	 */
+	private static Date toLocalDate(Date date) {
+		if (date == null)
+			return null;
+		Calendar calendar = new GregorianCalendar(TimeZone.getTimeZone("UTC")); //NOI18N
+		calendar.setTime(date);
+		Calendar newCalendar = new GregorianCalendar();
+		newCalendar.set(calendar.get(Calendar.YEAR), calendar.get(Calendar.MONTH), calendar.get(Calendar.DATE), 0, 0, 0);
+		newCalendar.set(Calendar.MILLISECOND, 0);
+		return newCalendar.getTime();
 	}
 
 	/*
@@ -126,33 +202,128 @@ public class TransactionFilterSpecification implements Specification<FinanceTran
 	 * @param filterDate the date to be filtered
 	 */
 	public void setFilterDate(Date filterDate) {
-		//Convert to local time (OpenShift and other non-UTC servers workaround)
-		if (filterDate != null) {
-			Calendar calendar = new GregorianCalendar(TimeZone.getTimeZone("UTC")); //NOI18N
-			calendar.setTime(filterDate);
-			Calendar newCalendar = new GregorianCalendar();
-			newCalendar.set(calendar.get(Calendar.YEAR), calendar.get(Calendar.MONTH), calendar.get(Calendar.DATE), 0, 0, 0);
-			newCalendar.set(Calendar.MILLISECOND, 0);
-			filterDate = newCalendar.getTime();
-		}
-		this.filterDate = filterDate;
+		this.filterDate = toLocalDate(filterDate);
+	}
+
+	/**
+	 * Returns the IDs of tags to filter
+	 *
+	 * @return the IDs of tags to filter, or null if transactions are not
+	 * filtered by tags
+	 */
+	public Set<Long> getFilterTagIds() {
+		return filterTagIds;
+	}
+
+	/**
+	 * Sets the IDs of tags to filter; tag names can be converted into IDs with
+	 * {@link org.zlogic.vogon.data.TagResolver}
+	 *
+	 * @param filterTagIds the IDs of tags to filter (an empty set matches no
+	 * transactions), or null to disable filtering by tags
+	 */
+	public void setFilterTagIds(Set<Long> filterTagIds) {
+		this.filterTagIds = filterTagIds;
+	}
+
+	/**
+	 * Returns the earliest date filter
+	 *
+	 * @return the earliest date filter (inclusive)
+	 */
+	public Date getFilterDateFrom() {
+		return filterDateFrom;
+	}
+
+	/**
+	 * Sets the earliest date filter
+	 *
+	 * @param filterDateFrom the earliest date to be filtered (inclusive), or
+	 * null to disable this filter
+	 */
+	public void setFilterDateFrom(Date filterDateFrom) {
+		this.filterDateFrom = toLocalDate(filterDateFrom);
+	}
+
+	/**
+	 * Returns the latest date filter
+	 *
+	 * @return the latest date filter (inclusive)
+	 */
+	public Date getFilterDateTo() {
+		return filterDateTo;
+	}
+
+	/**
+	 * Sets the latest date filter
+	 *
+	 * @param filterDateTo the latest date to be filtered (inclusive), or null
+	 * to disable this filter
+	 */
+	public void setFilterDateTo(Date filterDateTo) {
+		this.filterDateTo = toLocalDate(filterDateTo);
+	}
+
+	/**
+	 * Returns the minimum component amount filter
+	 *
+	 * @return the minimum component amount filter (inclusive)
+	 */
+	public Double getFilterMinAmount() {
+		return filterMinAmount;
+	}
+
+	/**
+	 * Sets the minimum component amount filter; only transactions with a
+	 * component amount (negative for expenses) not less than this amount are
+	 * matched
+	 *
+	 * @param filterMinAmount the minimum component amount (inclusive), or null
+	 * to disable this filter
+	 */
+	public void setFilterMinAmount(Double filterMinAmount) {
+		this.filterMinAmount = filterMinAmount;
+	}
+
+	/**
+	 * Returns the maximum component amount filter
+	 *
+	 * @return the maximum component amount filter (inclusive)
+	 */
+	public Double getFilterMaxAmount() {
+		return filterMaxAmount;
+	}
+
+	/**
+	 * Sets the maximum component amount filter; only transactions with a
+	 * component amount (negative for expenses) not greater than this amount
+	 * are matched
+	 *
+	 * @param filterMaxAmount the maximum component amount (inclusive), or null
+	 * to disable this filter
+	 */
+	public void setFilterMaxAmount(Double filterMaxAmount) {
+		this.filterMaxAmount = filterMaxAmount;
 	}
 
 	/**
-	 * Returns the tags to filter
+	 * Returns the IDs of component accounts to filter
 	 *
-	 * @return the tags to filter
+	 * @return the IDs of component accounts to filter, or null if
+	 * transactions are not filtered by accounts
 	 */
-	public Set<String> getFilterTags() {
-		return filterTags;
+	public Set<Long> getFilterAccountIds() {
+		return filterAccountIds;
 	}
 
 	/**
-	 * Sets the tags to filter
+	 * Sets the IDs of component accounts to filter; if the amount range is
+	 * also filtered, the same component should match both filters
 	 *
-	 * @param filterTags the tags to filter
+	 * @param filterAccountIds the IDs of accounts to filter (an empty set
+	 * matches no transactions), or null to disable filtering by accounts
 	 */
-	public void setFilterTags(Set<String> filterTags) {
-		this.filterTags = filterTags;
+	public void setFilterAccountIds(Set<Long> filterAccountIds) {
+		this.filterAccountIds = filterAccountIds;
 	}
 }
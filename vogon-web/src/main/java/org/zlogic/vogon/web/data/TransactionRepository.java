@@ -6,6 +6,7 @@
 package org.zlogic.vogon.web.data;
 
 import java.util.Collection;
+import java.util.List;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
@@ -32,6 +33,24 @@ public interface TransactionRepository extends JpaRepository<FinanceTransaction,
 	 */
 	public FinanceTransaction findByOwnerAndId(VogonUser owner, Long id);
 
+	/**
+	 * Finds transactions by their VogonUser owner and IDs
+	 *
+	 * @param owner the VogonUser owner
+	 * @param ids the transaction IDs
+	 * @return transactions for owner and ids
+	 */
+	public List<FinanceTransaction> findByOwnerAndIdIn(VogonUser owner, Collection<Long> ids);
+
+	/**
+	 * Finds transactions by their VogonUser owner and component IDs
+	 *
+	 * @param owner the VogonUser owner
+	 * @param componentIds the transaction component IDs
+	 * @return transactions for owner containing any of componentIds
+	 */
+	public List<FinanceTransaction> findDistinctByOwnerAndComponentsIdIn(VogonUser owner, Collection<Long> componentIds);
+
 	/**
 	 * Finds transactions by their VogonUser owner
 	 *
@@ -57,4 +76,12 @@ public interface TransactionRepository extends JpaRepository<FinanceTransaction,
 	 * @return transactions for owner
 	 */
 	public Collection<FinanceTransaction> findByOwner(VogonUser owner);
+
+	/**
+	 * Returns the number of transactions for a VogonUser owner
+	 *
+	 * @param owner the VogonUser owner
+	 * @return the number of transactions for owner
+	 */
+	public long countByOwner(VogonUser owner);
 }
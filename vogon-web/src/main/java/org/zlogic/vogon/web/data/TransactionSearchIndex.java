@@ -0,0 +1,301 @@
+/*
+ * Vogon personal finance/expense analyzer.
+ * Licensed under Apache license: http://www.apache.org/licenses/LICENSE-2.0
+ * Author: Dmitry Zolotukhin <zlogic@gmail.com>
+ */
+package org.zlogic.vogon.web.data;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Root;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.zlogic.vogon.data.FinanceAccount;
+import org.zlogic.vogon.data.FinanceTransaction;
+import org.zlogic.vogon.data.FinanceTransaction_;
+import org.zlogic.vogon.data.VogonUser;
+import org.zlogic.vogon.web.configuration.VogonConfiguration;
+
+/**
+ * Keeps an inverted index of every user's transaction descriptions in memory.
+ * Descriptions are split into lowercase words; searching looks up each
+ * query word as a prefix in a sorted word dictionary instead of scanning all
+ * descriptions. A user's index is built with a single query on first access
+ * and then updated incrementally when transactions are changed (as reported
+ * by the {@link DataChangeNotifier}). The index is rebuilt if the user's data
+ * version shows that it missed a change. Indexes are only kept for a limited
+ * number of recently active users.
+ *
+ * @author Dmitry Zolotukhin [zlogic@gmail.com]
+ */
+@Service
+public class TransactionSearchIndex implements DataChangeListener {
+
+	/**
+	 * Word separator pattern
+	 */
+	private static final String WORD_SEPARATOR = "[^\\p{L}\\p{N}]+"; //NOI18N
+	/**
+	 * Score for a query word matching a whole word
+	 */
+	private static final int EXACT_MATCH_SCORE = 2;
+	/**
+	 * Score for a query word matching the beginning of a word
+	 */
+	private static final int PREFIX_MATCH_SCORE = 1;
+
+	/**
+	 * The EntityManager instance
+	 */
+	@PersistenceContext
+	private EntityManager em;
+	/**
+	 * Loaded indexes for every user ID
+	 */
+	private final UserCache<UserIndex> userIndexes;
+	/**
+	 * The data change notifier
+	 */
+	@Autowired
+	private DataChangeNotifier dataChangeNotifier;
+
+	/**
+	 * Creates the transaction search index
+	 *
+	 * @param configuration the configuration handler
+	 * @param meterRegistry the registry for cache metrics
+	 */
+	@Autowired
+	public TransactionSearchIndex(VogonConfiguration configuration, MeterRegistry meterRegistry) {
+		userIndexes = new UserCache<>("transactionSearch", configuration::getUserCacheSize, meterRegistry); //NOI18N
+	}
+
+	/**
+	 * Searches the user's transactions. Every word in the query should match
+	 * the beginning of a word in the description; transactions where more
+	 * words match exactly are returned first, then newer transactions.
+	 *
+	 * @param user the user
+	 * @param query the search query
+	 * @param limit the maximum number of returned transactions
+	 * @return IDs of the matching transactions, best matches first
+	 */
+	public List<Long> search(VogonUser user, String query, int limit) {
+		Set<String> words = tokenize(query);
+		if (words.isEmpty() || limit <= 0)
+			return Collections.emptyList();
+		return getUserIndex(user).search(words, limit);
+	}
+
+	/**
+	 * Discards the user's index, so that it will be rebuilt on next access
+	 *
+	 * @param user the user whose data was changed
+	 */
+	@Override
+	public void dataChanged(VogonUser user) {
+		userIndexes.remove(user.getId());
+	}
+
+	@Override
+	public void transactionSaved(VogonUser user, long committedVersion, FinanceTransaction transaction, boolean created, Collection<String> previousTags, Collection<FinanceAccount> accounts) {
+		applyUpdate(user, committedVersion, transaction.getId(), tokenize(transaction.getDescription()));
+	}
+
+	@Override
+	public void transactionDeleted(VogonUser user, long committedVersion, FinanceTransaction transaction, Collection<FinanceAccount> accounts) {
+		applyUpdate(user, committedVersion, transaction.getId(), Collections.emptySet());
+	}
+
+	/**
+	 * Splits text into unique lowercase words
+	 *
+	 * @param text the text
+	 * @return the words
+	 */
+	private static Set<String> tokenize(String text) {
+		Set<String> words = new LinkedHashSet<>();
+		if (text == null)
+			return words;
+		for (String word : text.toLowerCase(Locale.ROOT).split(WORD_SEPARATOR))
+			if (!word.isEmpty())
+				words.add(word);
+		return words;
+	}
+
+	/**
+	 * Applies a committed update to the loaded index. If the index is missing
+	 * another change, it's discarded instead.
+	 *
+	 * @param user the transaction owner
+	 * @param committedVersion the data version committed by the write
+	 * @param transactionId the transaction ID
+	 * @param words the transaction's new words (empty for deleted
+	 * transactions)
+	 */
+	private void applyUpdate(VogonUser user, long committedVersion, long transactionId, Set<String> words) {
+		UserIndex index = userIndexes.get(user.getId());
+		if (index == null)
+			return;
+		if (!index.update(committedVersion, transactionId, words))
+			userIndexes.remove(user.getId(), index);
+	}
+
+	/**
+	 * Returns the user's index, building it if it's not built for the current
+	 * data version. The index is only kept if the user's data was not changed
+	 * while it was being built.
+	 *
+	 * @param user the user
+	 * @return the user's index
+	 */
+	private UserIndex getUserIndex(VogonUser user) {
+		long loadedVersion = dataChangeNotifier.getVersion(user);
+		UserIndex index = userIndexes.get(user.getId(), cachedIndex -> cachedIndex.getVersion() == loadedVersion ? cachedIndex : null);
+		if (index != null)
+			return index;
+		index = new UserIndex(loadedVersion);
+		CriteriaBuilder criteriaBuilder = em.getCriteriaBuilder();
+		CriteriaQuery<Object[]> descriptionsQuery = criteriaBuilder.createQuery(Object[].class);
+		Root<FinanceTransaction> tr = descriptionsQuery.from(FinanceTransaction.class);
+		descriptionsQuery.multiselect(tr.get(FinanceTransaction_.id), tr.get(FinanceTransaction_.description));
+		descriptionsQuery.where(criteriaBuilder.equal(tr.get(FinanceTransaction_.owner), user));
+		for (Object[] row : em.createQuery(descriptionsQuery).getResultList())
+			index.put((Long) row[0], tokenize((String) row[1]));
+		if (dataChangeNotifier.getVersion(user) == loadedVersion)
+			userIndexes.put(user.getId(), index, (existingIndex, newIndex) -> existingIndex.getVersion() >= newIndex.getVersion() ? existingIndex : newIndex);
+		return index;
+	}
+
+	/**
+	 * A user's inverted index, with words sorted so that words with a common
+	 * prefix are stored next to each other
+	 */
+	private static class UserIndex {
+
+		/**
+		 * The data version of the index
+		 */
+		private long version;
+		/**
+		 * IDs of transactions containing every word
+		 */
+		private final TreeMap<String, Set<Long>> postings = new TreeMap<>();
+		/**
+		 * Words of every indexed transaction
+		 */
+		private final Map<Long, Set<String>> transactionWords = new HashMap<>();
+
+		/**
+		 * Creates a UserIndex
+		 *
+		 * @param version the data version when the index was built
+		 */
+		private UserIndex(long version) {
+			this.version = version;
+		}
+
+		/**
+		 * Returns the data version of the index
+		 *
+		 * @return the data version of the index
+		 */
+		private synchronized long getVersion() {
+			return version;
+		}
+
+		/**
+		 * Replaces a transaction's words after the transaction was changed
+		 *
+		 * @param committedVersion the data version committed by the change
+		 * @param transactionId the transaction ID
+		 * @param words the transaction's words (empty to remove the
+		 * transaction from the index)
+		 * @return false if the index is missing another change and should be
+		 * rebuilt
+		 */
+		private synchronized boolean update(long committedVersion, long transactionId, Set<String> words) {
+			if (version >= committedVersion)
+				return true;
+			if (version != committedVersion - 1)
+				return false;
+			put(transactionId, words);
+			version = committedVersion;
+			return true;
+		}
+
+		/**
+		 * Returns the transactions matching all query words, best matches
+		 * first
+		 *
+		 * @param words the query words
+		 * @param limit the maximum number of returned transactions
+		 * @return IDs of the matching transactions
+		 */
+		private synchronized List<Long> search(Set<String> words, int limit) {
+			Map<Long, Integer> scores = null;
+			for (String word : words) {
+				//Best score of this word for every transaction which matched all previous words
+				Map<Long, Integer> wordScores = new HashMap<>();
+				for (Map.Entry<String, Set<Long>> posting : postings.tailMap(word, true).entrySet()) {
+					if (!posting.getKey().startsWith(word))
+						break;
+					int score = posting.getKey().length() == word.length() ? EXACT_MATCH_SCORE : PREFIX_MATCH_SCORE;
+					for (Long transactionId : posting.getValue())
+						if (scores == null || scores.containsKey(transactionId))
+							wordScores.merge(transactionId, score, Math::max);
+				}
+				if (scores != null)
+					for (Map.Entry<Long, Integer> wordScore : wordScores.entrySet())
+						wordScore.setValue(wordScore.getValue() + scores.get(wordScore.getKey()));
+				scores = wordScores;
+				if (scores.isEmpty())
+					return Collections.emptyList();
+			}
+			List<Map.Entry<Long, Integer>> matches = new ArrayList<>(scores.entrySet());
+			matches.sort(Map.Entry.<Long, Integer>comparingByValue().reversed().thenComparing(Map.Entry.<Long, Integer>comparingByKey().reversed()));
+			int count = Math.min(matches.size(), limit);
+			List<Long> transactionIds = new ArrayList<>(count);
+			for (Map.Entry<Long, Integer> match : matches.subList(0, count))
+				transactionIds.add(match.getKey());
+			return transactionIds;
+		}
+
+		/**
+		 * Replaces a transaction's words
+		 *
+		 * @param transactionId the transaction ID
+		 * @param words the transaction's words (empty to remove the
+		 * transaction from the index)
+		 */
+		private synchronized void put(long transactionId, Set<String> words) {
+			Set<String> previousWords = transactionWords.remove(transactionId);
+			if (previousWords != null)
+				for (String word : previousWords) {
+					Set<Long> transactionIds = postings.get(word);
+					transactionIds.remove(transactionId);
+					if (transactionIds.isEmpty())
+						postings.remove(word);
+				}
+			if (words.isEmpty())
+				return;
+			transactionWords.put(transactionId, words);
+			for (String word : words)
+				postings.computeIfAbsent(word, key -> new HashSet<>()).add(transactionId);
+		}
+	}
+}
@@ -0,0 +1,162 @@
+/*
+ * Vogon personal finance/expense analyzer.
+ * Licensed under Apache license: http://www.apache.org/licenses/LICENSE-2.0
+ * Author: Dmitry Zolotukhin <zlogic@gmail.com>
+ */
+package org.zlogic.vogon.web.data;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.IntSupplier;
+
+/**
+ * Keeps data loaded for every user in memory, for a limited number of users.
+ * The least recently used users' data is evicted first. Cache gets, evictions
+ * and the cache size are reported as metrics in the same way as
+ * {@link ReportCache}.
+ *
+ * @param <V> the type of the cached data
+ * @author Dmitry Zolotukhin [zlogic@gmail.com]
+ */
+class UserCache<V> {
+
+	/**
+	 * Cached data for every user ID, in LRU order
+	 */
+	private final LinkedHashMap<Long, V> values = new LinkedHashMap<>(16, 0.75f, true);
+	/**
+	 * Returns the maximum number of users whose data is cached
+	 */
+	private final IntSupplier maxSize;
+	/**
+	 * Cache hits counter
+	 */
+	private final Counter hits;
+	/**
+	 * Cache misses counter
+	 */
+	private final Counter misses;
+	/**
+	 * Cache evictions counter
+	 */
+	private final Counter evictions;
+
+	/**
+	 * Creates the cache
+	 *
+	 * @param name the cache name used in metrics
+	 * @param maxSize returns the maximum number of users whose data is cached
+	 * (0 disables the cache)
+	 * @param meterRegistry the registry for cache metrics
+	 */
+	UserCache(String name, IntSupplier maxSize, MeterRegistry meterRegistry) {
+		this.maxSize = maxSize;
+		hits = Counter.builder("cache.gets").tag("cache", name).tag("result", "hit").register(meterRegistry); //NOI18N
+		misses = Counter.builder("cache.gets").tag("cache", name).tag("result", "miss").register(meterRegistry); //NOI18N
+		evictions = Counter.builder("cache.evictions").tag("cache", name).register(meterRegistry); //NOI18N
+		meterRegistry.gauge("cache.size", Collections.singletonList(Tag.of("cache", name)), this, UserCache::size); //NOI18N
+	}
+
+	/**
+	 * Reads the user's cached data, counting a cache hit if the data is cached
+	 * and can be used, or a cache miss otherwise
+	 *
+	 * @param <R> the type of the result
+	 * @param userId the user ID
+	 * @param reader returns the result from the cached data, or null if the
+	 * cached data can't be used (e.g. it was loaded for another data version)
+	 * @return the result, or null if the user's data is not cached or can't
+	 * be used
+	 */
+	<R> R get(long userId, Function<V, R> reader) {
+		synchronized (values) {
+			V value = values.get(userId);
+			R result = value != null ? reader.apply(value) : null;
+			if (result != null) {
+				hits.increment();
+				return result;
+			}
+		}
+		misses.increment();
+		return null;
+	}
+
+	/**
+	 * Returns the user's cached data without counting a cache hit or miss,
+	 * for applying updates to the data
+	 *
+	 * @param userId the user ID
+	 * @return the cached data, or null if it's not cached
+	 */
+	V get(long userId) {
+		synchronized (values) {
+			return values.get(userId);
+		}
+	}
+
+	/**
+	 * Caches the user's data, evicting the least recently used users' data if
+	 * the cache is full
+	 *
+	 * @param userId the user ID
+	 * @param value the data to cache
+	 * @param remapping chooses the data to keep if the user's data is already
+	 * cached
+	 * @return the user's data kept in the cache (value if the cache is
+	 * disabled)
+	 */
+	V put(long userId, V value, BinaryOperator<V> remapping) {
+		int size = maxSize.getAsInt();
+		if (size <= 0)
+			return value;
+		synchronized (values) {
+			V cachedValue = values.merge(userId, value, remapping);
+			for (Iterator<V> it = values.values().iterator(); values.size() > size && it.hasNext();) {
+				it.next();
+				it.remove();
+				evictions.increment();
+			}
+			return cachedValue;
+		}
+	}
+
+	/**
+	 * Removes the user's cached data
+	 *
+	 * @param userId the user ID
+	 */
+	void remove(long userId) {
+		synchronized (values) {
+			values.remove(userId);
+		}
+	}
+
+	/**
+	 * Removes the user's cached data if it wasn't replaced
+	 *
+	 * @param userId the user ID
+	 * @param value the data to remove
+	 */
+	void remove(long userId, V value) {
+		synchronized (values) {
+			values.remove(userId, value);
+		}
+	}
+
+	/**
+	 * Returns the number of users whose data is cached
+	 *
+	 * @return the number of users whose data is cached
+	 */
+	int size() {
+		synchronized (values) {
+			return values.size();
+		}
+	}
+}
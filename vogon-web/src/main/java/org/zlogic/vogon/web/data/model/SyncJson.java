@@ -0,0 +1,104 @@
+/*
+ * Vogon personal finance/expense analyzer.
+ * Licensed under Apache license: http://www.apache.org/licenses/LICENSE-2.0
+ * Author: Dmitry Zolotukhin <zlogic@gmail.com>
+ */
+package org.zlogic.vogon.web.data.model;
+
+import java.util.List;
+import org.zlogic.vogon.data.ChangeLogEntry;
+import org.zlogic.vogon.data.FinanceAccount;
+
+/**
+ * Changes made since a sync cursor, with the current state of changed
+ * accounts and transactions
+ *
+ * @author Dmitry Zolotukhin [zlogic@gmail.com]
+ */
+public class SyncJson {
+
+	/**
+	 * The latest change of every changed entity
+	 */
+	private List<ChangeLogEntry> changes;
+	/**
+	 * The created or updated accounts
+	 */
+	private List<FinanceAccount> accounts;
+	/**
+	 * The created or updated transactions, including transactions with
+	 * created or updated components
+	 */
+	private List<FinanceTransactionJson> transactions;
+	/**
+	 * The cursor for the next sync
+	 */
+	private long cursor;
+	/**
+	 * True if there are more changes after cursor
+	 */
+	private boolean more;
+
+	/**
+	 * Creates a SyncJson
+	 *
+	 * @param changes the latest change of every changed entity
+	 * @param accounts the created or updated accounts
+	 * @param transactions the created or updated transactions
+	 * @param cursor the cursor for the next sync
+	 * @param more true if there are more changes after cursor
+	 */
+	public SyncJson(List<ChangeLogEntry> changes, List<FinanceAccount> accounts, List<FinanceTransactionJson> transactions, long cursor, boolean more) {
+		this.changes = changes;
+		this.accounts = accounts;
+		this.transactions = transactions;
+		this.cursor = cursor;
+		this.more = more;
+	}
+
+	/**
+	 * Returns the latest change of every changed entity
+	 *
+	 * @return the latest change of every changed entity
+	 */
+	public List<ChangeLogEntry> getChanges() {
+		return changes;
+	}
+
+	/**
+	 * Returns the created or updated accounts
+	 *
+	 * @return the created or updated accounts
+	 */
+	public List<FinanceAccount> getAccounts() {
+		return accounts;
+	}
+
+	/**
+	 * Returns the created or updated transactions, including transactions with
+	 * created or updated components
+	 *
+	 * @return the created or updated transactions
+	 */
+	public List<FinanceTransactionJson> getTransactions() {
+		return transactions;
+	}
+
+	/**
+	 * Returns the cursor for the next sync
+	 *
+	 * @return the cursor for the next sync
+	 */
+	public long getCursor() {
+		return cursor;
+	}
+
+	/**
+	 * Returns true if there are more changes after cursor
+	 *
+	 * @return true if there are more changes after cursor
+	 */
+	public boolean isMore() {
+		return more;
+	}
+}
@@ -0,0 +1,100 @@
+/*
+ * Vogon personal finance/expense analyzer.
+ * Licensed under Apache license: http://www.apache.org/licenses/LICENSE-2.0
+ * Author: Dmitry Zolotukhin <zlogic@gmail.com>
+ */
+package org.zlogic.vogon.web.data.model;
+
+/**
+ * A single operation of a transactions batch
+ *
+ * @author Dmitry Zolotukhin [zlogic@gmail.com]
+ */
+public class TransactionOperationJson {
+
+	/**
+	 * Operation type
+	 */
+	public enum Operation {
+
+		/**
+		 * Create a new transaction (the transaction ID is ignored)
+		 */
+		CREATE,
+		/**
+		 * Update an existing transaction
+		 */
+		UPDATE,
+		/**
+		 * Delete an existing transaction
+		 */
+		DELETE
+	};
+
+	/**
+	 * The operation type
+	 */
+	private Operation operation;
+	/**
+	 * The created or updated transaction
+	 */
+	private FinanceTransactionJson transaction;
+	/**
+	 * The deleted transaction ID
+	 */
+	private Long id;
+
+	/**
+	 * Returns the operation type
+	 *
+	 * @return the operation type
+	 */
+	public Operation getOperation() {
+		return operation;
+	}
+
+	/**
+	 * Sets the operation type
+	 *
+	 * @param operation the operation type
+	 */
+	public void setOperation(Operation operation) {
+		this.operation = operation;
+	}
+
+	/**
+	 * Returns the created or updated transaction
+	 *
+	 * @return the created or updated transaction
+	 */
+	public FinanceTransactionJson getTransaction() {
+		return transaction;
+	}
+
+	/**
+	 * Sets the created or updated transaction
+	 *
+	 * @param transaction the created or updated transaction
+	 */
+	public void setTransaction(FinanceTransactionJson transaction) {
+		this.transaction = transaction;
+	}
+
+	/**
+	 * Returns the deleted transaction ID
+	 *
+	 * @return the deleted transaction ID
+	 */
+	public Long getId() {
+		return id;
+	}
+
+	/**
+	 * Sets the deleted transaction ID
+	 *
+	 * @param id the deleted transaction ID
+	 */
+	public void setId(Long id) {
+		this.id = id;
+	}
+}
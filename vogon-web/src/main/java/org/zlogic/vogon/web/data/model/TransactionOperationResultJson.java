@@ -0,0 +1,57 @@
+/*
+ * Vogon personal finance/expense analyzer.
+ * Licensed under Apache license: http://www.apache.org/licenses/LICENSE-2.0
+ * Author: Dmitry Zolotukhin <zlogic@gmail.com>
+ */
+package org.zlogic.vogon.web.data.model;
+
+import org.zlogic.vogon.web.data.model.TransactionOperationJson.Operation;
+
+/**
+ * The result of a single operation of a transactions batch
+ *
+ * @author Dmitry Zolotukhin [zlogic@gmail.com]
+ */
+public class TransactionOperationResultJson {
+
+	/**
+	 * The operation type
+	 */
+	private Operation operation;
+	/**
+	 * The transaction from database after the operation (or before deletion)
+	 */
+	private FinanceTransactionJson transaction;
+
+	/**
+	 * Creates a TransactionOperationResultJson
+	 *
+	 * @param operation the operation type
+	 * @param transaction the transaction from database after the operation
+	 * (or before deletion)
+	 */
+	public TransactionOperationResultJson(Operation operation, FinanceTransactionJson transaction) {
+		this.operation = operation;
+		this.transaction = transaction;
+	}
+
+	/**
+	 * Returns the operation type
+	 *
+	 * @return the operation type
+	 */
+	public Operation getOperation() {
+		return operation;
+	}
+
+	/**
+	 * Returns the transaction from database after the operation (or before
+	 * deletion)
+	 *
+	 * @return the transaction from database after the operation (or before
+	 * deletion)
+	 */
+	public FinanceTransactionJson getTransaction() {
+		return transaction;
+	}
+}
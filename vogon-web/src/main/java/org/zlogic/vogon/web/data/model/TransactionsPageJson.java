@@ -0,0 +1,56 @@
+/*
+ * Vogon personal finance/expense analyzer.
+ * Licensed under Apache license: http://www.apache.org/licenses/LICENSE-2.0
+ * Author: Dmitry Zolotukhin <zlogic@gmail.com>
+ */
+package org.zlogic.vogon.web.data.model;
+
+import java.util.List;
+
+/**
+ * A page of transactions with the cursor pointing to the next page
+ *
+ * @author Dmitry Zolotukhin [zlogic@gmail.com]
+ */
+public class TransactionsPageJson {
+
+	/**
+	 * The transactions
+	 */
+	private List<FinanceTransactionJson> transactions;
+	/**
+	 * The cursor token for the next page
+	 */
+	private String nextCursor;
+
+	/**
+	 * Creates a TransactionsPageJson
+	 *
+	 * @param transactions the transactions
+	 * @param nextCursor the cursor token for the next page, or null if this is
+	 * the last page
+	 */
+	public TransactionsPageJson(List<FinanceTransactionJson> transactions, String nextCursor) {
+		this.transactions = transactions;
+		this.nextCursor = nextCursor;
+	}
+
+	/**
+	 * Returns the transactions
+	 *
+	 * @return the transactions
+	 */
+	public List<FinanceTransactionJson> getTransactions() {
+		return transactions;
+	}
+
+	/**
+	 * Returns the cursor token for the next page
+	 *
+	 * @return the cursor token for the next page, or null if this is the last
+	 * page
+	 */
+	public String getNextCursor() {
+		return nextCursor;
+	}
+}
@@ -92,8 +92,8 @@
 				<div class="row">
 					<div class="col-md-6">
 						<label class="form-control-static"><fmt:message key="REPORT_BY_TRANSACTIONS"/></label>
-						<div class="pre-scrollable">
-							<div class="container-fluid">
+						<div class="pre-scrollable" id="reportTransactions">
+							<div class="container-fluid" infinite-scroll="nextTransactionsPage()" infinite-scroll-container="'#reportTransactions'" infinite-scroll-disabled="loadingTransactions || lastTransactionsPage">
 								<div class="row">
 									<div class="col-md-6">
 										<label><fmt:message key="TRANSACTION"/></label>
@@ -155,4 +155,4 @@
 			</div>
 		</div>
 	</div>
-</form>
\ No newline at end of file
+</form>
\ No newline at end of file
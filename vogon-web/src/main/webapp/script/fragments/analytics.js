@@ -18,6 +18,10 @@ app.controller("AnalyticsController", function ($scope, AccountsService, Transac
 		expense: true
 	};
 	this.report = undefined;
+	this.reportConfiguration = undefined;
+	this.transactionsPage = 0;
+	$scope.loadingTransactions = false;
+	$scope.lastTransactionsPage = true;
 	$scope.tagsChart = {
 		data: [],
 		options: {
@@ -115,7 +119,8 @@ app.controller("AnalyticsController", function ($scope, AccountsService, Transac
 			latestDate: dateToJson($scope.dateRange.end),
 			enabledTransferTransactions: $scope.transactionTypeEnabled.transfer,
 			enabledIncomeTransactions: $scope.transactionTypeEnabled.income,
-			enabledExpenseTransactions: $scope.transactionTypeEnabled.expense
+			enabledExpenseTransactions: $scope.transactionTypeEnabled.expense,
+			maxPoints: window.screen.width
 		};
 		reportConfiguration.selectedTags = [];
 		for (var tag in $scope.tags)
@@ -127,12 +132,37 @@ app.controller("AnalyticsController", function ($scope, AccountsService, Transac
 				reportConfiguration.selectedAccounts.push({id: accountId});
 			}
 		}
+		that.reportConfiguration = reportConfiguration;
+		$scope.lastTransactionsPage = true;
 		HTTPService.post("service/analytics", reportConfiguration).then(function (data) {
 			that.report = data.data;
+			that.transactionsPage = 1;
+			$scope.lastTransactionsPage = false;
 			updateCurrencies();
 			$scope.reportCompleted = true;
 		});
 	};
+	$scope.nextTransactionsPage = function () {
+		if ($scope.loadingTransactions || $scope.lastTransactionsPage || that.report === undefined)
+			return;
+		$scope.loadingTransactions = true;
+		var report = that.report;
+		HTTPService.post("service/analytics/transactions?" + encodeForm({page: that.transactionsPage}), that.reportConfiguration).then(function (data) {
+			$scope.loadingTransactions = false;
+			if (report !== that.report)
+				return;
+			var found = false;
+			for (var currency in data.data)
+				if (report[currency] !== undefined && data.data[currency].length > 0) {
+					Array.prototype.push.apply(report[currency].transactions, data.data[currency]);
+					found = true;
+				}
+			$scope.lastTransactionsPage = !found;
+			that.transactionsPage++;
+		}, function () {
+			$scope.loadingTransactions = false;
+		});
+	};
 	var updateCurrencies = function () {
 		$scope.currencies = Object.keys(that.report);
 		$scope.report = $scope.currencies.length > 0 ? {selectedCurrency: $scope.currencies[0]} : {};
@@ -192,4 +222,4 @@ app.controller("AnalyticsController", function ($scope, AccountsService, Transac
 	}, function () {
 		$scope.$applyAsync($scope.updateTags);
 	});
-});
\ No newline at end of file
+});
\ No newline at end of file
@@ -41,8 +41,13 @@ app.service("TagsService", function ($q, AuthorizationService, HTTPService) {
 				});
 	};
 	this.autocompleteQuery = function (query) {
-		var deferred = $q.defer();
-		deferred.resolve(convertTagsForAutocomplete(that.tags, query));
-		return deferred.promise;
+		if (!AuthorizationService.authorized || query === undefined) {
+			var deferred = $q.defer();
+			deferred.resolve(convertTagsForAutocomplete(that.tags, query));
+			return deferred.promise;
+		}
+		return HTTPService.get("service/analytics/tags?prefix=" + encodeURIComponent(query), undefined, HTTPService.buildRequestParams(false)).then(function (data) {
+			return convertTagsForAutocomplete(data.data);
+		});
 	};
 });
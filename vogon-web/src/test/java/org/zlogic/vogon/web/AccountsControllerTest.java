@@ -218,6 +218,32 @@ public class AccountsControllerTest {
 		assertEquals(1, account3.getVersion());
 	}
 
+	/**
+	 * Test that the transactions count is updated after an account is deleted
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testTransactionsCountAfterDeleteAccounts() throws Exception {
+		prepopulate.prepopulate();
+
+		HttpHeaders headers = restClient.authenticate();
+
+		HttpEntity<String> entity = new HttpEntity<>(headers);
+		ResponseEntity<String> responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/transactions/count?accountIds=4", HttpMethod.GET, entity, String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		assertEquals("2", responseEntity.getBody());
+
+		entity = new HttpEntity<>("[]", headers);
+		responseEntity = restClient.getRestTemplate().postForEntity("https://localhost:8443/service/accounts", entity, String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+
+		entity = new HttpEntity<>(headers);
+		responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/transactions/count?accountIds=4", HttpMethod.GET, entity, String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		assertEquals("0", responseEntity.getBody());
+	}
+
 	/**
 	 * Test that an authenticated user cannot update their accounts if the
 	 * version numbers mismatch
@@ -5,14 +5,19 @@
  */
 package org.zlogic.vogon.web;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.Arrays;
+import org.json.JSONObject;
 import org.junit.After;
 import static org.junit.Assert.*;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import static org.mockito.BDDMockito.given;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.mock.mockito.SpyBean;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
@@ -22,6 +27,7 @@ import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.util.JsonExpectationsHelper;
 import org.springframework.web.client.HttpStatusCodeException;
+import org.zlogic.vogon.web.configuration.VogonConfiguration;
 
 /**
  * Tests for Analytics Controller
@@ -42,6 +48,12 @@ public class AnalyticsControllerTest {
 	@Autowired
 	private Prepopupate prepopulate;
 
+	@SpyBean
+	private VogonConfiguration vogonConfiguration;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
 	@Before
 	public void before() {
 		prepopulate.clear();
@@ -90,6 +102,99 @@ public class AnalyticsControllerTest {
 		jsonExpectationhelper.assertJsonEqual("[\"\"]", responseEntity.getBody());
 	}
 
+	/**
+	 * Test that an authenticated user is allowed to get their tags starting
+	 * with a prefix, most used tags first
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testGetTagsPrefix() throws Exception {
+		prepopulate.prepopulate();
+
+		HttpHeaders headers = restClient.authenticate();
+
+		HttpEntity<String> entity = new HttpEntity<>(headers);
+		ResponseEntity<String> responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/analytics/tags?prefix=", HttpMethod.GET, entity, String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		jsonExpectationhelper.assertJsonEqual("[\"hello\",\"magic\",\"world\"]", responseEntity.getBody(), true);
+
+		responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/analytics/tags?prefix=HE", HttpMethod.GET, entity, String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		jsonExpectationhelper.assertJsonEqual("[\"hello\"]", responseEntity.getBody(), true);
+
+		responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/analytics/tags?prefix=&limit=2", HttpMethod.GET, entity, String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		jsonExpectationhelper.assertJsonEqual("[\"hello\",\"magic\"]", responseEntity.getBody(), true);
+
+		responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/analytics/tags?prefix=x", HttpMethod.GET, entity, String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		jsonExpectationhelper.assertJsonEqual("[]", responseEntity.getBody(), true);
+	}
+
+	/**
+	 * Test that the list of tags is updated when transactions are created or
+	 * deleted
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testGetTagsAfterUpdate() throws Exception {
+		prepopulate.prepopulate();
+
+		HttpHeaders headers = restClient.authenticate();
+
+		HttpEntity<String> entity = new HttpEntity<>(headers);
+		ResponseEntity<String> responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/analytics/tags", HttpMethod.GET, entity, String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		jsonExpectationhelper.assertJsonEqual("[\"\",\"hello\",\"world\",\"magic\"]", responseEntity.getBody());
+
+		String createRequest = "{\"tags\":[\"hello\",\"super\"],\"type\":\"EXPENSEINCOME\",\"description\":\"test transaction 4\",\"date\":\"2016-02-07\",\"components\":[{\"accountId\":3,\"amount\":100}]}";
+		responseEntity = restClient.getRestTemplate().postForEntity("https://localhost:8443/service/transactions", new HttpEntity<>(createRequest, headers), String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		long createdTransactionId = new JSONObject(responseEntity.getBody()).getLong("id");
+
+		responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/analytics/tags", HttpMethod.GET, entity, String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		jsonExpectationhelper.assertJsonEqual("[\"\",\"hello\",\"world\",\"magic\",\"super\"]", responseEntity.getBody());
+		responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/analytics/tags?prefix=", HttpMethod.GET, entity, String.class);
+		jsonExpectationhelper.assertJsonEqual("[\"hello\",\"magic\",\"super\",\"world\"]", responseEntity.getBody(), true);
+
+		responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/transactions/transaction/" + createdTransactionId, HttpMethod.DELETE, entity, String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+
+		responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/analytics/tags", HttpMethod.GET, entity, String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		jsonExpectationhelper.assertJsonEqual("[\"\",\"hello\",\"world\",\"magic\"]", responseEntity.getBody());
+	}
+
+	/**
+	 * Test that tags are only kept in memory for a limited number of users
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testGetTagsCacheEviction() throws Exception {
+		prepopulate.prepopulate();
+		given(vogonConfiguration.getUserCacheSize()).willReturn(1);
+
+		HttpEntity<String> user01Entity = new HttpEntity<>(restClient.authenticate());
+		HttpEntity<String> user02Entity = new HttpEntity<>(restClient.authenticate("user02", "mypassword2"));
+		for (HttpEntity<String> entity : Arrays.asList(user01Entity, user01Entity, user02Entity, user01Entity)) {
+			ResponseEntity<String> responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/analytics/tags", HttpMethod.GET, entity, String.class);
+			assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+			if (entity == user01Entity)
+				jsonExpectationhelper.assertJsonEqual("[\"\",\"hello\",\"world\",\"magic\"]", responseEntity.getBody());
+			else
+				jsonExpectationhelper.assertJsonEqual("[\"\"]", responseEntity.getBody());
+		}
+
+		assertEquals(1, meterRegistry.get("cache.gets").tag("cache", "tags").tag("result", "hit").counter().count(), 0);
+		assertEquals(3, meterRegistry.get("cache.gets").tag("cache", "tags").tag("result", "miss").counter().count(), 0);
+		assertEquals(2, meterRegistry.get("cache.evictions").tag("cache", "tags").counter().count(), 0);
+		assertEquals(1, meterRegistry.get("cache.size").tag("cache", "tags").gauge().value(), 0);
+	}
+
 	/**
 	 * Test that an authenticated user is allowed to get analytics data for all
 	 * of their transactions
@@ -120,6 +225,265 @@ public class AnalyticsControllerTest {
 				+ "}", responseEntity.getBody(), true);
 	}
 
+	/**
+	 * Test that an authenticated user is allowed to get analytics data for all
+	 * of their transactions, with reports for every currency built in parallel
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testGetAnalyticsParallel() throws Exception {
+		prepopulate.prepopulateExtra();
+		given(vogonConfiguration.isParallelReports()).willReturn(true);
+
+		HttpHeaders headers = restClient.authenticate();
+
+		String request = "{\"earliestDate\":\"2010-01-01\",\"latestDate\":\"2020-01-01\",\"enabledTransferTransactions\":true,\"enabledIncomeTransactions\":true,\"enabledExpenseTransactions\":true,\"selectedTags\":[\"\",\"hello\",\"world\",\"magic\"],\"selectedAccounts\":[{\"id\":3},{\"id\":4}]}";
+		HttpEntity<String> entity = new HttpEntity<>(request, headers);
+		ResponseEntity<String> responseEntity = restClient.getRestTemplate().postForEntity("https://localhost:8443/service/analytics", entity, String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+
+		jsonExpectationhelper.assertJsonEqual("{"
+				+ "RUB:{"
+				+ "transactions:[{description:\"test transaction 4\",date:\"2014-06-07\",type:\"TRANSFER\",amount:144},{description:\"test transaction 1\",date:\"2014-02-17\",type:\"EXPENSEINCOME\",amount:42},{description:\"test transaction 2\",date:\"2015-01-07\",type:\"EXPENSEINCOME\",amount:2.72}],"
+				+ "tagExpenses:[{tag:\"\",amount:144},{tag:\"hello\",amount:44.72},{tag:\"world\",amount:42},{tag:\"magic\",amount:2.72}],"
+				+ "accountsBalanceGraph:{\"2014-02-17\":42,\"2014-06-07\":-102,\"2015-01-07\":-99.28}"
+				+ "},EUR:{"
+				+ "transactions:[{description:\"test transaction 1\",date:\"2014-02-17\",type:\"EXPENSEINCOME\",amount:160},{description:\"test transaction 4\",date:\"2014-06-07\",type:\"TRANSFER\",amount:144},{description:\"test transaction 2\",date:\"2015-01-07\",type:\"EXPENSEINCOME\",amount:-3.14}],"
+				+ "tagExpenses:[{tag:\"world\",amount:160},{tag:\"hello\",amount:156.86},{tag:\"\",amount:144},{tag:\"magic\",amount:-3.14}],"
+				+ "accountsBalanceGraph:{\"2014-02-17\":160,\"2014-06-07\":304,\"2015-01-07\":300.86}"
+				+ "}"
+				+ "}", responseEntity.getBody(), true);
+	}
+
+	/**
+	 * Test that a repeated report request is served from the cache, and that
+	 * the cache is invalidated when a transaction is deleted
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testGetAnalyticsCached() throws Exception {
+		prepopulate.prepopulateExtra();
+
+		HttpHeaders headers = restClient.authenticate();
+
+		String request = "{\"earliestDate\":\"2010-01-01\",\"latestDate\":\"2020-01-01\",\"enabledTransferTransactions\":true,\"enabledIncomeTransactions\":true,\"enabledExpenseTransactions\":true,\"selectedTags\":[\"\",\"hello\",\"world\",\"magic\"],\"selectedAccounts\":[{\"id\":3},{\"id\":4}]}";
+		HttpEntity<String> entity = new HttpEntity<>(request, headers);
+		for (int i = 0; i < 2; i++) {
+			ResponseEntity<String> responseEntity = restClient.getRestTemplate().postForEntity("https://localhost:8443/service/analytics", entity, String.class);
+			assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+			jsonExpectationhelper.assertJsonEqual("{"
+					+ "RUB:{"
+					+ "transactions:[{description:\"test transaction 4\",date:\"2014-06-07\",type:\"TRANSFER\",amount:144},{description:\"test transaction 1\",date:\"2014-02-17\",type:\"EXPENSEINCOME\",amount:42},{description:\"test transaction 2\",date:\"2015-01-07\",type:\"EXPENSEINCOME\",amount:2.72}],"
+					+ "tagExpenses:[{tag:\"\",amount:144},{tag:\"hello\",amount:44.72},{tag:\"world\",amount:42},{tag:\"magic\",amount:2.72}],"
+					+ "accountsBalanceGraph:{\"2014-02-17\":42,\"2014-06-07\":-102,\"2015-01-07\":-99.28}"
+					+ "},EUR:{"
+					+ "transactions:[{description:\"test transaction 1\",date:\"2014-02-17\",type:\"EXPENSEINCOME\",amount:160},{description:\"test transaction 4\",date:\"2014-06-07\",type:\"TRANSFER\",amount:144},{description:\"test transaction 2\",date:\"2015-01-07\",type:\"EXPENSEINCOME\",amount:-3.14}],"
+					+ "tagExpenses:[{tag:\"world\",amount:160},{tag:\"hello\",amount:156.86},{tag:\"\",amount:144},{tag:\"magic\",amount:-3.14}],"
+					+ "accountsBalanceGraph:{\"2014-02-17\":160,\"2014-06-07\":304,\"2015-01-07\":300.86}"
+					+ "}"
+					+ "}", responseEntity.getBody(), true);
+		}
+		assertEquals(1, meterRegistry.get("cache.gets").tag("cache", "reports").tag("result", "hit").counter().count(), 0);
+		assertEquals(1, meterRegistry.get("cache.gets").tag("cache", "reports").tag("result", "miss").counter().count(), 0);
+
+		ResponseEntity<String> responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/transactions/transaction/6", HttpMethod.DELETE, new HttpEntity<>(headers), String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+
+		responseEntity = restClient.getRestTemplate().postForEntity("https://localhost:8443/service/analytics", entity, String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		jsonExpectationhelper.assertJsonEqual("{"
+					+ "RUB:{"
+					+ "transactions:[{description:\"test transaction 4\",date:\"2014-06-07\",type:\"TRANSFER\",amount:144},{description:\"test transaction 2\",date:\"2015-01-07\",type:\"EXPENSEINCOME\",amount:2.72}],"
+					+ "tagExpenses:[{tag:\"\",amount:144},{tag:\"hello\",amount:2.72},{tag:\"magic\",amount:2.72}],"
+					+ "accountsBalanceGraph:{\"2014-06-07\":-144,\"2015-01-07\":-141.28}"
+					+ "},EUR:{"
+					+ "transactions:[{description:\"test transaction 4\",date:\"2014-06-07\",type:\"TRANSFER\",amount:144},{description:\"test transaction 2\",date:\"2015-01-07\",type:\"EXPENSEINCOME\",amount:-3.14}],"
+					+ "tagExpenses:[{tag:\"\",amount:144},{tag:\"hello\",amount:-3.14},{tag:\"magic\",amount:-3.14}],"
+					+ "accountsBalanceGraph:{\"2014-06-07\":144,\"2015-01-07\":140.86}"
+					+ "}"
+					+ "}", responseEntity.getBody(), true);
+		assertEquals(1, meterRegistry.get("cache.gets").tag("cache", "reports").tag("result", "hit").counter().count(), 0);
+		assertEquals(2, meterRegistry.get("cache.gets").tag("cache", "reports").tag("result", "miss").counter().count(), 0);
+	}
+
+	/**
+	 * Test that an authenticated user is allowed to get analytics data for all
+	 * of their transactions, with a downsampled balance graph
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testGetAnalyticsDownsampled() throws Exception {
+		prepopulate.prepopulateExtra();
+
+		HttpHeaders headers = restClient.authenticate();
+
+		String request = "{\"earliestDate\":\"2010-01-01\",\"latestDate\":\"2020-01-01\",\"enabledTransferTransactions\":true,\"enabledIncomeTransactions\":true,\"enabledExpenseTransactions\":true,\"selectedTags\":[\"\",\"hello\",\"world\",\"magic\"],\"selectedAccounts\":[{\"id\":3},{\"id\":4}],\"maxPoints\":2}";
+		HttpEntity<String> entity = new HttpEntity<>(request, headers);
+		ResponseEntity<String> responseEntity = restClient.getRestTemplate().postForEntity("https://localhost:8443/service/analytics", entity, String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+
+		jsonExpectationhelper.assertJsonEqual("{"
+				+ "RUB:{"
+				+ "transactions:[{description:\"test transaction 4\",date:\"2014-06-07\",type:\"TRANSFER\",amount:144},{description:\"test transaction 1\",date:\"2014-02-17\",type:\"EXPENSEINCOME\",amount:42},{description:\"test transaction 2\",date:\"2015-01-07\",type:\"EXPENSEINCOME\",amount:2.72}],"
+				+ "tagExpenses:[{tag:\"\",amount:144},{tag:\"hello\",amount:44.72},{tag:\"world\",amount:42},{tag:\"magic\",amount:2.72}],"
+				+ "accountsBalanceGraph:{\"2014-02-17\":42,\"2015-01-07\":-99.28}"
+				+ "},EUR:{"
+				+ "transactions:[{description:\"test transaction 1\",date:\"2014-02-17\",type:\"EXPENSEINCOME\",amount:160},{description:\"test transaction 4\",date:\"2014-06-07\",type:\"TRANSFER\",amount:144},{description:\"test transaction 2\",date:\"2015-01-07\",type:\"EXPENSEINCOME\",amount:-3.14}],"
+				+ "tagExpenses:[{tag:\"world\",amount:160},{tag:\"hello\",amount:156.86},{tag:\"\",amount:144},{tag:\"magic\",amount:-3.14}],"
+				+ "accountsBalanceGraph:{\"2014-02-17\":160,\"2015-01-07\":300.86}"
+				+ "}"
+				+ "}", responseEntity.getBody(), true);
+	}
+
+	/**
+	 * Test that an authenticated user is allowed to get analytics data for all
+	 * of their transactions, limited to the largest transaction
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testGetAnalyticsTopN() throws Exception {
+		prepopulate.prepopulateExtra();
+
+		HttpHeaders headers = restClient.authenticate();
+
+		String request = "{\"earliestDate\":\"2010-01-01\",\"latestDate\":\"2020-01-01\",\"enabledTransferTransactions\":true,\"enabledIncomeTransactions\":true,\"enabledExpenseTransactions\":true,\"selectedTags\":[\"\",\"hello\",\"world\",\"magic\"],\"selectedAccounts\":[{\"id\":3},{\"id\":4}],\"topN\":1}";
+		HttpEntity<String> entity = new HttpEntity<>(request, headers);
+		ResponseEntity<String> responseEntity = restClient.getRestTemplate().postForEntity("https://localhost:8443/service/analytics", entity, String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+
+		jsonExpectationhelper.assertJsonEqual("{"
+				+ "RUB:{"
+				+ "transactions:[{description:\"test transaction 4\",date:\"2014-06-07\",type:\"TRANSFER\",amount:144}],"
+				+ "tagExpenses:[{tag:\"\",amount:144},{tag:\"hello\",amount:44.72},{tag:\"world\",amount:42},{tag:\"magic\",amount:2.72}],"
+				+ "accountsBalanceGraph:{\"2014-02-17\":42,\"2014-06-07\":-102,\"2015-01-07\":-99.28}"
+				+ "},EUR:{"
+				+ "transactions:[{description:\"test transaction 1\",date:\"2014-02-17\",type:\"EXPENSEINCOME\",amount:160}],"
+				+ "tagExpenses:[{tag:\"world\",amount:160},{tag:\"hello\",amount:156.86},{tag:\"\",amount:144},{tag:\"magic\",amount:-3.14}],"
+				+ "accountsBalanceGraph:{\"2014-02-17\":160,\"2014-06-07\":304,\"2015-01-07\":300.86}"
+				+ "}"
+				+ "}", responseEntity.getBody(), true);
+	}
+
+	/**
+	 * Test that an authenticated user is allowed to page through the analytics
+	 * transactions
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testGetAnalyticsTransactionsPage() throws Exception {
+		prepopulate.prepopulateExtra();
+
+		HttpHeaders headers = restClient.authenticate();
+
+		String request = "{\"earliestDate\":\"2010-01-01\",\"latestDate\":\"2020-01-01\",\"enabledTransferTransactions\":true,\"enabledIncomeTransactions\":true,\"enabledExpenseTransactions\":true,\"selectedTags\":[\"\",\"hello\",\"world\",\"magic\"],\"selectedAccounts\":[{\"id\":3},{\"id\":4}],\"topN\":1}";
+		HttpEntity<String> entity = new HttpEntity<>(request, headers);
+		ResponseEntity<String> responseEntity = restClient.getRestTemplate().postForEntity("https://localhost:8443/service/analytics/transactions?page=1", entity, String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		jsonExpectationhelper.assertJsonEqual("{"
+				+ "RUB:[{description:\"test transaction 1\",date:\"2014-02-17\",type:\"EXPENSEINCOME\",amount:42}],"
+				+ "EUR:[{description:\"test transaction 4\",date:\"2014-06-07\",type:\"TRANSFER\",amount:144}]"
+				+ "}", responseEntity.getBody(), true);
+
+		responseEntity = restClient.getRestTemplate().postForEntity("https://localhost:8443/service/analytics/transactions?page=3", entity, String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		jsonExpectationhelper.assertJsonEqual("{RUB:[],EUR:[]}", responseEntity.getBody(), true);
+	}
+
+	/**
+	 * Test that an authenticated user is allowed to get analytics data grouped
+	 * by month
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testGetAnalyticsBuckets() throws Exception {
+		prepopulate.prepopulateExtra();
+
+		HttpHeaders headers = restClient.authenticate();
+
+		String request = "{\"earliestDate\":\"2010-01-01\",\"latestDate\":\"2020-01-01\",\"enabledTransferTransactions\":true,\"enabledIncomeTransactions\":true,\"enabledExpenseTransactions\":true,\"selectedTags\":[\"\",\"hello\",\"world\",\"magic\"],\"selectedAccounts\":[{\"id\":3},{\"id\":4}]}";
+		HttpEntity<String> entity = new HttpEntity<>(request, headers);
+		ResponseEntity<String> responseEntity = restClient.getRestTemplate().postForEntity("https://localhost:8443/service/analytics/buckets?bucketSize=MONTH", entity, String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+
+		jsonExpectationhelper.assertJsonEqual("{"
+				+ "RUB:["
+				+ "{date:\"2014-02-01\",income:42,expense:0,transferVolume:0,tagExpenses:[{tag:\"hello\",amount:42},{tag:\"world\",amount:42}]},"
+				+ "{date:\"2014-06-01\",income:0,expense:0,transferVolume:144,tagExpenses:[{tag:\"\",amount:144}]},"
+				+ "{date:\"2015-01-01\",income:2.72,expense:0,transferVolume:0,tagExpenses:[{tag:\"hello\",amount:2.72},{tag:\"magic\",amount:2.72}]}"
+				+ "],EUR:["
+				+ "{date:\"2014-02-01\",income:160,expense:0,transferVolume:0,tagExpenses:[{tag:\"hello\",amount:160},{tag:\"world\",amount:160}]},"
+				+ "{date:\"2014-06-01\",income:0,expense:0,transferVolume:144,tagExpenses:[{tag:\"\",amount:144}]},"
+				+ "{date:\"2015-01-01\",income:0,expense:-3.14,transferVolume:0,tagExpenses:[{tag:\"hello\",amount:-3.14},{tag:\"magic\",amount:-3.14}]}"
+				+ "]"
+				+ "}", responseEntity.getBody(), true);
+
+		responseEntity = restClient.getRestTemplate().postForEntity("https://localhost:8443/service/analytics/buckets?bucketSize=YEAR", entity, String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+
+		jsonExpectationhelper.assertJsonEqual("{"
+				+ "RUB:["
+				+ "{date:\"2014-01-01\",income:42,expense:0,transferVolume:144,tagExpenses:[{tag:\"\",amount:144},{tag:\"hello\",amount:42},{tag:\"world\",amount:42}]},"
+				+ "{date:\"2015-01-01\",income:2.72,expense:0,transferVolume:0,tagExpenses:[{tag:\"hello\",amount:2.72},{tag:\"magic\",amount:2.72}]}"
+				+ "],EUR:["
+				+ "{date:\"2014-01-01\",income:160,expense:0,transferVolume:144,tagExpenses:[{tag:\"hello\",amount:160},{tag:\"world\",amount:160},{tag:\"\",amount:144}]},"
+				+ "{date:\"2015-01-01\",income:0,expense:-3.14,transferVolume:0,tagExpenses:[{tag:\"hello\",amount:-3.14},{tag:\"magic\",amount:-3.14}]}"
+				+ "]"
+				+ "}", responseEntity.getBody(), true);
+	}
+
+	/**
+	 * Test that an authenticated user is allowed to build a report with a
+	 * background job
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testGetAnalyticsJob() throws Exception {
+		prepopulate.prepopulateExtra();
+
+		HttpHeaders headers = restClient.authenticate();
+
+		String request = "{\"earliestDate\":\"2010-01-01\",\"latestDate\":\"2020-01-01\",\"enabledTransferTransactions\":true,\"enabledIncomeTransactions\":true,\"enabledExpenseTransactions\":true,\"selectedTags\":[\"\",\"hello\",\"world\",\"magic\"],\"selectedAccounts\":[{\"id\":3},{\"id\":4}]}";
+		HttpEntity<String> entity = new HttpEntity<>(request, headers);
+		ResponseEntity<String> responseEntity = restClient.getRestTemplate().postForEntity("https://localhost:8443/service/analytics/jobs", entity, String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		String jobId = new JSONObject(responseEntity.getBody()).getString("id");
+
+		HttpEntity<String> getEntity = new HttpEntity<>(headers);
+		responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/analytics/jobs/" + jobId + "?wait=30000", HttpMethod.GET, getEntity, String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		jsonExpectationhelper.assertJsonEqual("{id:\"" + jobId + "\",status:\"COMPLETED\",totalCurrencies:2,completedCurrencies:2,error:null,finished:true}", responseEntity.getBody(), true);
+
+		responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/analytics/jobs/" + jobId + "/result", HttpMethod.GET, getEntity, String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		jsonExpectationhelper.assertJsonEqual("{"
+				+ "RUB:{"
+				+ "transactions:[{description:\"test transaction 4\",date:\"2014-06-07\",type:\"TRANSFER\",amount:144},{description:\"test transaction 1\",date:\"2014-02-17\",type:\"EXPENSEINCOME\",amount:42},{description:\"test transaction 2\",date:\"2015-01-07\",type:\"EXPENSEINCOME\",amount:2.72}],"
+				+ "tagExpenses:[{tag:\"\",amount:144},{tag:\"hello\",amount:44.72},{tag:\"world\",amount:42},{tag:\"magic\",amount:2.72}],"
+				+ "accountsBalanceGraph:{\"2014-02-17\":42,\"2014-06-07\":-102,\"2015-01-07\":-99.28}"
+				+ "},EUR:{"
+				+ "transactions:[{description:\"test transaction 1\",date:\"2014-02-17\",type:\"EXPENSEINCOME\",amount:160},{description:\"test transaction 4\",date:\"2014-06-07\",type:\"TRANSFER\",amount:144},{description:\"test transaction 2\",date:\"2015-01-07\",type:\"EXPENSEINCOME\",amount:-3.14}],"
+				+ "tagExpenses:[{tag:\"world\",amount:160},{tag:\"hello\",amount:156.86},{tag:\"\",amount:144},{tag:\"magic\",amount:-3.14}],"
+				+ "accountsBalanceGraph:{\"2014-02-17\":160,\"2014-06-07\":304,\"2015-01-07\":300.86}"
+				+ "}"
+				+ "}", responseEntity.getBody(), true);
+
+		responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/analytics/jobs/" + jobId, HttpMethod.DELETE, getEntity, String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		try {
+			restClient.getRestTemplate().exchange("https://localhost:8443/service/analytics/jobs/" + jobId, HttpMethod.GET, getEntity, String.class);
+			fail("Expected an HttpServerErrorException to be thrown");
+		} catch (HttpStatusCodeException ex) {
+			assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, ex.getStatusCode());
+		}
+	}
+
 	/**
 	 * Test that an authenticated user is allowed to get analytics data for only
 	 * income transactions
@@ -237,6 +601,36 @@ public class AnalyticsControllerTest {
 				+ "}", responseEntity.getBody(), true);
 	}
 
+	/**
+	 * Test that an authenticated user is allowed to get analytics data for a
+	 * date range, with earlier transactions included in the opening balance
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testGetAnalyticsDateRangeTranctions() throws Exception {
+		prepopulate.prepopulateExtra();
+
+		HttpHeaders headers = restClient.authenticate();
+
+		String request = "{\"earliestDate\":\"2014-06-01\",\"latestDate\":\"2020-01-01\",\"enabledTransferTransactions\":true,\"enabledIncomeTransactions\":true,\"enabledExpenseTransactions\":true,\"selectedTags\":[\"\",\"hello\",\"world\",\"magic\"],\"selectedAccounts\":[{\"id\":3},{\"id\":4}]}";
+		HttpEntity<String> entity = new HttpEntity<>(request, headers);
+		ResponseEntity<String> responseEntity = restClient.getRestTemplate().postForEntity("https://localhost:8443/service/analytics", entity, String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+
+		jsonExpectationhelper.assertJsonEqual("{"
+				+ "RUB:{"
+				+ "transactions:[{description:\"test transaction 4\",date:\"2014-06-07\",type:\"TRANSFER\",amount:144},{description:\"test transaction 2\",date:\"2015-01-07\",type:\"EXPENSEINCOME\",amount:2.72}],"
+				+ "tagExpenses:[{tag:\"\",amount:144},{tag:\"hello\",amount:2.72},{tag:\"magic\",amount:2.72}],"
+				+ "accountsBalanceGraph:{\"2014-06-07\":-102,\"2015-01-07\":-99.28}"
+				+ "},EUR:{"
+				+ "transactions:[{description:\"test transaction 4\",date:\"2014-06-07\",type:\"TRANSFER\",amount:144},{description:\"test transaction 2\",date:\"2015-01-07\",type:\"EXPENSEINCOME\",amount:-3.14}],"
+				+ "tagExpenses:[{tag:\"\",amount:144},{tag:\"hello\",amount:-3.14},{tag:\"magic\",amount:-3.14}],"
+				+ "accountsBalanceGraph:{\"2014-06-07\":304,\"2015-01-07\":300.86}"
+				+ "}"
+				+ "}", responseEntity.getBody(), true);
+	}
+
 	/**
 	 * Test that an authenticated user is allowed to get analytics data for only
 	 * transactions with a specific account
@@ -293,6 +687,116 @@ public class AnalyticsControllerTest {
 				+ "}", responseEntity.getBody(), true);
 	}
 
+	/**
+	 * Test that tag expenses of untagged transactions, transfers with
+	 * incoming and outgoing components in the selected accounts, and
+	 * transactions with multiple tags are calculated the same way as the
+	 * report transactions' amounts
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testGetAnalyticsTagExpenses() throws Exception {
+		prepopulate.prepopulateTagExpenses();
+
+		HttpHeaders headers = restClient.authenticate();
+
+		String request = "{\"earliestDate\":\"2010-01-01\",\"latestDate\":\"2020-01-01\",\"enabledTransferTransactions\":true,\"enabledIncomeTransactions\":true,\"enabledExpenseTransactions\":true,\"selectedTags\":[\"\",\"hello\",\"world\",\"magic\",\"transfer\"],\"selectedAccounts\":[{\"id\":3},{\"id\":4}]}";
+		HttpEntity<String> entity = new HttpEntity<>(request, headers);
+		ResponseEntity<String> responseEntity = restClient.getRestTemplate().postForEntity("https://localhost:8443/service/analytics", entity, String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+
+		JSONObject response = new JSONObject(responseEntity.getBody());
+		jsonExpectationhelper.assertJsonEqual("["
+				+ "{tag:\"\",amount:134},{tag:\"hello\",amount:94.72},{tag:\"transfer\",amount:50},{tag:\"magic\",amount:47.72},{tag:\"world\",amount:37}"
+				+ "]", response.getJSONObject("RUB").getJSONArray("tagExpenses").toString(), true);
+		jsonExpectationhelper.assertJsonEqual("["
+				+ "{tag:\"hello\",amount:186.86},{tag:\"world\",amount:161},{tag:\"\",amount:149},{tag:\"transfer\",amount:30},{tag:\"magic\",amount:27.86}"
+				+ "]", response.getJSONObject("EUR").getJSONArray("tagExpenses").toString(), true);
+	}
+
+	/**
+	 * Test that tag expenses include all tags of expense transactions matching
+	 * the selected tags, and that the expense sign is checked for every
+	 * currency separately
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testGetAnalyticsTagExpensesFiltered() throws Exception {
+		prepopulate.prepopulateTagExpenses();
+
+		HttpHeaders headers = restClient.authenticate();
+
+		String request = "{\"earliestDate\":\"2010-01-01\",\"latestDate\":\"2020-01-01\",\"enabledTransferTransactions\":false,\"enabledIncomeTransactions\":false,\"enabledExpenseTransactions\":true,\"selectedTags\":[\"\",\"magic\"],\"selectedAccounts\":[{\"id\":3},{\"id\":4}]}";
+		HttpEntity<String> entity = new HttpEntity<>(request, headers);
+		ResponseEntity<String> responseEntity = restClient.getRestTemplate().postForEntity("https://localhost:8443/service/analytics", entity, String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+
+		JSONObject response = new JSONObject(responseEntity.getBody());
+		jsonExpectationhelper.assertJsonEqual("["
+				+ "{tag:\"\",amount:-10},{tag:\"magic\",amount:-5},{tag:\"world\",amount:-5}"
+				+ "]", response.getJSONObject("RUB").getJSONArray("tagExpenses").toString(), true);
+		jsonExpectationhelper.assertJsonEqual("["
+				+ "{tag:\"hello\",amount:-3.14},{tag:\"magic\",amount:-3.14}"
+				+ "]", response.getJSONObject("EUR").getJSONArray("tagExpenses").toString(), true);
+	}
+
+	/**
+	 * Test that an authenticated user is allowed to get analytics data for
+	 * transactions filtered by account, tags and date range at the same time,
+	 * including transactions which have components in other accounts
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testGetAnalyticsAccountTagDateRangeTranctions() throws Exception {
+		prepopulate.prepopulateTagExpenses();
+
+		HttpHeaders headers = restClient.authenticate();
+
+		String request = "{\"earliestDate\":\"2014-06-01\",\"latestDate\":\"2014-09-30\",\"enabledTransferTransactions\":true,\"enabledIncomeTransactions\":true,\"enabledExpenseTransactions\":true,\"selectedTags\":[\"\",\"magic\"],\"selectedAccounts\":[{\"id\":3}]}";
+		HttpEntity<String> entity = new HttpEntity<>(request, headers);
+		ResponseEntity<String> responseEntity = restClient.getRestTemplate().postForEntity("https://localhost:8443/service/analytics", entity, String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+
+		jsonExpectationhelper.assertJsonEqual("{"
+				+ "RUB:{"
+				+ "transactions:[{description:\"test transaction 4\",date:\"2014-06-07\",type:\"TRANSFER\",amount:144},{description:\"test transaction 6\",date:\"2014-09-01\",type:\"TRANSFER\",amount:50},{description:\"test transaction 5\",date:\"2014-08-01\",type:\"EXPENSEINCOME\",amount:-10}],"
+				+ "tagExpenses:[{tag:\"\",amount:134},{tag:\"hello\",amount:50},{tag:\"magic\",amount:50},{tag:\"transfer\",amount:50}],"
+				+ "accountsBalanceGraph:{\"2014-06-07\":-144,\"2014-08-01\":-154,\"2014-09-01\":-124}"
+				+ "}"
+				+ "}", responseEntity.getBody(), true);
+	}
+
+	/**
+	 * Test that an authenticated user is allowed to get analytics data for
+	 * expense transactions filtered by account, tags and date range at the
+	 * same time; the expense sign is checked only for components in the
+	 * selected account
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testGetAnalyticsAccountTagDateRangeExpenseTranctions() throws Exception {
+		prepopulate.prepopulateTagExpenses();
+
+		HttpHeaders headers = restClient.authenticate();
+
+		String request = "{\"earliestDate\":\"2014-08-01\",\"latestDate\":\"2015-12-31\",\"enabledTransferTransactions\":false,\"enabledIncomeTransactions\":false,\"enabledExpenseTransactions\":true,\"selectedTags\":[\"world\",\"magic\"],\"selectedAccounts\":[{\"id\":4}]}";
+		HttpEntity<String> entity = new HttpEntity<>(request, headers);
+		ResponseEntity<String> responseEntity = restClient.getRestTemplate().postForEntity("https://localhost:8443/service/analytics", entity, String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+
+		jsonExpectationhelper.assertJsonEqual("{"
+				+ "EUR:{"
+				+ "transactions:[{description:\"test transaction 2\",date:\"2015-01-07\",type:\"EXPENSEINCOME\",amount:-3.14}],"
+				+ "tagExpenses:[{tag:\"hello\",amount:-3.14},{tag:\"magic\",amount:-3.14}],"
+				+ "accountsBalanceGraph:{\"2015-01-07\":-3.14}"
+				+ "}"
+				+ "}", responseEntity.getBody(), true);
+	}
+
 	/**
 	 * Test that an authenticated user can get a response for an empty analytics
 	 * request
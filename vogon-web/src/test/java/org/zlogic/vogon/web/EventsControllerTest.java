@@ -0,0 +1,195 @@
+/*
+ * Vogon personal finance/expense analyzer.
+ * Licensed under Apache 2.0 License: http://www.apache.org/licenses/LICENSE-2.0
+ * Author: Dmitry Zolotukhin <zlogic@gmail.com>
+ */
+package org.zlogic.vogon.web;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.JsonExpectationsHelper;
+
+/**
+ * Tests for Events Controller
+ * {@link org.zlogic.vogon.web.controller.EventsController}
+ *
+ * @author Dmitry Zolotukhin [zlogic@gmail.com]
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = WebEnvironment.DEFINED_PORT, properties = "spring.main.allow-bean-definition-overriding=true", classes = {Application.class, DatabaseConfiguration.class})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class EventsControllerTest {
+
+	private JsonExpectationsHelper jsonExpectationhelper = new JsonExpectationsHelper();
+
+	@Autowired
+	private RestTestClient restClient;
+
+	@Autowired
+	private Prepopupate prepopulate;
+
+	@Autowired
+	private ExecutorService liveUpdateExecutor;
+
+	private ExecutorService executor;
+
+	@Before
+	public void before() {
+		prepopulate.clear();
+		executor = Executors.newSingleThreadExecutor();
+	}
+
+	@After
+	public void after() {
+		executor.shutdownNow();
+		prepopulate.clear();
+	}
+
+	/**
+	 * Reads events from a stream in the background. The stream is never
+	 * closed by the server, so it's read until the server is stopped.
+	 *
+	 * @param headers the authentication headers
+	 * @param events the received events as "name data" strings
+	 * @return the Future which is done when the stream is closed by the server
+	 */
+	private Future<?> readEvents(HttpHeaders headers, BlockingQueue<String> events) {
+		return executor.submit(() -> restClient.getRestTemplate().execute("https://localhost:8443/service/events", HttpMethod.GET, request -> {
+			request.getHeaders().putAll(headers);
+			request.getHeaders().setAccept(Collections.singletonList(MediaType.TEXT_EVENT_STREAM));
+		}, response -> {
+			assertEquals(HttpStatus.OK, response.getStatusCode());
+			BufferedReader reader = new BufferedReader(new InputStreamReader(response.getBody(), StandardCharsets.UTF_8));
+			String name = null;
+			for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+				if (line.startsWith("event:"))
+					name = line.substring("event:".length());
+				else if (line.startsWith("data:"))
+					events.add(name + " " + line.substring("data:".length()));
+			}
+			return null;
+		}));
+	}
+
+	/**
+	 * Waits for the next event and checks its contents
+	 *
+	 * @param events the received events
+	 * @param name the expected event name
+	 * @param data the expected event data
+	 * @throws Exception
+	 */
+	private void assertEvent(BlockingQueue<String> events, String name, String data) throws Exception {
+		String event = events.poll(30, TimeUnit.SECONDS);
+		assertNotNull(event);
+		assertEquals(name, event.substring(0, event.indexOf(' ')));
+		jsonExpectationhelper.assertJsonEqual(data, event.substring(event.indexOf(' ') + 1), true);
+	}
+
+	/**
+	 * Test that an authenticated user receives changed accounts and
+	 * transactions after a transaction is updated
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testTransactionUpdateEvents() throws Exception {
+		prepopulate.prepopulate();
+
+		HttpHeaders headers = restClient.authenticate();
+		BlockingQueue<String> events = new LinkedBlockingQueue<>();
+		readEvents(headers, events);
+		assertEvent(events, "connected", "{}");
+
+		String changeRequest = "{\"tags\":[\"hello\",\"world\"],\"id\":6,\"type\":\"EXPENSEINCOME\",\"description\":\"test transaction 1\",\"date\":\"2014-02-17\",\"version\":0,\"components\":[{\"accountId\":3,\"amount\":42,\"id\":7,\"version\":0},{\"accountId\":4,\"amount\":150,\"id\":8,\"version\":0}]}";
+		ResponseEntity<String> responseEntity = restClient.getRestTemplate().postForEntity("https://localhost:8443/service/transactions", new HttpEntity<>(changeRequest, headers), String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+
+		assertEvent(events, "account", "{id:3,version:2,name:\"test account 1\",balance:44.72,currency:\"RUB\",includeInTotal:true,showInList:true}");
+		assertEvent(events, "account", "{id:4,version:2,name:\"test account 2\",balance:146.86,currency:\"EUR\",includeInTotal:true,showInList:true}");
+		assertEvent(events, "transaction", "{id:6,version:1,type:\"EXPENSEINCOME\",description:\"test transaction 1\",tags:[\"hello\",\"world\"],date:\"2014-02-17\",components:[{id:7,version:0,amount:42,accountId:3},{id:8,version:1,amount:150,accountId:4}]}");
+	}
+
+	/**
+	 * Test that an authenticated user receives the deleted transaction ID and
+	 * doesn't receive other users' changes
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testTransactionDeleteEvents() throws Exception {
+		prepopulate.prepopulate();
+
+		HttpHeaders headers = restClient.authenticate();
+		HttpHeaders otherHeaders = restClient.authenticate("user02", "mypassword2");
+		BlockingQueue<String> events = new LinkedBlockingQueue<>();
+		readEvents(otherHeaders, events);
+		assertEvent(events, "connected", "{}");
+
+		ResponseEntity<String> responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/transactions/transaction/9", HttpMethod.DELETE, new HttpEntity<>(headers), String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/transactions/transaction/13", HttpMethod.DELETE, new HttpEntity<>(otherHeaders), String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+
+		assertEvent(events, "account", "{id:5,version:2,name:\"test account 3\",balance:0,currency:\"RUB\",includeInTotal:true,showInList:true}");
+		assertEvent(events, "transactionDeleted", "13");
+	}
+
+	/**
+	 * Test that a stream is closed when the live update executor is full
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testExecutorFullClosesStream() throws Exception {
+		prepopulate.prepopulate();
+
+		CountDownLatch release = new CountDownLatch(1);
+		try {
+			try {
+				while (true)
+					liveUpdateExecutor.execute(() -> {
+						try {
+							release.await();
+						} catch (InterruptedException ex) {
+							Thread.currentThread().interrupt();
+						}
+					});
+			} catch (RejectedExecutionException ex) {
+			}
+
+			HttpHeaders headers = restClient.authenticate();
+			BlockingQueue<String> events = new LinkedBlockingQueue<>();
+			readEvents(headers, events).get(30, TimeUnit.SECONDS);
+			assertTrue(events.isEmpty());
+		} finally {
+			release.countDown();
+		}
+	}
+}
@@ -7,10 +7,13 @@ package org.zlogic.vogon.web;
 
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Currency;
 import java.util.Date;
 import java.util.List;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
 import javax.transaction.Transactional;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.crypto.factory.PasswordEncoderFactories;
@@ -18,6 +21,7 @@ import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.zlogic.vogon.data.FinanceAccount;
 import org.zlogic.vogon.data.FinanceTransaction;
+import org.zlogic.vogon.data.TagResolver;
 import org.zlogic.vogon.data.TransactionComponent;
 import org.zlogic.vogon.data.VogonUser;
 import org.zlogic.vogon.web.data.AccountRepository;
@@ -33,6 +37,9 @@ import org.zlogic.vogon.web.data.UserRepository;
 @Transactional
 public class Prepopupate {
 
+	@PersistenceContext
+	private EntityManager em;
+
 	@Autowired
 	private UserRepository userRepository;
 
@@ -80,6 +87,9 @@ public class Prepopupate {
 		FinanceTransaction transaction3 = new FinanceTransaction(user01, "test transaction 3", new String[]{}, parseJSONDate("2014-02-17"), FinanceTransaction.Type.TRANSFER);
 		FinanceTransaction transaction2 = new FinanceTransaction(user01, "test transaction 2", new String[]{"magic", "hello"}, parseJSONDate("2015-01-07"), FinanceTransaction.Type.EXPENSEINCOME);
 		FinanceTransaction transaction4 = new FinanceTransaction(user02, "test transaction 3", new String[]{}, parseJSONDate("2014-05-17"), FinanceTransaction.Type.EXPENSEINCOME);
+		TagResolver tagResolver = new TagResolver(em);
+		for (FinanceTransaction transaction : Arrays.asList(transaction1, transaction2))
+			tagResolver.resolveTags(transaction);
 		TransactionComponent component1 = new TransactionComponent(account1, transaction1, 42 * 100);
 		TransactionComponent component2 = new TransactionComponent(account2, transaction1, 160 * 100);
 		TransactionComponent component3 = new TransactionComponent(account2, transaction2, -314);
@@ -108,6 +118,65 @@ public class Prepopupate {
 		accountRepository.saveAll(Arrays.asList(account1, account2));
 	}
 
+	/**
+	 * Prepopulate the database with default and additional test data, and
+	 * transactions for testing tag expenses: an untagged expense/income, a
+	 * transfer with incoming and outgoing components in the same account, and
+	 * transactions with multiple tags
+	 */
+	public void prepopulateTagExpenses() {
+		prepopulateExtra();
+
+		VogonUser user01 = userRepository.findByUsernameIgnoreCase("user01");
+
+		List<FinanceAccount> accounts = accountRepository.findAll();
+		FinanceAccount account1 = accounts.get(0);
+		FinanceAccount account2 = accounts.get(1);
+
+		FinanceTransaction transaction5 = new FinanceTransaction(user01, "test transaction 5", new String[]{}, parseJSONDate("2014-08-01"), FinanceTransaction.Type.EXPENSEINCOME);
+		FinanceTransaction transaction6 = new FinanceTransaction(user01, "test transaction 6", new String[]{"hello", "magic", "transfer"}, parseJSONDate("2014-09-01"), FinanceTransaction.Type.TRANSFER);
+		FinanceTransaction transaction7 = new FinanceTransaction(user01, "test transaction 7", new String[]{"world", "magic"}, parseJSONDate("2014-10-01"), FinanceTransaction.Type.EXPENSEINCOME);
+		TagResolver tagResolver = new TagResolver(em);
+		for (FinanceTransaction transaction : Arrays.asList(transaction5, transaction6, transaction7))
+			tagResolver.resolveTags(transaction);
+		TransactionComponent component51 = new TransactionComponent(account1, transaction5, -10 * 100);
+		TransactionComponent component52 = new TransactionComponent(account2, transaction5, 5 * 100);
+		TransactionComponent component61 = new TransactionComponent(account1, transaction6, 50 * 100);
+		TransactionComponent component62 = new TransactionComponent(account1, transaction6, -20 * 100);
+		TransactionComponent component63 = new TransactionComponent(account2, transaction6, -30 * 100);
+		TransactionComponent component71 = new TransactionComponent(account1, transaction7, -7 * 100);
+		TransactionComponent component72 = new TransactionComponent(account1, transaction7, 2 * 100);
+		TransactionComponent component73 = new TransactionComponent(account2, transaction7, 1 * 100);
+		transactionRepository.saveAll(Arrays.asList(transaction5, transaction6, transaction7));
+		accountRepository.saveAll(Arrays.asList(account1, account2));
+	}
+
+	/**
+	 * Prepopulate the database with default test data, and generated
+	 * transactions named "page transaction 1", "page transaction 2" etc., each
+	 * with a component in the first account and an "odd" or "even" tag
+	 *
+	 * @param count the number of transactions to generate
+	 */
+	public void prepopulateGeneratedTransactions(int count) {
+		prepopulate();
+
+		VogonUser user01 = userRepository.findByUsernameIgnoreCase("user01");
+
+		FinanceAccount account1 = accountRepository.findAll().get(0);
+
+		TagResolver tagResolver = new TagResolver(em);
+		List<FinanceTransaction> transactions = new ArrayList<>();
+		for (int i = 1; i <= count; i++) {
+			FinanceTransaction transaction = new FinanceTransaction(user01, "page transaction " + i, new String[]{i % 2 == 0 ? "even" : "odd"}, new Date(), FinanceTransaction.Type.EXPENSEINCOME);
+			tagResolver.resolveTags(transaction);
+			TransactionComponent component = new TransactionComponent(account1, transaction, i * 100);
+			transactions.add(transaction);
+		}
+		transactionRepository.saveAll(transactions);
+		accountRepository.save(account1);
+	}
+
 	/**
 	 * Clear everything from the database
 	 */
@@ -0,0 +1,145 @@
+/*
+ * Vogon personal finance/expense analyzer.
+ * Licensed under Apache 2.0 License: http://www.apache.org/licenses/LICENSE-2.0
+ * Author: Dmitry Zolotukhin <zlogic@gmail.com>
+ */
+package org.zlogic.vogon.web;
+
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.JsonExpectationsHelper;
+
+/**
+ * Tests for Sync Controller
+ * {@link org.zlogic.vogon.web.controller.SyncController}
+ *
+ * @author Dmitry Zolotukhin [zlogic@gmail.com]
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = WebEnvironment.DEFINED_PORT, properties = "spring.main.allow-bean-definition-overriding=true", classes = {Application.class, DatabaseConfiguration.class})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class SyncControllerTest {
+
+	private JsonExpectationsHelper jsonExpectationhelper = new JsonExpectationsHelper();
+
+	@Autowired
+	private RestTestClient restClient;
+
+	@Autowired
+	private Prepopupate prepopulate;
+
+	@Before
+	public void before() {
+		prepopulate.clear();
+	}
+
+	@After
+	public void after() {
+		prepopulate.clear();
+	}
+
+	/**
+	 * Test that an authenticated user gets only changes made after the sync
+	 * cursor
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testSyncChanges() throws Exception {
+		prepopulate.prepopulate();
+
+		HttpHeaders headers = restClient.authenticate();
+
+		HttpEntity<String> entity = new HttpEntity<>(headers);
+		ResponseEntity<String> responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/sync", HttpMethod.GET, entity, String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		jsonExpectationhelper.assertJsonEqual("{changes:["
+				+ "{id:1,entityType:\"TRANSACTION\",entityId:6,operation:\"CREATE\",entityVersion:0},"
+				+ "{id:2,entityType:\"TRANSACTION\",entityId:9,operation:\"CREATE\",entityVersion:0},"
+				+ "{id:3,entityType:\"TRANSACTION\",entityId:10,operation:\"CREATE\",entityVersion:0},"
+				+ "{id:5,entityType:\"TRANSACTION_COMPONENT\",entityId:7,operation:\"CREATE\",entityVersion:0},"
+				+ "{id:6,entityType:\"TRANSACTION_COMPONENT\",entityId:8,operation:\"CREATE\",entityVersion:0},"
+				+ "{id:7,entityType:\"TRANSACTION_COMPONENT\",entityId:11,operation:\"CREATE\",entityVersion:0},"
+				+ "{id:8,entityType:\"TRANSACTION_COMPONENT\",entityId:12,operation:\"CREATE\",entityVersion:0},"
+				+ "{id:10,entityType:\"ACCOUNT\",entityId:3,operation:\"CREATE\",entityVersion:1},"
+				+ "{id:11,entityType:\"ACCOUNT\",entityId:4,operation:\"CREATE\",entityVersion:1}"
+				+ "],accounts:["
+				+ "{id:3,version:1,name:\"test account 1\",balance:44.72,currency:\"RUB\",includeInTotal:true,showInList:true},"
+				+ "{id:4,version:1,name:\"test account 2\",balance:156.86,currency:\"EUR\",includeInTotal:true,showInList:true}"
+				+ "],transactions:["
+				+ "{id:6,version:0,type:\"EXPENSEINCOME\",description:\"test transaction 1\",tags:[\"hello\",\"world\"],date:\"2014-02-17\",components:[{id:7,version:0,amount:42,accountId:3},{id:8,version:0,amount:160,accountId:4}]},"
+				+ "{id:9,version:0,type:\"TRANSFER\",description:\"test transaction 3\",tags:[],date:\"2014-02-17\",components:[]},"
+				+ "{id:10,version:0,type:\"EXPENSEINCOME\",description:\"test transaction 2\",tags:[\"hello\",\"magic\"],date:\"2015-01-07\",components:[{id:11,version:0,amount:-3.14,accountId:4},{id:12,version:0,amount:2.72,accountId:3}]}"
+				+ "],cursor:11,more:false}", responseEntity.getBody(), true);
+
+		responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/sync?since=11", HttpMethod.GET, entity, String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		jsonExpectationhelper.assertJsonEqual("{changes:[],accounts:[],transactions:[],cursor:11,more:false}", responseEntity.getBody(), true);
+
+		responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/transactions/transaction/9", HttpMethod.DELETE, entity, String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+
+		responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/sync?since=11", HttpMethod.GET, entity, String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		jsonExpectationhelper.assertJsonEqual("{changes:["
+				+ "{id:13,entityType:\"TRANSACTION\",entityId:9,operation:\"DELETE\",entityVersion:0}"
+				+ "],accounts:[],transactions:[],cursor:13,more:false}", responseEntity.getBody(), true);
+
+		HttpHeaders otherHeaders = restClient.authenticate("user02", "mypassword2");
+		responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/sync", HttpMethod.GET, new HttpEntity<>(otherHeaders), String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		jsonExpectationhelper.assertJsonEqual("{changes:["
+				+ "{id:4,entityType:\"TRANSACTION\",entityId:13,operation:\"CREATE\",entityVersion:0},"
+				+ "{id:9,entityType:\"TRANSACTION_COMPONENT\",entityId:14,operation:\"CREATE\",entityVersion:0},"
+				+ "{id:12,entityType:\"ACCOUNT\",entityId:5,operation:\"CREATE\",entityVersion:1}"
+				+ "],accounts:["
+				+ "{id:5,version:1,name:\"test account 3\",balance:100,currency:\"RUB\",includeInTotal:true,showInList:true}"
+				+ "],transactions:["
+				+ "{id:13,version:0,type:\"EXPENSEINCOME\",description:\"test transaction 3\",tags:[],date:\"2014-05-17\",components:[{id:14,version:0,amount:100,accountId:5}]}"
+				+ "],cursor:12,more:false}", responseEntity.getBody(), true);
+	}
+
+	/**
+	 * Test that transactions with changed components are returned with the
+	 * changes
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testSyncChangedComponents() throws Exception {
+		prepopulate.prepopulate();
+
+		HttpHeaders headers = restClient.authenticate();
+
+		String changeRequest = "{\"tags\":[\"hello\",\"world\"],\"id\":6,\"type\":\"EXPENSEINCOME\",\"description\":\"test transaction 1\",\"date\":\"2014-02-17\",\"version\":0,\"components\":[{\"accountId\":3,\"amount\":42,\"id\":7,\"version\":0},{\"accountId\":4,\"amount\":150,\"id\":8,\"version\":0}]}";
+		ResponseEntity<String> responseEntity = restClient.getRestTemplate().postForEntity("https://localhost:8443/service/transactions", new HttpEntity<>(changeRequest, headers), String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+
+		responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/sync?since=12", HttpMethod.GET, new HttpEntity<>(headers), String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		jsonExpectationhelper.assertJsonEqual("{changes:["
+				+ "{id:13,entityType:\"ACCOUNT\",entityId:3,operation:\"UPDATE\",entityVersion:2},"
+				+ "{id:14,entityType:\"ACCOUNT\",entityId:4,operation:\"UPDATE\",entityVersion:2},"
+				+ "{id:15,entityType:\"TRANSACTION\",entityId:6,operation:\"UPDATE\",entityVersion:1},"
+				+ "{id:16,entityType:\"TRANSACTION_COMPONENT\",entityId:8,operation:\"UPDATE\",entityVersion:1}"
+				+ "],accounts:["
+				+ "{id:3,version:2,name:\"test account 1\",balance:44.72,currency:\"RUB\",includeInTotal:true,showInList:true},"
+				+ "{id:4,version:2,name:\"test account 2\",balance:146.86,currency:\"EUR\",includeInTotal:true,showInList:true}"
+				+ "],transactions:["
+				+ "{id:6,version:1,type:\"EXPENSEINCOME\",description:\"test transaction 1\",tags:[\"hello\",\"world\"],date:\"2014-02-17\",components:[{id:7,version:0,amount:42,accountId:3},{id:8,version:1,amount:150,accountId:4}]}"
+				+ "],cursor:16,more:false}", responseEntity.getBody(), true);
+	}
+}
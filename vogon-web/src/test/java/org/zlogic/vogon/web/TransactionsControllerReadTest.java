@@ -5,8 +5,11 @@
  */
 package org.zlogic.vogon.web;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.ResourceBundle;
@@ -17,13 +20,16 @@ import static org.junit.Assert.*;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import static org.mockito.BDDMockito.given;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.mock.mockito.SpyBean;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.junit4.SpringRunner;
@@ -31,6 +37,7 @@ import org.springframework.test.util.JsonExpectationsHelper;
 import org.springframework.web.client.HttpStatusCodeException;
 import org.zlogic.vogon.data.FinanceTransaction;
 import org.zlogic.vogon.data.VogonUser;
+import org.zlogic.vogon.web.configuration.VogonConfiguration;
 import org.zlogic.vogon.web.data.TransactionRepository;
 import org.zlogic.vogon.web.data.UserRepository;
 
@@ -64,6 +71,12 @@ public class TransactionsControllerReadTest {
 	@Autowired
 	private TransactionRepository transactionRepository;
 
+	@SpyBean
+	private VogonConfiguration vogonConfiguration;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
 	@Before
 	public void before() {
 		prepopulate.clear();
@@ -118,6 +131,64 @@ public class TransactionsControllerReadTest {
 				+ "]", responseEntity.getBody(), true);
 	}
 
+	/**
+	 * Test that an authenticated user can stream their transactions as
+	 * newline-delimited JSON
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testGetTransactionsStream() throws Exception {
+		prepopulate.prepopulate();
+
+		HttpHeaders headers = restClient.authenticate();
+		headers.setAccept(Collections.singletonList(MediaType.parseMediaType("application/x-ndjson")));
+
+		HttpEntity<String> entity = new HttpEntity<>(headers);
+		ResponseEntity<String> responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/transactions?sortColumn=DATE&sortDirection=DESC", HttpMethod.GET, entity, String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		assertTrue(MediaType.parseMediaType("application/x-ndjson").isCompatibleWith(responseEntity.getHeaders().getContentType()));
+		String[] lines = responseEntity.getBody().split("\n");
+		assertEquals(3, lines.length);
+		jsonExpectationhelper.assertJsonEqual("{tags:[\"hello\",\"magic\"],id:10,type:\"EXPENSEINCOME\",description:\"test transaction 2\",date:\"2015-01-07\",version:0,components:[{accountId:4,amount:-3.14,id:11,version:0},{accountId:3,amount:2.72,id:12,version:0}]}", lines[0], true);
+		jsonExpectationhelper.assertJsonEqual("{tags:[],id:9,type:\"TRANSFER\",description:\"test transaction 3\",date:\"2014-02-17\",version:0,components:[]}", lines[1], true);
+		jsonExpectationhelper.assertJsonEqual("{tags:[\"hello\",\"world\"],id:6,type:\"EXPENSEINCOME\",description:\"test transaction 1\",date:\"2014-02-17\",version:0,components:[{accountId:3,amount:42,id:7,version:0},{accountId:4,amount:160,id:8,version:0}]}", lines[2], true);
+	}
+
+	/**
+	 * Test that an authenticated user can stream a large number of
+	 * transactions as newline-delimited JSON, with components loaded for every
+	 * chunk
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testGetTransactionsStreamLarge() throws Exception {
+		prepopulate.prepopulateGeneratedTransactions(249);
+
+		HttpHeaders headers = restClient.authenticate();
+		headers.setAccept(Collections.singletonList(MediaType.parseMediaType("application/x-ndjson")));
+
+		HttpEntity<String> entity = new HttpEntity<>(headers);
+		ResponseEntity<String> responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/transactions?sortColumn=DESCRIPTION&filterDescription=%page%", HttpMethod.GET, entity, String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		String[] lines = responseEntity.getBody().split("\n");
+		assertEquals(249, lines.length);
+		assertEquals("page transaction 1", new JSONObject(lines[0]).getString("description"));
+		assertEquals("page transaction 10", new JSONObject(lines[1]).getString("description"));
+		assertEquals("page transaction 99", new JSONObject(lines[248]).getString("description"));
+		for (String line : lines) {
+			JSONObject transaction = new JSONObject(line);
+			JSONArray components = transaction.getJSONArray("components");
+			assertEquals(1, components.length());
+			assertEquals(3, components.getJSONObject(0).getLong("accountId"));
+			assertEquals(Integer.parseInt(transaction.getString("description").substring("page transaction ".length())), components.getJSONObject(0).getInt("amount"));
+			JSONArray tags = transaction.getJSONArray("tags");
+			assertEquals(1, tags.length());
+			assertEquals(components.getJSONObject(0).getInt("amount") % 2 == 0 ? "even" : "odd", tags.getString(0));
+		}
+	}
+
 	/**
 	 * Test that an authenticated user can get a specific transaction
 	 *
@@ -285,6 +356,94 @@ public class TransactionsControllerReadTest {
 		jsonExpectationhelper.assertJsonEqual("[]", responseEntity.getBody(), true);
 	}
 
+	/**
+	 * Test that an authenticated user can get transactions for a date range
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testGetTransactionsDateRange() throws Exception {
+		prepopulate.prepopulate();
+
+		HttpHeaders headers = restClient.authenticate();
+
+		HttpEntity<String> entity = new HttpEntity<>(headers);
+		ResponseEntity<String> responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/transactions?dateFrom=2014-02-18&dateTo=2015-01-07", HttpMethod.GET, entity, String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		jsonExpectationhelper.assertJsonEqual("["
+				+ "{tags:[\"hello\",\"magic\"],id:10,type:\"EXPENSEINCOME\",description:\"test transaction 2\",date:\"2015-01-07\",version:0,components:[{accountId:4,amount:-3.14,id:11,version:0},{accountId:3,amount:2.72,id:12,version:0}]}"
+				+ "]", responseEntity.getBody(), true);
+
+		responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/transactions?dateTo=2014-02-17", HttpMethod.GET, entity, String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		jsonExpectationhelper.assertJsonEqual("["
+				+ "{tags:[\"hello\",\"world\"],id:6,type:\"EXPENSEINCOME\",description:\"test transaction 1\",date:\"2014-02-17\",version:0,components:[{accountId:3,amount:42,id:7,version:0},{accountId:4,amount:160,id:8,version:0}]},"
+				+ "{tags:[],id:9,type:\"TRANSFER\",description:\"test transaction 3\",date:\"2014-02-17\",version:0,components:[]}"
+				+ "]", responseEntity.getBody(), true);
+	}
+
+	/**
+	 * Test that an authenticated user can get transactions with a component
+	 * amount in a range
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testGetTransactionsAmountRange() throws Exception {
+		prepopulate.prepopulate();
+
+		HttpHeaders headers = restClient.authenticate();
+
+		HttpEntity<String> entity = new HttpEntity<>(headers);
+		ResponseEntity<String> responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/transactions?minAmount=-5&maxAmount=5", HttpMethod.GET, entity, String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		jsonExpectationhelper.assertJsonEqual("["
+				+ "{tags:[\"hello\",\"magic\"],id:10,type:\"EXPENSEINCOME\",description:\"test transaction 2\",date:\"2015-01-07\",version:0,components:[{accountId:4,amount:-3.14,id:11,version:0},{accountId:3,amount:2.72,id:12,version:0}]}"
+				+ "]", responseEntity.getBody(), true);
+
+		responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/transactions?minAmount=100", HttpMethod.GET, entity, String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		jsonExpectationhelper.assertJsonEqual("["
+				+ "{tags:[\"hello\",\"world\"],id:6,type:\"EXPENSEINCOME\",description:\"test transaction 1\",date:\"2014-02-17\",version:0,components:[{accountId:3,amount:42,id:7,version:0},{accountId:4,amount:160,id:8,version:0}]}"
+				+ "]", responseEntity.getBody(), true);
+	}
+
+	/**
+	 * Test that an authenticated user can get transactions with components in
+	 * specific accounts, and that account and amount filters are applied to
+	 * the same component
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testGetTransactionsAccounts() throws Exception {
+		prepopulate.prepopulate();
+
+		HttpHeaders headers = restClient.authenticate();
+
+		HttpEntity<String> entity = new HttpEntity<>(headers);
+		ResponseEntity<String> responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/transactions?accountIds=3&maxAmount=50", HttpMethod.GET, entity, String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		jsonExpectationhelper.assertJsonEqual("["
+				+ "{tags:[\"hello\",\"world\"],id:6,type:\"EXPENSEINCOME\",description:\"test transaction 1\",date:\"2014-02-17\",version:0,components:[{accountId:3,amount:42,id:7,version:0},{accountId:4,amount:160,id:8,version:0}]},"
+				+ "{tags:[\"hello\",\"magic\"],id:10,type:\"EXPENSEINCOME\",description:\"test transaction 2\",date:\"2015-01-07\",version:0,components:[{accountId:4,amount:-3.14,id:11,version:0},{accountId:3,amount:2.72,id:12,version:0}]}"
+				+ "]", responseEntity.getBody(), true);
+
+		responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/transactions?accountIds=4&minAmount=0", HttpMethod.GET, entity, String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		jsonExpectationhelper.assertJsonEqual("["
+				+ "{tags:[\"hello\",\"world\"],id:6,type:\"EXPENSEINCOME\",description:\"test transaction 1\",date:\"2014-02-17\",version:0,components:[{accountId:3,amount:42,id:7,version:0},{accountId:4,amount:160,id:8,version:0}]}"
+				+ "]", responseEntity.getBody(), true);
+
+		responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/transactions/count?accountIds=4&minAmount=0", HttpMethod.GET, entity, String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		assertEquals("1", responseEntity.getBody());
+
+		responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/transactions?accountIds=5", HttpMethod.GET, entity, String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		jsonExpectationhelper.assertJsonEqual("[]", responseEntity.getBody(), true);
+	}
+
 	/**
 	 * Test that an authenticated user can get transactions for an existing tag
 	 *
@@ -434,6 +593,278 @@ public class TransactionsControllerReadTest {
 		jsonExpectationhelper.assertJsonEqual("[]", responseEntity.getBody(), true);
 	}
 
+	/**
+	 * Test that an authenticated user can get transactions by following page
+	 * cursors
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testAllPagesCursor() throws Exception {
+		prepopulate.prepopulate();
+
+		VogonUser user01 = userRepository.findByUsernameIgnoreCase("user01");
+
+		List<FinanceTransaction> addTransactions = new ArrayList<>();
+		for (int i = 1; i < 250; i++) {
+			FinanceTransaction generatedTransaction = new FinanceTransaction(user01, "page transaction " + i, null, new Date(), FinanceTransaction.Type.EXPENSEINCOME);
+			addTransactions.add(generatedTransaction);
+		}
+		transactionRepository.saveAll(addTransactions);
+
+		List<JSONObject> receivedTransactions = new ArrayList<>();
+		List<Integer> pageSizes = new ArrayList<>();
+
+		HttpHeaders headers = restClient.authenticate();
+
+		HttpEntity<String> entity = new HttpEntity<>(headers);
+		String cursor = "";
+		while (cursor != null) {
+			ResponseEntity<String> responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/transactions?sortColumn=DATE&sortDirection=ASC&cursor=" + cursor, HttpMethod.GET, entity, String.class);
+			assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+			JSONObject responseObject = new JSONObject(responseEntity.getBody());
+			JSONArray transactions = responseObject.getJSONArray("transactions");
+			pageSizes.add(transactions.length());
+			for (int i = 0; i < transactions.length(); i++) {
+				receivedTransactions.add(transactions.getJSONObject(i));
+			}
+			cursor = responseObject.isNull("nextCursor") ? null : responseObject.getString("nextCursor");
+		}
+
+		assertEquals(Arrays.asList(100, 100, 52), pageSizes);
+		assertEquals("test transaction 1", receivedTransactions.get(0).getString("description"));
+		assertEquals("test transaction 3", receivedTransactions.get(1).getString("description"));
+		assertEquals("test transaction 2", receivedTransactions.get(2).getString("description"));
+		for (int i = 3; i < receivedTransactions.size(); i++) {
+			assertEquals("page transaction " + (i - 2), receivedTransactions.get(i).getString("description"));
+		}
+	}
+
+	/**
+	 * Test that an authenticated user can get the first page of transactions
+	 * with a cursor, sorted by description descending
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testGetTransactionsCursorDescriptionDesc() throws Exception {
+		prepopulate.prepopulate();
+
+		HttpHeaders headers = restClient.authenticate();
+
+		HttpEntity<String> entity = new HttpEntity<>(headers);
+		ResponseEntity<String> responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/transactions?sortColumn=DESCRIPTION&sortDirection=DESC&filterTags=hello&cursor=", HttpMethod.GET, entity, String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		jsonExpectationhelper.assertJsonEqual("{transactions:["
+				+ "{tags:[\"hello\",\"magic\"],id:10,type:\"EXPENSEINCOME\",description:\"test transaction 2\",date:\"2015-01-07\",version:0,components:[{accountId:4,amount:-3.14,id:11,version:0},{accountId:3,amount:2.72,id:12,version:0}]},"
+				+ "{tags:[\"hello\",\"world\"],id:6,type:\"EXPENSEINCOME\",description:\"test transaction 1\",date:\"2014-02-17\",version:0,components:[{accountId:3,amount:42,id:7,version:0},{accountId:4,amount:160,id:8,version:0}]}"
+				+ "],nextCursor:null}", responseEntity.getBody(), true);
+	}
+
+	/**
+	 * Test that an authenticated user will get an error when using an invalid
+	 * cursor
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testGetTransactionsInvalidCursor() throws Exception {
+		prepopulate.prepopulate();
+
+		HttpHeaders headers = restClient.authenticate();
+
+		HttpEntity<String> entity = new HttpEntity<>(headers);
+		try {
+			restClient.getRestTemplate().exchange("https://localhost:8443/service/transactions?cursor=bad_cursor", HttpMethod.GET, entity, String.class);
+			fail("Expected an HttpServerErrorException to be thrown");
+		} catch (HttpStatusCodeException ex) {
+			assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, ex.getStatusCode());
+			jsonExpectationhelper.assertJsonEqual("{message:\"" + MessageFormat.format(messages.getString("INVALID_TRANSACTIONS_CURSOR"), "bad_cursor") + "\"}", ex.getResponseBodyAsString());
+		}
+	}
+
+	/**
+	 * Test that an authenticated user can search their transactions by
+	 * description, with best matches first
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testSearchTransactions() throws Exception {
+		prepopulate.prepopulate();
+
+		VogonUser user01 = userRepository.findByUsernameIgnoreCase("user01");
+		VogonUser user02 = userRepository.findByUsernameIgnoreCase("user02");
+		transactionRepository.saveAll(Arrays.asList(
+				new FinanceTransaction(user01, "Coffee shop", new String[]{}, prepopulate.parseJSONDate("2015-03-01"), FinanceTransaction.Type.EXPENSEINCOME),
+				new FinanceTransaction(user01, "coffeehouse", new String[]{}, prepopulate.parseJSONDate("2015-03-02"), FinanceTransaction.Type.EXPENSEINCOME),
+				new FinanceTransaction(user01, "coffee beans", new String[]{}, prepopulate.parseJSONDate("2015-03-03"), FinanceTransaction.Type.EXPENSEINCOME),
+				new FinanceTransaction(user02, "coffee", new String[]{}, prepopulate.parseJSONDate("2015-03-04"), FinanceTransaction.Type.EXPENSEINCOME)
+		));
+
+		HttpHeaders headers = restClient.authenticate();
+
+		HttpEntity<String> entity = new HttpEntity<>(headers);
+		ResponseEntity<String> responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/transactions/search?q=coffee", HttpMethod.GET, entity, String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		jsonExpectationhelper.assertJsonEqual("["
+				+ "{tags:[],id:17,type:\"EXPENSEINCOME\",description:\"coffee beans\",date:\"2015-03-03\",version:0,components:[]},"
+				+ "{tags:[],id:15,type:\"EXPENSEINCOME\",description:\"Coffee shop\",date:\"2015-03-01\",version:0,components:[]},"
+				+ "{tags:[],id:16,type:\"EXPENSEINCOME\",description:\"coffeehouse\",date:\"2015-03-02\",version:0,components:[]}"
+				+ "]", responseEntity.getBody(), true);
+
+		responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/transactions/search?q=COF sh", HttpMethod.GET, entity, String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		jsonExpectationhelper.assertJsonEqual("["
+				+ "{tags:[],id:15,type:\"EXPENSEINCOME\",description:\"Coffee shop\",date:\"2015-03-01\",version:0,components:[]}"
+				+ "]", responseEntity.getBody(), true);
+
+		responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/transactions/search?q=coffee&limit=1", HttpMethod.GET, entity, String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		assertEquals(1, new JSONArray(responseEntity.getBody()).length());
+		assertEquals(17, new JSONArray(responseEntity.getBody()).getJSONObject(0).getLong("id"));
+
+		responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/transactions/search?q=tea", HttpMethod.GET, entity, String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		jsonExpectationhelper.assertJsonEqual("[]", responseEntity.getBody(), true);
+	}
+
+	/**
+	 * Test that an authenticated user can get the number of transactions and
+	 * pages, with and without filters
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testGetTransactionsCount() throws Exception {
+		prepopulate.prepopulate();
+
+		VogonUser user01 = userRepository.findByUsernameIgnoreCase("user01");
+
+		List<FinanceTransaction> addTransactions = new ArrayList<>();
+		for (int i = 1; i < 250; i++) {
+			FinanceTransaction generatedTransaction = new FinanceTransaction(user01, "page transaction " + i, null, new Date(), FinanceTransaction.Type.EXPENSEINCOME);
+			addTransactions.add(generatedTransaction);
+		}
+		transactionRepository.saveAll(addTransactions);
+
+		HttpHeaders headers = restClient.authenticate();
+
+		HttpEntity<String> entity = new HttpEntity<>(headers);
+		ResponseEntity<String> responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/transactions/count", HttpMethod.GET, entity, String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		assertEquals("252", responseEntity.getBody());
+
+		responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/transactions/pages", HttpMethod.GET, entity, String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		assertEquals("3", responseEntity.getBody());
+
+		responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/transactions/count?filterTags=hello", HttpMethod.GET, entity, String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		assertEquals("2", responseEntity.getBody());
+
+		responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/transactions/count?filterDescription=%page transaction 1%", HttpMethod.GET, entity, String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		assertEquals("111", responseEntity.getBody());
+
+		responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/transactions/pages?filterDescription=%page transaction 1%", HttpMethod.GET, entity, String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		assertEquals("2", responseEntity.getBody());
+
+		responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/transactions/pages?filterDate=2014-02-17", HttpMethod.GET, entity, String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		assertEquals("1", responseEntity.getBody());
+
+		responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/transactions/pages?filterTags=unknown", HttpMethod.GET, entity, String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		assertEquals("0", responseEntity.getBody());
+	}
+
+	/**
+	 * Test that transaction counts are only kept in memory for a limited
+	 * number of users
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testGetTransactionsCountCacheEviction() throws Exception {
+		prepopulate.prepopulate();
+		given(vogonConfiguration.getUserCacheSize()).willReturn(1);
+
+		HttpEntity<String> user01Entity = new HttpEntity<>(restClient.authenticate());
+		HttpEntity<String> user02Entity = new HttpEntity<>(restClient.authenticate("user02", "mypassword2"));
+		for (HttpEntity<String> entity : Arrays.asList(user01Entity, user01Entity, user02Entity, user01Entity)) {
+			ResponseEntity<String> responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/transactions/count", HttpMethod.GET, entity, String.class);
+			assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+			assertEquals(entity == user01Entity ? "3" : "1", responseEntity.getBody());
+		}
+
+		assertEquals(1, meterRegistry.get("cache.gets").tag("cache", "transactionCounts").tag("result", "hit").counter().count(), 0);
+		assertEquals(3, meterRegistry.get("cache.gets").tag("cache", "transactionCounts").tag("result", "miss").counter().count(), 0);
+		assertEquals(2, meterRegistry.get("cache.evictions").tag("cache", "transactionCounts").counter().count(), 0);
+		assertEquals(1, meterRegistry.get("cache.size").tag("cache", "transactionCounts").gauge().value(), 0);
+	}
+
+	/**
+	 * Test that search indexes are only kept in memory for a limited number
+	 * of users
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testSearchTransactionsCacheEviction() throws Exception {
+		prepopulate.prepopulate();
+		given(vogonConfiguration.getUserCacheSize()).willReturn(1);
+
+		HttpEntity<String> user01Entity = new HttpEntity<>(restClient.authenticate());
+		HttpEntity<String> user02Entity = new HttpEntity<>(restClient.authenticate("user02", "mypassword2"));
+		for (HttpEntity<String> entity : Arrays.asList(user01Entity, user01Entity, user02Entity, user01Entity)) {
+			ResponseEntity<String> responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/transactions/search?q=transaction", HttpMethod.GET, entity, String.class);
+			assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+			assertEquals(entity == user01Entity ? 3 : 1, new JSONArray(responseEntity.getBody()).length());
+		}
+
+		assertEquals(1, meterRegistry.get("cache.gets").tag("cache", "transactionSearch").tag("result", "hit").counter().count(), 0);
+		assertEquals(3, meterRegistry.get("cache.gets").tag("cache", "transactionSearch").tag("result", "miss").counter().count(), 0);
+		assertEquals(2, meterRegistry.get("cache.evictions").tag("cache", "transactionSearch").counter().count(), 0);
+		assertEquals(1, meterRegistry.get("cache.size").tag("cache", "transactionSearch").gauge().value(), 0);
+	}
+
+	/**
+	 * Test that the cached transactions count and search index are updated
+	 * after transactions are changed without a request
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testCachesAfterDirectChange() throws Exception {
+		prepopulate.prepopulate();
+
+		HttpHeaders headers = restClient.authenticate();
+
+		HttpEntity<String> entity = new HttpEntity<>(headers);
+		ResponseEntity<String> responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/transactions/count", HttpMethod.GET, entity, String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		assertEquals("3", responseEntity.getBody());
+
+		responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/transactions/search?q=coffee", HttpMethod.GET, entity, String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		jsonExpectationhelper.assertJsonEqual("[]", responseEntity.getBody(), true);
+
+		VogonUser user01 = userRepository.findByUsernameIgnoreCase("user01");
+		transactionRepository.save(new FinanceTransaction(user01, "coffee", new String[]{}, prepopulate.parseJSONDate("2015-03-01"), FinanceTransaction.Type.EXPENSEINCOME));
+
+		responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/transactions/count", HttpMethod.GET, entity, String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		assertEquals("4", responseEntity.getBody());
+
+		responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/transactions/search?q=coffee", HttpMethod.GET, entity, String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		jsonExpectationhelper.assertJsonEqual("["
+				+ "{tags:[],id:15,type:\"EXPENSEINCOME\",description:\"coffee\",date:\"2015-03-01\",version:0,components:[]}"
+				+ "]", responseEntity.getBody(), true);
+	}
+
 	/**
 	 * Test that an unauthenticated user (no token) is not allowed to get
 	 * transactions
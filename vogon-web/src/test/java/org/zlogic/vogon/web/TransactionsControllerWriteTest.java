@@ -6,10 +6,12 @@
 package org.zlogic.vogon.web;
 
 import java.text.MessageFormat;
+import java.util.Collections;
 import java.util.List;
 import java.util.ResourceBundle;
 import javax.annotation.Resource;
 import javax.persistence.EntityManager;
+import org.json.JSONArray;
 import org.junit.After;
 import static org.junit.Assert.*;
 import org.junit.Before;
@@ -23,6 +25,7 @@ import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.junit4.SpringRunner;
@@ -173,7 +176,7 @@ public class TransactionsControllerWriteTest {
 		ResponseEntity<String> responseEntity = restClient.getRestTemplate().postForEntity("https://localhost:8443/service/transactions", entity, String.class);
 		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
 
-		String expectedResponse = "{tags:[\"hello\",\"world\"],id:6,type:\"EXPENSEINCOME\",description:\"test transaction 1a\",date:\"2014-02-17\",version:2,components:[{accountId:4,amount:42,id:7,version:1},{accountId:4,amount:15,id:15,version:0}]}";
+		String expectedResponse = "{tags:[\"hello\",\"world\"],id:6,type:\"EXPENSEINCOME\",description:\"test transaction 1a\",date:\"2014-02-17\",version:1,components:[{accountId:4,amount:42,id:7,version:1},{accountId:4,amount:15,id:15,version:0}]}";
 		jsonExpectationhelper.assertJsonEqual(expectedResponse, responseEntity.getBody(), true);
 
 		transactionTemplate.execute((ts) -> {
@@ -195,7 +198,7 @@ public class TransactionsControllerWriteTest {
 			assertEquals(FinanceTransaction.Type.EXPENSEINCOME, transaction1.getType());
 			assertEquals("test transaction 1a", transaction1.getDescription());
 			assertEquals(prepopulate.parseJSONDate("2014-02-17"), transaction1.getDate());
-			assertEquals(2, transaction1.getVersion());
+			assertEquals(1, transaction1.getVersion());
 			assertEquals(2, transaction1.getComponents().size());
 			TransactionComponent component11 = transaction1.getComponents().get(0);
 			TransactionComponent component12 = transaction1.getComponents().get(1);
@@ -498,6 +501,264 @@ public class TransactionsControllerWriteTest {
 		});
 	}
 
+	/**
+	 * Test that an authenticated user can create, change and delete their
+	 * transactions in one batch
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testSubmitTransactionsBatch() throws Exception {
+		prepopulate.prepopulate();
+
+		HttpHeaders headers = restClient.authenticate();
+
+		String batchRequest = "["
+				+ "{\"operation\":\"CREATE\",\"transaction\":{\"tags\":[\"hello\",\"super\"],\"type\":\"EXPENSEINCOME\",\"description\":\"test transaction 4\",\"date\":\"2016-02-07\",\"components\":[{\"accountId\":3,\"amount\":100}]}},"
+				+ "{\"operation\":\"UPDATE\",\"transaction\":{\"tags\":[\"hello\",\"world\"],\"id\":6,\"type\":\"EXPENSEINCOME\",\"description\":\"test transaction 1a\",\"date\":\"2014-02-17\",\"version\":0,\"components\":[{\"accountId\":4,\"amount\":42,\"id\":7,\"version\":0}]}},"
+				+ "{\"operation\":\"DELETE\",\"id\":10}"
+				+ "]";
+		HttpEntity<String> entity = new HttpEntity<>(batchRequest, headers);
+		ResponseEntity<String> responseEntity = restClient.getRestTemplate().postForEntity("https://localhost:8443/service/transactions/batch", entity, String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+
+		String expectedResponse = "["
+				+ "{operation:\"CREATE\",transaction:{tags:[\"hello\",\"super\"],id:16,type:\"EXPENSEINCOME\",description:\"test transaction 4\",date:\"2016-02-07\",version:0,components:[{accountId:3,amount:100,id:15,version:1}]}},"
+				+ "{operation:\"UPDATE\",transaction:{tags:[\"hello\",\"world\"],id:6,type:\"EXPENSEINCOME\",description:\"test transaction 1a\",date:\"2014-02-17\",version:1,components:[{accountId:4,amount:42,id:7,version:1}]}},"
+				+ "{operation:\"DELETE\",transaction:{tags:[\"hello\",\"magic\"],id:10,type:\"EXPENSEINCOME\",description:\"test transaction 2\",date:\"2015-01-07\",version:0,components:[{accountId:4,amount:-3.14,id:11,version:0},{accountId:3,amount:2.72,id:12,version:0}]}}"
+				+ "]";
+		jsonExpectationhelper.assertJsonEqual(expectedResponse, responseEntity.getBody(), true);
+
+		transactionTemplate.execute((ts) -> {
+			List<FinanceAccount> accounts = accountRepository.findAll();
+			FinanceAccount account1 = accounts.get(0);
+			FinanceAccount account2 = accounts.get(1);
+			assertEquals(100, account1.getBalance(), 0);
+			assertEquals(42, account2.getBalance(), 0);
+			List<FinanceTransaction> transactions = transactionRepository.findAll();
+			assertEquals(4, transactions.size());
+			assertEquals("test transaction 1a", transactions.get(0).getDescription());
+			assertEquals("test transaction 3", transactions.get(1).getDescription());
+			assertEquals("test transaction 3", transactions.get(2).getDescription());
+			assertEquals("test transaction 4", transactions.get(3).getDescription());
+			assertEquals(Sets.newSet("hello", "super"), Sets.newSet(transactions.get(3).getTags()));
+			return null;
+		});
+	}
+
+	/**
+	 * Test that no changes from a batch are applied if one of its operations
+	 * fails, and that the failed operation's index is returned
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testSubmitTransactionsBatchRollback() throws Exception {
+		prepopulate.prepopulate();
+
+		HttpHeaders headers = restClient.authenticate();
+
+		String batchRequest = "["
+				+ "{\"operation\":\"CREATE\",\"transaction\":{\"tags\":[\"hello\"],\"type\":\"EXPENSEINCOME\",\"description\":\"test transaction 4\",\"date\":\"2016-02-07\",\"components\":[{\"accountId\":3,\"amount\":100}]}},"
+				+ "{\"operation\":\"DELETE\",\"id\":13}"
+				+ "]";
+		HttpEntity<String> entity = new HttpEntity<>(batchRequest, headers);
+		try {
+			restClient.getRestTemplate().postForEntity("https://localhost:8443/service/transactions/batch", entity, String.class);
+			fail("Expected an HttpClientErrorException to be thrown");
+		} catch (HttpStatusCodeException ex) {
+			assertEquals(HttpStatus.BAD_REQUEST, ex.getStatusCode());
+			String error = MessageFormat.format(messages.getString("CANNOT_DELETE_A_NON_EXISTING_TRANSACTION"), 13);
+			jsonExpectationhelper.assertJsonEqual("{message:\"" + MessageFormat.format(messages.getString("BATCH_OPERATION_FAILED"), 1, error) + "\"}", ex.getResponseBodyAsString());
+		}
+
+		transactionTemplate.execute((ts) -> {
+			List<FinanceAccount> accounts = accountRepository.findAll();
+			assertEquals(44.72, accounts.get(0).getBalance(), 0);
+			assertEquals(4, transactionRepository.findAll().size());
+			return null;
+		});
+	}
+
+	/**
+	 * Test that all operations from a batch are validated before any changes
+	 * are applied, and that the indexes of all invalid operations are returned
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testSubmitTransactionsBatchValidation() throws Exception {
+		prepopulate.prepopulate();
+
+		HttpHeaders headers = restClient.authenticate();
+
+		String batchRequest = "["
+				+ "{\"operation\":\"CREATE\",\"transaction\":{\"tags\":[\"hello\"],\"type\":\"EXPENSEINCOME\",\"description\":\"test transaction 4\",\"date\":\"2016-02-07\",\"components\":[{\"accountId\":3,\"amount\":100}]}},"
+				+ "{\"operation\":\"UPDATE\",\"transaction\":{\"tags\":[],\"id\":9,\"type\":\"TRANSFER\",\"description\":\"test transaction 3a\",\"date\":\"2014-02-17\",\"version\":0,\"components\":[]}},"
+				+ "{\"operation\":\"DELETE\",\"id\":9},"
+				+ "{\"operation\":\"UPDATE\",\"transaction\":{\"tags\":[],\"id\":9,\"type\":\"TRANSFER\",\"description\":\"test transaction 3b\",\"date\":\"2014-02-17\",\"version\":0,\"components\":[]}},"
+				+ "{\"operation\":\"CREATE\",\"transaction\":{\"tags\":[],\"type\":\"EXPENSEINCOME\",\"description\":\"test transaction 5\",\"date\":\"2016-02-07\",\"components\":[{\"accountId\":5,\"amount\":100}]}},"
+				+ "{\"operation\":\"CREATE\"},"
+				+ "{\"operation\":\"DELETE\",\"id\":9}"
+				+ "]";
+		HttpEntity<String> entity = new HttpEntity<>(batchRequest, headers);
+		try {
+			restClient.getRestTemplate().postForEntity("https://localhost:8443/service/transactions/batch", entity, String.class);
+			fail("Expected an HttpClientErrorException to be thrown");
+		} catch (HttpStatusCodeException ex) {
+			assertEquals(HttpStatus.BAD_REQUEST, ex.getStatusCode());
+			String error = String.join("; ",
+					MessageFormat.format(messages.getString("BATCH_OPERATION_FAILED"), 3, MessageFormat.format(messages.getString("TRANSACTION_DOES_NOT_EXIST"), 9)),
+					MessageFormat.format(messages.getString("BATCH_OPERATION_FAILED"), 4, MessageFormat.format(messages.getString("CANNOT_SET_AN_INVALID_ACCOUNT_ID"), 5)),
+					MessageFormat.format(messages.getString("BATCH_OPERATION_FAILED"), 5, messages.getString("INVALID_BATCH_OPERATION")),
+					MessageFormat.format(messages.getString("BATCH_OPERATION_FAILED"), 6, MessageFormat.format(messages.getString("CANNOT_DELETE_A_NON_EXISTING_TRANSACTION"), 9)));
+			jsonExpectationhelper.assertJsonEqual("{message:\"" + error + "\"}", ex.getResponseBodyAsString());
+		}
+
+		transactionTemplate.execute((ts) -> {
+			List<FinanceAccount> accounts = accountRepository.findAll();
+			assertEquals(44.72, accounts.get(0).getBalance(), 0);
+			List<FinanceTransaction> transactions = transactionRepository.findAll();
+			assertEquals(4, transactions.size());
+			assertEquals("test transaction 3", transactions.get(1).getDescription());
+			return null;
+		});
+	}
+
+	/**
+	 * Test that the number of transactions is updated after transactions are
+	 * created, changed or deleted
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testTransactionsCountUpdated() throws Exception {
+		prepopulate.prepopulate();
+
+		HttpHeaders headers = restClient.authenticate();
+
+		HttpEntity<String> entity = new HttpEntity<>(headers);
+		ResponseEntity<String> responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/transactions/count", HttpMethod.GET, entity, String.class);
+		assertEquals("3", responseEntity.getBody());
+		responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/transactions/count?filterTags=world", HttpMethod.GET, entity, String.class);
+		assertEquals("1", responseEntity.getBody());
+
+		String createRequest = "{\"tags\":[\"hello\",\"world\"],\"type\":\"EXPENSEINCOME\",\"description\":\"test transaction 4\",\"date\":\"2016-02-07\",\"components\":[{\"accountId\":3,\"amount\":100}]}";
+		responseEntity = restClient.getRestTemplate().postForEntity("https://localhost:8443/service/transactions", new HttpEntity<>(createRequest, headers), String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+
+		responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/transactions/count", HttpMethod.GET, entity, String.class);
+		assertEquals("4", responseEntity.getBody());
+		responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/transactions/count?filterTags=world", HttpMethod.GET, entity, String.class);
+		assertEquals("2", responseEntity.getBody());
+
+		String changeRequest = "{\"tags\":[\"hello\"],\"id\":6,\"type\":\"EXPENSEINCOME\",\"description\":\"test transaction 1\",\"date\":\"2014-02-17\",\"version\":0,\"components\":[{\"accountId\":3,\"amount\":42,\"id\":7,\"version\":0},{\"accountId\":4,\"amount\":160,\"id\":8,\"version\":0}]}";
+		responseEntity = restClient.getRestTemplate().postForEntity("https://localhost:8443/service/transactions", new HttpEntity<>(changeRequest, headers), String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+
+		responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/transactions/count", HttpMethod.GET, entity, String.class);
+		assertEquals("4", responseEntity.getBody());
+		responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/transactions/count?filterTags=world", HttpMethod.GET, entity, String.class);
+		assertEquals("1", responseEntity.getBody());
+
+		responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/transactions/transaction/9", HttpMethod.DELETE, entity, String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+
+		responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/transactions/count", HttpMethod.GET, entity, String.class);
+		assertEquals("3", responseEntity.getBody());
+		responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/transactions/pages", HttpMethod.GET, entity, String.class);
+		assertEquals("1", responseEntity.getBody());
+	}
+
+	/**
+	 * Test that search results are updated after transactions are created,
+	 * changed or deleted
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testSearchTransactionsUpdated() throws Exception {
+		prepopulate.prepopulate();
+
+		HttpHeaders headers = restClient.authenticate();
+
+		HttpEntity<String> entity = new HttpEntity<>(headers);
+		ResponseEntity<String> responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/transactions/search?q=test transaction", HttpMethod.GET, entity, String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		JSONArray results = new JSONArray(responseEntity.getBody());
+		assertEquals(3, results.length());
+		assertEquals(10, results.getJSONObject(0).getLong("id"));
+		assertEquals(9, results.getJSONObject(1).getLong("id"));
+		assertEquals(6, results.getJSONObject(2).getLong("id"));
+
+		String createRequest = "{\"tags\":[],\"type\":\"EXPENSEINCOME\",\"description\":\"grocery store\",\"date\":\"2016-02-07\",\"components\":[{\"accountId\":3,\"amount\":100}]}";
+		responseEntity = restClient.getRestTemplate().postForEntity("https://localhost:8443/service/transactions", new HttpEntity<>(createRequest, headers), String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		String changeRequest = "{\"tags\":[\"hello\",\"world\"],\"id\":6,\"type\":\"EXPENSEINCOME\",\"description\":\"grocery market\",\"date\":\"2014-02-17\",\"version\":0,\"components\":[{\"accountId\":3,\"amount\":42,\"id\":7,\"version\":0},{\"accountId\":4,\"amount\":160,\"id\":8,\"version\":0}]}";
+		responseEntity = restClient.getRestTemplate().postForEntity("https://localhost:8443/service/transactions", new HttpEntity<>(changeRequest, headers), String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/transactions/transaction/9", HttpMethod.DELETE, entity, String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+
+		responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/transactions/search?q=test transaction", HttpMethod.GET, entity, String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		results = new JSONArray(responseEntity.getBody());
+		assertEquals(1, results.length());
+		assertEquals(10, results.getJSONObject(0).getLong("id"));
+		responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/transactions/search?q=grocery", HttpMethod.GET, entity, String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		results = new JSONArray(responseEntity.getBody());
+		assertEquals(2, results.length());
+		assertEquals(16, results.getJSONObject(0).getLong("id"));
+		assertEquals("grocery store", results.getJSONObject(0).getString("description"));
+		assertEquals(6, results.getJSONObject(1).getLong("id"));
+		assertEquals("grocery market", results.getJSONObject(1).getString("description"));
+	}
+
+	/**
+	 * Test that read requests with an unchanged ETag get a "Not Modified"
+	 * response until data is changed, and that the ETag is not reused for
+	 * other representations
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testTransactionsETag() throws Exception {
+		prepopulate.prepopulate();
+
+		HttpHeaders headers = restClient.authenticate();
+
+		HttpEntity<String> entity = new HttpEntity<>(headers);
+		ResponseEntity<String> responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/transactions", HttpMethod.GET, entity, String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		String eTag = responseEntity.getHeaders().getETag();
+		assertNotNull(eTag);
+		assertEquals("no-cache, private", responseEntity.getHeaders().getCacheControl());
+		assertTrue(responseEntity.getHeaders().getVary().contains(HttpHeaders.ACCEPT));
+
+		HttpHeaders conditionalHeaders = restClient.authenticate();
+		conditionalHeaders.setIfNoneMatch(eTag);
+		HttpEntity<String> conditionalEntity = new HttpEntity<>(conditionalHeaders);
+		responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/transactions", HttpMethod.GET, conditionalEntity, String.class);
+		assertEquals(HttpStatus.NOT_MODIFIED, responseEntity.getStatusCode());
+		assertNull(responseEntity.getBody());
+
+		HttpHeaders ndjsonHeaders = restClient.authenticate();
+		ndjsonHeaders.setIfNoneMatch(eTag);
+		ndjsonHeaders.setAccept(Collections.singletonList(MediaType.parseMediaType("application/x-ndjson")));
+		responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/transactions", HttpMethod.GET, new HttpEntity<>(ndjsonHeaders), String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		assertNotEquals(eTag, responseEntity.getHeaders().getETag());
+
+		responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/transactions/transaction/9", HttpMethod.DELETE, entity, String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+
+		responseEntity = restClient.getRestTemplate().exchange("https://localhost:8443/service/transactions", HttpMethod.GET, conditionalEntity, String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		assertNotEquals(eTag, responseEntity.getHeaders().getETag());
+		assertEquals(2, new JSONArray(responseEntity.getBody()).length());
+	}
+
 	/**
 	 * Test that an authenticated user cannot change their transaction if the
 	 * version numbers mismatch
@@ -508,12 +769,15 @@ public class TransactionsControllerWriteTest {
 	public void testUpdateTransactionVersionConstraint() throws Exception {
 		prepopulate.prepopulate();
 
-		for (FinanceTransaction transaction : transactionRepository.findAll()) {
-			if (transaction.getId() == 6) {
-				transaction.setTags(new String[]{"hello", "world"});
-				transactionRepository.save(transaction);
+		transactionTemplate.execute((ts) -> {
+			for (FinanceTransaction transaction : transactionRepository.findAll()) {
+				if (transaction.getId() == 6) {
+					transaction.setTags(new String[]{"hello", "world"});
+					transactionRepository.save(transaction);
+				}
 			}
-		}
+			return null;
+		});
 
 		HttpHeaders headers = restClient.authenticate();
 